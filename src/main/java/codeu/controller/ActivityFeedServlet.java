@@ -1,13 +1,12 @@
 package codeu.controller;
 
-import codeu.model.data.User;
-import codeu.model.data.Conversation;
-import codeu.model.data.Message;
-import codeu.model.store.basic.UserStore;
-import codeu.model.store.basic.ConversationStore;
-import codeu.model.store.basic.MessageStore;
+import codeu.model.data.Activity;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.TrendingStore;
 import java.util.List;
 import java.io.IOException;
+import java.time.Instant;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -16,14 +15,17 @@ import javax.servlet.http.HttpServletResponse;
 /** Servlet class responsible for the Activity Feed page. */
 public class ActivityFeedServlet extends HttpServlet {
 
-    /** Store class that gives access to Users. */
-    private UserStore userStore;
-    
-    /** Store class that gives access to Conversations. */
-    private ConversationStore conversationStore;
-    
-    /** Store class that gives access to Messages. */
-    private MessageStore messageStore;
+    /** The number of Activities shown on one page of the feed. */
+    static final int PAGE_SIZE = 50;
+
+    /** The number of trending hashtags shown next to the feed. */
+    static final int TRENDING_LIMIT = 5;
+
+    /** Store class that gives access to the activity log. */
+    private ActivityStore activityStore;
+
+    /** Store class that gives access to the trending hashtags. */
+    private TrendingStore trendingStore;
     
     /**
      * Set up state for handling activity feed related requests.
@@ -32,43 +34,64 @@ public class ActivityFeedServlet extends HttpServlet {
     @Override
     public void init() throws ServletException {
         super.init();
-        setUserStore(UserStore.getInstance());
-        setConversationStore(ConversationStore.getInstance());
-        setMessageStore(MessageStore.getInstance());
+        setActivityStore(ActivityStore.getInstance());
+        setTrendingStore(TrendingStore.getInstance());
     }
     
     /**
-     * Sets the UserStore used by this servlet.
+     * Sets the ActivityStore used by this servlet.
      * This function provides a common setup method for use by the test
       framework or servlet's init() function.
      */
-    void setUserStore(UserStore userStore) {
-        this.userStore = userStore;
+    void setActivityStore(ActivityStore activityStore) {
+        this.activityStore = activityStore;
     }
-    
-    /**
-     *Sets the ConversationStore used by this servlet.
-     */
-    void setConversationStore(ConversationStore conversationStore) {
-        this.conversationStore = conversationStore;
-    }
-    
+
     /**
-     *Sets the MessageStore used by this servlet.
+     * Sets the TrendingStore used by this servlet.
      */
-    void setMessageStore(MessageStore messageStore) {
-        this.messageStore = messageStore;
+    void setTrendingStore(TrendingStore trendingStore) {
+        this.trendingStore = trendingStore;
     }
     
     /**
      * This function fires when a user navigates to the activity feed page.
-     * It forwards the request to activityfeed.jsp
+     * It reads one page of the activity log, newest first, starting at the
+     * optional "before" cursor and forwards the request to activity-feed.jsp.
+     * Logged-in users asking for feed=home get their own home feed instead.
      */
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response)
         throws IOException, ServletException {
-            List<Conversation> conversations = conversationStore.getAllConversations();
-            request.setAttribute("conversations", conversations);
+            int cursor = activityStore.getActivityCount();
+            String before = request.getParameter("before");
+            if (before != null) {
+                try {
+                    cursor = Math.min(Integer.parseInt(before), cursor);
+                } catch (NumberFormatException e) {
+                    // ignore a malformed cursor and show the newest page
+                }
+            }
+
+            UserPrincipal user = UserFilter.getPrincipal(request);
+
+            List<Activity> activities;
+            if (user != null && "home".equals(request.getParameter("feed"))) {
+                activities = activityStore.getHomeFeedBefore(user.getId(), cursor, PAGE_SIZE);
+                request.setAttribute("feed", "home");
+            } else {
+                activities = activityStore.getActivitiesBefore(cursor, PAGE_SIZE);
+                request.setAttribute("feed", "all");
+            }
+            request.setAttribute("activities", activities);
+            if (activities.size() == PAGE_SIZE) {
+                int oldest = activities.get(activities.size() - 1).getSequence();
+                if (oldest > 0) {
+                    request.setAttribute("nextCursor", oldest);
+                }
+            }
+            request.setAttribute("trendingHashtags", trendingStore.getTrending(
+                TrendingStore.Window.HOUR, TRENDING_LIMIT, Instant.now()));
             request.getRequestDispatcher("/WEB-INF/view/activity-feed.jsp").forward(request, response);
     }
 }
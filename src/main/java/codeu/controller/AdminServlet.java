@@ -6,6 +6,7 @@ import codeu.model.data.Conversation;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.data.Message;
 import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.AttackEventStore;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.time.Instant;
@@ -17,10 +18,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
-import java.util.Scanner;
 
 /** 
  * This servlet class is for the admin page
@@ -28,6 +25,9 @@ import java.util.Scanner;
  * and showing stats about it.
  */
 public class AdminServlet extends HttpServlet {
+
+  // How many of the most common attacking User-Agents to show
+  static final int TOP_USER_AGENTS = 10;
    
   // Store class that gives access to Users. 
   private UserStore userStore;
@@ -37,6 +37,9 @@ public class AdminServlet extends HttpServlet {
   
   // Store class that gives acces to messages
   private MessageStore messageStore;
+
+  // Store class that counts suspected attacks
+  private AttackEventStore attackEventStore;
   
   /** This is for the inital setup of the admin page */
   @Override
@@ -46,6 +49,7 @@ public class AdminServlet extends HttpServlet {
     setUserStore(UserStore.getInstance());
     setConversationStore(ConversationStore.getInstance());
     setMessageStore(MessageStore.getInstance());
+    setAttackEventStore(AttackEventStore.getInstance());
   }
   
   /**
@@ -74,6 +78,15 @@ public class AdminServlet extends HttpServlet {
   void setMessageStore(MessageStore messageStore) {
     this.messageStore = messageStore;
   }
+
+  /**
+   * Sets the AttackEventStore used by this servlet. 
+   * This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setAttackEventStore(AttackEventStore attackEventStore) {
+    this.attackEventStore = attackEventStore;
+  }
   
   /** When user visits this sends them to admin page */
   @Override
@@ -94,16 +107,30 @@ public class AdminServlet extends HttpServlet {
     String newestUser = userStore.getNewestUser();
     request.setAttribute("newestUser", newestUser);
     
-    // get the number of attacks on the website 
-    File file = new File(System.getProperty("user.dir"), "attackLog.txt");
-    Scanner input = new Scanner(file);
-    int counter = 0;
-    while (input.hasNextLine()) {
-      input.nextLine();
-      input.nextLine();
-      counter++;
-    }
-    request.setAttribute("attackCount", counter);
+    // the attack counters are kept up to date as attacks happen
+    Instant now = Instant.now();
+    request.setAttribute("attackCount", attackEventStore.getAttackCount());
+    request.setAttribute("unloggedAttackCount", attackEventStore.getUnloggedCount());
+    request.setAttribute(
+        "attackHourlyCounts",
+        attackEventStore.getHourlyCounts(AttackEventStore.HOURS, now));
+    request.setAttribute(
+        "topUserAgents", attackEventStore.getTopUserAgents(TOP_USER_AGENTS, now));
+
+    // how the password hashing pool is coping with logins and registrations
+    PasswordHasher passwordHasher = PasswordHasher.getInstance();
+    request.setAttribute("passwordHashCount", passwordHasher.getCompletedCount());
+    request.setAttribute("passwordHashRejectedCount", passwordHasher.getRejectedCount());
+    request.setAttribute(
+        "passwordHashQueueMillis", String.format("%.1f", passwordHasher.getAverageQueueMillis()));
+    request.setAttribute(
+        "passwordHashMillis", String.format("%.1f", passwordHasher.getAverageHashMillis()));
+
+    // how far behind the background indexing of new messages is
+    request.setAttribute("ingestStages", IngestPipeline.getInstance().getMetrics());
+
+    // deletions whose replies, postings and images are still being cleaned up
+    request.setAttribute("pendingDeletionCount", DeletionCascade.getInstance().getPendingCount());
     
     request.getRequestDispatcher("/WEB-INF/view/admin.jsp").forward(request, response);
   }
@@ -14,16 +14,25 @@
 
 package codeu.controller;
 
+import codeu.model.data.Activity;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
-import codeu.model.data.Mention;
+import codeu.model.data.UserPrincipal;
 import codeu.model.store.basic.MentionStore;
 import codeu.model.data.Hashtag;
+import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.TrendingStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
+import codeu.model.view.ChatPageView;
+import codeu.model.view.MessageView;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.List;
@@ -35,9 +44,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.jsoup.Jsoup;
-import org.jsoup.safety.Whitelist;
-import com.vdurmont.emoji.EmojiParser;
 import java.util.regex.Matcher;
 import java.util.Collections;
 import java.util.Comparator;
@@ -47,6 +53,12 @@ import java.util.regex.Pattern;
 /** Servlet class responsible for the chat page. */
 public class ChatServlet extends HttpServlet {
 
+  /** Matches an @mention of a username. */
+  private static final Pattern MENTION_PATTERN = Pattern.compile("@[^@]+(\\s|\\n|$)");
+
+  /** Matches a #hashtag. */
+  private static final Pattern HASHTAG_PATTERN = Pattern.compile("(?:^|\\s|\\n)#([a-z\\d-]+)");
+
   /** Store class that gives access to Conversations. */
   private ConversationStore conversationStore;
 
@@ -61,6 +73,27 @@ public class ChatServlet extends HttpServlet {
   /** Store class that gives access to Mentions. */
   private MentionStore mentionStore;
 
+  /** Store class that gives access to the activity log. */
+  private ActivityStore activityStore;
+
+  /** Store class that counts hashtag uses for the trending hashtags. */
+  private TrendingStore trendingStore;
+
+  /** Store class that gives access to resized images. */
+  private ImageVariantStore imageVariantStore;
+
+  /** Store class that gives access to uploaded images. */
+  private ImageStore imageStore;
+
+  /** Runs the indexing of new messages in the background. */
+  private IngestPipeline ingestPipeline;
+
+  /** Saves each new message together with the index entries it changes. */
+  private PersistentStorageAgent persistentStorageAgent;
+
+  /** Deletes messages along with everything that hangs off them. */
+  private DeletionCascade deletionCascade;
+
   /** Set up state for handling chat requests. */
   @Override
   public void init() throws ServletException {
@@ -70,6 +103,13 @@ public class ChatServlet extends HttpServlet {
     setUserStore(UserStore.getInstance());
     setMentionStore(MentionStore.getInstance());
     setHashtagStore(HashtagStore.getInstance());
+    setActivityStore(ActivityStore.getInstance());
+    setTrendingStore(TrendingStore.getInstance());
+    setImageVariantStore(ImageVariantStore.getInstance());
+    setImageStore(ImageStore.getInstance());
+    setIngestPipeline(IngestPipeline.getInstance());
+    setPersistentStorageAgent(PersistentStorageAgent.getInstance());
+    setDeletionCascade(DeletionCascade.getInstance());
   }
 
   /**
@@ -111,11 +151,67 @@ public class ChatServlet extends HttpServlet {
   void setHashtagStore(HashtagStore hashtagStore) {
     this.hashtagStore = hashtagStore;
   }
+
+  /**
+   * Sets the ActivityStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setActivityStore(ActivityStore activityStore) {
+    this.activityStore = activityStore;
+  }
+
+  /**
+   * Sets the TrendingStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setTrendingStore(TrendingStore trendingStore) {
+    this.trendingStore = trendingStore;
+  }
+
+  /**
+   * Sets the ImageVariantStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setImageVariantStore(ImageVariantStore imageVariantStore) {
+    this.imageVariantStore = imageVariantStore;
+  }
+
+  /**
+   * Sets the ImageStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setImageStore(ImageStore imageStore) {
+    this.imageStore = imageStore;
+  }
+
+  /**
+   * Sets the IngestPipeline used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setIngestPipeline(IngestPipeline ingestPipeline) {
+    this.ingestPipeline = ingestPipeline;
+  }
+
+  /**
+   * Sets the PersistentStorageAgent used by this servlet. This function provides a common setup
+   * method for use by the test framework or the servlet's init() function.
+   */
+  void setPersistentStorageAgent(PersistentStorageAgent persistentStorageAgent) {
+    this.persistentStorageAgent = persistentStorageAgent;
+  }
+
+  /**
+   * Sets the DeletionCascade used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setDeletionCascade(DeletionCascade deletionCascade) {
+    this.deletionCascade = deletionCascade;
+  }
   
   /**
    * This function fires when a user navigates to the chat page. It gets the conversation title from
    * the URL, finds the corresponding Conversation, and fetches the messages in that Conversation.
-   * It then forwards to chat.jsp for rendering.
+   * It then builds a ChatPageView and forwards to chat.jsp for rendering.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -135,14 +231,19 @@ public class ChatServlet extends HttpServlet {
 
     List<Message> messages = messageStore.getMessagesInConversation(conversationId);
 
-    request.setAttribute("conversation", conversation);
-    request.setAttribute("messages", messages);
+    UserPrincipal viewer = UserFilter.getPrincipal(request);
+    List<MessageView> messageViews =
+        new MessageViewBuilder(userStore, imageVariantStore, viewer, ChatServlet::linkHashtags)
+            .build(messages);
+
+    request.setAttribute(
+        "page", new ChatPageView(conversation.getTitle(), messageViews, viewer != null));
     request.getRequestDispatcher("/WEB-INF/view/chat.jsp").forward(request, response);
   }
 
   /**
    * This function fires when a user submits the form on the chat page. It gets the logged-in
-   * username from the session, the conversation title from the URL, and the chat message from the
+   * user resolved by UserFilter, the conversation title from the URL, and the chat message from the
    * submitted form data. It creates a new Message from that data, adds it to the model, and then
    * redirects back to the chat page.
    */
@@ -150,16 +251,9 @@ public class ChatServlet extends HttpServlet {
   public void doPost(HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
 
-    String username = (String) request.getSession().getAttribute("user");
-    if (username == null) {
-      // user is not logged in, don't let them add a message
-      response.sendRedirect("/login");
-      return;
-    }
-
-    User user = userStore.getUser(username);
+    UserPrincipal user = UserFilter.getPrincipal(request);
     if (user == null) {
-      // user was not found, don't let them add a message
+      // user is not logged in, don't let them add a message
       response.sendRedirect("/login");
       return;
     }
@@ -169,8 +263,7 @@ public class ChatServlet extends HttpServlet {
           
     String edit = request.getParameter("edit");
     if (edit != null) {
-      edit = Jsoup.clean(edit, Whitelist.none());
-      edit = EmojiParser.parseToUnicode(edit);
+      edit = MessageSanitizer.clean(edit);
       messageStore.editMessage((String) request.getParameter("messageId"), edit);
       response.sendRedirect("/chat/" + conversationTitle);
       return;
@@ -185,83 +278,136 @@ public class ChatServlet extends HttpServlet {
     
     boolean shouldDelete = Boolean.valueOf(request.getParameter("delete"));
     if (shouldDelete) {
-      messageStore.deleteMessage(messageStore.getMessage(UUID.fromString(request.getParameter("messageId"))));
+      Message deleted = messageStore.getMessage(UUID.fromString(request.getParameter("messageId")));
+      if (deleted != null) {
+        // Its replies, postings and image are cleaned up in the background.
+        deletionCascade.deleteMessage(deleted);
+      }
       response.sendRedirect("/chat/" + conversationTitle);
       return;
     }
     
     String messageContent = request.getParameter("message");
 
-    UUID messageUUID = UUID.randomUUID();
+    UUID messageUUID = TimeOrderedIds.newId();
+    Instant creation = Instant.now();
     
-    // this removes any HTML from the message content
-    String cleanedMessageContent = Jsoup.clean(messageContent, Whitelist.none());
+    // this removes any HTML from the message content and turns emoji aliases into emoji
+    String cleanedAndEmojiMessage = MessageSanitizer.clean(messageContent);
+
+    Message message =
+        new Message(
+            messageUUID,
+            conversation.getId(),
+            user.getId(),
+            cleanedAndEmojiMessage,
+            creation,
+            "text");
 
-    String cleanedAndEmojiMessage = EmojiParser.parseToUnicode(cleanedMessageContent);
+    // The message, the mentions and the hashtag index are saved together in one batch, so a
+    // failure can't leave an index pointing at a message that was never stored.
+    UnitOfWork unit = new UnitOfWork();
+    Boolean isReply = Boolean.valueOf(request.getParameter("reply"));
+    if (isReply == null || !isReply) {
+      messageStore.addMessage(message, unit);
+    } else {
+      messageStore.reply(messageStore.getMessage(UUID.fromString(request.getParameter("messageId"))),
+                         message, unit);
+    }
+    Set<UUID> mentionedUserIds = indexMentions(message, unit);
+    Set<String> hashtags = indexHashtags(message, unit);
+    persistentStorageAgent.commit(unit);
 
+    // The derived data catches up in the background; the user can be redirected now.
+    ingestPipeline.submit(
+        IngestPipeline.Stage.TRENDING,
+        () -> {
+          for (String tag : hashtags) {
+            trendingStore.recordHashtag(tag, creation);
+          }
+        });
+    ingestPipeline.submit(
+        IngestPipeline.Stage.FEEDS,
+        () -> {
+          conversationStore.bumpConversation(conversation.getId(), creation);
+          activityStore.addActivity(
+              Activity.messageSent(message, conversation, user.getName()), mentionedUserIds);
+        });
 
-    Pattern mentionPattern = Pattern.compile("@[^@]+(\\s|\\n|$)");
-    Matcher mentionMatch = mentionPattern.matcher(cleanedAndEmojiMessage);
-    Set<String> mentionedUsers = new HashSet<String>();
+    // redirect to a GET request
+    response.sendRedirect("/chat/" + conversationTitle);
+  }
 
-    while (mentionMatch.find()) {
-      String mentionedUser = mentionMatch.group().trim().substring(1);
-      mentionedUsers.add(mentionedUser);
+  /**
+   * Records a Mention for each registered user the message mentions. Mentions of unknown names are
+   * dropped. Returns the IDs of the mentioned users.
+   */
+  private Set<UUID> indexMentions(Message message, UnitOfWork unit) {
+    Set<UUID> mentionedUserIds = new HashSet<UUID>();
+    for (String mentionedUser : findMentionedNames(message.getContent())) {
+      User mentioned = userStore.getUser(mentionedUser);
+      if (mentioned != null) {
+        mentionStore.addMention(message.getId(), mentioned, unit);
+        mentionedUserIds.add(mentioned.getId());
+      }
     }
+    return mentionedUserIds;
+  }
 
-    for (String mentionedUser : mentionedUsers) {
-      Mention currentMention = mentionStore.getMention(mentionedUser);
-      if (currentMention == null) {
-        currentMention = new Mention(messageUUID, mentionedUser);
-        mentionStore.addMention(currentMention);
+  /** Adds the message to the index of each hashtag it uses. Returns the hashtags, upper-cased. */
+  private Set<String> indexHashtags(Message message, UnitOfWork unit) {
+    Set<String> hashtags = findHashtags(message.getContent());
+    for (String tag : hashtags) {
+      Hashtag currentTag = hashtagStore.getHashtag(tag);
+      
+      if (currentTag == null) {
+        currentTag = new Hashtag(tag, message.getId());
+        hashtagStore.addHashtag(currentTag, unit);
       } else {
-        currentMention.addMessageId(messageUUID);
-        mentionStore.updateMention(currentMention);
+        currentTag.addMessageId(message.getId());
+        hashtagStore.updateHashtag(currentTag, unit);
       }
     }
-  
+    return hashtags;
+  }
+
+  /** Returns the usernames mentioned with an @ in message content. */
+  static Set<String> findMentionedNames(String content) {
+    Matcher mentionMatch = MENTION_PATTERN.matcher(content);
+    Set<String> mentionedUsers = new HashSet<String>();
 
-    Pattern hashtagPattern = Pattern.compile("(?:^|\\s|\\n)#([a-z\\d-]+)");
-    Matcher matcher = hashtagPattern.matcher(cleanedAndEmojiMessage);
+    while (mentionMatch.find()) {
+      String mentionedUser = mentionMatch.group().trim().substring(1);
+      mentionedUsers.add(mentionedUser);
+    }
+    return mentionedUsers;
+  }
+
+  /** Returns the hashtags used in message content, upper-cased as they are indexed. */
+  static Set<String> findHashtags(String content) {
+    Matcher matcher = HASHTAG_PATTERN.matcher(content);
     
     Set<String> hashtags = new HashSet<String>();
     
     while (matcher.find()) {
       String tag = matcher.group().trim().substring(1);
-      hashtags.add(tag);
-    }
-    
-    for (String tag : hashtags) {
-      tag = tag.toUpperCase();
-      Hashtag currentTag = hashtagStore.getHashtag(tag);
-      
-      if (currentTag == null) {
-        currentTag = new Hashtag(tag, messageUUID);
-        hashtagStore.addHashtag(currentTag);
-      } else {
-        currentTag.addMessageId(messageUUID);
-        hashtagStore.updateHashtag(currentTag);
-      }
+      hashtags.add(tag.toUpperCase());
     }
-    
-    Message message =
-        new Message(
-            messageUUID,
-            conversation.getId(),
-            user.getId(),
-            cleanedAndEmojiMessage,
-            Instant.now(), 
-            "text");
+    return hashtags;
+  }
 
-    Boolean isReply = Boolean.valueOf(request.getParameter("reply"));
-    if (isReply == null || !isReply) {
-      messageStore.addMessage(message);
-    } else {
-      messageStore.reply(messageStore.getMessage(UUID.fromString(request.getParameter("messageId"))),
-                         message);
+  /** Renders message content with every #hashtag turned into a link to its hashtag page. */
+  static String linkHashtags(String content) {
+    StringBuilder output = new StringBuilder();
+    for (String word : content.split(" ")) {
+      if (word.length() >= 2 && word.charAt(0) == '#') {
+        if (word.charAt(word.length() - 1) == '.') {
+          word = word.substring(0, word.length() - 1);
+        }
+        word = "<a href='../../hashtag/" + word.substring(1) + "'>" + word + "</a>";
+      }
+      output.append(' ').append(word);
     }
-
-    // redirect to a GET request
-    response.sendRedirect("/chat/" + conversationTitle);
+    return output.toString();
   }
 }
@@ -0,0 +1,378 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that gzips text responses for clients that accept it. The first MIN_SIZE bytes of a
+ * response are held back; only if the response grows past that is it compressed, since gzip
+ * doesn't pay for itself on tiny bodies. Responses that are already encoded, such as cached pages
+ * and precompressed static assets, go through untouched.
+ *
+ * <p>Deflaters hold native memory and are slow to set up, so they are kept in a pool and reused
+ * between responses.
+ */
+public class CompressionFilter implements Filter {
+
+  /** Responses smaller than this many bytes are sent uncompressed. */
+  static final int MIN_SIZE = 1024;
+
+  /** The most idle Deflaters kept in the pool. */
+  static final int POOL_SIZE = 32;
+
+  /** Compression level; a little below the default trades a few bytes for noticeably less CPU. */
+  private static final int LEVEL = 5;
+
+  /** Fixed gzip header: magic number, deflate, no flags, no mtime, no extra flags, unknown OS. */
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  /** Idle Deflaters ready to be reused. */
+  private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {}
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null || !acceptEncoding.contains("gzip")
+        || "HEAD".equals(request.getMethod())) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    CompressingResponse compressing = new CompressingResponse(response);
+    try {
+      chain.doFilter(request, compressing);
+      compressing.finish();
+    } finally {
+      compressing.releaseDeflater();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    Deflater deflater;
+    while ((deflater = deflaters.poll()) != null) {
+      deflater.end();
+    }
+  }
+
+  private Deflater borrowDeflater() {
+    Deflater deflater = deflaters.poll();
+    return deflater != null ? deflater : new Deflater(LEVEL, true);
+  }
+
+  private void returnDeflater(Deflater deflater) {
+    deflater.reset();
+    if (!deflaters.offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  /** Returns whether a response of the given content type is worth compressing. */
+  static boolean isCompressible(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    return contentType.startsWith("text/")
+        || contentType.startsWith("application/json")
+        || contentType.startsWith("application/javascript")
+        || contentType.startsWith("image/svg+xml");
+  }
+
+  /**
+   * Response that buffers the start of the body and, once it passes MIN_SIZE, either starts
+   * compressing it or gives up and sends it as is.
+   */
+  private class CompressingResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(MIN_SIZE);
+    private final CRC32 crc = new CRC32();
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    /** Where body bytes go once the buffering decision is made, or null while still buffering. */
+    private OutputStream target;
+    private Deflater deflater;
+    private byte[] deflated;
+    private long uncompressedSize;
+
+    /** Set once the body must not be compressed, e.g. because it's already encoded. */
+    private boolean passThrough;
+
+    CompressingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      if ("Content-Encoding".equalsIgnoreCase(name)) {
+        passThrough = true;
+      }
+      super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      if ("Content-Encoding".equalsIgnoreCase(name)) {
+        passThrough = true;
+      }
+      super.addHeader(name, value);
+    }
+
+    @Override
+    public void setContentType(String type) {
+      // A body that won't be compressed can keep its length and skip the buffer.
+      if (target == null && type != null && !isCompressible(type)) {
+        passThrough = true;
+      }
+      super.setContentType(type);
+    }
+
+    @Override
+    public void setContentLength(int length) {
+      if (passThrough) {
+        super.setContentLength(length);
+      }
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+      if (passThrough) {
+        super.setContentLengthLong(length);
+      }
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+      passThrough = true;
+      super.sendError(status);
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+      passThrough = true;
+      super.sendError(status, message);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      passThrough = true;
+      super.sendRedirect(location);
+    }
+
+    @Override
+    public void resetBuffer() {
+      pending.reset();
+      super.resetBuffer();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      // While still buffering, flushing would commit the headers before we know the encoding.
+      if (target != null) {
+        target.flush();
+        super.flushBuffer();
+      }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (outputStream == null) {
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            CompressingResponse.this.write(b, off, len);
+          }
+
+          @Override
+          public void flush() throws IOException {
+            if (target != null) {
+              target.flush();
+            }
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {}
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      if (writer == null) {
+        String encoding = getCharacterEncoding();
+        writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+            encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding)));
+      }
+      return writer;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+      if (target == null) {
+        if (pending.size() + len < MIN_SIZE && !passThrough) {
+          pending.write(b, off, len);
+          return;
+        }
+        start(false);
+      }
+      target.write(b, off, len);
+    }
+
+    /**
+     * Decides how to send the body and writes out what was buffered so far. The body is only
+     * compressed if it is big enough, of a compressible type and not already encoded.
+     */
+    private void start(boolean complete) throws IOException {
+      HttpServletResponse response = (HttpServletResponse) getResponse();
+      boolean compress = !complete && !passThrough && isCompressible(getContentType())
+          && response.getStatus() == SC_OK;
+      if (compress) {
+        response.setHeader("Content-Encoding", "gzip");
+        response.addHeader("Vary", "Accept-Encoding");
+        target = new GzipStream(response.getOutputStream());
+      } else {
+        if (complete && !passThrough) {
+          response.setContentLength(pending.size());
+        }
+        target = response.getOutputStream();
+      }
+      pending.writeTo(target);
+      pending.reset();
+    }
+
+    /** Sends whatever is left of the body once the rest of the chain is done. */
+    void finish() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (target == null) {
+        if (pending.size() == 0) {
+          return;
+        }
+        start(true);
+      }
+      if (target instanceof GzipStream) {
+        ((GzipStream) target).finish();
+      }
+    }
+
+    void releaseDeflater() {
+      if (deflater != null) {
+        returnDeflater(deflater);
+        deflater = null;
+      }
+    }
+
+    /** Writes a gzip member using a Deflater borrowed from the pool. */
+    private class GzipStream extends OutputStream {
+      private final OutputStream out;
+
+      GzipStream(OutputStream out) throws IOException {
+        this.out = out;
+        deflater = borrowDeflater();
+        deflated = new byte[8192];
+        out.write(GZIP_HEADER);
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        crc.update(b, off, len);
+        uncompressedSize += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+          drain(Deflater.NO_FLUSH);
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        int count;
+        do {
+          count = drain(Deflater.SYNC_FLUSH);
+        } while (count == deflated.length);
+        out.flush();
+      }
+
+      void finish() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+          drain(Deflater.NO_FLUSH);
+        }
+        writeIntLittleEndian((int) crc.getValue());
+        writeIntLittleEndian((int) uncompressedSize);
+      }
+
+      private int drain(int flush) throws IOException {
+        int count = deflater.deflate(deflated, 0, deflated.length, flush);
+        if (count > 0) {
+          out.write(deflated, 0, count);
+        }
+        return count;
+      }
+
+      private void writeIntLittleEndian(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that sheds load once the server is busy. It runs first, so a request that is turned away
+ * gets a 503 before anything else has been done for it; the admitted ones then finish in bounded
+ * time instead of every request waiting until it hits the deadline.
+ *
+ * <p>Posts to the endpoints in EXPENSIVE_PATHS hash passwords or store uploads, so they are shed
+ * first and page views keep working for as long as possible.
+ *
+ * <p>The servlets in UNLIMITED_PATHS only stream bytes that are already stored, and how long they
+ * take mostly depends on how fast the client reads. They are not limited, so a slow download
+ * doesn't read as a slow server and pull the limit down.
+ */
+public class ConcurrencyLimitFilter implements Filter {
+
+  /** The servlet paths whose POSTs are expensive. */
+  static final Set<String> EXPENSIVE_PATHS =
+      new HashSet<>(Arrays.asList("/login", "/register", "/ImageUploadServlet", "/users"));
+
+  /** The servlet paths that serve stored files and images. */
+  static final Set<String> UNLIMITED_PATHS =
+      new HashSet<>(
+          Arrays.asList("/static", "/stored-images", "/image-variants", "/ImageServlet"));
+
+  /** Requests slower than this lower the limit. */
+  static final long TARGET_LATENCY_MILLIS = 500;
+
+  /** Decides which requests run. */
+  private ConcurrencyLimiter concurrencyLimiter;
+
+  /** Set up the limiter. */
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    setConcurrencyLimiter(
+        new ConcurrencyLimiter(
+            20, 4, 200, TimeUnit.MILLISECONDS.toNanos(TARGET_LATENCY_MILLIS)));
+  }
+
+  /**
+   * Sets the ConcurrencyLimiter used by this filter. This function provides a common setup method
+   * for use by the test framework or the filter's init() function.
+   */
+  void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    if (UNLIMITED_PATHS.contains(httpRequest.getServletPath())) {
+      chain.doFilter(request, response);
+      return;
+    }
+    boolean expensive =
+        "POST".equals(httpRequest.getMethod())
+            && EXPENSIVE_PATHS.contains(httpRequest.getServletPath());
+    if (!concurrencyLimiter.tryAcquire(expensive)) {
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setHeader("Retry-After", "1");
+      httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      concurrencyLimiter.release(start, System.nanoTime());
+    }
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,140 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Adaptive limit on how many requests run at once. The limit grows by about one for every
+ * limit's worth of requests that finish within the target latency, and shrinks by a tenth when
+ * one takes longer (additive increase, multiplicative decrease). So when Datastore slows down, the
+ * server admits fewer requests instead of letting all of them queue until they time out.
+ *
+ * <p>Expensive requests may only use EXPENSIVE_SHARE of the limit, which keeps room for cheap
+ * ones. Admitting a request is a single compare-and-set, and finishing one adjusts the limit with
+ * compare-and-set too, so no request ever waits for a lock.
+ */
+class ConcurrencyLimiter {
+
+  /** The part of the limit that expensive requests may use. */
+  static final double EXPENSIVE_SHARE = 0.5;
+
+  /** How much of the limit is kept after a slow request. */
+  static final double BACKOFF = 0.9;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long targetLatencyNanos;
+
+  /** The bits of the current limit, a double. */
+  private final AtomicLong limitBits;
+
+  /** Whether and when the limit was last lowered, so one slow period only lowers it once. */
+  private volatile boolean decreased;
+  private final AtomicLong lastDecreaseNanos = new AtomicLong();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder shedCount = new LongAdder();
+
+  /**
+   * Constructs a ConcurrencyLimiter.
+   *
+   * @param initialLimit the limit to start with
+   * @param minLimit the lowest the limit may go
+   * @param maxLimit the highest the limit may go
+   * @param targetLatencyNanos requests slower than this lower the limit
+   */
+  ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos) {
+    this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.targetLatencyNanos = targetLatencyNanos;
+  }
+
+  /**
+   * Admits a request if there is room for it. Every admitted request must be finished with
+   * release().
+   */
+  boolean tryAcquire(boolean expensive) {
+    double limit = limit();
+    int allowed = (int) (expensive ? Math.max(1, limit * EXPENSIVE_SHARE) : limit);
+    while (true) {
+      int current = inFlight.get();
+      if (current >= allowed) {
+        shedCount.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Finishes an admitted request and adjusts the limit by how long it took.
+   *
+   * @param startNanos the System.nanoTime() at which the request was admitted
+   * @param endNanos the System.nanoTime() at which it finished
+   */
+  void release(long startNanos, long endNanos) {
+    int running = inFlight.getAndDecrement();
+    if (endNanos - startNanos > targetLatencyNanos) {
+      // Only requests admitted since the last decrease reflect the current limit. Of the requests
+      // that see the same last decrease, only the one that replaces it lowers the limit.
+      long last = lastDecreaseNanos.get();
+      if ((!decreased || startNanos - last > 0)
+          && lastDecreaseNanos.compareAndSet(last, endNanos)) {
+        decreased = true;
+        updateLimit(limit -> Math.max(minLimit, limit * BACKOFF));
+      }
+    } else {
+      // Only grow while the limit is actually in use, or an idle server would grow without end.
+      updateLimit(limit -> running * 2 >= limit ? Math.min(maxLimit, limit + 1 / limit) : limit);
+    }
+  }
+
+  private double limit() {
+    return Double.longBitsToDouble(limitBits.get());
+  }
+
+  private void updateLimit(DoubleUnaryOperator update) {
+    while (true) {
+      long current = limitBits.get();
+      double next = update.applyAsDouble(Double.longBitsToDouble(current));
+      if (next == Double.longBitsToDouble(current)
+          || limitBits.compareAndSet(current, Double.doubleToLongBits(next))) {
+        return;
+      }
+    }
+  }
+
+  /** Returns the current limit, rounded down. */
+  int getLimit() {
+    return (int) limit();
+  }
+
+  /** Returns how many admitted requests have not finished yet. */
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  /** Returns how many requests have been turned away. */
+  long getShedCount() {
+    return shedCount.sum();
+  }
+}
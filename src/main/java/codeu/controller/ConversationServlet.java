@@ -14,10 +14,11 @@
 
 package codeu.controller;
 
+import codeu.model.data.Activity;
 import codeu.model.data.Conversation;
-import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ConversationStore;
-import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.List;
@@ -30,12 +31,18 @@ import javax.servlet.http.HttpServletResponse;
 /** Servlet class responsible for the conversations page. */
 public class ConversationServlet extends HttpServlet {
 
-  /** Store class that gives access to Users. */
-  private UserStore userStore;
+  /** The number of Conversations shown on one page of the hot ordering. */
+  static final int HOT_PAGE_SIZE = 20;
 
   /** Store class that gives access to Conversations. */
   private ConversationStore conversationStore;
 
+  /** Store class that gives access to the activity log. */
+  private ActivityStore activityStore;
+
+  /** Deletes conversations along with their messages. */
+  private DeletionCascade deletionCascade;
+
   /**
    * Set up state for handling conversation-related requests. This method is only called when
    * running in a server, not when running in a test.
@@ -43,16 +50,9 @@ public class ConversationServlet extends HttpServlet {
   @Override
   public void init() throws ServletException {
     super.init();
-    setUserStore(UserStore.getInstance());
     setConversationStore(ConversationStore.getInstance());
-  }
-
-  /**
-   * Sets the UserStore used by this servlet. This function provides a common setup method for use
-   * by the test framework or the servlet's init() function.
-   */
-  void setUserStore(UserStore userStore) {
-    this.userStore = userStore;
+    setActivityStore(ActivityStore.getInstance());
+    setDeletionCascade(DeletionCascade.getInstance());
   }
 
   /**
@@ -63,13 +63,54 @@ public class ConversationServlet extends HttpServlet {
     this.conversationStore = conversationStore;
   }
 
+  /**
+   * Sets the ActivityStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setActivityStore(ActivityStore activityStore) {
+    this.activityStore = activityStore;
+  }
+
+  /**
+   * Sets the DeletionCascade used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setDeletionCascade(DeletionCascade deletionCascade) {
+    this.deletionCascade = deletionCascade;
+  }
+
   /**
    * This function fires when a user navigates to the conversations page. It gets all of the
-   * conversations from the model and forwards to conversations.jsp for rendering the list.
+   * conversations from the model and forwards to conversations.jsp for rendering the list. With
+   * sort=hot it instead gets one page of the hottest conversations, starting at the "page"
+   * parameter.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
+    if ("hot".equals(request.getParameter("sort"))) {
+      int page = 0;
+      String pageParameter = request.getParameter("page");
+      if (pageParameter != null) {
+        try {
+          page = Math.max(Integer.parseInt(pageParameter), 0);
+        } catch (NumberFormatException e) {
+          // ignore a malformed page number and show the first page
+        }
+      }
+      // Ask for one extra conversation to find out whether there is a next page.
+      List<Conversation> conversations =
+          conversationStore.getHotConversations(page * HOT_PAGE_SIZE, HOT_PAGE_SIZE + 1);
+      if (conversations.size() > HOT_PAGE_SIZE) {
+        conversations = conversations.subList(0, HOT_PAGE_SIZE);
+        request.setAttribute("nextPage", page + 1);
+      }
+      request.setAttribute("sort", "hot");
+      request.setAttribute("conversations", conversations);
+      request.getRequestDispatcher("/WEB-INF/view/conversations.jsp").forward(request, response);
+      return;
+    }
+
     List<Conversation> conversations = conversationStore.getAllConversations();
     request.setAttribute("conversations", conversations);
     request.getRequestDispatcher("/WEB-INF/view/conversations.jsp").forward(request, response);
@@ -77,31 +118,28 @@ public class ConversationServlet extends HttpServlet {
 
   /**
    * This function fires when a user submits the form on the conversations page. It gets the
-   * logged-in username from the session and the new conversation title from the submitted form
+   * logged-in user resolved by UserFilter and the new conversation title from the submitted form
    * data. It uses this to create a new Conversation object that it adds to the model.
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
 
-    String username = (String) request.getSession().getAttribute("user");
-    if (username == null) {
-      // user is not logged in, don't let them create a conversation
-      response.sendRedirect("/conversations");
-      return;
-    }
-
-    User user = userStore.getUser(username);
+    UserPrincipal user = UserFilter.getPrincipal(request);
     if (user == null) {
-      // user was not found, don't let them create a conversation
-      System.out.println("User not found: " + username);
+      // user is not logged in, don't let them create a conversation
       response.sendRedirect("/conversations");
       return;
     }
 
     boolean shouldDelete = Boolean.valueOf(request.getParameter("deleteConvo"));
     if (shouldDelete) {
-      conversationStore.deleteConversation(conversationStore.getConversation(UUID.fromString(request.getParameter("conversationId"))));
+      Conversation conversation =
+          conversationStore.getConversation(UUID.fromString(request.getParameter("conversationId")));
+      if (conversation != null) {
+        // Its messages and their postings are cleaned up in the background.
+        deletionCascade.deleteConversation(conversation);
+      }
       response.sendRedirect("/conversations");
       return;
     }
@@ -121,9 +159,10 @@ public class ConversationServlet extends HttpServlet {
     }
 
     Conversation conversation =
-        new Conversation(UUID.randomUUID(), user.getId(), conversationTitle, Instant.now());
+        new Conversation(TimeOrderedIds.newId(), user.getId(), conversationTitle, Instant.now());
 
     conversationStore.addConversation(conversation);
+    activityStore.addActivity(Activity.conversationCreated(conversation, user.getName()));
 
     response.sendRedirect("/chat/" + conversationTitle);
   }
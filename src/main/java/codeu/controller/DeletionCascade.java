@@ -0,0 +1,336 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Hashtag;
+import codeu.model.data.Message;
+import codeu.model.data.Tombstone;
+import codeu.model.data.User;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes Messages and Conversations along with everything that hangs off them: replies, the
+ * messages of a deleted Conversation, their hashtag and mention postings, their activity feed
+ * entries and their images.
+ *
+ * <p>A Tombstone is saved, then the deleted objects, their postings and their activities are
+ * removed from memory straight away and the changed postings are saved in one batch. The rest of the cleanup runs on
+ * a background thread: messages are removed in batched deletes, the Tombstone is removed and the
+ * images are released. If the server stops first, the cleanup is finished by resume() on the next
+ * startup. It's a singleton so all servlet classes share the same worker.
+ */
+class DeletionCascade {
+
+  /** The most cleanups waiting for the worker; further ones wait for the next startup. */
+  static final int QUEUE_CAPACITY = 256;
+
+  /** Singleton instance of DeletionCascade. */
+  private static DeletionCascade instance;
+
+  /**
+   * Returns the singleton instance of DeletionCascade that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  static DeletionCascade getInstance() {
+    if (instance == null) {
+      instance =
+          new DeletionCascade(
+              newWorker(),
+              PersistentStorageAgent.getInstance(),
+              ConversationStore.getInstance(),
+              MessageStore.getInstance(),
+              UserStore.getInstance(),
+              MentionStore.getInstance(),
+              HashtagStore.getInstance(),
+              ActivityStore.getInstance(),
+              ImageStore.getInstance());
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing.
+   *
+   * @param executor runs the cleanups, e.g. on the calling thread
+   */
+  static DeletionCascade getTestInstance(
+      Executor executor,
+      PersistentStorageAgent persistentStorageAgent,
+      ConversationStore conversationStore,
+      MessageStore messageStore,
+      UserStore userStore,
+      MentionStore mentionStore,
+      HashtagStore hashtagStore,
+      ActivityStore activityStore,
+      ImageStore imageStore) {
+    return new DeletionCascade(
+        executor,
+        persistentStorageAgent,
+        conversationStore,
+        messageStore,
+        userStore,
+        mentionStore,
+        hashtagStore,
+        activityStore,
+        imageStore);
+  }
+
+  private static Executor newWorker() {
+    return new ThreadPoolExecutor(
+        1,
+        1,
+        0,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        runnable -> {
+          Thread thread = new Thread(runnable, "deletion-cascade");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  private final Executor executor;
+  private final PersistentStorageAgent persistentStorageAgent;
+  private final ConversationStore conversationStore;
+  private final MessageStore messageStore;
+  private final UserStore userStore;
+  private final MentionStore mentionStore;
+  private final HashtagStore hashtagStore;
+  private final ActivityStore activityStore;
+  private final ImageStore imageStore;
+
+  /** The Tombstones whose cleanup has not finished yet, by the ID of the deleted object. */
+  private final Map<UUID, Tombstone> pending = new ConcurrentHashMap<>();
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private DeletionCascade(
+      Executor executor,
+      PersistentStorageAgent persistentStorageAgent,
+      ConversationStore conversationStore,
+      MessageStore messageStore,
+      UserStore userStore,
+      MentionStore mentionStore,
+      HashtagStore hashtagStore,
+      ActivityStore activityStore,
+      ImageStore imageStore) {
+    this.executor = executor;
+    this.persistentStorageAgent = persistentStorageAgent;
+    this.conversationStore = conversationStore;
+    this.messageStore = messageStore;
+    this.userStore = userStore;
+    this.mentionStore = mentionStore;
+    this.hashtagStore = hashtagStore;
+    this.activityStore = activityStore;
+    this.imageStore = imageStore;
+  }
+
+  /** Deletes a Message with its edited copies and replies. */
+  void deleteMessage(Message message) {
+    Tombstone tombstone = new Tombstone(message.getId(), Tombstone.Type.MESSAGE, Instant.now());
+    persistentStorageAgent.writeThrough(tombstone);
+    cascade(tombstone, messageStore.removeMessage(message), true);
+  }
+
+  /** Deletes a Conversation with all of its messages. */
+  void deleteConversation(Conversation conversation) {
+    Tombstone tombstone =
+        new Tombstone(conversation.getId(), Tombstone.Type.CONVERSATION, Instant.now());
+    persistentStorageAgent.writeThrough(tombstone);
+    conversationStore.deleteConversation(conversation);
+    cascade(tombstone, messageStore.removeMessagesInConversation(conversation.getId()), true);
+  }
+
+  /**
+   * Returns the loaded messages that were not deleted: those that are not covered by a Tombstone
+   * themselves, through their Conversation or through the message they reply to.
+   */
+  static List<Message> withoutDeleted(List<Tombstone> tombstones, List<Message> messages) {
+    Map<UUID, Tombstone> deleted = findDeleted(tombstones, messages);
+    List<Message> kept = new ArrayList<>();
+    for (Message message : messages) {
+      if (!deleted.containsKey(message.getId())) {
+        kept.add(message);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Finishes the cleanups that were cut short by a restart. This should only be
+   * called once, when the server starts, after the stores have been loaded with the messages
+   * returned by withoutDeleted().
+   *
+   * @param messages all of the messages loaded from Datastore, including the deleted ones
+   */
+  void resume(List<Tombstone> tombstones, List<Message> messages) {
+    Map<UUID, Tombstone> deleted = findDeleted(tombstones, messages);
+    Map<UUID, List<Message>> deletedByTombstone = new HashMap<>();
+    for (Tombstone tombstone : tombstones) {
+      deletedByTombstone.put(tombstone.getId(), new ArrayList<>());
+    }
+    Set<UUID> seenMessageIds = new HashSet<>();
+    for (Message message : messages) {
+      Tombstone tombstone = deleted.get(message.getId());
+      if (tombstone != null && seenMessageIds.add(message.getId())) {
+        deletedByTombstone.get(tombstone.getId()).add(message);
+      }
+    }
+
+    for (Tombstone tombstone : tombstones) {
+      // The image references were never counted for these, so there are none to release.
+      cascade(tombstone, deletedByTombstone.get(tombstone.getId()), false);
+    }
+  }
+
+  /** Maps the ID of every deleted message to the Tombstone that covers it. */
+  private static Map<UUID, Tombstone> findDeleted(
+      List<Tombstone> tombstones, List<Message> messages) {
+    Map<UUID, Tombstone> tombstonesById = new HashMap<>();
+    for (Tombstone tombstone : tombstones) {
+      tombstonesById.put(tombstone.getId(), tombstone);
+    }
+    Map<UUID, Tombstone> deleted = new HashMap<>();
+    for (Message message : messages) {
+      Tombstone tombstone = tombstonesById.get(message.getId());
+      if (tombstone == null) {
+        tombstone = tombstonesById.get(message.getConversationId());
+      }
+      if (tombstone != null) {
+        deleted.put(message.getId(), tombstone);
+        for (Message reply : message.getReplies()) {
+          deleted.put(reply.getId(), tombstone);
+        }
+      }
+    }
+    return deleted;
+  }
+
+  /** Returns how many deletions have not been cleaned up yet. */
+  int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Removes the hashtag and mention postings and the activities of the removed messages and their
+   * replies, then queues the rest of the cleanup. These are changed on the calling thread, like the
+   * ones ChatServlet adds, so only Datastore deletes and image releases run in the background.
+   */
+  private void cascade(Tombstone tombstone, List<Message> removed, boolean releaseImages) {
+    Set<UUID> messageIds = new HashSet<>();
+    if (tombstone.getType() == Tombstone.Type.MESSAGE) {
+      messageIds.add(tombstone.getId());
+    }
+    Set<String> hashtags = new HashSet<>();
+    Set<String> mentionedNames = new HashSet<>();
+    // One entry per image message; different messages may post the same image.
+    Map<UUID, String> imageHashes = new HashMap<>();
+    List<Message> all = new ArrayList<>(removed);
+    for (Message message : removed) {
+      all.addAll(message.getReplies());
+    }
+    for (Message message : all) {
+      messageIds.add(message.getId());
+      String hash = StoredImageServlet.imageHashOf(message);
+      if (hash != null) {
+        if (releaseImages) {
+          imageHashes.put(message.getId(), hash);
+        }
+      } else {
+        hashtags.addAll(ChatServlet.findHashtags(message.getContent()));
+        mentionedNames.addAll(ChatServlet.findMentionedNames(message.getContent()));
+      }
+    }
+
+    // The feeds only live in memory, so they can drop the deleted content before anything else.
+    Set<UUID> subjectIds = new HashSet<>(messageIds);
+    subjectIds.add(tombstone.getId());
+    activityStore.removeSubjects(subjectIds);
+
+    try {
+      UnitOfWork unit = new UnitOfWork();
+      for (String tag : hashtags) {
+        Hashtag hashtag = hashtagStore.getHashtag(tag);
+        if (hashtag != null) {
+          hashtagStore.removeMessageIds(hashtag, messageIds, unit);
+        }
+      }
+      for (String name : mentionedNames) {
+        User user = userStore.getUser(name);
+        if (user != null) {
+          mentionStore.removeMessageIds(user.getId(), messageIds, unit);
+        }
+      }
+      persistentStorageAgent.commit(unit);
+    } catch (RuntimeException e) {
+      // The Tombstone stays, so the next startup tries again.
+      System.err.println("Unable to clean up after deleting " + tombstone.getId() + ": " + e);
+      return;
+    }
+    // Edited copies share their message's one image reference, which is released once.
+    schedule(tombstone, messageIds, imageHashes.values());
+  }
+
+  /** Queues the Datastore deletes and image releases of a deletion. */
+  private void schedule(Tombstone tombstone, Set<UUID> messageIds, Collection<String> imageHashes) {
+    pending.put(tombstone.getId(), tombstone);
+    try {
+      executor.execute(() -> cleanUp(tombstone, messageIds, imageHashes));
+    } catch (RejectedExecutionException e) {
+      // The Tombstone is saved, so the cleanup happens on the next startup instead.
+      System.err.println("Deletion queue full, leaving " + tombstone.getId() + " for later");
+    }
+  }
+
+  /** Deletes the entities of removed messages, then the Tombstone, then releases their images. */
+  private void cleanUp(Tombstone tombstone, Set<UUID> messageIds, Collection<String> imageHashes) {
+    try {
+      persistentStorageAgent.deleteMessages(messageIds);
+      persistentStorageAgent.deleteThrough(tombstone);
+    } catch (RuntimeException e) {
+      // The Tombstone stays, so the next startup tries again.
+      System.err.println("Unable to clean up after deleting " + tombstone.getId() + ": " + e);
+      return;
+    } finally {
+      pending.remove(tombstone.getId());
+    }
+    for (String hash : imageHashes) {
+      imageStore.releaseImage(hash);
+    }
+  }
+}
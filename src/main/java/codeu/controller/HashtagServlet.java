@@ -1,22 +1,13 @@
 package codeu.controller;
 
-import codeu.model.data.Conversation;
-import codeu.model.data.User;
 import codeu.model.data.Message;
 import codeu.model.data.Hashtag;
-import codeu.model.store.basic.ConversationStore;
-import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.HashtagStore;
 import java.io.IOException;
-import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.UUID;
-import java.util.Set;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.stream.Collectors;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -36,6 +27,9 @@ public class HashtagServlet extends HttpServlet {
   
   // the length of /hashtag/
   private static final int HASHTAG_INDEX = 9;
+
+  /** The number of messages shown on each page of a hashtag. */
+  static final int PAGE_SIZE = 50;
   
   /** This is for the inital setup of the hashtag page */
   @Override
@@ -49,6 +43,7 @@ public class HashtagServlet extends HttpServlet {
   /**
    * Sets the HashtagStore used by this servlet. 
    * This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
    */
   void setHashtagStore(HashtagStore hashtagStore) {
     this.hashtagStore = hashtagStore;
@@ -63,7 +58,10 @@ public class HashtagServlet extends HttpServlet {
     this.messageStore = messageStore;
   }
   
-  /** When the user visits a hashtag page */
+  /**
+   * When the user visits a hashtag page. Shows the newest messages with the hashtag, a page at a
+   * time, starting before the position given by the "before" parameter.
+   */
   @Override
   public void doGet(HttpServletRequest request,
       HttpServletResponse response)
@@ -73,12 +71,39 @@ public class HashtagServlet extends HttpServlet {
     String tagName = requestUrl.substring(HASHTAG_INDEX);
     tagName = tagName.toUpperCase();
     Hashtag hashtag = hashtagStore.getHashtag(tagName);
+
+    List<Message> messages = new ArrayList<>();
+    Integer nextCursor = null;
+    if (hashtag != null) {
+      List<UUID> messageIds = hashtag.getMessageIds();
+      int position = messageIds.size();
+      String before = request.getParameter("before");
+      if (before != null) {
+        try {
+          position = Math.min(Math.max(Integer.parseInt(before), 0), position);
+        } catch (NumberFormatException e) {
+          // Ignore a malformed cursor and show the newest page.
+        }
+      }
+
+      // Walk back from the cursor until the page is full. Deleting a message removes it from its
+      // hashtags, so a missing one is only skipped while that removal is in flight.
+      while (position > 0 && messages.size() < PAGE_SIZE) {
+        position--;
+        Message message = messageStore.getMessageById(messageIds.get(position));
+        if (message != null) {
+          messages.add(message);
+        }
+      }
+
+      if (position > 0) {
+        nextCursor = position;
+      }
+    }
     
-    Set<UUID> messageIds = hashtag.getMessageIds();
-    List<Message> messages = messageIds.stream().map(id -> messageStore.getMessageById(id)).collect(Collectors.toList());
-    
-    request.setAttribute("hashtagName", hashtag.getName());
+    request.setAttribute("hashtagName", tagName);
     request.setAttribute("messages", messages);
+    request.setAttribute("nextCursor", nextCursor);
     request.getRequestDispatcher("/WEB-INF/view/hashtag.jsp").forward(request, response);
   }
-}
\ No newline at end of file
+}
@@ -13,39 +13,51 @@
 // limitations under the License.
 package codeu.controller;
 
+import codeu.model.data.Activity;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
-import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.ImageVariantStore;
 import codeu.model.store.basic.MessageStore;
-import codeu.model.store.basic.UserStore;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
 import javax.servlet.ServletException;
+import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
-import com.google.appengine.api.blobstore.BlobKey;
-import com.google.appengine.api.blobstore.BlobstoreService;
-import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
-
 
+/**
+ * Servlet class responsible for images posted to a chat. The upload is streamed into ImageStore,
+ * which keeps one copy of each distinct image no matter how often it is posted.
+ */
+@MultipartConfig(
+    fileSizeThreshold = 64 * 1024,
+    maxFileSize = ImageStore.MAX_SIZE,
+    maxRequestSize = ImageStore.MAX_SIZE + 64 * 1024)
 public class ImageUploadServlet extends HttpServlet {
-    private BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
- 
+
+   /** Store class that gives access to uploaded images. */
+    private ImageStore imageStore;
+
    /** Store class that gives access to Conversations. */
     private ConversationStore conversationStore;
 
    /** Store class that gives access to Messages. */
     private MessageStore messageStore;
 
-   /** Store class that gives access to Users. */
-    private UserStore userStore;
+   /** Store class that gives access to the activity log. */
+    private ActivityStore activityStore;
+
+   /** Store class that gives access to resized images. */
+    private ImageVariantStore imageVariantStore;
 
    /** Set up state for handling chat requests. */
    @Override
@@ -53,7 +65,9 @@ public class ImageUploadServlet extends HttpServlet {
      super.init();
      setConversationStore(ConversationStore.getInstance());
      setMessageStore(MessageStore.getInstance());
-     setUserStore(UserStore.getInstance());
+     setActivityStore(ActivityStore.getInstance());
+     setImageVariantStore(ImageVariantStore.getInstance());
+     setImageStore(ImageStore.getInstance());
    }
 
    /**
@@ -73,27 +87,35 @@ public class ImageUploadServlet extends HttpServlet {
    }
 
    /**
-      * Sets the UserStore used by this servlet. This function provides a common setup method for use
-      * by the test framework or the servlet's init() function.
+      * Sets the ActivityStore used by this servlet. This function provides a common setup method for
+      * use by the test framework or the servlet's init() function.
+      */
+   void setActivityStore(ActivityStore activityStore) {
+     this.activityStore = activityStore;
+   }
+
+   /**
+      * Sets the ImageVariantStore used by this servlet. This function provides a common setup
+      * method for use by the test framework or the servlet's init() function.
+      */
+   void setImageVariantStore(ImageVariantStore imageVariantStore) {
+     this.imageVariantStore = imageVariantStore;
+   }
+
+   /**
+      * Sets the ImageStore used by this servlet. This function provides a common setup method for
+      * use by the test framework or the servlet's init() function.
       */
-   void setUserStore(UserStore userStore) {
-     this.userStore = userStore;
+   void setImageStore(ImageStore imageStore) {
+     this.imageStore = imageStore;
    }
-   
+
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException {
-        String username = (String) request.getSession().getAttribute("user");
-        if (username == null) {
-         // user is not logged in, don't let them add a message
-           response.sendRedirect("/login");
-           return;
-        }
-
-     User user = userStore.getUser(username);
+     UserPrincipal user = UserFilter.getPrincipal(request);
      if (user == null) {
-         // user was not found, don't let them add a message
-         System.out.println("User not found: " + username);
+         // user is not logged in, don't let them add a message
          response.sendRedirect("/login");
          return;
      }
@@ -108,35 +130,46 @@ public class ImageUploadServlet extends HttpServlet {
          return;
      }
      
-     Map<String, List<BlobKey>> blobs = blobstoreService.getUploads(request);
-     List<BlobKey> blobKeys = blobs.get("myFile");
-          String url = "";
-   
-          //if (blobKeys == null || blobKeys.isEmpty()) {
-            //response.sendRedirect("/");
-          //}else{
-           // response.sendRedirect("/ImageUploadServlet?blob-key=" + blobKeys.get(0).getKeyString());
-          //}
-          if (!(blobKeys == null || blobKeys.isEmpty())) {
-          url = "/ImageServlet?blob-key=" + blobKeys.get(0).getKeyString();
-         }
-        
-     if(url != ""){
-       
-       System.out.println("The URL is:" + url);
-       
+     Part file;
+     try {
+       file = request.getPart("myFile");
+     } catch (IllegalStateException e) {
+       // The container refused the upload for being over the multipart limits.
+       response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+       return;
+     }
+     if (file != null && file.getSize() > ImageStore.MAX_SIZE) {
+       response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+       return;
+     }
+
+     if (file != null && file.getSize() > 0) {
+       String contentType = file.getContentType();
+       if (!ImageStore.SAFE_TYPES.contains(contentType)) {
+         contentType = "image/jpeg";
+       }
+       String hash;
+       try (InputStream content = file.getInputStream()) {
+         hash = imageStore.addImage(content, file.getSize(), contentType);
+       }
+
        Message message =
          new Message(
-             UUID.randomUUID(),
+             TimeOrderedIds.newId(),
              conversation.getId(),
              user.getId(),
-             url,
+             StoredImageServlet.url(hash),
              Instant.now(),
              "image");
 
        messageStore.addMessage(message);
+       conversationStore.bumpConversation(conversation.getId(), message.getCreationTime());
+       activityStore.addActivity(Activity.messageSent(message, conversation, user.getName()));
+
+       // Resizing happens in the background; until it's done the chat shows the original.
+       imageVariantStore.processImage(hash, () -> imageStore.getImageContent(hash));
      }
-   
+
      // redirect to a GET request
      response.sendRedirect("/chat/" + conversationTitle);
     }
@@ -0,0 +1,98 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.ImageVariant;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class responsible for serving resized images at /image-variants?source=...&width=....
+ * A variant never changes once made, so it is cached by browsers for good.
+ */
+public class ImageVariantServlet extends HttpServlet {
+
+  /** Cache-Control for variants: a year, and never revalidate. */
+  static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  /** Store class that gives access to image variants. */
+  private ImageVariantStore imageVariantStore;
+
+  /**
+   * Returns the URL of the variant of the given image that best fits the given display width, or
+   * {@code originalUrl} if there's no suitable variant yet.
+   */
+  static String url(
+      ImageVariantStore imageVariantStore, String sourceId, int displayWidth, String originalUrl) {
+    int width = imageVariantStore.getVariantWidth(sourceId, displayWidth);
+    if (width < 0) {
+      return originalUrl;
+    }
+    try {
+      return "/image-variants?source=" + URLEncoder.encode(sourceId, "UTF-8") + "&width=" + width;
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Set up state for serving image variants. This method is only called when running in a server,
+   * not when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setImageVariantStore(ImageVariantStore.getInstance());
+  }
+
+  /**
+   * Sets the ImageVariantStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setImageVariantStore(ImageVariantStore imageVariantStore) {
+    this.imageVariantStore = imageVariantStore;
+  }
+
+  /** This function fires when a browser requests a resized image. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String sourceId = request.getParameter("source");
+    ImageVariant variant = null;
+    try {
+      int width = Integer.parseInt(request.getParameter("width"));
+      variant = sourceId == null ? null : imageVariantStore.getVariant(sourceId, width);
+    } catch (NumberFormatException e) {
+      // No such variant.
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException(e);
+    }
+    if (variant == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    response.setContentType(variant.getContentType());
+    response.setContentLength(variant.getContent().length);
+    response.getOutputStream().write(variant.getContent());
+  }
+}
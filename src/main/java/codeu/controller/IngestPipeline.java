@@ -0,0 +1,186 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.view.StageMetricsView;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the work that follows a new message, such as trending counts and feeds, off the request
+ * thread. Only checking the post and storing the message with its index entries happen before the
+ * redirect.
+ *
+ * <p>Each Stage has one worker thread, so the work of a stage runs in the order it was submitted,
+ * and a queue of QUEUE_CAPACITY. When the queue of a stage is full, submitting to it waits for
+ * room instead of dropping the work, which slows posting down to what the indexes can keep up
+ * with. Stages can submit to later stages. It's a singleton so all servlet classes share the same
+ * workers.
+ */
+class IngestPipeline {
+
+  /** The stages of the pipeline. */
+  enum Stage {
+    /** Counts hashtags for the trending hashtags. */
+    TRENDING,
+    /** Adds the message to the activity feeds and conversation lists. */
+    FEEDS
+  }
+
+  /** The most work waiting in each stage before submitting waits for room. */
+  static final int QUEUE_CAPACITY = 1024;
+
+  /** Singleton instance of IngestPipeline. */
+  private static IngestPipeline instance;
+
+  /**
+   * Returns the singleton instance of IngestPipeline that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  static IngestPipeline getInstance() {
+    if (instance == null) {
+      Map<Stage, StageRunner> runners = new EnumMap<>(Stage.class);
+      for (Stage stage : Stage.values()) {
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        runners.put(stage, new StageRunner(newStageWorker(stage, queue), queue));
+      }
+      instance = new IngestPipeline(runners);
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing.
+   *
+   * @param executor runs the work of every stage, e.g. on the calling thread
+   */
+  static IngestPipeline getTestInstance(Executor executor) {
+    Map<Stage, StageRunner> runners = new EnumMap<>(Stage.class);
+    for (Stage stage : Stage.values()) {
+      runners.put(stage, new StageRunner(executor, null));
+    }
+    return new IngestPipeline(runners);
+  }
+
+  private static Executor newStageWorker(Stage stage, BlockingQueue<Runnable> queue) {
+    return new ThreadPoolExecutor(
+        1,
+        1,
+        0,
+        TimeUnit.SECONDS,
+        queue,
+        runnable -> {
+          Thread thread = new Thread(runnable, "ingest-" + stage.name().toLowerCase());
+          thread.setDaemon(true);
+          return thread;
+        },
+        (runnable, executor) -> {
+          // The queue is full; wait for room so the work isn't lost.
+          try {
+            executor.getQueue().put(runnable);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+          }
+        });
+  }
+
+  private final Map<Stage, StageRunner> runners;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private IngestPipeline(Map<Stage, StageRunner> runners) {
+    this.runners = runners;
+  }
+
+  /**
+   * Queues work on a stage. Waits if the stage's queue is full.
+   *
+   * @throws RejectedExecutionException if interrupted while waiting
+   */
+  void submit(Stage stage, Runnable work) {
+    runners.get(stage).submit(work);
+  }
+
+  /** Returns how each stage is keeping up, in pipeline order. */
+  List<StageMetricsView> getMetrics() {
+    List<StageMetricsView> metrics = new ArrayList<>();
+    for (Map.Entry<Stage, StageRunner> entry : runners.entrySet()) {
+      metrics.add(entry.getValue().getMetrics(entry.getKey().name().toLowerCase()));
+    }
+    return metrics;
+  }
+
+  /** The worker of one stage and its counters. */
+  private static class StageRunner {
+    private final Executor executor;
+
+    /** The queue of the worker, or null if the executor has none. */
+    private final BlockingQueue<Runnable> queue;
+
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    StageRunner(Executor executor, BlockingQueue<Runnable> queue) {
+      this.executor = executor;
+      this.queue = queue;
+    }
+
+    void submit(Runnable work) {
+      if (queue != null && queue.remainingCapacity() == 0) {
+        blockedCount.increment();
+      }
+      long submitted = System.nanoTime();
+      executor.execute(
+          () -> {
+            long started = System.nanoTime();
+            try {
+              work.run();
+            } catch (RuntimeException e) {
+              // One bad message shouldn't stop the stage from indexing the rest.
+              failedCount.increment();
+              e.printStackTrace();
+            } finally {
+              waitNanos.add(started - submitted);
+              runNanos.add(System.nanoTime() - started);
+              completedCount.increment();
+            }
+          });
+    }
+
+    StageMetricsView getMetrics(String name) {
+      long completed = completedCount.sum();
+      return new StageMetricsView(
+          name,
+          queue == null ? 0 : queue.size(),
+          completed,
+          blockedCount.sum(),
+          failedCount.sum(),
+          completed == 0 ? 0 : waitNanos.sum() / 1e6 / completed,
+          completed == 0 ? 0 : runNanos.sum() / 1e6 / completed);
+    }
+  }
+}
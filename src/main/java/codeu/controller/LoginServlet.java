@@ -14,22 +14,17 @@
 
 package codeu.controller;
 
+import codeu.model.data.AttackEvent;
 import codeu.model.data.User;
+import codeu.model.store.basic.AttackEventStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
+import java.time.Instant;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import java.time.format.FormatStyle;
-import java.time.ZoneId;
-import java.time.Instant;
-import org.mindrot.jbcrypt.BCrypt;
+import java.util.concurrent.RejectedExecutionException;
 
 /** Servlet class responsible for the login page. */
 public class LoginServlet extends HttpServlet {
@@ -37,6 +32,12 @@ public class LoginServlet extends HttpServlet {
   /** Store class that gives access to Users. */
   private UserStore userStore;
 
+  /** Store class that records suspected attacks. */
+  private AttackEventStore attackEventStore;
+
+  /** Runs BCrypt off the request thread. */
+  private PasswordHasher passwordHasher;
+
   /**
    * Set up state for handling login-related requests. This method is only called when running in a
    * server, not when running in a test.
@@ -45,6 +46,8 @@ public class LoginServlet extends HttpServlet {
   public void init() throws ServletException {
     super.init();
     setUserStore(UserStore.getInstance());
+    setAttackEventStore(AttackEventStore.getInstance());
+    setPasswordHasher(PasswordHasher.getInstance());
   }
 
   /**
@@ -55,6 +58,22 @@ public class LoginServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  /**
+   * Sets the AttackEventStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setAttackEventStore(AttackEventStore attackEventStore) {
+    this.attackEventStore = attackEventStore;
+  }
+
+  /**
+   * Sets the PasswordHasher used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setPasswordHasher(PasswordHasher passwordHasher) {
+    this.passwordHasher = passwordHasher;
+  }
+
   /**
    * This function fires when a user requests the /login URL. It simply forwards the request to
    * login.jsp.
@@ -82,30 +101,10 @@ public class LoginServlet extends HttpServlet {
     }
     
     if (isAttack) {
-      String userAgent = "";
-      File file = new File(System.getProperty("user.dir"), "attackLog.txt");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
-      try {
-        userAgent = request.getHeader("User-Agent");
-        // save the user info to a file
-        writer.append(userAgent + "\n");
-        
-        // setting up the date and time of attack
-        DateTimeFormatter formatter = DateTimeFormatter
-            .ofLocalizedDateTime(FormatStyle.SHORT)
-            .withLocale(Locale.US)
-            .withZone(ZoneId.systemDefault());
-        Instant instant = Instant.now();
-        String time = formatter.format(instant);
-        writer.append(time + "\n");
-      } catch (Exception e) {
-        e.printStackTrace();
-      } finally {
-        writer.close();
-        
-      }
+      attackEventStore.recordAttack(
+          new AttackEvent(Instant.now(), "login", request.getHeader("User-Agent")));
     }
-    
+
     if (!userStore.isUserRegistered(username)) {
       request.setAttribute("error", "That username was not found.");
       request.getRequestDispatcher("/WEB-INF/view/login.jsp").forward(request, response);
@@ -114,7 +113,16 @@ public class LoginServlet extends HttpServlet {
 
     User user = userStore.getUser(username);
 
-    if (!BCrypt.checkpw(password, user.getPasswordHash())) {
+    boolean passwordMatches;
+    try {
+      passwordMatches = passwordHasher.check(password, user.getPasswordHash());
+    } catch (RejectedExecutionException e) {
+      // Too many logins at once; turn this one away rather than slow down everything else.
+      PasswordHasher.sendBusy(response);
+      return;
+    }
+
+    if (!passwordMatches) {
       request.setAttribute("error", "Please enter a correct password.");
       request.getRequestDispatcher("/WEB-INF/view/login.jsp").forward(request, response);
       return;
@@ -124,6 +132,7 @@ public class LoginServlet extends HttpServlet {
     boolean adminStatus = user.isAdmin();
     
     request.getSession().setAttribute("user", username);
+    request.getSession().setAttribute("userId", user.getId());
     request.getSession().setAttribute("adminStatus", adminStatus);
     response.sendRedirect("/conversations");
   }
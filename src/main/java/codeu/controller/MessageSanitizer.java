@@ -0,0 +1,284 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import com.vdurmont.emoji.Emoji;
+import com.vdurmont.emoji.EmojiManager;
+import com.vdurmont.emoji.Fitzpatrick;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cleans the text of chat messages in a single pass over the characters. It gives the same result
+ * as running Jsoup.clean() with Whitelist.none() and then EmojiParser.parseToUnicode(), without
+ * building a DOM or trying every known emoji on every message.
+ *
+ * <p>Tags and comments are dropped, along with the contents of script and style elements. Runs of
+ * whitespace in the text between tags become one space, and the result is trimmed. The
+ * characters &lt;, &gt;, &amp; and no-break space are escaped; character references that are
+ * already escaped are kept as they are. Emoji aliases such as :smiley: and :swimmer|type_4: are
+ * only looked for after a ':', in a trie of all the aliases.
+ */
+final class MessageSanitizer {
+
+  private MessageSanitizer() {}
+
+  /** Returns the content with markup removed and emoji aliases replaced. */
+  static String clean(String content) {
+    String cleaned = stripMarkup(content);
+    return cleaned.indexOf(':') < 0 ? cleaned : replaceEmojiAliases(cleaned);
+  }
+
+  /** Returns the content with tags removed and the remaining text escaped. */
+  static String stripMarkup(String content) {
+    int length = content.length();
+    StringBuilder out = new StringBuilder(length);
+    // Whether the text written since the last tag ends in whitespace, or nothing has been written.
+    boolean afterSpace = true;
+    int i = 0;
+    while (i < length) {
+      char c = content.charAt(i);
+      if (c == '<') {
+        int end = skipMarkup(content, i);
+        if (end > i) {
+          i = end;
+          // Jsoup only collapses whitespace within one text node, not across the tags between.
+          afterSpace = out.length() == 0;
+          continue;
+        }
+        out.append("&lt;");
+      } else if (isWhitespace(c)) {
+        if (!afterSpace) {
+          out.append(' ');
+        }
+        afterSpace = true;
+        i++;
+        continue;
+      } else if (c == '>') {
+        out.append("&gt;");
+      } else if (c == '&') {
+        out.append(isCharacterReference(content, i) ? "&" : "&amp;");
+      } else if (c == '\u00a0') {
+        out.append("&nbsp;");
+      } else {
+        out.append(c);
+      }
+      afterSpace = false;
+      i++;
+    }
+
+    int end = out.length();
+    while (end > 0 && out.charAt(end - 1) == ' ') {
+      end--;
+    }
+    out.setLength(end);
+    return out.toString();
+  }
+
+  /**
+   * Returns the index just past the tag, comment or raw text element starting at {@code start}, or
+   * {@code start} if the '<' there does not begin markup.
+   */
+  private static int skipMarkup(String content, int start) {
+    int length = content.length();
+    if (start + 1 >= length) {
+      return start;
+    }
+    char next = content.charAt(start + 1);
+    if (content.startsWith("<!--", start)) {
+      int close = content.indexOf("-->", start + 4);
+      return close < 0 ? length : close + 3;
+    }
+    if (next == '!' || next == '?') {
+      return skipPast(content, start + 2, '>');
+    }
+    boolean endTag = next == '/';
+    int nameStart = endTag ? start + 2 : start + 1;
+    if (nameStart >= length || !Character.isLetter(content.charAt(nameStart))) {
+      // "</" followed by anything else is a bogus comment; "<" followed by anything else is text.
+      return endTag ? skipPast(content, nameStart, '>') : start;
+    }
+
+    int nameEnd = nameStart;
+    while (nameEnd < length && isTagNameChar(content.charAt(nameEnd))) {
+      nameEnd++;
+    }
+    int end = skipTag(content, nameEnd);
+    if (!endTag) {
+      String name = content.substring(nameStart, nameEnd);
+      if (name.equalsIgnoreCase("script") || name.equalsIgnoreCase("style")) {
+        end = skipRawText(content, end, name);
+      }
+    }
+    return end;
+  }
+
+  /** Returns the index just past the '>' closing a tag, skipping '>' inside quoted values. */
+  private static int skipTag(String content, int from) {
+    int length = content.length();
+    int i = from;
+    while (i < length) {
+      char c = content.charAt(i);
+      if (c == '>') {
+        return i + 1;
+      }
+      if (c == '=') {
+        i++;
+        while (i < length && isWhitespace(content.charAt(i))) {
+          i++;
+        }
+        if (i < length && (content.charAt(i) == '"' || content.charAt(i) == '\'')) {
+          int close = content.indexOf(content.charAt(i), i + 1);
+          if (close < 0) {
+            return length;
+          }
+          i = close;
+        }
+        continue;
+      }
+      i++;
+    }
+    return length;
+  }
+
+  /** Returns the index just past the end tag closing a script or style element. */
+  private static int skipRawText(String content, int from, String name) {
+    int length = content.length();
+    for (int i = content.indexOf("</", from); i >= 0; i = content.indexOf("</", i + 2)) {
+      int nameEnd = i + 2 + name.length();
+      if (content.regionMatches(true, i + 2, name, 0, name.length())
+          && (nameEnd == length || !isTagNameChar(content.charAt(nameEnd)))) {
+        return skipTag(content, nameEnd);
+      }
+    }
+    return length;
+  }
+
+  private static int skipPast(String content, int from, char c) {
+    int index = content.indexOf(c, from);
+    return index < 0 ? content.length() : index + 1;
+  }
+
+  /** Returns whether the '&' at {@code start} begins a character reference such as &amp;amp;. */
+  private static boolean isCharacterReference(String content, int start) {
+    int length = content.length();
+    int i = start + 1;
+    boolean numeric = i < length && content.charAt(i) == '#';
+    boolean hex = false;
+    if (numeric) {
+      i++;
+      hex = i < length && (content.charAt(i) == 'x' || content.charAt(i) == 'X');
+      if (hex) {
+        i++;
+      }
+    }
+    int nameStart = i;
+    while (i < length) {
+      char c = content.charAt(i);
+      boolean valid =
+          numeric
+              ? (c >= '0' && c <= '9') || (hex && Character.digit(c, 16) >= 0)
+              : (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+      if (!valid) {
+        break;
+      }
+      i++;
+    }
+    return i > nameStart && i < length && content.charAt(i) == ';';
+  }
+
+  private static boolean isTagNameChar(char c) {
+    return !isWhitespace(c) && c != '/' && c != '>';
+  }
+
+  /** The whitespace characters HTML collapses; unlike Character.isWhitespace(), not nbsp. */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  /** Returns the content with each :alias: or :alias|type_N: replaced by its emoji. */
+  static String replaceEmojiAliases(String content) {
+    int length = content.length();
+    StringBuilder out = null;
+    // Index in content of the first character not yet copied to out.
+    int copied = 0;
+    for (int colon = content.indexOf(':'); colon >= 0; colon = content.indexOf(':', colon + 1)) {
+      AliasNode node = AliasTrie.ROOT;
+      int i = colon + 1;
+      while (i < length && node != null && content.charAt(i) != ':' && content.charAt(i) != '|') {
+        node = node.children.get(content.charAt(i));
+        i++;
+      }
+      if (node == null || node.emoji == null || i >= length) {
+        continue;
+      }
+
+      String replacement = node.emoji.getUnicode();
+      if (content.charAt(i) == '|') {
+        int close = content.indexOf(':', i + 1);
+        Fitzpatrick type =
+            close < 0 ? null : AliasTrie.TYPES.get(content.substring(i + 1, close));
+        if (type == null || !node.emoji.supportsFitzpatrick()) {
+          continue;
+        }
+        replacement += type.unicode;
+        i = close;
+      }
+
+      if (out == null) {
+        out = new StringBuilder(length);
+      }
+      out.append(content, copied, colon).append(replacement);
+      copied = i + 1;
+      // The closing ':' was part of this alias, so it can't open the next one.
+      colon = i;
+    }
+    if (out == null) {
+      return content;
+    }
+    return out.append(content, copied, length).toString();
+  }
+
+  /** One node of the alias trie. */
+  private static class AliasNode {
+    final Map<Character, AliasNode> children = new HashMap<>();
+
+    /** The emoji whose alias ends here, if any. */
+    Emoji emoji;
+  }
+
+  /** The trie of all emoji aliases, built the first time an alias is looked for. */
+  private static class AliasTrie {
+    static final AliasNode ROOT = new AliasNode();
+
+    /** The skin tone modifiers, by the name used after the '|'. */
+    static final Map<String, Fitzpatrick> TYPES = new HashMap<>();
+
+    static {
+      for (Emoji emoji : EmojiManager.getAll()) {
+        for (String alias : emoji.getAliases()) {
+          AliasNode node = ROOT;
+          for (int i = 0; i < alias.length(); i++) {
+            node = node.children.computeIfAbsent(alias.charAt(i), c -> new AliasNode());
+          }
+          node.emoji = emoji;
+        }
+      }
+      for (Fitzpatrick type : Fitzpatrick.values()) {
+        TYPES.put(type.name().toLowerCase(), type);
+      }
+    }
+  }
+}
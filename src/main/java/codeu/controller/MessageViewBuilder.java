@@ -0,0 +1,115 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.view.MessageView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Turns Messages into MessageViews for one page. All the authors on the page, including the
+ * authors of replies, are looked up with a single batched UserStore call. Image messages link to
+ * the resized variant that fits the chat column, once there is one.
+ */
+class MessageViewBuilder {
+
+  /** The width, in pixels, at which images are shown in messages. */
+  static final int IMAGE_DISPLAY_WIDTH = 640;
+
+  /** How image messages saved by ImageUploadServlet refer to their Blobstore upload. */
+  static final String BLOB_IMAGE_PREFIX = "/ImageServlet?blob-key=";
+
+  private final UserStore userStore;
+  private final ImageVariantStore imageVariantStore;
+  private final UserPrincipal viewer;
+  private final Function<String, String> renderer;
+
+  /**
+   * Constructs a new MessageViewBuilder.
+   *
+   * @param userStore the UserStore to look authors up in
+   * @param imageVariantStore the ImageVariantStore to find resized images in
+   * @param viewer the logged-in User viewing the page, or null
+   * @param renderer renders the content of text messages to HTML
+   */
+  MessageViewBuilder(
+      UserStore userStore,
+      ImageVariantStore imageVariantStore,
+      UserPrincipal viewer,
+      Function<String, String> renderer) {
+    this.userStore = userStore;
+    this.imageVariantStore = imageVariantStore;
+    this.viewer = viewer;
+    this.renderer = renderer;
+  }
+
+  /** Returns views of the given Messages and their replies, in the same order. */
+  List<MessageView> build(List<Message> messages) {
+    Set<UUID> authorIds = new HashSet<>();
+    for (Message message : messages) {
+      authorIds.add(message.getAuthorId());
+      for (Message reply : message.getReplies()) {
+        authorIds.add(reply.getAuthorId());
+      }
+    }
+    Map<UUID, User> authors = userStore.getUsers(authorIds);
+
+    List<MessageView> views = new ArrayList<>(messages.size());
+    for (Message message : messages) {
+      List<MessageView> replies = new ArrayList<>(message.getReplies().size());
+      for (Message reply : message.getReplies()) {
+        replies.add(view(reply, authors, Collections.<MessageView>emptyList()));
+      }
+      views.add(view(message, authors, replies));
+    }
+    return views;
+  }
+
+  private MessageView view(Message message, Map<UUID, User> authors, List<MessageView> replies) {
+    User author = authors.get(message.getAuthorId());
+    boolean image = "image".equals(message.getType());
+    return new MessageView(
+        message.getId(),
+        author == null ? "" : author.getName(),
+        message.getType(),
+        image ? imageUrl(message.getContent()) : renderer.apply(message.getContent()),
+        message.getCreationTime(),
+        viewer != null && viewer.getId().equals(message.getAuthorId()),
+        replies);
+  }
+
+  /** Returns the URL of the resized variant of an uploaded image, or the original URL. */
+  private String imageUrl(String originalUrl) {
+    String sourceId = StoredImageServlet.hashOf(originalUrl);
+    if (sourceId == null && originalUrl.startsWith(BLOB_IMAGE_PREFIX)) {
+      // Images posted before ImageStore existed are still served from Blobstore.
+      sourceId = originalUrl.substring(BLOB_IMAGE_PREFIX.length());
+    }
+    if (sourceId == null) {
+      return originalUrl;
+    }
+    return ImageVariantServlet.url(imageVariantStore, sourceId, IMAGE_DISPLAY_WIDTH, originalUrl);
+  }
+}
@@ -0,0 +1,440 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.MessageStore;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that caches the rendered HTML of read-mostly pages for logged-out visitors. Each page is
+ * cached under its URL together with the version of the data it shows, as reported by the stores,
+ * so a write to a conversation, hashtag or list makes the next request render a fresh copy.
+ *
+ * <p>Cached pages are kept both as plain and gzipped bytes and are served with a strong ETag of
+ * their content. When several requests miss on the same page at once, only one of them renders it
+ * and the others wait for its result.
+ */
+public class PageCacheFilter implements Filter {
+
+  /** The most pages kept in the cache; the least recently used page is dropped first. */
+  static final int MAX_ENTRIES = 500;
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Hashtags. */
+  private HashtagStore hashtagStore;
+
+  /** Store class that gives access to the activity log. */
+  private ActivityStore activityStore;
+
+  /** Store class that gives access to resized images. */
+  private ImageVariantStore imageVariantStore;
+
+  /** Rendered pages by URL, least recently used first. */
+  private final Map<String, CachedPage> pages =
+      new LinkedHashMap<String, CachedPage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  /** Renders in progress, by URL and version. */
+  private final ConcurrentHashMap<String, CompletableFuture<CachedPage>> renders =
+      new ConcurrentHashMap<>();
+
+  /** Set up state for caching pages. */
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    setConversationStore(ConversationStore.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setHashtagStore(HashtagStore.getInstance());
+    setActivityStore(ActivityStore.getInstance());
+    setImageVariantStore(ImageVariantStore.getInstance());
+  }
+
+  /**
+   * Sets the ConversationStore used by this filter. This function provides a common setup method
+   * for use by the test framework or the filter's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /**
+   * Sets the MessageStore used by this filter. This function provides a common setup method for
+   * use by the test framework or the filter's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the HashtagStore used by this filter. This function provides a common setup method for
+   * use by the test framework or the filter's init() function.
+   */
+  void setHashtagStore(HashtagStore hashtagStore) {
+    this.hashtagStore = hashtagStore;
+  }
+
+  /**
+   * Sets the ActivityStore used by this filter. This function provides a common setup method for
+   * use by the test framework or the filter's init() function.
+   */
+  void setActivityStore(ActivityStore activityStore) {
+    this.activityStore = activityStore;
+  }
+
+  /**
+   * Sets the ImageVariantStore used by this filter. This function provides a common setup method
+   * for use by the test framework or the filter's init() function.
+   */
+  void setImageVariantStore(ImageVariantStore imageVariantStore) {
+    this.imageVariantStore = imageVariantStore;
+  }
+
+  @Override
+  public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse,
+      FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) servletRequest;
+    HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+    String version = null;
+    if ("GET".equals(request.getMethod()) && UserFilter.getPrincipal(request) == null) {
+      version = versionOf(request);
+    }
+    if (version == null) {
+      // Logged-in users see their own controls, and other pages aren't versioned.
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String url = request.getQueryString() == null
+        ? request.getRequestURI()
+        : request.getRequestURI() + "?" + request.getQueryString();
+    CachedPage page;
+    synchronized (pages) {
+      page = pages.get(url);
+    }
+    if (page == null || !page.version.equals(version)) {
+      page = render(url, version, request, response, chain);
+      if (page == null) {
+        // The page wasn't cacheable and has already been written to the response.
+        return;
+      }
+    }
+    serve(page, request, response);
+  }
+
+  /**
+   * Returns the version of the data shown by the requested page, or null if the page isn't one
+   * that can be cached.
+   */
+  String versionOf(HttpServletRequest request) {
+    String uri = request.getRequestURI();
+    if (uri.startsWith("/chat/")) {
+      Conversation conversation =
+          conversationStore.getConversationWithTitle(uri.substring("/chat/".length()));
+      if (conversation == null) {
+        return null;
+      }
+      // Image messages switch to their resized variants once those are ready.
+      return conversation.getId() + ":" + messageStore.getConversationVersion(conversation.getId())
+          + ":" + imageVariantStore.getVersion();
+    }
+    if (uri.startsWith("/hashtag/")) {
+      String tag = uri.substring("/hashtag/".length()).toUpperCase();
+      // Edits and deletes anywhere can change which messages a hashtag page shows.
+      return hashtagStore.getVersion(tag) + ":" + messageStore.getChangeVersion();
+    }
+    if (uri.equals("/conversations")) {
+      return Long.toString(conversationStore.getVersion());
+    }
+    if (uri.equals("/activityfeed")) {
+      // The trending hashtags beside the feed also change as time passes.
+      return activityStore.getVersion() + ":" + System.currentTimeMillis() / 60000;
+    }
+    return null;
+  }
+
+  /**
+   * Renders the page through the rest of the chain, or waits for a render of the same version
+   * that is already running. Returns null if this request rendered the page and it turned out not
+   * to be cacheable, in which case it has already been sent.
+   */
+  private CachedPage render(String url, String version, HttpServletRequest request,
+      HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+    String key = url + "#" + version;
+    CompletableFuture<CachedPage> ours = new CompletableFuture<>();
+    CompletableFuture<CachedPage> running = renders.putIfAbsent(key, ours);
+    if (running != null) {
+      CachedPage page = await(running);
+      if (page != null) {
+        return page;
+      }
+      // The other render couldn't be cached; render this request on its own.
+      chain.doFilter(request, response);
+      return null;
+    }
+
+    CachedPage page = null;
+    try {
+      CapturingResponse capture = new CapturingResponse(response);
+      chain.doFilter(request, capture);
+      if (capture.isCacheable()) {
+        page = new CachedPage(version, capture.getContentType(), capture.toByteArray());
+        synchronized (pages) {
+          pages.put(url, page);
+        }
+      } else {
+        capture.sendThrough();
+      }
+    } finally {
+      renders.remove(key);
+      ours.complete(page);
+    }
+    return page;
+  }
+
+  private static CachedPage await(CompletableFuture<CachedPage> running) throws ServletException {
+    try {
+      return running.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServletException(e);
+    } catch (ExecutionException e) {
+      throw new ServletException(e.getCause());
+    }
+  }
+
+  /** Writes a cached page, or just a 304 if the client already has this version. */
+  private static void serve(CachedPage page, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    response.setHeader("ETag", page.etag);
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("Vary", "Accept-Encoding");
+    if (page.etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    if (page.contentType != null) {
+      response.setContentType(page.contentType);
+    }
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    byte[] body = page.body;
+    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      response.setHeader("Content-Encoding", "gzip");
+      body = page.gzippedBody;
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** A rendered page and the version of the data it was rendered from. */
+  static class CachedPage {
+    private final String version;
+    private final String contentType;
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String etag;
+
+    CachedPage(String version, String contentType, byte[] body) throws IOException {
+      this.version = version;
+      this.contentType = contentType;
+      this.body = body;
+      this.gzippedBody = gzip(body);
+      this.etag = "\"" + hash(body) + "\"";
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+        gzip.write(body);
+      }
+      return bytes.toByteArray();
+    }
+
+    private static String hash(byte[] body) {
+      try {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+          hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Response that keeps the rendered body in memory instead of sending it, so it can be cached.
+   * Redirects, errors and other non-200 responses go straight through.
+   */
+  private static class CapturingResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private String contentType;
+    private int status = SC_OK;
+    private boolean committed;
+
+    CapturingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    boolean isCacheable() {
+      return status == SC_OK && !committed;
+    }
+
+    byte[] toByteArray() {
+      if (writer != null) {
+        writer.flush();
+      }
+      return body.toByteArray();
+    }
+
+    /** Sends a captured response that turned out not to be cacheable. */
+    void sendThrough() throws IOException {
+      byte[] bytes = toByteArray();
+      if (contentType != null) {
+        getResponse().setContentType(contentType);
+      }
+      if (!committed && bytes.length > 0) {
+        getResponse().getOutputStream().write(bytes);
+      }
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+      this.contentType = contentType;
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType;
+    }
+
+    @Override
+    public void setStatus(int status) {
+      this.status = status;
+      super.setStatus(status);
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+      this.status = status;
+      committed = true;
+      super.sendError(status);
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+      this.status = status;
+      committed = true;
+      super.sendError(status, message);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      this.status = SC_FOUND;
+      committed = true;
+      super.sendRedirect(location);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (outputStream == null) {
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            body.write(b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            body.write(b, off, len);
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {}
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+      if (writer == null) {
+        String encoding = getCharacterEncoding();
+        writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+            encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding)));
+      }
+      return writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+      if (writer != null) {
+        writer.flush();
+      }
+    }
+
+    @Override
+    public void setContentLength(int length) {}
+  }
+}
@@ -0,0 +1,185 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletResponse;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Runs BCrypt for the login and registration servlets on a small pool of worker threads. Each hash
+ * costs tens of milliseconds of CPU, so doing them on request threads lets a burst of logins crowd
+ * out chat traffic. The pool bounds how many run at once, and once QUEUE_CAPACITY hashes are
+ * waiting, further requests are turned away with a RejectedExecutionException straight away.
+ *
+ * <p>It also keeps counters of how long hashes waited and ran, for the admin page. It's a
+ * singleton so all servlet classes share the same pool.
+ */
+class PasswordHasher {
+
+  /** The number of worker threads; the rest of the CPUs are left for everything else. */
+  static final int WORKER_COUNT =
+      Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  /** The most hashes waiting for a worker; further ones are rejected. */
+  static final int QUEUE_CAPACITY = 32;
+
+  /** Singleton instance of PasswordHasher. */
+  private static PasswordHasher instance;
+
+  /**
+   * Returns the singleton instance of PasswordHasher that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  static PasswordHasher getInstance() {
+    if (instance == null) {
+      instance = new PasswordHasher(newWorkerPool());
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing.
+   *
+   * @param executor runs the hashing work, e.g. on the calling thread
+   */
+  static PasswordHasher getTestInstance(Executor executor) {
+    return new PasswordHasher(executor);
+  }
+
+  private static Executor newWorkerPool() {
+    AtomicInteger threadCount = new AtomicInteger();
+    return new ThreadPoolExecutor(
+        WORKER_COUNT,
+        WORKER_COUNT,
+        0,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        runnable -> {
+          Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** Runs the hashing work. */
+  private final Executor executor;
+
+  private final LongAdder completedCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder queueNanos = new LongAdder();
+  private final LongAdder hashNanos = new LongAdder();
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private PasswordHasher(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Hashes a new password with a fresh salt.
+   *
+   * @throws RejectedExecutionException if too many hashes are already waiting
+   */
+  String hash(String password) {
+    return run(() -> BCrypt.hashpw(password, BCrypt.gensalt()));
+  }
+
+  /**
+   * Returns whether a password matches a hash made by hash().
+   *
+   * @throws RejectedExecutionException if too many hashes are already waiting
+   */
+  boolean check(String password, String passwordHash) {
+    return run(() -> BCrypt.checkpw(password, passwordHash));
+  }
+
+  /**
+   * Answers a request whose hash was rejected. The client is asked to come back shortly rather
+   * than wait in line.
+   */
+  static void sendBusy(HttpServletResponse response) throws IOException {
+    response.setHeader("Retry-After", "1");
+    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+
+  /** Returns how many hashes and checks have finished. */
+  long getCompletedCount() {
+    return completedCount.sum();
+  }
+
+  /** Returns how many hashes and checks were turned away because the queue was full. */
+  long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /** Returns the average time finished hashes waited for a worker, in milliseconds. */
+  double getAverageQueueMillis() {
+    long count = completedCount.sum();
+    return count == 0 ? 0 : queueNanos.sum() / 1e6 / count;
+  }
+
+  /** Returns the average time finished hashes took to run, in milliseconds. */
+  double getAverageHashMillis() {
+    long count = completedCount.sum();
+    return count == 0 ? 0 : hashNanos.sum() / 1e6 / count;
+  }
+
+  /** Runs work on the pool and waits for its result, recording how long it waited and ran. */
+  private <T> T run(Callable<T> work) {
+    long submitted = System.nanoTime();
+    FutureTask<T> task =
+        new FutureTask<>(
+            () -> {
+              long started = System.nanoTime();
+              try {
+                return work.call();
+              } finally {
+                long finished = System.nanoTime();
+                queueNanos.add(started - submitted);
+                hashNanos.add(finished - started);
+                completedCount.increment();
+              }
+            });
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      rejectedCount.increment();
+      throw e;
+    }
+
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      task.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
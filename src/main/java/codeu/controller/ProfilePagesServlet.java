@@ -3,11 +3,17 @@ package codeu.controller;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.view.ProfilePageView;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.ImageVariantStore;
 import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.ImageStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import javax.servlet.ServletException;
@@ -22,7 +28,8 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Paths;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 
 import java.time.LocalDate;
@@ -37,11 +44,13 @@ import javax.servlet.http.Part;
 
 import org.mindrot.jbcrypt.BCrypt;
 
-import com.google.appengine.api.datastore.Text;
 import com.google.appengine.repackaged.com.google.common.io.Files;
 
 /** Servlet class responsible for the profile pages. */
-@MultipartConfig
+@MultipartConfig(
+    fileSizeThreshold = 64 * 1024,
+    maxFileSize = ImageStore.MAX_SIZE,
+    maxRequestSize = ImageStore.MAX_SIZE + 64 * 1024)
 public class ProfilePagesServlet extends HttpServlet {
 
   /** Store class that gives access to Users. */
@@ -50,9 +59,23 @@ public class ProfilePagesServlet extends HttpServlet {
   /** Store class that gives access to Messages. */
   private MessageStore messageStore;
 
+  /** Store class that gives access to Mentions. */
+  private MentionStore mentionStore;
+
+  /** Store class that gives access to uploaded images. */
+  private ImageStore imageStore;
+
+  /** Store class that gives access to resized images. */
+  private ImageVariantStore imageVariantStore;
+
   /**  Evaluates to the length of /users/ */
   private static final int USERNAME_INDEX = 7;
 
+  /** The number of mentioned messages shown on the profile page. */
+  private static final int MENTIONS_PAGE_SIZE = 50;
+
+  /** The width, in pixels, at which the profile picture is shown. */
+  static final int PICTURE_DISPLAY_WIDTH = 250;
   /**
    * Set up state for handling profile page requests.
    * This method is only called when running in a server, not when running in a test.
@@ -62,6 +85,9 @@ public class ProfilePagesServlet extends HttpServlet {
     super.init();
     setUserStore(UserStore.getInstance());
     setMessageStore(MessageStore.getInstance());
+    setMentionStore(MentionStore.getInstance());
+    setImageStore(ImageStore.getInstance());
+    setImageVariantStore(ImageVariantStore.getInstance());
   }
 
   /**
@@ -80,6 +106,30 @@ public class ProfilePagesServlet extends HttpServlet {
     this.messageStore = messageStore;
   }
 
+  /**
+   * Sets the MentionStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMentionStore(MentionStore mentionStore) {
+    this.mentionStore = mentionStore;
+  }
+
+  /**
+   * Sets the ImageStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setImageStore(ImageStore imageStore) {
+    this.imageStore = imageStore;
+  }
+
+  /**
+   * Sets the ImageVariantStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setImageVariantStore(ImageVariantStore imageVariantStore) {
+    this.imageVariantStore = imageVariantStore;
+  }
+
   /**
    * This function fires when a user goes to the profile pages.
    */
@@ -89,13 +139,68 @@ public class ProfilePagesServlet extends HttpServlet {
     String requestUrl = request.getRequestURI();
     String username = requestUrl.substring(USERNAME_INDEX);
     User user = userStore.getUser(username);
-    UUID userId = userStore.getUser(username).getId();
+    if (user == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    UUID userId = user.getId();
 
     List<Message> messages = messageStore.getMessagesByUser(userId);
 
-    request.setAttribute("messages", messages);
-    request.setAttribute("user", user);
-    request.setAttribute("username", username);
+    // The newest mentions come straight out of the user's inbox; deleted messages are skipped.
+    List<Message> mentionedMessages = new ArrayList<>();
+    List<UUID> mentionedIds = mentionStore.getMentionedMessageIdsBefore(
+        userId, mentionStore.getMentionCount(userId), MENTIONS_PAGE_SIZE);
+    for (UUID messageId : mentionedIds) {
+      Message message = messageStore.getMessageById(messageId);
+      if (message != null) {
+        mentionedMessages.add(message);
+      }
+    }
+
+    int unreadMentions = mentionStore.getUnreadCount(userId);
+    UserPrincipal principal = UserFilter.getPrincipal(request);
+    boolean owner = principal != null && principal.getId().equals(userId);
+    if (owner) {
+      // the owner is looking at their own mentions, so they are no longer unread
+      mentionStore.markRead(userId);
+    }
+
+    MessageViewBuilder viewBuilder =
+        new MessageViewBuilder(userStore, imageVariantStore, principal, Message::styleContent);
+    ProfilePageView page =
+        new ProfilePageView(
+            user.getName(),
+            user.getAboutMe(),
+            profilePictureUrl(user),
+            owner,
+            viewBuilder.build(messages),
+            viewBuilder.build(mentionedMessages),
+            unreadMentions);
+
+    request.setAttribute("page", page);
+    request.getRequestDispatcher("/WEB-INF/view/profile-pages.jsp").forward(request, response);
+  }
+
+  /**
+   * Returns the URL of the resized variant of the User's profile picture, or of the picture
+   * itself, or null if the User has no picture.
+   */
+  private String profilePictureUrl(User user) {
+    String hash = user.getProfilePictureHash();
+    if (hash == null) {
+      return null;
+    }
+    return ImageVariantServlet.url(
+        imageVariantStore, hash, PICTURE_DISPLAY_WIDTH, StoredImageServlet.url(hash));
+  }
+
+  /** Answers an oversized profile picture upload with an error page. */
+  private void rejectPicture(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+    request.setAttribute(
+        "error", "Profile pictures can be at most " + ImageStore.MAX_SIZE / 1024 + " KB.");
     request.getRequestDispatcher("/WEB-INF/view/profile-pages.jsp").forward(request, response);
   }
 
@@ -104,37 +209,54 @@ public class ProfilePagesServlet extends HttpServlet {
       throws IOException, ServletException {
 
     String action = (String) request.getParameter("EditProfilePage");
-    String username = (String) request.getSession().getAttribute("user");
-    if (username == null) {
+    UserPrincipal principal = UserFilter.getPrincipal(request);
+    if (principal == null) {
       // user is not logged in, don't let them add a message
       response.sendRedirect("/login");
       return;
     }
 
-    User user = userStore.getUser(username);
-    if (user == null) {
-      // user was not found, don't let them add a message
-      response.sendRedirect("/login");
-      return;
-    }
+    String username = principal.getName();
+    User user = userStore.getUser(principal.getId());
 
     String requestUrl = request.getRequestURI();
 
     if (action != null && action.equals("EditProfilePicture")) {
-      System.out.println(action);
-      Part file = request.getPart("pic");
-
-      InputStream content = file.getInputStream();
+      Part file;
+      try {
+        file = request.getPart("pic");
+      } catch (IllegalStateException e) {
+        // The container refused the upload for being over the multipart limits.
+        rejectPicture(request, response);
+        return;
+      }
+      if (file == null || file.getSize() == 0) {
+        response.sendRedirect("/users/" + username);
+        return;
+      }
+      if (file.getSize() > ImageStore.MAX_SIZE) {
+        rejectPicture(request, response);
+        return;
+      }
 
-		  byte[] buffer = new byte[content.available()];
-		  content.read(buffer, 0, content.available());
+      String contentType = file.getContentType();
+      if (!ImageStore.SAFE_TYPES.contains(contentType)) {
+        contentType = "image/jpeg";
+      }
+      String hash;
+      try (InputStream content = file.getInputStream()) {
+        hash = imageStore.addImage(content, file.getSize(), contentType);
+      }
+      String previousHash = user.getProfilePictureHash();
+      user.setProfilePictureHash(hash);
+      imageVariantStore.processImage(hash, () -> imageStore.getImageContent(hash));
+      if (previousHash != null) {
+        imageStore.releaseImage(previousHash);
+      }
 
-		  String base64 = Base64.getEncoder().encodeToString(buffer);
-		  Text t = new Text(base64);
-		  user.setProfilePic(t);
-
-      UserStore.getInstance().updateUser(user);
+      userStore.updateUser(user);
       response.sendRedirect("/users/" + username);
+      return;
     }
 
     String aboutMeContent = request.getParameter("aboutMe");
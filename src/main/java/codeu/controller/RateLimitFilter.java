@@ -0,0 +1,107 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.UserPrincipal;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that limits how often one client can log in, register or post to a conversation. Each of
+ * those endpoints has its own limits, counted both per IP address and per logged-in User, so a
+ * client can't get around the user limit by logging out or the address limit by using a proxy.
+ * Clients over a limit get a 429 before the servlet does any hashing or writing.
+ *
+ * <p>Only POSTs are limited; viewing the pages is not. It must run after UserFilter so it can see
+ * who is logged in.
+ */
+public class RateLimitFilter implements Filter {
+
+  /** The most distinct addresses or users each endpoint keeps track of. */
+  static final int MAX_KEYS = 100_000;
+
+  /** The limits of one endpoint. */
+  static class Limits {
+    final RateLimiter byAddress;
+    final RateLimiter byUser;
+
+    Limits(int burst, long interval, TimeUnit unit) {
+      long intervalMillis = unit.toMillis(interval);
+      byAddress = new RateLimiter(burst, intervalMillis, MAX_KEYS);
+      byUser = new RateLimiter(burst, intervalMillis, MAX_KEYS);
+    }
+  }
+
+  /** The limits of each endpoint, by servlet path. */
+  private Map<String, Limits> limits;
+
+  /** Set up the limits of each endpoint. */
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    Map<String, Limits> limits = new HashMap<>();
+    // Each login check costs a BCrypt hash, so these are the tightest.
+    limits.put("/login", new Limits(10, 6, TimeUnit.SECONDS));
+    limits.put("/register", new Limits(5, 1, TimeUnit.MINUTES));
+    Limits posting = new Limits(20, 1, TimeUnit.SECONDS);
+    limits.put("/chat", posting);
+    limits.put("/ImageUploadServlet", posting);
+    setLimits(limits);
+  }
+
+  /**
+   * Sets the limits of each endpoint, by servlet path. This function provides a common setup method
+   * for use by the test framework or the filter's init() function.
+   */
+  void setLimits(Map<String, Limits> limits) {
+    this.limits = limits;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    Limits endpoint =
+        "POST".equals(httpRequest.getMethod()) ? limits.get(httpRequest.getServletPath()) : null;
+    if (endpoint != null) {
+      long now = System.currentTimeMillis();
+      long waitMillis = endpoint.byAddress.tryAcquire(request.getRemoteAddr(), now);
+      UserPrincipal principal = UserFilter.getPrincipal(httpRequest);
+      if (waitMillis == 0 && principal != null) {
+        waitMillis = endpoint.byUser.tryAcquire(principal.getId().toString(), now);
+      }
+      if (waitMillis > 0) {
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.setHeader(
+            "Retry-After", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999)));
+        httpResponse.sendError(429);
+        return;
+      }
+    }
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,135 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets for many keys, such as IP addresses. Each bucket holds up to {@code burst} tokens
+ * and gains one every {@code intervalMillis}; each request takes one.
+ *
+ * <p>A bucket is a single AtomicLong holding the time at which it will be full again, so taking a
+ * token is one compare-and-set and never takes a lock. Buckets are spread over STRIPES maps. When
+ * a stripe grows past its share of maxKeys, the buckets in it that are full again are dropped,
+ * since a full bucket is no different from a new one. A stripe is scanned for those at most once
+ * per interval, so a flood of new keys doesn't pay for a scan on every request. Until there is
+ * room again, new keys share a single overflow bucket rather than evicting someone who is being
+ * limited or going unlimited.
+ */
+class RateLimiter {
+
+  /** The number of maps the buckets are spread over. */
+  static final int STRIPES = 16;
+
+  private final long intervalMillis;
+
+  /** How far ahead of now a bucket's full-again time may be before it's empty. */
+  private final long burstMillis;
+
+  private final int maxKeysPerStripe;
+
+  private final List<Map<String, AtomicLong>> stripes;
+
+  /** The earliest time each stripe may be scanned for full buckets again. */
+  private final AtomicLong[] nextEvictionAt;
+
+  /** The bucket shared by keys that arrive while their stripe is full. */
+  private final AtomicLong overflow = new AtomicLong();
+
+  /**
+   * Constructs a RateLimiter.
+   *
+   * @param burst how many requests a key may make at once
+   * @param intervalMillis how often a key gets another request after that
+   * @param maxKeys about how many keys to track at most
+   */
+  RateLimiter(int burst, long intervalMillis, int maxKeys) {
+    this.intervalMillis = intervalMillis;
+    this.burstMillis = burst * intervalMillis;
+    this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+    stripes = new ArrayList<>(STRIPES);
+    nextEvictionAt = new AtomicLong[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes.add(new ConcurrentHashMap<>());
+      nextEvictionAt[i] = new AtomicLong(Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * Takes a token from the key's bucket at the given time. Returns 0 if there was one, or else how
+   * many milliseconds until there will be.
+   */
+  long tryAcquire(String key, long nowMillis) {
+    int index = (key.hashCode() & 0x7fffffff) % STRIPES;
+    Map<String, AtomicLong> stripe = stripes.get(index);
+    AtomicLong fullAt = stripe.get(key);
+    if (fullAt == null) {
+      if (stripe.size() >= maxKeysPerStripe && !evictFull(index, nowMillis)) {
+        return take(overflow, nowMillis);
+      }
+      fullAt = stripe.computeIfAbsent(key, k -> new AtomicLong(nowMillis));
+    }
+    return take(fullAt, nowMillis);
+  }
+
+  /** Takes a token from a bucket; see tryAcquire(). */
+  private long take(AtomicLong fullAt, long nowMillis) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, nowMillis) + intervalMillis;
+      if (next - nowMillis > burstMillis) {
+        return next - nowMillis - burstMillis;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /** Returns how many keys are being tracked. */
+  int size() {
+    int size = 0;
+    for (Map<String, AtomicLong> stripe : stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  /**
+   * Drops the buckets of a stripe that are full again, unless the stripe was scanned less than an
+   * interval ago. Returns whether any were dropped.
+   */
+  private boolean evictFull(int index, long nowMillis) {
+    AtomicLong nextScan = nextEvictionAt[index];
+    long scanAt = nextScan.get();
+    if (nowMillis < scanAt || !nextScan.compareAndSet(scanAt, nowMillis + intervalMillis)) {
+      return false;
+    }
+    boolean evicted = false;
+    Iterator<AtomicLong> buckets = stripes.get(index).values().iterator();
+    while (buckets.hasNext()) {
+      if (buckets.next().get() <= nowMillis) {
+        buckets.remove();
+        evicted = true;
+      }
+    }
+    return evicted;
+  }
+}
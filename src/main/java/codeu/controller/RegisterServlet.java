@@ -2,28 +2,32 @@ package codeu.controller;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.UUID;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.mindrot.jbcrypt.BCrypt;
+import java.util.concurrent.RejectedExecutionException;
+import codeu.model.data.Activity;
+import codeu.model.data.AttackEvent;
 import codeu.model.data.User;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.AttackEventStore;
 import codeu.model.store.basic.UserStore;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.BufferedWriter;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import java.time.format.FormatStyle;
-import java.time.ZoneId;
-import com.google.appengine.api.datastore.Text;
 
 public class RegisterServlet extends HttpServlet {
 
   /** Store class that gives access to Users. */
   private UserStore userStore;
 
+  /** Store class that records suspected attacks. */
+  private AttackEventStore attackEventStore;
+
+  /** Runs BCrypt off the request thread. */
+  private PasswordHasher passwordHasher;
+
+  /** Store class that gives access to the activity log. */
+  private ActivityStore activityStore;
+
   /**
    * Set up state for handling registration-related requests. This method is only called when
    * running in a server, not when running in a test.
@@ -32,6 +36,9 @@ public class RegisterServlet extends HttpServlet {
   public void init() throws ServletException {
     super.init();
     setUserStore(UserStore.getInstance());
+    setAttackEventStore(AttackEventStore.getInstance());
+    setPasswordHasher(PasswordHasher.getInstance());
+    setActivityStore(ActivityStore.getInstance());
   }
 
   /**
@@ -42,6 +49,30 @@ public class RegisterServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  /**
+   * Sets the AttackEventStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setAttackEventStore(AttackEventStore attackEventStore) {
+    this.attackEventStore = attackEventStore;
+  }
+
+  /**
+   * Sets the PasswordHasher used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setPasswordHasher(PasswordHasher passwordHasher) {
+    this.passwordHasher = passwordHasher;
+  }
+
+  /**
+   * Sets the ActivityStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setActivityStore(ActivityStore activityStore) {
+    this.activityStore = activityStore;
+  }
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
@@ -61,27 +92,8 @@ public class RegisterServlet extends HttpServlet {
     }
 
     if (isAttack) {
-      String userAgent = "";
-      File file = new File(System.getProperty("user.dir"), "attackLog.txt");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
-      try {
-        userAgent = request.getHeader("User-Agent");
-        // save the user info to a file
-        writer.append(userAgent + "\n");
-
-        // setting up the date and time of attack
-        DateTimeFormatter formatter = DateTimeFormatter
-            .ofLocalizedDateTime(FormatStyle.SHORT)
-            .withLocale(Locale.US)
-            .withZone(ZoneId.systemDefault());
-        Instant instant = Instant.now();
-        String time = formatter.format(instant);
-        writer.append(time + "\n");
-      } catch (Exception e) {
-        e.printStackTrace();
-      } finally {
-        writer.close();
-      }
+      attackEventStore.recordAttack(
+          new AttackEvent(Instant.now(), "register", request.getHeader("User-Agent")));
     }
 
     if (!username.matches("[\\w*\\s*]*")) {
@@ -96,17 +108,23 @@ public class RegisterServlet extends HttpServlet {
       return;
     }
 
-    String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
+    String hashedPassword;
+    try {
+      hashedPassword = passwordHasher.hash(password);
+    } catch (RejectedExecutionException e) {
+      // Too many registrations at once; turn this one away rather than slow down everything else.
+      PasswordHasher.sendBusy(response);
+      return;
+    }
 
     String aboutMe = request.getParameter("aboutMe");
 
     boolean isAdmin = username.equals("admin") && password.equals("admin");
 
-    Text profilePic = null;
-
-    User user = new User(UUID.randomUUID(), username, hashedPassword, Instant.now(), aboutMe, isAdmin, profilePic);
+    User user = new User(TimeOrderedIds.newId(), username, hashedPassword, Instant.now(), aboutMe, isAdmin, null);
 
     userStore.addUser(user);
+    activityStore.addActivity(Activity.userJoined(user));
 
     response.sendRedirect("/login");
   }
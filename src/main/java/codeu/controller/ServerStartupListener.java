@@ -2,17 +2,30 @@ package codeu.controller;
 
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
+import codeu.model.data.Tombstone;
 import codeu.model.data.User;
 import codeu.model.data.Mention;
 import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.AttackEventStore;
 import codeu.model.data.Hashtag;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.TrendingStore;
 import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
@@ -32,14 +45,28 @@ public class ServerStartupListener implements ServletContextListener {
       List<Conversation> conversations = PersistentStorageAgent.getInstance().loadConversations();
       ConversationStore.getInstance().setConversations(conversations);
       
-      List<Message> messages = PersistentStorageAgent.getInstance().loadMessages();
+      // Messages deleted just before the last shutdown may not have been cleaned up yet.
+      List<Message> loadedMessages = PersistentStorageAgent.getInstance().loadMessages();
+      List<Tombstone> tombstones = PersistentStorageAgent.getInstance().loadTombstones();
+      List<Message> messages = DeletionCascade.withoutDeleted(tombstones, loadedMessages);
       MessageStore.getInstance().setMessages(messages);
+      ConversationStore.getInstance().rebuildHotRanking(messages);
       
       List<Hashtag> hashtags = PersistentStorageAgent.getInstance().loadHashtags();
-      HashtagStore.getInstance().setHashtags(hashtags);
+      HashtagStore.getInstance().setHashtags(orderHashtags(hashtags));
+      recordRecentHashtags(hashtags);
     
-      List<Mention> mentions = PersistentStorageAgent.getInstance().loadMentions();
+      List<Mention> mentions = resolveMentions(PersistentStorageAgent.getInstance().loadMentions());
       MentionStore.getInstance().setMentions(mentions);
+
+      ActivityStore.getInstance().rebuild(users, conversations, messages, mentions);
+
+      ImageVariantStore.getInstance()
+          .setVariantWidths(PersistentStorageAgent.getInstance().loadImageVariantWidths());
+
+      ImageStore.getInstance().rebuildReferences(imageReferences(users, messages));
+
+      DeletionCascade.getInstance().resume(tombstones, loadedMessages);
       
     } catch (PersistentDataStoreException e) {
       System.err.println("Server didn't start correctly. An error occurred during Datastore load!");
@@ -47,8 +74,103 @@ public class ServerStartupListener implements ServletContextListener {
       System.err.println("Check the stack trace to see exactly what went wrong.");
       throw new RuntimeException(e);
     }
+
+    try {
+      AttackEventStore.getInstance().loadEvents();
+    } catch (IOException e) {
+      // The attack counters are only statistics; start without them rather than not at all.
+      System.err.println("Couldn't load the attack log; attack counts start from zero.");
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Lists one image hash per profile picture and per image message. Edits are stored as later
+   * copies of the same message, so each message is only counted once.
+   */
+  static List<String> imageReferences(List<User> users, List<Message> messages) {
+    List<String> references = new ArrayList<>();
+    for (User user : users) {
+      if (user.getProfilePictureHash() != null) {
+        references.add(user.getProfilePictureHash());
+      }
+    }
+    Set<UUID> seenMessageIds = new HashSet<>();
+    for (Message message : messages) {
+      String hash = StoredImageServlet.imageHashOf(message);
+      if (hash != null && seenMessageIds.add(message.getId())) {
+        references.add(hash);
+      }
+    }
+    return references;
   }
 
+  /**
+   * Mentions saved before mentions were resolved at ingest only know the mentioned username.
+   * Resolve those through the UserStore, putting their messages in time order, and drop the ones
+   * that don't name a registered user.
+   */
+  private List<Mention> resolveMentions(List<Mention> mentions) {
+    List<Mention> resolved = new ArrayList<>();
+    for (Mention mention : mentions) {
+      if (mention.getMentionedUserId() != null) {
+        resolved.add(mention);
+        continue;
+      }
+      User user = UserStore.getInstance().getUser(mention.getName());
+      if (user == null) {
+        continue;
+      }
+      MessageStore messageStore = MessageStore.getInstance();
+      List<UUID> messageIds = new ArrayList<>();
+      for (UUID messageId : mention.getMessageIds()) {
+        if (messageStore.getMessageById(messageId) != null) {
+          messageIds.add(messageId);
+        }
+      }
+      messageIds.sort(
+          Comparator.comparing(id -> messageStore.getMessageById(id).getCreationTime()));
+      resolved.add(new Mention(user.getId(), user.getName(), messageIds, 0));
+    }
+    return resolved;
+  }
+
+  /**
+   * Hashtags saved before postings were kept in time order list their messages in no particular
+   * order. Put every Hashtag's messages in time order and drop the ones that no longer exist.
+   */
+  private List<Hashtag> orderHashtags(List<Hashtag> hashtags) {
+    MessageStore messageStore = MessageStore.getInstance();
+    for (Hashtag hashtag : hashtags) {
+      hashtag.getMessageIds().removeIf(id -> messageStore.getMessageById(id) == null);
+      hashtag.getMessageIds().sort(
+          Comparator.comparing(id -> messageStore.getMessageById(id).getCreationTime()));
+    }
+    return hashtags;
+  }
+
+  /**
+   * Refills the TrendingStore with the hashtag uses from the longest trending window. Postings are
+   * in time order, so each Hashtag is only read back as far as the window reaches.
+   */
+  private void recordRecentHashtags(List<Hashtag> hashtags) {
+    MessageStore messageStore = MessageStore.getInstance();
+    Instant windowStart = Instant.now().minus(TrendingStore.Window.DAY.getLength());
+    for (Hashtag hashtag : hashtags) {
+      List<UUID> messageIds = hashtag.getMessageIds();
+      for (int i = messageIds.size() - 1; i >= 0; i--) {
+        Instant creation = messageStore.getMessageById(messageIds.get(i)).getCreationTime();
+        if (creation.isBefore(windowStart)) {
+          break;
+        }
+        TrendingStore.getInstance().recordHashtag(hashtag.getName(), creation);
+      }
+    }
+  }
+
+  /** Writes out the attacks still waiting to be logged. */
   @Override
-  public void contextDestroyed(ServletContextEvent sce) {}
+  public void contextDestroyed(ServletContextEvent sce) {
+    AttackEventStore.getInstance().close();
+  }
 }
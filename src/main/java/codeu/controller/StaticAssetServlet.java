@@ -0,0 +1,210 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class responsible for serving static assets under fingerprinted URLs. When it starts, it
+ * reads every file in the asset directories, names each one after a hash of its content (for
+ * example /static/css/main.3f2a9c1b0d.css) and gzips the text ones once up front. Since a
+ * fingerprinted URL can never point at different content, browsers are told to cache it forever.
+ *
+ * <p>Pages link to assets through url(), which falls back to the plain path for anything that
+ * isn't known here.
+ */
+public class StaticAssetServlet extends HttpServlet {
+
+  /** The directories whose files are served by this servlet. */
+  static final String[] ASSET_DIRECTORIES = {"/css/", "/images/"};
+
+  /** The prefix of every fingerprinted URL. */
+  static final String PREFIX = "/static";
+
+  /** Cache-Control for fingerprinted assets: a year, and never revalidate. */
+  static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  /** Fingerprinted URL of each asset, by plain path. Shared so JSPs can look them up. */
+  private static volatile Map<String, String> urls = Collections.emptyMap();
+
+  /** Assets by fingerprinted URL. */
+  private Map<String, Asset> assets = Collections.emptyMap();
+
+  /**
+   * Returns the URL pages should use for the asset at the given path, such as "/css/main.css".
+   * Returns the path itself if the asset isn't served by this servlet.
+   */
+  public static String url(String path) {
+    return urls.getOrDefault(path, path);
+  }
+
+  /** Loads and fingerprints the assets. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    try {
+      loadAssets(getServletContext());
+    } catch (IOException e) {
+      throw new ServletException("Unable to load static assets", e);
+    }
+  }
+
+  /**
+   * Reads, fingerprints and precompresses every asset. This function provides a common setup
+   * method for use by the test framework or the servlet's init() function.
+   */
+  void loadAssets(ServletContext context) throws IOException {
+    Map<String, Asset> loadedAssets = new HashMap<>();
+    Map<String, String> loadedUrls = new HashMap<>();
+    for (String directory : ASSET_DIRECTORIES) {
+      Set<String> paths = context.getResourcePaths(directory);
+      if (paths == null) {
+        continue;
+      }
+      for (String path : paths) {
+        if (path.endsWith("/")) {
+          continue;
+        }
+        byte[] content;
+        try (InputStream in = context.getResourceAsStream(path)) {
+          if (in == null) {
+            continue;
+          }
+          content = readFully(in);
+        }
+        String fingerprint = fingerprint(content);
+        String contentType = context.getMimeType(path);
+        Asset asset = new Asset(content, contentType, fingerprint);
+        String url = PREFIX + fingerprintedPath(path, fingerprint);
+        loadedAssets.put(url, asset);
+        loadedUrls.put(path, url);
+      }
+    }
+    assets = loadedAssets;
+    urls = loadedUrls;
+  }
+
+  /**
+   * This function fires when a browser requests a fingerprinted asset. Unknown URLs, including
+   * ones for an older version of an asset, get a 404.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    Asset asset = assets.get(request.getRequestURI());
+    if (asset == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    response.setHeader("ETag", asset.etag);
+    if (asset.etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    if (asset.contentType != null) {
+      response.setContentType(asset.contentType);
+    }
+    byte[] body = asset.content;
+    if (asset.gzippedContent != null) {
+      response.setHeader("Vary", "Accept-Encoding");
+      String acceptEncoding = request.getHeader("Accept-Encoding");
+      if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        response.setHeader("Content-Encoding", "gzip");
+        body = asset.gzippedContent;
+      }
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /** Inserts the fingerprint before the extension: /css/main.css becomes /css/main.abc.css. */
+  static String fingerprintedPath(String path, String fingerprint) {
+    int slash = path.lastIndexOf('/');
+    int dot = path.lastIndexOf('.');
+    if (dot <= slash) {
+      return path + "." + fingerprint;
+    }
+    return path.substring(0, dot) + "." + fingerprint + path.substring(dot);
+  }
+
+  private static String fingerprint(byte[] content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+      StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < 5; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /** A loaded asset, with its gzipped form if it has one worth sending. */
+  private static class Asset {
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final String contentType;
+    private final String etag;
+
+    Asset(byte[] content, String contentType, String fingerprint) throws IOException {
+      this.content = content;
+      this.contentType = contentType;
+      this.etag = "\"" + fingerprint + "\"";
+      this.gzippedContent = CompressionFilter.isCompressible(contentType) ? gzip(content) : null;
+    }
+
+    /** Gzips the content at the highest level, since it's only done once. */
+    private static byte[] gzip(byte[] content) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+        {
+          def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      }) {
+        gzip.write(content);
+      }
+      byte[] gzipped = bytes.toByteArray();
+      return gzipped.length < content.length ? gzipped : null;
+    }
+  }
+}
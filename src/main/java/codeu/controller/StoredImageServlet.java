@@ -0,0 +1,249 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class responsible for serving uploaded images at /stored-images/{hash}. The URL names
+ * the exact bytes, so browsers and caches may keep an image for good, and the hash doubles as the
+ * ETag.
+ *
+ * <p>Single byte ranges are supported, so clients can resume a download or fetch part of an
+ * image. Images kept in local files are streamed from the file in small chunks instead of being
+ * read into memory whole.
+ */
+public class StoredImageServlet extends HttpServlet {
+
+  /** The prefix of every stored image URL. */
+  static final String PREFIX = "/stored-images/";
+
+  /** Cache-Control for stored images: a year, and never revalidate. */
+  static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  /** Store class that gives access to uploaded images. */
+  private ImageStore imageStore;
+
+  /** Returns the URL of the image with the given hash. */
+  public static String url(String hash) {
+    return PREFIX + hash;
+  }
+
+  /** Returns the hash of the image at the given URL, or null if it isn't a stored image URL. */
+  public static String hashOf(String url) {
+    return url != null && url.startsWith(PREFIX) ? url.substring(PREFIX.length()) : null;
+  }
+
+  /**
+   * Returns the hash of the image a Message refers to, or null if it isn't an image message.
+   * Messages saved before their type was stored load without one; those count as images when
+   * their content is a stored image URL.
+   */
+  static String imageHashOf(Message message) {
+    String type = message.getType();
+    return type == null || "image".equals(type) ? hashOf(message.getContent()) : null;
+  }
+
+  /**
+   * Set up state for serving images. This method is only called when running in a server, not
+   * when running in a test.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setImageStore(ImageStore.getInstance());
+  }
+
+  /**
+   * Sets the ImageStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setImageStore(ImageStore imageStore) {
+    this.imageStore = imageStore;
+  }
+
+  /** This function fires when a browser requests an uploaded image. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String hash = hashOf(request.getRequestURI());
+    String etag = "\"" + hash + "\"";
+    if (matches(request.getHeader("If-None-Match"), etag)) {
+      // The bytes behind a hash never change, so a matching ETag needs no lookup.
+      response.setHeader("ETag", etag);
+      response.setHeader("Cache-Control", CACHE_CONTROL);
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    StoredImageFile file = hash == null ? null : imageStore.getImageFile(hash);
+    if (file != null) {
+      try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+        long[] range = startResponse(request, response, etag, file.getContentType(), channel.size());
+        if (range != null) {
+          sendFile(channel, range[0], range[1] - range[0] + 1, response);
+        }
+      } catch (NoSuchFileException e) {
+        // Deleted since it was found.
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      }
+      return;
+    }
+
+    StoredImage image;
+    try {
+      image = hash == null ? null : imageStore.getImage(hash);
+    } catch (PersistentDataStoreException e) {
+      throw new ServletException(e);
+    }
+    if (image == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    byte[] content = image.getContent();
+    long[] range = startResponse(request, response, etag, image.getContentType(), content.length);
+    if (range != null) {
+      response
+          .getOutputStream()
+          .write(content, (int) range[0], (int) (range[1] - range[0] + 1));
+    }
+  }
+
+  /**
+   * Sets the status and headers for an image of the given size and returns the first and last
+   * byte to send, or null if there is nothing to send because the requested range is
+   * unsatisfiable.
+   */
+  private static long[] startResponse(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      String etag,
+      String contentType,
+      long size)
+      throws IOException {
+    response.setHeader("ETag", etag);
+    response.setHeader("Cache-Control", CACHE_CONTROL);
+    response.setHeader("Accept-Ranges", "bytes");
+
+    String ifRange = request.getHeader("If-Range");
+    long[] range = new long[] {0, size - 1};
+    if (ifRange == null || ifRange.equals(etag)) {
+      range = parseRange(request.getHeader("Range"), size);
+    }
+    if (range == null) {
+      response.setHeader("Content-Range", "bytes */" + size);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return null;
+    }
+
+    response.setContentType(contentType);
+    response.setContentLengthLong(range[1] - range[0] + 1);
+    if (range[0] != 0 || range[1] != size - 1) {
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+    }
+    return range;
+  }
+
+  /**
+   * Parses a Range header against an image of the given size. Returns the first and last byte of
+   * the range, the whole image if there is no header or it can't be parsed or asks for several
+   * ranges, or null if the range lies outside the image.
+   */
+  static long[] parseRange(String header, long size) {
+    long[] whole = new long[] {0, size - 1};
+    if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+      return whole;
+    }
+    String spec = header.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return whole;
+    }
+    long first;
+    long last;
+    try {
+      if (dash == 0) {
+        // A suffix range: the last n bytes.
+        long suffix = Long.parseLong(spec.substring(1));
+        if (suffix <= 0) {
+          return null;
+        }
+        first = Math.max(size - suffix, 0);
+        last = size - 1;
+      } else {
+        first = Long.parseLong(spec.substring(0, dash));
+        last = dash == spec.length() - 1 ? size - 1 : Long.parseLong(spec.substring(dash + 1));
+      }
+    } catch (NumberFormatException e) {
+      return whole;
+    }
+    if (first >= size) {
+      return null;
+    }
+    if (first < 0 || last < first) {
+      return whole;
+    }
+    return new long[] {first, Math.min(last, size - 1)};
+  }
+
+  /** Returns whether an If-None-Match header matches the given ETag. */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends part of a file with FileChannel.transferTo. The servlet output stream isn't a socket
+   * channel, so this is not zero-copy: the JDK reads the file a few kilobytes at a time and copies
+   * each chunk through a small buffer. What it saves is holding the whole image in memory, so the
+   * memory used stays the same however large the image is.
+   */
+  private static void sendFile(
+      FileChannel channel, long position, long count, HttpServletResponse response)
+      throws IOException {
+    WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+    while (count > 0) {
+      long sent = channel.transferTo(position, count, out);
+      if (sent <= 0) {
+        // The file shrank under us; there is nothing more to send.
+        break;
+      }
+      position += sent;
+      count -= sent;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mints IDs for new Users, Conversations, Messages and images that sort by the time they were
+ * created. The layout follows version 7 UUIDs: the top 48 bits are the time in milliseconds,
+ * followed by the version, a 12-bit counter, the variant and 62 random bits.
+ *
+ * <p>The counter is kept per server so IDs from the same server keep increasing even when many are
+ * made in the same millisecond or the clock steps back; the random bits keep IDs from different
+ * servers apart. Unlike UUID.randomUUID() this takes no lock and doesn't touch SecureRandom, so the
+ * IDs are unique but not unguessable.
+ */
+final class TimeOrderedIds {
+
+  private static final TimeOrderedIds shared = new TimeOrderedIds();
+
+  /** Returns a new ID for something created now. */
+  static UUID newId() {
+    return shared.next(System.currentTimeMillis());
+  }
+
+  /** Returns the time encoded in an ID made by this class. */
+  static Instant creationTimeOf(UUID id) {
+    return Instant.ofEpochMilli(id.getMostSignificantBits() >>> 16);
+  }
+
+  /** The time and counter of the last ID, as the 48-bit time followed by the 12-bit counter. */
+  private final AtomicLong last = new AtomicLong();
+
+  /** Use newId() outside of tests, so every caller shares one counter. */
+  TimeOrderedIds() {}
+
+  /** Returns an ID greater than any this instance returned before, for the given time. */
+  UUID next(long nowMillis) {
+    long previous;
+    long current;
+    do {
+      previous = last.get();
+      // A newer millisecond starts a new count; otherwise count on, carrying into the time.
+      current = nowMillis > previous >>> 12 ? nowMillis << 12 : previous + 1;
+    } while (!last.compareAndSet(previous, current));
+
+    long mostSignificantBits = (current >>> 12) << 16 | 0x7000L | (current & 0xfffL);
+    long leastSignificantBits =
+        ThreadLocalRandom.current().nextLong() >>> 2 | 0x8000000000000000L;
+    return new UUID(mostSignificantBits, leastSignificantBits);
+  }
+}
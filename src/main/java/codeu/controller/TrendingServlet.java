@@ -0,0 +1,70 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.TrendingHashtag;
+import codeu.model.store.basic.TrendingStore;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet class responsible for the trending hashtags page. */
+public class TrendingServlet extends HttpServlet {
+
+  /** The number of hashtags shown on the trending page. */
+  static final int TRENDING_LIMIT = 20;
+
+  /** Store class that gives access to the trending hashtags. */
+  private TrendingStore trendingStore;
+
+  /** Set up state for handling trending requests. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setTrendingStore(TrendingStore.getInstance());
+  }
+
+  /**
+   * Sets the TrendingStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setTrendingStore(TrendingStore trendingStore) {
+    this.trendingStore = trendingStore;
+  }
+
+  /**
+   * This function fires when a user navigates to the trending page. It reads the most used
+   * hashtags in the window named by the "window" parameter (5m, 1h or 1d, one hour by default) and
+   * forwards to trending.jsp for rendering.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    TrendingStore.Window window = TrendingStore.Window.fromLabel(request.getParameter("window"));
+    if (window == null) {
+      window = TrendingStore.Window.HOUR;
+    }
+
+    List<TrendingHashtag> trending =
+        trendingStore.getTrending(window, TRENDING_LIMIT, Instant.now());
+
+    request.setAttribute("window", window);
+    request.setAttribute("trending", trending);
+    request.getRequestDispatcher("/WEB-INF/view/trending.jsp").forward(request, response);
+  }
+}
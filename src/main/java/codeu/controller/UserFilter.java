@@ -0,0 +1,106 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.util.UUID;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Filter that works out who is making each request before any servlet or JSP runs. The first
+ * request after login looks the User up by name and caches their ID and admin flag in the session;
+ * later requests only check that ID. The result is stored as a UserPrincipal request attribute.
+ *
+ * <p>Sessions that name a User who no longer exists are invalidated, so the request carries on as
+ * a logged-out one.
+ */
+public class UserFilter implements Filter {
+
+  /** The request attribute holding the UserPrincipal of the logged-in User, if any. */
+  public static final String PRINCIPAL_ATTRIBUTE = "principal";
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /** Set up state for resolving users. */
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    setUserStore(UserStore.getInstance());
+  }
+
+  /**
+   * Sets the UserStore used by this filter. This function provides a common setup method for use
+   * by the test framework or the filter's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /** Returns the UserPrincipal of the logged-in User making the request, or null. */
+  static UserPrincipal getPrincipal(HttpServletRequest request) {
+    return (UserPrincipal) request.getAttribute(PRINCIPAL_ATTRIBUTE);
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpSession session = ((HttpServletRequest) request).getSession(false);
+    if (session != null) {
+      UserPrincipal principal = resolve(session);
+      if (principal != null) {
+        request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+      }
+    }
+    chain.doFilter(request, response);
+  }
+
+  /**
+   * Returns the UserPrincipal for the User logged in to the session, or null if nobody is. Sessions
+   * that name an unknown User are invalidated.
+   */
+  private UserPrincipal resolve(HttpSession session) {
+    String username = (String) session.getAttribute("user");
+    if (username == null) {
+      return null;
+    }
+
+    UUID userId = (UUID) session.getAttribute("userId");
+    User user = userId == null ? userStore.getUser(username) : userStore.getUser(userId);
+    if (user == null || !user.getName().equals(username)) {
+      session.invalidate();
+      return null;
+    }
+
+    if (userId == null) {
+      session.setAttribute("userId", user.getId());
+      session.setAttribute("adminStatus", user.isAdmin());
+    }
+    Boolean adminStatus = (Boolean) session.getAttribute("adminStatus");
+    return new UserPrincipal(
+        user.getId(), username, adminStatus != null && adminStatus.booleanValue());
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,166 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Class representing one entry of the activity feed: a user joining, a conversation being created
+ * or a message being sent. The names and titles needed to render the entry are copied in when the
+ * Activity is created, so showing the feed never has to go back to the other stores.
+ */
+public class Activity {
+
+  /** The kinds of events that show up in the activity feed. */
+  public enum Type {
+    USER_JOINED,
+    CONVERSATION_CREATED,
+    MESSAGE_SENT
+  }
+
+  private final Type type;
+  private final UUID subjectId;
+  private final UUID userId;
+  private final String userName;
+  private final UUID conversationId;
+  private final String conversationTitle;
+  private final String content;
+  private final Instant creation;
+  private int sequence = -1;
+
+  /**
+   * Constructs a new Activity.
+   *
+   * @param type the kind of event this Activity records
+   * @param subjectId the ID of the User, Conversation or Message the event is about
+   * @param userId the ID of the User who caused the event
+   * @param userName the username of the User who caused the event
+   * @param conversationId the ID of the Conversation involved, or null for USER_JOINED
+   * @param conversationTitle the title of the Conversation involved, or null for USER_JOINED
+   * @param content the message content for MESSAGE_SENT, otherwise null
+   * @param creation the time the event happened
+   */
+  public Activity(
+      Type type,
+      UUID subjectId,
+      UUID userId,
+      String userName,
+      UUID conversationId,
+      String conversationTitle,
+      String content,
+      Instant creation) {
+    this.type = type;
+    this.subjectId = subjectId;
+    this.userId = userId;
+    this.userName = userName;
+    this.conversationId = conversationId;
+    this.conversationTitle = conversationTitle;
+    this.content = content;
+    this.creation = creation;
+  }
+
+  /** Creates the Activity recording that a User registered. */
+  public static Activity userJoined(User user) {
+    return new Activity(
+        Type.USER_JOINED,
+        user.getId(),
+        user.getId(),
+        user.getName(),
+        null,
+        null,
+        null,
+        user.getCreationTime());
+  }
+
+  /** Creates the Activity recording that a User created a Conversation. */
+  public static Activity conversationCreated(Conversation conversation, String ownerName) {
+    return new Activity(
+        Type.CONVERSATION_CREATED,
+        conversation.getId(),
+        conversation.getOwnerId(),
+        ownerName,
+        conversation.getId(),
+        conversation.getTitle(),
+        null,
+        conversation.getCreationTime());
+  }
+
+  /** Creates the Activity recording that a User sent a Message in a Conversation. */
+  public static Activity messageSent(Message message, Conversation conversation, String authorName) {
+    return new Activity(
+        Type.MESSAGE_SENT,
+        message.getId(),
+        message.getAuthorId(),
+        authorName,
+        conversation.getId(),
+        conversation.getTitle(),
+        message.getContent(),
+        message.getCreationTime());
+  }
+
+  /** Returns the kind of event this Activity records. */
+  public Type getType() {
+    return type;
+  }
+
+  /** Returns the ID of the User, Conversation or Message this Activity is about. */
+  public UUID getSubjectId() {
+    return subjectId;
+  }
+
+  /** Returns the ID of the User who caused this Activity. */
+  public UUID getUserId() {
+    return userId;
+  }
+
+  /** Returns the username of the User who caused this Activity. */
+  public String getUserName() {
+    return userName;
+  }
+
+  /** Returns the ID of the Conversation involved, or null. */
+  public UUID getConversationId() {
+    return conversationId;
+  }
+
+  /** Returns the title of the Conversation involved, or null. */
+  public String getConversationTitle() {
+    return conversationTitle;
+  }
+
+  /** Returns the content of the sent Message, or null. */
+  public String getContent() {
+    return content;
+  }
+
+  /** Returns the time this Activity happened. */
+  public Instant getCreationTime() {
+    return creation;
+  }
+
+  /**
+   * Returns the position of this Activity in the activity log, or -1 if it has not been added to
+   * the log yet. Later Activities always have larger sequence numbers.
+   */
+  public int getSequence() {
+    return sequence;
+  }
+
+  /** Sets the position of this Activity in the activity log. Only ActivityStore should call this. */
+  public void setSequence(int sequence) {
+    this.sequence = sequence;
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.time.Instant;
+
+/**
+ * Class representing a suspected attack: a login or registration attempt whose username looks
+ * like an injection attempt.
+ */
+public class AttackEvent {
+
+  /** Source of events migrated from the old attack log, which didn't record one. */
+  public static final String SOURCE_UNKNOWN = "unknown";
+
+  private final Instant creation;
+  private final String source;
+  private final String userAgent;
+
+  /**
+   * Constructs a new AttackEvent.
+   *
+   * @param creation the time of the attempt
+   * @param source the form the attempt came through, such as "login" or "register"
+   * @param userAgent the User-Agent header of the request, or null if it had none
+   */
+  public AttackEvent(Instant creation, String source, String userAgent) {
+    this.creation = creation;
+    this.source = source;
+    this.userAgent = userAgent;
+  }
+
+  /** Returns the time of the attempt. */
+  public Instant getCreationTime() {
+    return creation;
+  }
+
+  /** Returns the form the attempt came through. */
+  public String getSource() {
+    return source;
+  }
+
+  /** Returns the User-Agent header of the request, or null if it had none. */
+  public String getUserAgent() {
+    return userAgent;
+  }
+}
@@ -1,44 +1,55 @@
+
 package codeu.model.data;
 
-import java.time.Instant;
 import java.util.UUID;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /** Class representing a registered hashtag. */
 public class Hashtag {
   private final String hashtag;
   
-  /** The list of message ids for this hashtag. */
-  private Set<UUID> messageIds;
+  /**
+   * The ids of the messages that use this hashtag, oldest first. Messages are added as they are
+   * posted, so the position of an id in this list doubles as the pagination cursor.
+   */
+  private List<UUID> messageIds;
   
   /** Setup the hashtag object */
   public Hashtag(String tag, UUID initialId) {
     this.hashtag = tag;
-    this.messageIds = new HashSet<UUID>();
+    this.messageIds = new ArrayList<UUID>();
     this.messageIds.add(initialId);
   }
   
-  /** Setup when making a hashtag from datastore */
-  public Hashtag(String tag, Set<UUID> messageIds) {
+  /** Setup when making a hashtag from datastore. The ids must be oldest first. */
+  public Hashtag(String tag, List<UUID> messageIds) {
     this.hashtag = tag;
     this.messageIds = messageIds;
   }
   
-  /** This will add a message to the hashtag */
+  /** This will add a message to the end of the hashtag */
   public void addMessageId(UUID id) {
     messageIds.add(id);
   }
+
+  /** This will remove the given messages from the hashtag, keeping the rest in order */
+  public void removeMessageIds(Collection<UUID> ids) {
+    // A single pass with a hash lookup; List.removeAll would scan ids once per message.
+    Set<UUID> removed = new HashSet<>(ids);
+    messageIds.removeIf(removed::contains);
+  }
   
   /** This will return the name of the hashtag */
   public String getName() {
     return hashtag;
   }
   
-  /** This will return an array of the ids that are linked to this hashtag*/
-  public Set<UUID> getMessageIds() {
+  /** This will return the ids that are linked to this hashtag, oldest first */
+  public List<UUID> getMessageIds() {
     return messageIds;
   }
 }
@@ -0,0 +1,62 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.data;
+
+/**
+ * Class representing a resized copy of an uploaded image. A variant is identified by the image it
+ * was made from and its width; since the source of a variant never changes, neither does the
+ * variant.
+ */
+public class ImageVariant {
+
+  private final String sourceId;
+  private final int width;
+  private final byte[] content;
+  private final String contentType;
+
+  /**
+   * Constructs a new ImageVariant.
+   *
+   * @param sourceId the ID of the image this variant was made from
+   * @param width the width of this variant in pixels
+   * @param content the encoded image bytes
+   * @param contentType the MIME type of the encoded image
+   */
+  public ImageVariant(String sourceId, int width, byte[] content, String contentType) {
+    this.sourceId = sourceId;
+    this.width = width;
+    this.content = content;
+    this.contentType = contentType;
+  }
+
+  /** Returns the ID of the image this variant was made from. */
+  public String getSourceId() {
+    return sourceId;
+  }
+
+  /** Returns the width of this variant in pixels. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Returns the encoded image bytes. */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /** Returns the MIME type of the encoded image. */
+  public String getContentType() {
+    return contentType;
+  }
+}
@@ -13,49 +13,88 @@
 // limitations under the License.package codeu.model.data;
 package codeu.model.data;
 
-import java.time.Instant;
-import java.util.UUID;
-import java.util.List;
 import java.util.ArrayList;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 
 
-/** Class representing a mention. */
+/**
+ * Class representing the mention inbox of one registered user: the ids of the messages that
+ * mentioned them, oldest first, and how many of those the user has not seen yet.
+ */
 public class Mention {
 
-  private Set<UUID> messageIds;
+  private final UUID mentionedUserId;
   private final String mentionedUser;
+  private final List<UUID> messageIds;
+  private int unreadCount;
 
   /**
    * Constructs a new Mention.
    *
-   * @param id the ID of conversation
-   * @param string of mentioned user
+   * @param mentionedUserId the ID of the mentioned User
+   * @param mentionedUser the username of the mentioned User
+   * @param messageIds the ids of the messages that mentioned the User, oldest first
+   * @param unreadCount how many of those messages the User has not seen yet
    */
-  public Mention(UUID messageId, String mentionedUser) {
-    this.messageIds = new HashSet<UUID>(); 
-    this.messageIds.add(messageId);
+  public Mention(UUID mentionedUserId, String mentionedUser, List<UUID> messageIds,
+      int unreadCount) {
+    this.mentionedUserId = mentionedUserId;
     this.mentionedUser = mentionedUser;
+    this.messageIds = messageIds;
+    this.unreadCount = unreadCount;
   }
 
-  public Mention(Set<UUID> messageIds, String mentionedUser) {
-    this.messageIds = messageIds; 
-    this.mentionedUser = mentionedUser;
+  /** Constructs a new Mention for a User who has not been mentioned yet. */
+  public Mention(UUID mentionedUserId, String mentionedUser) {
+    this(mentionedUserId, mentionedUser, new ArrayList<UUID>(), 0);
   }
 
+  /** Adds a newly sent message to the end of the inbox and counts it as unread. */
   public void addMessageId(UUID id) {
     messageIds.add(id);
+    unreadCount++;
+  }
+
+  /** Removes the given messages from the inbox. Removed messages no longer count as unread. */
+  public void removeMessageIds(Collection<UUID> ids) {
+    // The unread messages are the newest ones, at the end of the list.
+    int firstUnread = messageIds.size() - unreadCount;
+    int position = 0;
+    for (Iterator<UUID> iterator = messageIds.iterator(); iterator.hasNext(); position++) {
+      if (ids.contains(iterator.next())) {
+        iterator.remove();
+        if (position >= firstUnread) {
+          unreadCount--;
+        }
+      }
+    }
   }
 
-  /** Returns the ID of the Conversation this Message belongs to. */
-  public Set<UUID> getMessageIds() {
+  /** Returns the ids of the messages that mentioned the User, oldest first. */
+  public List<UUID> getMessageIds() {
     return messageIds;
   }
 
- /** Returns mentioned user. */
+  /** Returns the ID of the mentioned User. */
+  public UUID getMentionedUserId() {
+    return mentionedUserId;
+  }
+
+  /** Returns the username of the mentioned User. */
   public String getName() {
     return mentionedUser;
   }
 
+  /** Returns how many messages in the inbox the User has not seen yet. */
+  public int getUnreadCount() {
+    return unreadCount;
+  }
+
+  /** Marks every message in the inbox as seen. */
+  public void markRead() {
+    unreadCount = 0;
+  }
 }
@@ -71,6 +71,7 @@ public class Message {
      this.content = content;
      this.creation = creation;
      this.type = "default";
+     this.replies = new ArrayList<Message>();
    }
 
   /** Returns the ID of this Message. */
@@ -94,6 +95,11 @@ public class Message {
   }
 
   public String getStyledContent(String s) {
+    return styleContent(s);
+  }
+
+  /** Renders Markdown message content to HTML. */
+  public static String styleContent(String s) {
     if (!(s.equals("image"))){
       Parser parser = Parser.builder().build();
       Node document = parser.parse(s);
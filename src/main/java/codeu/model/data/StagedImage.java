@@ -0,0 +1,65 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package codeu.model.data;
+
+/**
+ * Class representing an upload whose bytes have been written to an ImageBackend but that isn't a
+ * StoredImage yet. The hash of an upload is only known once all of it has been read, so the bytes
+ * are written somewhere temporary first; ImageStore then either commits them under the hash or,
+ * if the same image is already stored, discards them.
+ */
+public class StagedImage {
+
+  private final String hash;
+  private final int size;
+  private final String contentType;
+  private final String location;
+
+  /**
+   * Constructs a new StagedImage.
+   *
+   * @param hash the hex SHA-256 hash of the image bytes
+   * @param size the number of image bytes
+   * @param contentType the MIME type of the image
+   * @param location where the backend wrote the bytes, in a form only that backend understands
+   */
+  public StagedImage(String hash, int size, String contentType, String location) {
+    this.hash = hash;
+    this.size = size;
+    this.contentType = contentType;
+    this.location = location;
+  }
+
+  /** Returns the hex SHA-256 hash of the image bytes. */
+  public String getHash() {
+    return hash;
+  }
+
+  /** Returns the number of image bytes. */
+  public int getSize() {
+    return size;
+  }
+
+  /** Returns the MIME type of the image. */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /** Returns where the backend wrote the bytes. */
+  public String getLocation() {
+    return location;
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Class representing an uploaded image, identified by the SHA-256 hash of its bytes. Two uploads
+ * of the same bytes are the same StoredImage, so an image is only ever stored once however many
+ * messages and profiles use it.
+ */
+public class StoredImage {
+
+  private final String hash;
+  private final byte[] content;
+  private final String contentType;
+
+  /**
+   * Constructs a new StoredImage.
+   *
+   * @param hash the hex SHA-256 hash of the image bytes
+   * @param content the image bytes
+   * @param contentType the MIME type of the image
+   */
+  public StoredImage(String hash, byte[] content, String contentType) {
+    this.hash = hash;
+    this.content = content;
+    this.contentType = contentType;
+  }
+
+  /** Creates a StoredImage for the given bytes, hashing them to get its identity. */
+  public static StoredImage of(byte[] content, String contentType) {
+    return new StoredImage(hex(sha256().digest(content)), content, contentType);
+  }
+
+  /** Receives the bytes of an upload as they are read; see stream(). */
+  public interface ChunkSink {
+
+    /**
+     * Takes the first {@code length} bytes of {@code buffer}. The buffer is reused once this
+     * returns, so anything kept must be copied.
+     */
+    void write(byte[] buffer, int length) throws IOException;
+  }
+
+  /**
+   * Streams exactly {@code size} bytes of an upload through a single buffer of at most
+   * {@code bufferSize} bytes, and returns their hex SHA-256 hash. The buffer is handed to
+   * {@code sink} each time it fills and once more with whatever is left, so only the buffer is
+   * ever held in memory, however large the upload.
+   *
+   * @throws IOException if the stream fails or doesn't hold exactly {@code size} bytes
+   */
+  public static String stream(InputStream in, int size, int bufferSize, ChunkSink sink)
+      throws IOException {
+    MessageDigest digest = sha256();
+    byte[] buffer = new byte[Math.min(bufferSize, Math.max(size, 1))];
+    int offset = 0;
+    int filled = 0;
+    do {
+      int count = in.read(buffer, filled, Math.min(buffer.length - filled, size - offset));
+      if (count < 0) {
+        throw new IOException("Upload ended after " + offset + " of " + size + " bytes");
+      }
+      digest.update(buffer, filled, count);
+      filled += count;
+      offset += count;
+      if (filled == buffer.length || offset == size) {
+        sink.write(buffer, filled);
+        filled = 0;
+      }
+    } while (offset < size);
+    if (in.read() != -1) {
+      throw new IOException("Upload is larger than its declared " + size + " bytes");
+    }
+    return hex(digest.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /** Returns the hex SHA-256 hash of the image bytes, which identifies the image. */
+  public String getHash() {
+    return hash;
+  }
+
+  /** Returns the image bytes. */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /** Returns the MIME type of the image. */
+  public String getContentType() {
+    return contentType;
+  }
+}
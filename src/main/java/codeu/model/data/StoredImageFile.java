@@ -0,0 +1,56 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.nio.file.Path;
+
+/**
+ * Class representing a StoredImage that is kept in a local file. Servlets can send the file
+ * straight from disk instead of reading the image into memory first.
+ */
+public class StoredImageFile {
+
+  private final String hash;
+  private final Path path;
+  private final String contentType;
+
+  /**
+   * Constructs a new StoredImageFile.
+   *
+   * @param hash the hex SHA-256 hash of the image bytes
+   * @param path the file holding the image bytes
+   * @param contentType the MIME type of the image
+   */
+  public StoredImageFile(String hash, Path path, String contentType) {
+    this.hash = hash;
+    this.path = path;
+    this.contentType = contentType;
+  }
+
+  /** Returns the hex SHA-256 hash of the image bytes, which identifies the image. */
+  public String getHash() {
+    return hash;
+  }
+
+  /** Returns the file holding the image bytes. */
+  public Path getPath() {
+    return path;
+  }
+
+  /** Returns the MIME type of the image. */
+  public String getContentType() {
+    return contentType;
+  }
+}
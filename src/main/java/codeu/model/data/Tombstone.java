@@ -0,0 +1,65 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Class recording that a Message or Conversation was deleted but the data that hangs off it, such
+ * as replies, messages and index postings, may not have been cleaned up yet. It is saved before
+ * the cleanup starts and removed once the cleanup is done, so a cleanup cut short by a restart is
+ * finished on the next startup.
+ */
+public class Tombstone {
+
+  /** The kinds of objects whose deletion is tracked. */
+  public enum Type {
+    MESSAGE,
+    CONVERSATION
+  }
+
+  private final UUID id;
+  private final Type type;
+  private final Instant creation;
+
+  /**
+   * Constructs a new Tombstone.
+   *
+   * @param id the ID of the deleted Message or Conversation
+   * @param type whether a Message or a Conversation was deleted
+   * @param creation the time it was deleted
+   */
+  public Tombstone(UUID id, Type type, Instant creation) {
+    this.id = id;
+    this.type = type;
+    this.creation = creation;
+  }
+
+  /** Returns the ID of the deleted Message or Conversation. */
+  public UUID getId() {
+    return id;
+  }
+
+  /** Returns whether a Message or a Conversation was deleted. */
+  public Type getType() {
+    return type;
+  }
+
+  /** Returns the time it was deleted. */
+  public Instant getCreationTime() {
+    return creation;
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.data;
+
+/** Class representing a hashtag and about how many times it was used in a time window. */
+public class TrendingHashtag {
+  private final String name;
+  private final int count;
+
+  /**
+   * Constructs a new TrendingHashtag.
+   *
+   * @param name the name of the hashtag
+   * @param count the estimated number of uses in the window
+   */
+  public TrendingHashtag(String name, int count) {
+    this.name = name;
+    this.count = count;
+  }
+
+  /** Returns the name of the hashtag. */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns the estimated number of uses in the window. Estimates may be slightly high. */
+  public int getCount() {
+    return count;
+  }
+}
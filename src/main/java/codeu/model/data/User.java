@@ -16,7 +16,6 @@ package codeu.model.data;
 
 import java.time.Instant;
 import java.util.UUID;
-import com.google.appengine.api.datastore.Text;
 
 /** Class representing a registered user. */
 public class User {
@@ -26,7 +25,7 @@ public class User {
   private final Instant creation;
   private final boolean isAdmin;
   private String aboutMe;
-  private Text profilePic;
+  private String profilePictureHash;
 
   /**
    * Constructs a new User.
@@ -37,15 +36,16 @@ public class User {
    * @param creation the creation time of this User
    * @param aboutMe the aboutMe of this User
    * @param admin if the User is an admin or not
+   * @param profilePictureHash the hash of the User's profile picture, or null if they have none
    */
-  public User(UUID id, String name, String passwordHash, Instant creation, String aboutMe, boolean isAdmin, Text profilePic) {
+  public User(UUID id, String name, String passwordHash, Instant creation, String aboutMe, boolean isAdmin, String profilePictureHash) {
     this.id = id;
     this.name = name;
     this.passwordHash = passwordHash;
     this.creation = creation;
     this.aboutMe = aboutMe;
     this.isAdmin = isAdmin;
-    this.profilePic = profilePic;
+    this.profilePictureHash = profilePictureHash;
   }
 
   /** Returns the ID of this User. */
@@ -81,11 +81,16 @@ public class User {
     return aboutMe;
   }
 
-  public Text getProfilePic() {
-	  return profilePic;
+  /**
+   * Returns the hash of this User's profile picture, or null if they have none. The picture
+   * itself lives in ImageStore.
+   */
+  public String getProfilePictureHash() {
+    return profilePictureHash;
   }
 
-  public void setProfilePic(Text profilePic) {
-	  this.profilePic = profilePic;
+  /** Sets the hash of this User's current profile picture. */
+  public void setProfilePictureHash(String profilePictureHash) {
+    this.profilePictureHash = profilePictureHash;
   }
 }
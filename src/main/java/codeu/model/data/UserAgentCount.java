@@ -0,0 +1,42 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.data;
+
+/** Class representing a User-Agent and about how many attacks came from it in a time window. */
+public class UserAgentCount {
+  private final String userAgent;
+  private final int count;
+
+  /**
+   * Constructs a new UserAgentCount.
+   *
+   * @param userAgent the User-Agent header
+   * @param count the estimated number of attacks in the window
+   */
+  public UserAgentCount(String userAgent, int count) {
+    this.userAgent = userAgent;
+    this.count = count;
+  }
+
+  /** Returns the User-Agent header. */
+  public String getUserAgent() {
+    return userAgent;
+  }
+
+  /** Returns the estimated number of attacks in the window. Estimates may be slightly high. */
+  public int getCount() {
+    return count;
+  }
+}
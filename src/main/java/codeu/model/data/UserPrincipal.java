@@ -0,0 +1,59 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.data;
+
+import java.util.UUID;
+
+/**
+ * The logged-in User making a request, as resolved by UserFilter. It only holds what servlets and
+ * JSPs need to know about the caller, so it can be built from the session without a store lookup.
+ */
+public class UserPrincipal {
+  private final UUID id;
+  private final String name;
+  private final boolean admin;
+
+  /**
+   * Constructs a new UserPrincipal.
+   *
+   * @param id the ID of the logged-in User
+   * @param name the username of the logged-in User
+   * @param admin whether the logged-in User is an admin
+   */
+  public UserPrincipal(UUID id, String name, boolean admin) {
+    this.id = id;
+    this.name = name;
+    this.admin = admin;
+  }
+
+  /** Constructs a UserPrincipal for the given User. */
+  public UserPrincipal(User user) {
+    this(user.getId(), user.getName(), user.isAdmin());
+  }
+
+  /** Returns the ID of the logged-in User. */
+  public UUID getId() {
+    return id;
+  }
+
+  /** Returns the username of the logged-in User. */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns whether the logged-in User is an admin. */
+  public boolean isAdmin() {
+    return admin;
+  }
+}
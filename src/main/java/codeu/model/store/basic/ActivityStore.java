@@ -0,0 +1,330 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Conversation;
+import codeu.model.data.Mention;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Store class that holds the global activity log in memory. The log is append-only: servlets add
+ * an Activity whenever a user registers, a conversation is created or a message is sent, so the
+ * activity feed can be read a page at a time without scanning every conversation and message.
+ *
+ * <p>Each user also has a home feed: a bounded ring of log positions that is filled on write with
+ * activity from the conversations the user posted in and with messages that mention them. A
+ * conversation with more than FANOUT_LIMIT participants stops fanning out; its own ring is merged
+ * into the home feed of its participants at read time instead.
+ *
+ * <p>Deleting a message or conversation removes its Activities with removeSubjects(). Their
+ * positions are left empty rather than reused, so cursors into the log stay valid.
+ *
+ * <p>All of this is derived data. It is not written to Datastore; instead it is rebuilt from the
+ * loaded Users, Conversations, Messages and Mentions when the server starts. It's a singleton so
+ * all servlet classes can access the same instance.
+ */
+public class ActivityStore {
+
+  /** The number of log positions remembered for each user's home feed. */
+  static final int HOME_FEED_CAPACITY = 200;
+
+  /** The number of log positions remembered for each conversation. */
+  static final int CONVERSATION_FEED_CAPACITY = 200;
+
+  /** Conversations with more participants than this are merged at read time. */
+  static final int FANOUT_LIMIT = 50;
+
+  /** Singleton instance of ActivityStore. */
+  private static ActivityStore instance;
+
+  /**
+   * Returns the singleton instance of ActivityStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static ActivityStore getInstance() {
+    if (instance == null) {
+      instance = new ActivityStore();
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing. */
+  public static ActivityStore getTestInstance() {
+    return new ActivityStore();
+  }
+
+  /**
+   * The in-memory log of Activities in the order they were added. The position of an Activity in
+   * this list never changes, so it doubles as the pagination cursor. Removed Activities leave a
+   * null behind.
+   */
+  private final List<Activity> activities;
+
+  /** The position in the log of the Activity about each message, conversation or user. */
+  private final Map<UUID, Integer> sequenceBySubject;
+
+  /** Changes whenever an Activity is added or removed, so cached feed pages can tell. */
+  private long version;
+
+  /** The home feed of each user, as positions in the log. */
+  private final Map<UUID, SequenceRing> homeFeeds;
+
+  /** The recent activity of each conversation, as positions in the log. */
+  private final Map<UUID, SequenceRing> conversationFeeds;
+
+  /** The users who created or posted in each conversation. */
+  private final Map<UUID, Set<UUID>> participants;
+
+  /** The conversations each user created or posted in that are too busy to fan out. */
+  private final Map<UUID, Set<UUID>> busyConversationsByUser;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private ActivityStore() {
+    activities = new ArrayList<>();
+    sequenceBySubject = new HashMap<>();
+    homeFeeds = new HashMap<>();
+    conversationFeeds = new HashMap<>();
+    participants = new HashMap<>();
+    busyConversationsByUser = new HashMap<>();
+  }
+
+  /** Appends an Activity to the end of the log and fans it out to the relevant home feeds. */
+  public void addActivity(Activity activity) {
+    addActivity(activity, Collections.<UUID>emptySet());
+  }
+
+  /**
+   * Appends an Activity to the end of the log and fans it out to the relevant home feeds,
+   * including the feeds of the given mentioned users.
+   */
+  public synchronized void addActivity(Activity activity, Collection<UUID> mentionedUserIds) {
+    activity.setSequence(activities.size());
+    activities.add(activity);
+    sequenceBySubject.put(activity.getSubjectId(), activity.getSequence());
+    version++;
+    fanOut(activity, mentionedUserIds);
+  }
+
+  /**
+   * Removes the Activities about the given deleted messages or conversations, so their content no
+   * longer shows in any feed. A removed conversation also stops being merged into home feeds.
+   */
+  public synchronized void removeSubjects(Collection<UUID> subjectIds) {
+    for (UUID subjectId : subjectIds) {
+      Integer sequence = sequenceBySubject.remove(subjectId);
+      if (sequence != null) {
+        activities.set(sequence, null);
+        version++;
+      }
+      Set<UUID> members = participants.remove(subjectId);
+      if (members != null) {
+        conversationFeeds.remove(subjectId);
+        for (UUID member : members) {
+          Set<UUID> busy = busyConversationsByUser.get(member);
+          if (busy != null) {
+            busy.remove(subjectId);
+          }
+        }
+      }
+    }
+  }
+
+  /** Returns a number that changes whenever an Activity is added or removed. */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /** Returns the number of Activities in the log, which is also the cursor of the newest page. */
+  public synchronized int getActivityCount() {
+    return activities.size();
+  }
+
+  /**
+   * Returns up to {@code limit} Activities that come before {@code cursor} in the log, newest
+   * first. The cost depends only on the page size and the number of removed Activities skipped,
+   * not on the size of the log.
+   *
+   * @param cursor position in the log to start from (exclusive); use getActivityCount() for the
+   *     newest page
+   * @param limit the maximum number of Activities to return
+   */
+  public synchronized List<Activity> getActivitiesBefore(int cursor, int limit) {
+    List<Activity> page = new ArrayList<>();
+    for (int i = Math.min(cursor, activities.size()) - 1; i >= 0 && page.size() < limit; i--) {
+      Activity activity = activities.get(i);
+      if (activity != null) {
+        page.add(activity);
+      }
+    }
+    return page;
+  }
+
+  /**
+   * Returns up to {@code limit} Activities from the given user's home feed that come before
+   * {@code cursor} in the log, newest first. The user's own ring is merged with the rings of the
+   * busy conversations they take part in, so the cost depends on the page size and the number of
+   * busy conversations, not on the size of the log.
+   *
+   * @param userId the ID of the User whose home feed to read
+   * @param cursor position in the log to start from (exclusive); use getActivityCount() for the
+   *     newest page
+   * @param limit the maximum number of Activities to return
+   */
+  public synchronized List<Activity> getHomeFeedBefore(UUID userId, int cursor, int limit) {
+    List<SequenceRing.Cursor> sources = new ArrayList<>();
+    SequenceRing homeFeed = homeFeeds.get(userId);
+    if (homeFeed != null) {
+      sources.add(homeFeed.cursorBefore(cursor));
+    }
+    for (UUID conversationId :
+        busyConversationsByUser.getOrDefault(userId, Collections.<UUID>emptySet())) {
+      sources.add(conversationFeeds.get(conversationId).cursorBefore(cursor));
+    }
+
+    List<Activity> page = new ArrayList<>();
+    int last = Integer.MAX_VALUE;
+    while (page.size() < limit) {
+      SequenceRing.Cursor newest = null;
+      for (SequenceRing.Cursor source : sources) {
+        if (source.hasNext() && (newest == null || source.peek() > newest.peek())) {
+          newest = source;
+        }
+      }
+      if (newest == null) {
+        break;
+      }
+      int sequence = newest.next();
+      // The same position can come from more than one source; only show it once.
+      if (sequence != last && activities.get(sequence) != null) {
+        page.add(activities.get(sequence));
+      }
+      last = sequence;
+    }
+    return page;
+  }
+
+  /**
+   * Rebuilds the log and the home feeds from the data loaded out of Datastore. This should only be
+   * called once, when the server starts.
+   */
+  public synchronized void rebuild(
+      List<User> users,
+      List<Conversation> conversations,
+      List<Message> messages,
+      List<Mention> mentions) {
+    Map<UUID, String> userNames = new HashMap<>();
+    List<Activity> rebuilt = new ArrayList<>();
+    for (User user : users) {
+      userNames.put(user.getId(), user.getName());
+      rebuilt.add(Activity.userJoined(user));
+    }
+
+    Map<UUID, Conversation> conversationsById = new HashMap<>();
+    for (Conversation conversation : conversations) {
+      conversationsById.put(conversation.getId(), conversation);
+      rebuilt.add(
+          Activity.conversationCreated(conversation, userNames.get(conversation.getOwnerId())));
+    }
+
+    // Edits are stored as later copies of the same message, so only the first copy is a send.
+    Set<UUID> seenMessageIds = new HashSet<>();
+    for (Message message : messages) {
+      Conversation conversation = conversationsById.get(message.getConversationId());
+      if (conversation == null || !seenMessageIds.add(message.getId())) {
+        continue;
+      }
+      rebuilt.add(
+          Activity.messageSent(message, conversation, userNames.get(message.getAuthorId())));
+    }
+
+    Map<UUID, Set<UUID>> mentionedUserIds = new HashMap<>();
+    for (Mention mention : mentions) {
+      for (UUID messageId : mention.getMessageIds()) {
+        mentionedUserIds
+            .computeIfAbsent(messageId, id -> new HashSet<>())
+            .add(mention.getMentionedUserId());
+      }
+    }
+
+    rebuilt.sort(Comparator.comparing(Activity::getCreationTime));
+    activities.clear();
+    sequenceBySubject.clear();
+    homeFeeds.clear();
+    conversationFeeds.clear();
+    participants.clear();
+    busyConversationsByUser.clear();
+    for (Activity activity : rebuilt) {
+      addActivity(
+          activity,
+          mentionedUserIds.getOrDefault(activity.getSubjectId(), Collections.<UUID>emptySet()));
+    }
+  }
+
+  /** Pushes the position of a newly added Activity into the rings that should show it. */
+  private void fanOut(Activity activity, Collection<UUID> mentionedUserIds) {
+    int sequence = activity.getSequence();
+    if (activity.getType() == Activity.Type.USER_JOINED) {
+      return;
+    }
+
+    UUID conversationId = activity.getConversationId();
+    conversationFeeds
+        .computeIfAbsent(conversationId, id -> new SequenceRing(CONVERSATION_FEED_CAPACITY))
+        .add(sequence);
+
+    Set<UUID> members = participants.computeIfAbsent(conversationId, id -> new HashSet<>());
+    members.add(activity.getUserId());
+
+    boolean busy = members.size() > FANOUT_LIMIT;
+    if (busy) {
+      // Too many participants to copy into every feed; readers merge the conversation instead.
+      busyConversationsByUser
+          .computeIfAbsent(activity.getUserId(), id -> new HashSet<>())
+          .add(conversationId);
+      if (members.size() == FANOUT_LIMIT + 1) {
+        for (UUID member : members) {
+          busyConversationsByUser.computeIfAbsent(member, id -> new HashSet<>()).add(conversationId);
+        }
+      }
+    } else {
+      for (UUID member : members) {
+        homeFeed(member).add(sequence);
+      }
+    }
+
+    for (UUID mentionedUserId : mentionedUserIds) {
+      if (busy || !members.contains(mentionedUserId)) {
+        homeFeed(mentionedUserId).add(sequence);
+      }
+    }
+  }
+
+  /** Returns the home feed ring of the given user, creating it if needed. */
+  private SequenceRing homeFeed(UUID userId) {
+    return homeFeeds.computeIfAbsent(userId, id -> new SequenceRing(HOME_FEED_CAPACITY));
+  }
+}
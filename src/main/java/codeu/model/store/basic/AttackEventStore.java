@@ -0,0 +1,215 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.AttackEvent;
+import codeu.model.data.TrendingHashtag;
+import codeu.model.data.UserAgentCount;
+import codeu.model.store.persistence.AsyncAttackEventWriter;
+import codeu.model.store.persistence.AttackEventLog;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Store class that records suspected attacks and keeps the counters the admin page shows: the
+ * total number of attacks, the number in each of the last HOURS hours and the User-Agents seen
+ * most often in the last week. The counters are updated as each attack is recorded, so reading
+ * them doesn't depend on how many attacks there have been.
+ *
+ * <p>Every attack is also appended to an AttackEventLog in the server's working directory, and the
+ * counters are rebuilt from that log when the server starts. The appends are done by an
+ * AsyncAttackEventWriter, so recording an attack never waits for the disk. It's a singleton so all servlet
+ * classes can access the same instance.
+ */
+public class AttackEventStore {
+
+  /** How many hours of per-hour counts are kept. */
+  public static final int HOURS = 7 * 24;
+
+  /** The window the top User-Agents are counted over. */
+  static final Duration USER_AGENT_WINDOW = Duration.ofDays(7);
+
+  /** How many candidate User-Agents are tracked. */
+  static final int USER_AGENT_CANDIDATES = 32;
+
+  /** The width of every CountMinSketch bucket used to count User-Agents. */
+  static final int SKETCH_WIDTH = 256;
+
+  private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+  /** Singleton instance of AttackEventStore. */
+  private static AttackEventStore instance;
+
+  /**
+   * Returns the singleton instance of AttackEventStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static AttackEventStore getInstance() {
+    if (instance == null) {
+      AttackEventLog attackEventLog = new AttackEventLog(inWorkingDirectory("attack-events"));
+      instance =
+          new AttackEventStore(attackEventLog, new AsyncAttackEventWriter(attackEventLog));
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply mocks for AttackEventLog and
+   * AsyncAttackEventWriter.
+   *
+   * @param attackEventLog a mock used for testing
+   * @param attackEventWriter a mock used for testing
+   */
+  public static AttackEventStore getTestInstance(
+      AttackEventLog attackEventLog, AsyncAttackEventWriter attackEventWriter) {
+    return new AttackEventStore(attackEventLog, attackEventWriter);
+  }
+
+  /** Returns the given file in the server's working directory. */
+  private static Path inWorkingDirectory(String name) {
+    return Paths.get(System.getProperty("user.dir"), name);
+  }
+
+  /** The AttackEventLog every recorded attack is appended to. */
+  private final AttackEventLog attackEventLog;
+
+  /** Appends recorded attacks to attackEventLog off the request thread. */
+  private final AsyncAttackEventWriter attackEventWriter;
+
+  private long attackCount;
+
+  /** The attack count of each hour, in slot hour % HOURS. */
+  private final long[] hourlyCounts;
+
+  /** The hour (time / HOUR_MILLIS) each slot of hourlyCounts currently holds. */
+  private final long[] slotHours;
+
+  private WindowedHeavyHitters userAgents;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private AttackEventStore(
+      AttackEventLog attackEventLog, AsyncAttackEventWriter attackEventWriter) {
+    this.attackEventLog = attackEventLog;
+    this.attackEventWriter = attackEventWriter;
+    hourlyCounts = new long[HOURS];
+    slotHours = new long[HOURS];
+    clear();
+  }
+
+  /**
+   * Records a suspected attack: counts it and queues it to be appended to the log. An attack that
+   * doesn't make it into the log is still counted.
+   */
+  public void recordAttack(AttackEvent event) {
+    synchronized (this) {
+      count(event);
+    }
+    attackEventWriter.offer(event);
+  }
+
+  /**
+   * Rebuilds the counters from the log, first moving the events of the old attackLog.txt file
+   * into it. This should only be called once, when the server starts.
+   *
+   * @throws IOException if the log could not be read
+   */
+  public synchronized void loadEvents() throws IOException {
+    attackEventLog.migrateLegacyLog(inWorkingDirectory("attackLog.txt"));
+    clear();
+    for (AttackEvent event : attackEventLog.loadEvents()) {
+      count(event);
+    }
+    attackCount += attackEventLog.loadRetiredCount();
+  }
+
+  /** Returns how many recorded attacks were counted but couldn't be written to the log. */
+  public long getUnloggedCount() {
+    return attackEventWriter.getDroppedCount();
+  }
+
+  /** Writes out the attacks still queued for the log. Call this when the server stops. */
+  public void close() {
+    attackEventWriter.close();
+  }
+
+  /** Returns the number of attacks ever recorded. */
+  public synchronized long getAttackCount() {
+    return attackCount;
+  }
+
+  /**
+   * Returns the number of attacks in each of the last {@code hours} hours up to {@code now},
+   * oldest first. At most HOURS hours are available.
+   */
+  public synchronized long[] getHourlyCounts(int hours, Instant now) {
+    hours = Math.min(hours, HOURS);
+    long nowHour = now.toEpochMilli() / HOUR_MILLIS;
+    long[] counts = new long[hours];
+    for (int i = 0; i < hours; i++) {
+      long hour = nowHour - (hours - 1 - i);
+      int slot = (int) Math.floorMod(hour, (long) HOURS);
+      counts[i] = slotHours[slot] == hour ? hourlyCounts[slot] : 0;
+    }
+    return counts;
+  }
+
+  /**
+   * Returns up to {@code limit} of the User-Agents behind the most attacks in the week up to
+   * {@code now}, most attacks first. Attacks without a User-Agent are not included.
+   */
+  public synchronized List<UserAgentCount> getTopUserAgents(int limit, Instant now) {
+    List<UserAgentCount> top = new ArrayList<>();
+    for (TrendingHashtag candidate : userAgents.top(limit, now.toEpochMilli())) {
+      top.add(new UserAgentCount(candidate.getName(), candidate.getCount()));
+    }
+    return top;
+  }
+
+  /** Adds an attack to the counters. */
+  private void count(AttackEvent event) {
+    attackCount++;
+
+    long timeMillis = event.getCreationTime().toEpochMilli();
+    long hour = timeMillis / HOUR_MILLIS;
+    int slot = (int) Math.floorMod(hour, (long) HOURS);
+    if (slotHours[slot] < hour) {
+      hourlyCounts[slot] = 0;
+      slotHours[slot] = hour;
+    }
+    if (slotHours[slot] == hour) {
+      hourlyCounts[slot]++;
+    }
+
+    if (event.getUserAgent() != null) {
+      userAgents.add(event.getUserAgent(), timeMillis);
+    }
+  }
+
+  /** Resets every counter. */
+  private void clear() {
+    attackCount = 0;
+    Arrays.fill(hourlyCounts, 0);
+    Arrays.fill(slotHours, Long.MIN_VALUE);
+    userAgents =
+        new WindowedHeavyHitters(
+            USER_AGENT_WINDOW.toMillis(), 7, SKETCH_WIDTH, USER_AGENT_CANDIDATES);
+  }
+}
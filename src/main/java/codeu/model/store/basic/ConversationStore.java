@@ -15,18 +15,47 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Conversation;
+import codeu.model.data.Message;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * <p>Conversations are bumped from the background indexing thread as well as from request
+ * threads, so the methods that touch the hot ranking are synchronized.
  */
 public class ConversationStore {
 
+  /** How long it takes for a message's contribution to a Conversation's hotness to halve. */
+  static final Duration HOT_HALF_LIFE = Duration.ofHours(6);
+
+  /** The decay rate of hotness, per second. */
+  private static final double DECAY_PER_SECOND = Math.log(2) / HOT_HALF_LIFE.getSeconds();
+
+  /**
+   * Orders hot entries from hottest to coldest. Ties are broken by ID so that distinct
+   * Conversations never compare equal.
+   */
+  private static final Comparator<HotEntry> HOTTEST_FIRST =
+      Comparator.comparingDouble((HotEntry entry) -> entry.score)
+          .reversed()
+          .thenComparing(entry -> entry.conversation.getId());
+
   /** Singleton instance of ConversationStore. */
   private static ConversationStore instance;
 
@@ -59,10 +88,21 @@ public class ConversationStore {
   /** The in-memory list of Conversations. */
   private List<Conversation> conversations;
 
+  /** The hot entry of every Conversation, by Conversation ID. */
+  private Map<UUID, HotEntry> hotEntries;
+
+  /** Every hot entry, hottest first. */
+  private TreeSet<HotEntry> hotRanking;
+
+  /** Version of the conversation lists, bumped whenever a Conversation is added, removed or bumped. */
+  private final AtomicLong version = new AtomicLong();
+
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private ConversationStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
     conversations = new ArrayList<>();
+    hotEntries = new HashMap<>();
+    hotRanking = new TreeSet<>(HOTTEST_FIRST);
   }
 
 /** Access the current set of conversations known to the application. */
@@ -72,12 +112,16 @@ public class ConversationStore {
 
   /** Add a new conversation to the current set of conversations known to the application. */
   public void addConversation(Conversation conversation) {
-    conversations.add(conversation);
+    synchronized (this) {
+      conversations.add(conversation);
+      bump(conversation, conversation.getCreationTime());
+      version.incrementAndGet();
+    }
     persistentStorageAgent.writeThrough(conversation);
   }
 
   /** Access Conversation by UUID. */
-  public Conversation getConversation(UUID conversationId) {
+  public synchronized Conversation getConversation(UUID conversationId) {
     for (Conversation conversation : conversations) {
       if (conversation.getId().equals(conversationId)) {
         return conversation;
@@ -88,12 +132,19 @@ public class ConversationStore {
 
   /** Deletes a conversation from the current set of conversations known to the application. */
   public void deleteConversation(Conversation conversation) {
-    conversations.remove(conversation);
+    synchronized (this) {
+      conversations.remove(conversation);
+      HotEntry entry = hotEntries.remove(conversation.getId());
+      if (entry != null) {
+        hotRanking.remove(entry);
+      }
+      version.incrementAndGet();
+    }
     persistentStorageAgent.deleteThrough(conversation);
   }
 
   /** Check whether a Conversation title is already known to the application. */
-  public boolean isTitleTaken(String title) {
+  public synchronized boolean isTitleTaken(String title) {
     // This approach will be pretty slow if we have many Conversations.
     for (Conversation conversation : conversations) {
       if (conversation.getTitle().equals(title)) {
@@ -104,7 +155,7 @@ public class ConversationStore {
   }
 
   /** Find and return the Conversation with the given title. */
-  public Conversation getConversationWithTitle(String title) {
+  public synchronized Conversation getConversationWithTitle(String title) {
     for (Conversation conversation : conversations) {
       if (conversation.getTitle().equals(title)) {
         return conversation;
@@ -114,12 +165,110 @@ public class ConversationStore {
   }
 
   /** Sets the List of Conversations stored by this ConversationStore. */
-  public void setConversations(List<Conversation> conversations) {
+  public synchronized void setConversations(List<Conversation> conversations) {
     this.conversations = conversations;
+    hotEntries.clear();
+    hotRanking.clear();
+    for (Conversation conversation : conversations) {
+      bump(conversation, conversation.getCreationTime());
+    }
+  }
+
+  /**
+   * Records activity in a Conversation at the given time, making it hotter. Unknown Conversations
+   * are ignored.
+   */
+  public synchronized void bumpConversation(UUID conversationId, Instant time) {
+    HotEntry entry = hotEntries.get(conversationId);
+    if (entry != null) {
+      bump(entry.conversation, time);
+      version.incrementAndGet();
+    }
+  }
+
+  /** Returns the version of the conversation lists, so pages showing them can be cached. */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Replays the given Messages into the hot ranking. This should only be called once, when the
+   * data is loaded from Datastore.
+   */
+  public synchronized void rebuildHotRanking(List<Message> messages) {
+    // Edits are stored as later copies of the same message; only count each message once.
+    Set<UUID> seenMessageIds = new HashSet<>();
+    for (Message message : messages) {
+      HotEntry entry = hotEntries.get(message.getConversationId());
+      if (entry != null && seenMessageIds.add(message.getId())) {
+        entry.score = addScores(entry.score, logWeight(message.getCreationTime()));
+      }
+    }
+    hotRanking.clear();
+    hotRanking.addAll(hotEntries.values());
+  }
+
+  /**
+   * Returns up to {@code limit} Conversations, hottest first, skipping the {@code offset} hottest.
+   * The ranking is kept sorted as Conversations are bumped, so reads never re-sort.
+   */
+  public synchronized List<Conversation> getHotConversations(int offset, int limit) {
+    List<Conversation> page = new ArrayList<>(Math.min(limit, hotRanking.size()));
+    Iterator<HotEntry> iterator = hotRanking.iterator();
+    for (int i = 0; i < offset && iterator.hasNext(); i++) {
+      iterator.next();
+    }
+    while (page.size() < limit && iterator.hasNext()) {
+      page.add(iterator.next().conversation);
+    }
+    return page;
+  }
+
+  /**
+   * Adds the weight of one event at {@code time} to a Conversation's score and moves it to its new
+   * place in the ranking.
+   */
+  private void bump(Conversation conversation, Instant time) {
+    HotEntry entry = hotEntries.get(conversation.getId());
+    if (entry == null) {
+      entry = new HotEntry(conversation, logWeight(time));
+      hotEntries.put(conversation.getId(), entry);
+    } else {
+      hotRanking.remove(entry);
+      entry.score = addScores(entry.score, logWeight(time));
+    }
+    hotRanking.add(entry);
+  }
+
+  /**
+   * Returns the log of an event's weight. Weights grow exponentially with time instead of old
+   * scores shrinking, which orders Conversations the same way as decaying every score but means
+   * stored scores never change just because time passes. Keeping them as logarithms stops the
+   * weights from overflowing.
+   */
+  private static double logWeight(Instant time) {
+    return DECAY_PER_SECOND * time.getEpochSecond();
+  }
+
+  /** Returns log(e^a + e^b) without overflowing. */
+  private static double addScores(double a, double b) {
+    double max = Math.max(a, b);
+    return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+  }
+
+  /** A Conversation and the log of its hotness. */
+  private static class HotEntry {
+    private final Conversation conversation;
+    private double score;
+
+    private HotEntry(Conversation conversation, double score) {
+      this.conversation = conversation;
+      this.score = score;
+    }
   }
 
   /** Returns the amount of conversations currently in the database. */
-  public int getConversationAmount() {
+  public synchronized int getConversationAmount() {
     return conversations.size();
   }
 }
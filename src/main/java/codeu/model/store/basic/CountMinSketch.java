@@ -0,0 +1,83 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch over Strings: a fixed grid of counters that estimates how many times each
+ * String was added. Estimates can be too high when Strings collide, but never too low, and memory
+ * stays the same no matter how many distinct Strings are added. Adding and estimating do not
+ * allocate.
+ */
+class CountMinSketch {
+
+  /** Seeds that give each row of the sketch its own hash function. */
+  private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+  private final int width;
+
+  /** The counters, one row of {@code width} counters per seed. */
+  private final int[] counts;
+
+  /** Constructs an empty sketch. {@code width} must be a power of two. */
+  CountMinSketch(int width) {
+    this.width = width;
+    counts = new int[SEEDS.length * width];
+  }
+
+  /** Returns the number of rows in the sketch. */
+  static int depth() {
+    return SEEDS.length;
+  }
+
+  /** Counts one more occurrence of {@code key}. */
+  void add(String key) {
+    int hash = key.hashCode();
+    for (int row = 0; row < SEEDS.length; row++) {
+      counts[index(row, hash)]++;
+    }
+  }
+
+  /** Returns the counter that {@code key} maps to in the given row. */
+  int count(int row, String key) {
+    return counts[index(row, key.hashCode())];
+  }
+
+  /** Returns an upper bound on how many times {@code key} was added. */
+  int estimate(String key) {
+    int hash = key.hashCode();
+    int estimate = Integer.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      estimate = Math.min(estimate, counts[index(row, hash)]);
+    }
+    return estimate;
+  }
+
+  /** Resets every counter to zero. */
+  void clear() {
+    Arrays.fill(counts, 0);
+  }
+
+  private int index(int row, int hash) {
+    // Murmur3 finalizer, so nearby hash codes land in unrelated columns.
+    int h = hash ^ SEEDS[row];
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return row * width + (h & (width - 1));
+  }
+}
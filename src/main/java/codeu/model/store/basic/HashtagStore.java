@@ -2,12 +2,14 @@ package codeu.model.store.basic;
 
 import codeu.model.data.Hashtag;
 import codeu.model.store.persistence.PersistentStorageAgent;
-import java.util.ArrayList;
+import codeu.model.store.persistence.UnitOfWork;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.Comparator;
-import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
@@ -19,8 +21,11 @@ public class HashtagStore {
   /** Singleton instance of HashtagStore. */
   private static HashtagStore instance;
   
-  /** The in-memory list of Users. */
-  private List<Hashtag> hashtags;
+  /** The in-memory Hashtags, indexed by name. */
+  private Map<String, Hashtag> hashtags;
+
+  /** Version of each Hashtag's postings, bumped whenever they change. */
+  private final Map<String, Long> versions = new ConcurrentHashMap<>();
   
   /**
    * Returns the singleton instance of HashtagStore that should be shared between all servlet classes.
@@ -50,7 +55,7 @@ public class HashtagStore {
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private HashtagStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    hashtags = new ArrayList<>();
+    hashtags = new HashMap<>();
   }
 
   /**
@@ -59,13 +64,7 @@ public class HashtagStore {
    * @return null if there is not hashtag with that name.
    */
   public Hashtag getHashtag(String name) {
-    // This approach will be pretty slow if we have many Hashtags.
-    for (Hashtag hashtag : hashtags) {
-      if (hashtag.getName().equals(name)) {
-        return hashtag;
-      }
-    }
-    return null;
+    return hashtags.get(name);
   }
 
   /**
@@ -73,12 +72,28 @@ public class HashtagStore {
    * to add a new hashtag, not to update an existing hashtag.
    */
   public void addHashtag(Hashtag hashtag) {
+    if (insert(hashtag)) {
+      persistentStorageAgent.writeThrough(hashtag);
+    }
+  }
+
+  /**
+   * Add a new hashtag, to be written to Datastore when the given UnitOfWork is committed.
+   */
+  public void addHashtag(Hashtag hashtag, UnitOfWork unit) {
+    if (insert(hashtag)) {
+      unit.add(hashtag);
+    }
+  }
+
+  private boolean insert(Hashtag hashtag) {
     if (isPresent(hashtag.getName())) {
-      return;
+      return false;
     }
-    
-    hashtags.add(hashtag);
-    persistentStorageAgent.writeThrough(hashtag);
+
+    hashtags.put(hashtag.getName(), hashtag);
+    versions.merge(hashtag.getName(), 1L, Long::sum);
+    return true;
   }
 
   /**
@@ -86,18 +101,41 @@ public class HashtagStore {
    */
   public void updateHashtag(Hashtag hashtag) {
     if (isPresent(hashtag.getName())) {
+      versions.merge(hashtag.getName(), 1L, Long::sum);
       persistentStorageAgent.writeThrough(hashtag);
     }
   }
 
+  /**
+   * Update an existing Hashtag, to be written to Datastore when the given UnitOfWork is committed.
+   */
+  public void updateHashtag(Hashtag hashtag, UnitOfWork unit) {
+    if (isPresent(hashtag.getName())) {
+      versions.merge(hashtag.getName(), 1L, Long::sum);
+      unit.add(hashtag);
+    }
+  }
+
+  /** Returns the version of the named Hashtag's postings, so its page can be cached. */
+  public long getVersion(String name) {
+    return versions.getOrDefault(name, 0L);
+  }
+
+  /**
+   * Removes deleted messages from an existing Hashtag. The Hashtag is written to Datastore when the
+   * given UnitOfWork is committed.
+   */
+  public void removeMessageIds(Hashtag hashtag, Collection<UUID> messageIds, UnitOfWork unit) {
+    if (Collections.disjoint(hashtag.getMessageIds(), messageIds)) {
+      return;
+    }
+    hashtag.removeMessageIds(messageIds);
+    updateHashtag(hashtag, unit);
+  }
+
   /** Return true if the given Hashtag exists. */
   public boolean isPresent(String name) {
-    for (Hashtag hashtag : hashtags) {
-      if (hashtag.getName().equals(name)) {
-        return true;
-      }
-    }
-    return false;
+    return hashtags.containsKey(name);
   }
 
   /**
@@ -105,7 +143,10 @@ public class HashtagStore {
    * is loaded from Datastore.
    */
   public void setHashtags(List<Hashtag> hashtags) {
-    this.hashtags = hashtags;
+    this.hashtags = new HashMap<>();
+    for (Hashtag hashtag : hashtags) {
+      this.hashtags.put(hashtag.getName(), hashtag);
+    }
   }
 }
 
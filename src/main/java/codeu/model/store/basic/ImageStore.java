@@ -0,0 +1,357 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import codeu.model.store.persistence.ImageBackend;
+import codeu.model.store.persistence.LocalImageBackend;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store class for uploaded images, keyed by the hash of their bytes. Uploading an image that is
+ * already stored only adds a reference to it, and an image is deleted once nothing refers to it
+ * any more. Chat messages and profile pictures refer to images by hash.
+ *
+ * <p>Reference counts are derived data: they are rebuilt from the loaded Users and Messages when
+ * the server starts. Image bytes are read from the ImageBackend on first use, and only the
+ * most recently used images are kept in memory, up to CACHE_BYTES. It's a singleton so all
+ * servlet classes can access the same instance.
+ *
+ * <p>The bytes are kept in Datastore, or in a local directory if the system property
+ * LocalImageBackend.DIRECTORY_PROPERTY is set.
+ */
+public class ImageStore {
+
+  /** The largest image accepted, in bytes. */
+  public static final int MAX_SIZE = 5 * 1024 * 1024;
+
+  /** The raster types served back as uploaded; anything else, such as SVG, could carry script. */
+  public static final Set<String> SAFE_TYPES =
+      Collections.unmodifiableSet(
+          new HashSet<>(Arrays.asList("image/jpeg", "image/png", "image/gif", "image/webp")));
+
+  /** The most image bytes kept in memory. */
+  static final long CACHE_BYTES = 32 * 1024 * 1024;
+
+  /** Singleton instance of ImageStore. */
+  private static ImageStore instance;
+
+  /**
+   * Returns the singleton instance of ImageStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static ImageStore getInstance() {
+    if (instance == null) {
+      String directory = System.getProperty(LocalImageBackend.DIRECTORY_PROPERTY);
+      instance =
+          new ImageStore(
+              directory == null
+                  ? PersistentStorageAgent.getInstance()
+                  : new LocalImageBackend(Paths.get(directory)),
+              ImageVariantStore.getInstance());
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for ImageBackend.
+   *
+   * @param imageBackend a mock used for testing
+   */
+  public static ImageStore getTestInstance(ImageBackend imageBackend) {
+    return new ImageStore(imageBackend, null);
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for ImageBackend and the
+   * ImageVariantStore whose variants are removed along with deleted images.
+   *
+   * @param imageBackend a mock used for testing
+   * @param imageVariantStore the ImageVariantStore holding the resized images
+   */
+  public static ImageStore getTestInstance(
+      ImageBackend imageBackend, ImageVariantStore imageVariantStore) {
+    return new ImageStore(imageBackend, imageVariantStore);
+  }
+
+  /** The ImageBackend responsible for loading and saving image bytes. */
+  private ImageBackend imageBackend;
+
+  /** Holds the resized copies of images, which go when the image does; null if there are none. */
+  private final ImageVariantStore imageVariantStore;
+
+  /** How many messages and profiles refer to each stored image, by hash. */
+  private final Map<String, Integer> referenceCounts;
+
+  /** How many uploads are writing each image that isn't counted yet, by hash. */
+  private final Map<String, Integer> pendingWrites;
+
+  /** Recently used images by hash, least recently used first. */
+  private final LinkedHashMap<String, StoredImage> cache;
+
+  /** The total size of the images in the cache. */
+  private long cachedBytes;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private ImageStore(ImageBackend imageBackend, ImageVariantStore imageVariantStore) {
+    this.imageBackend = imageBackend;
+    this.imageVariantStore = imageVariantStore;
+    referenceCounts = new HashMap<>();
+    pendingWrites = new HashMap<>();
+    cache = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Sets the reference counts from the images the loaded Users and Messages refer to, and deletes
+   * stored images that nothing refers to, along with their variants. This should only be called
+   * once, when the server starts, after the variant widths have been loaded.
+   *
+   * @param references the hash of every image reference, once per reference
+   * @throws PersistentDataStoreException if the stored images could not be listed
+   */
+  public synchronized void rebuildReferences(Collection<String> references)
+      throws PersistentDataStoreException {
+    Set<String> storedHashes = new HashSet<>(imageBackend.loadImageHashes());
+    referenceCounts.clear();
+    for (String hash : references) {
+      referenceCounts.merge(hash, 1, Integer::sum);
+    }
+    for (String hash : storedHashes) {
+      if (!referenceCounts.containsKey(hash)) {
+        imageBackend.deleteImage(hash);
+      }
+    }
+    // A reference to an image that was never stored can't be served; don't count it.
+    referenceCounts.keySet().retainAll(storedHashes);
+    if (imageVariantStore != null) {
+      imageVariantStore.retainSources(referenceCounts.keySet());
+    }
+  }
+
+  /**
+   * Adds a reference to the given image and returns the stored copy. The image is only written to
+   * Datastore if no identical image is stored yet, and the reference is only counted once the
+   * write has succeeded.
+   */
+  public StoredImage addImage(StoredImage image) {
+    String hash = image.getHash();
+    synchronized (this) {
+      if (referenceCounts.containsKey(hash)) {
+        referenceCounts.merge(hash, 1, Integer::sum);
+        return cachedCopy(image);
+      }
+      pendingWrites.merge(hash, 1, Integer::sum);
+    }
+    // Write outside the lock so one large upload doesn't hold up every other request.
+    boolean written = false;
+    try {
+      imageBackend.writeThrough(image);
+      written = true;
+    } finally {
+      synchronized (this) {
+        pendingWrites.computeIfPresent(hash, (key, writers) -> writers > 1 ? writers - 1 : null);
+        if (written) {
+          referenceCounts.merge(hash, 1, Integer::sum);
+        }
+      }
+    }
+    synchronized (this) {
+      return cachedCopy(image);
+    }
+  }
+
+  /** Returns the cached copy of an image, caching the given one if there is none. */
+  private StoredImage cachedCopy(StoredImage image) {
+    StoredImage cached = cache.get(image.getHash());
+    if (cached != null) {
+      return cached;
+    }
+    cache(image);
+    return image;
+  }
+
+  /** Adds a reference to the image with the given bytes; see addImage(StoredImage). */
+  public StoredImage addImage(byte[] content, String contentType) {
+    return addImage(StoredImage.of(content, contentType));
+  }
+
+  /**
+   * Streams an uploaded image of the given size into the ImageBackend, adds a reference to it and
+   * returns its hash. The upload goes to the backend a buffer at a time as it is read, so it is
+   * never held in memory whole. Its hash is only known once it has all been read; if an identical
+   * image is stored by then, the streamed copy is discarded and only the reference is added.
+   *
+   * @throws IllegalArgumentException if {@code size} is more than MAX_SIZE
+   * @throws IOException if the upload could not be read or wasn't {@code size} bytes long
+   */
+  public String addImage(InputStream content, long size, String contentType)
+      throws IOException {
+    if (size < 0 || size > MAX_SIZE) {
+      throw new IllegalArgumentException("Image of " + size + " bytes is too large");
+    }
+    // Stream outside the lock so one large upload doesn't hold up every other request.
+    StagedImage staged = imageBackend.stageImage(content, (int) size, contentType);
+    String hash = staged.getHash();
+    boolean alreadyStored;
+    synchronized (this) {
+      alreadyStored = referenceCounts.containsKey(hash);
+      if (alreadyStored) {
+        referenceCounts.merge(hash, 1, Integer::sum);
+      } else {
+        pendingWrites.merge(hash, 1, Integer::sum);
+      }
+    }
+    if (alreadyStored) {
+      discard(staged);
+      return hash;
+    }
+    boolean written = false;
+    try {
+      imageBackend.commitImage(staged);
+      written = true;
+    } finally {
+      synchronized (this) {
+        pendingWrites.computeIfPresent(hash, (key, writers) -> writers > 1 ? writers - 1 : null);
+        if (written) {
+          referenceCounts.merge(hash, 1, Integer::sum);
+        }
+      }
+      if (!written) {
+        discard(staged);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Removes the bytes of an upload that won't be committed. A failure only leaves them behind
+   * until the backend clears out uncommitted uploads at the next startup, so it is only logged.
+   */
+  private void discard(StagedImage staged) {
+    try {
+      imageBackend.discardImage(staged);
+    } catch (RuntimeException e) {
+      System.err.println("Unable to discard upload of image " + staged.getHash() + ": " + e);
+    }
+  }
+
+  /**
+   * Returns the bytes of the image with the given hash, or null if there is none.
+   *
+   * @throws PersistentDataStoreException if the image could not be loaded from the backend
+   */
+  public byte[] getImageContent(String hash) throws PersistentDataStoreException {
+    StoredImage image = getImage(hash);
+    return image == null ? null : image.getContent();
+  }
+
+  /**
+   * Removes a reference to the image with the given hash. Once nothing refers to it, the image and
+   * its variants are deleted.
+   */
+  public synchronized void releaseImage(String hash) {
+    Integer references = referenceCounts.get(hash);
+    if (references == null) {
+      return;
+    }
+    if (references > 1) {
+      referenceCounts.put(hash, references - 1);
+      return;
+    }
+    referenceCounts.remove(hash);
+    StoredImage cached = cache.remove(hash);
+    if (cached != null) {
+      cachedBytes -= cached.getContent().length;
+    }
+    if (pendingWrites.containsKey(hash)) {
+      // Another upload is writing the same bytes and will count its own reference.
+      return;
+    }
+    imageBackend.deleteImage(hash);
+    if (imageVariantStore != null) {
+      imageVariantStore.removeVariants(hash);
+    }
+  }
+
+  /** Returns how many messages and profiles refer to the image with the given hash. */
+  public synchronized int getReferenceCount(String hash) {
+    return referenceCounts.getOrDefault(hash, 0);
+  }
+
+  /**
+   * Returns the image with the given hash, or null if there is none.
+   *
+   * @throws PersistentDataStoreException if the image could not be loaded from the backend
+   */
+  public StoredImage getImage(String hash) throws PersistentDataStoreException {
+    synchronized (this) {
+      if (!referenceCounts.containsKey(hash)) {
+        return null;
+      }
+      StoredImage cached = cache.get(hash);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    // Load outside the lock so one slow read doesn't hold up every other request.
+    StoredImage image = imageBackend.loadImage(hash);
+    if (image != null) {
+      synchronized (this) {
+        if (!cache.containsKey(hash)) {
+          cache(image);
+        }
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Returns the local file holding the image with the given hash, or null if there is none or the
+   * images aren't kept in local files. Reading the file skips the in-memory cache.
+   */
+  public StoredImageFile getImageFile(String hash) {
+    synchronized (this) {
+      if (!referenceCounts.containsKey(hash)) {
+        return null;
+      }
+    }
+    return imageBackend.getImageFile(hash);
+  }
+
+  /** Puts an image in the cache, evicting the least recently used ones to stay in budget. */
+  private void cache(StoredImage image) {
+    cache.put(image.getHash(), image);
+    cachedBytes += image.getContent().length;
+    Iterator<StoredImage> eldest = cache.values().iterator();
+    while (cachedBytes > CACHE_BYTES && eldest.hasNext()) {
+      cachedBytes -= eldest.next().getContent().length;
+      eldest.remove();
+    }
+  }
+}
@@ -0,0 +1,374 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import codeu.model.data.ImageVariant;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Store class for resized copies of uploaded images. When an image is uploaded, processImage()
+ * hands it to a small pool of background workers that decode it and write a JPEG variant for each
+ * of WIDTHS narrower than the original. Pages then link to the variant closest to the size they
+ * display the image at, and fall back to the original until the variants are ready.
+ *
+ * <p>Which variants exist is kept in memory and reloaded at startup; the variant bytes themselves
+ * are read from PersistentStorageAgent on first use and only the most recently used are kept. It's
+ * a singleton so all servlet classes can access the same instance.
+ */
+public class ImageVariantStore {
+
+  /** The widths variants are made at, in pixels. */
+  public static final int[] WIDTHS = {160, 320, 640};
+
+  /** The number of worker threads resizing images. */
+  static final int WORKER_COUNT =
+      Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+
+  /** The most uploads waiting to be resized; further uploads are not resized at all. */
+  static final int QUEUE_CAPACITY = 64;
+
+  /** The most variants kept in memory. */
+  static final int CACHE_SIZE = 200;
+
+  /**
+   * The most pixels a source image may declare. Larger images aren't resized, since decoding them
+   * would take too long even when subsampled.
+   */
+  static final long MAX_SOURCE_PIXELS = 64_000_000;
+
+  /** The most pixels decoded into memory; larger sources are subsampled while they are read. */
+  static final long MAX_DECODED_PIXELS = 4_000_000;
+
+  /** JPEG quality of the variants. */
+  private static final float JPEG_QUALITY = 0.8f;
+
+  /** Singleton instance of ImageVariantStore. */
+  private static ImageVariantStore instance;
+
+  /**
+   * Returns the singleton instance of ImageVariantStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static ImageVariantStore getInstance() {
+    if (instance == null) {
+      instance = new ImageVariantStore(PersistentStorageAgent.getInstance(), newWorkerPool());
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a mock for PersistentStorageAgent and an
+   * Executor to run the resizing on.
+   *
+   * @param persistentStorageAgent a mock used for testing
+   * @param executor runs the resizing work, e.g. on the calling thread
+   */
+  public static ImageVariantStore getTestInstance(
+      PersistentStorageAgent persistentStorageAgent, Executor executor) {
+    return new ImageVariantStore(persistentStorageAgent, executor);
+  }
+
+  /**
+   * The PersistentStorageAgent responsible for loading variants from and saving variants to
+   * Datastore.
+   */
+  private PersistentStorageAgent persistentStorageAgent;
+
+  /** Runs the resizing work. */
+  private final Executor executor;
+
+  /** The widths of the variants that exist, by source image. */
+  private final Map<String, NavigableSet<Integer>> widths;
+
+  /** Version bumped whenever a new variant becomes available, so pages can link to it. */
+  private final AtomicLong version = new AtomicLong();
+
+  /** Recently used variants by source image and width, least recently used first. */
+  private final Map<String, ImageVariant> variants;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private ImageVariantStore(PersistentStorageAgent persistentStorageAgent, Executor executor) {
+    this.persistentStorageAgent = persistentStorageAgent;
+    this.executor = executor;
+    widths = new ConcurrentHashMap<>();
+    variants =
+        new LinkedHashMap<String, ImageVariant>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, ImageVariant> eldest) {
+            return size() > CACHE_SIZE;
+          }
+        };
+  }
+
+  private static Executor newWorkerPool() {
+    // Workers only ever draw into off-screen images, so they don't need a display.
+    System.setProperty("java.awt.headless", "true");
+    AtomicInteger threadCount = new AtomicInteger();
+    return new ThreadPoolExecutor(
+        WORKER_COUNT,
+        WORKER_COUNT,
+        0,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        runnable -> {
+          Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** Sets the widths of the variants that exist, by source image. Called when the server starts. */
+  public void setVariantWidths(Map<String, List<Integer>> variantWidths) {
+    widths.clear();
+    for (Map.Entry<String, List<Integer>> entry : variantWidths.entrySet()) {
+      widths.put(entry.getKey(), new ConcurrentSkipListSet<>(entry.getValue()));
+    }
+  }
+
+  /**
+   * Stops advertising the variants of a deleted image and deletes them from Datastore, so pages
+   * fall back to the original, which is gone too.
+   */
+  public void removeVariants(String sourceId) {
+    NavigableSet<Integer> removed = widths.remove(sourceId);
+    if (removed == null) {
+      return;
+    }
+    version.incrementAndGet();
+    synchronized (variants) {
+      for (int width : removed) {
+        variants.remove(sourceId + "@" + width);
+      }
+    }
+    persistentStorageAgent.deleteImageVariants(sourceId, removed);
+  }
+
+  /**
+   * Removes the variants of every source image not in {@code sourceIds}. Called when the server
+   * starts, once the stored images are known.
+   */
+  public void retainSources(Set<String> sourceIds) {
+    for (String sourceId : new ArrayList<>(widths.keySet())) {
+      if (!sourceIds.contains(sourceId)) {
+        removeVariants(sourceId);
+      }
+    }
+  }
+
+  /** Returns the version that changes whenever a new variant becomes available. */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Returns the width of the smallest variant of the given image that is at least {@code
+   * displayWidth} wide, or -1 if there is none and the original should be used.
+   */
+  public int getVariantWidth(String sourceId, int displayWidth) {
+    NavigableSet<Integer> available = widths.get(sourceId);
+    if (available == null) {
+      return -1;
+    }
+    Integer width = available.ceiling(displayWidth);
+    return width == null ? -1 : width;
+  }
+
+  /**
+   * Returns the variant of the given image at the given width, or null if there is none.
+   *
+   * @throws PersistentDataStoreException if the variant could not be loaded from Datastore
+   */
+  public ImageVariant getVariant(String sourceId, int width) throws PersistentDataStoreException {
+    NavigableSet<Integer> available = widths.get(sourceId);
+    if (available == null || !available.contains(width)) {
+      return null;
+    }
+    String key = sourceId + "@" + width;
+    synchronized (variants) {
+      ImageVariant variant = variants.get(key);
+      if (variant != null) {
+        return variant;
+      }
+    }
+    ImageVariant variant = persistentStorageAgent.loadImageVariant(sourceId, width);
+    if (variant != null) {
+      synchronized (variants) {
+        variants.put(key, variant);
+      }
+    }
+    return variant;
+  }
+
+  /**
+   * Queues an uploaded image to have its variants made in the background. Returns false if the
+   * queue is full, in which case the image is only ever shown at its original size.
+   *
+   * @param sourceId the ID pages use to refer to the image
+   * @param original the uploaded image bytes
+   */
+  public boolean processImage(String sourceId, byte[] original) {
+    return processImage(sourceId, () -> original);
+  }
+
+  /**
+   * Queues an uploaded image to have its variants made in the background, loading its bytes only
+   * when a worker gets to it. Queued images then cost no memory, and only the images being resized
+   * are held in memory at once. Returns false if the queue is full.
+   *
+   * @param sourceId the ID pages use to refer to the image
+   * @param original loads the image bytes, or returns null if the image is gone
+   */
+  public boolean processImage(String sourceId, Callable<byte[]> original) {
+    if (widths.containsKey(sourceId)) {
+      // The same image was uploaded before and already has its variants.
+      return true;
+    }
+    try {
+      executor.execute(() -> makeVariants(sourceId, original));
+      return true;
+    } catch (RejectedExecutionException e) {
+      System.err.println("Image queue full, not resizing " + sourceId);
+      return false;
+    }
+  }
+
+  private void makeVariants(String sourceId, Callable<byte[]> source) {
+    try {
+      byte[] original = source.call();
+      if (original == null) {
+        // Deleted before it could be resized.
+        return;
+      }
+      BufferedImage image = decode(original);
+      if (image == null) {
+        // Not an image ImageIO can read, or too large to resize; it's shown as uploaded.
+        return;
+      }
+      for (int width : WIDTHS) {
+        if (width >= image.getWidth()) {
+          break;
+        }
+        byte[] content = encodeJpeg(resize(image, width));
+        persistentStorageAgent.writeThrough(
+            new ImageVariant(sourceId, width, content, "image/jpeg"));
+        // Only advertise the variant once it's saved, so a page never links to a missing one.
+        widths.computeIfAbsent(sourceId, id -> new ConcurrentSkipListSet<>()).add(width);
+        version.incrementAndGet();
+      }
+    } catch (Exception e) {
+      System.err.println("Unable to resize image " + sourceId + ": " + e);
+    }
+  }
+
+  /**
+   * Decodes an uploaded image, reading every n-th pixel of every n-th row if that keeps it within
+   * MAX_DECODED_PIXELS. The size is read from the header first, so an image that declares more
+   * than MAX_SOURCE_PIXELS is never decoded. Returns null for those and for anything that isn't
+   * an image ImageIO can read.
+   */
+  static BufferedImage decode(byte[] original) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+        if (pixels > MAX_SOURCE_PIXELS) {
+          return null;
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        int step = (int) Math.ceil(Math.sqrt((double) pixels / MAX_DECODED_PIXELS));
+        if (step > 1) {
+          param.setSourceSubsampling(step, step, 0, 0);
+        }
+        return reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /** Scales the image down to the given width, keeping its aspect ratio. */
+  static BufferedImage resize(BufferedImage image, int width) {
+    int height =
+        Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+    // JPEG has no alpha, so draw onto an opaque white background.
+    BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = resized.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+    } finally {
+      graphics.dispose();
+    }
+    return resized;
+  }
+
+  private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    if (!writers.hasNext()) {
+      throw new IOException("No JPEG writer available");
+    }
+    ImageWriter writer = writers.next();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+      writer.setOutput(out);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -15,26 +15,32 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Mention;
+import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.Comparator;
-import java.util.Collections;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * <p>Mentions are indexed by the ID of the mentioned User, so reading a user's inbox or unread
+ * count never scans the other users' mentions.
  */
 public class MentionStore {
 
   /** Singleton instance of MentionStore. */
   private static MentionStore instance;
 
-  /** The in-memory list of Mentions. */
-  private List<Mention> mentions;
+  /** The in-memory Mentions, keyed by the ID of the mentioned User. */
+  private Map<UUID, Mention> mentions;
 
   /**
    * Returns the singleton instance of MentionStore that should be shared between all servlet classes.
@@ -64,55 +70,110 @@ public class MentionStore {
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private MentionStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    mentions = new ArrayList<>();
+    mentions = new HashMap<>();
   }
 
   /**
-   * Access the Mention object with the given name.
-   * @return null if username does not match any existing Mention
+   * Access the Mention inbox of the User with the given ID.
+   * @return null if the User has never been mentioned
    */
-  public Mention getMention(String name) {
-    // This approach will be pretty slow if we have many mentions.
-    for (Mention mention : mentions) {
-      if (mention.getName().equals(name)) {
-        return mention;
-      }
+  public Mention getMention(UUID userId) {
+    return mentions.get(userId);
+  }
+
+  /**
+   * Records that the given message mentioned the given User. The message is added to the end of
+   * the User's inbox and counted as unread.
+   */
+  public void addMention(UUID messageId, User mentionedUser) {
+    persistentStorageAgent.writeThrough(insert(messageId, mentionedUser));
+  }
+
+  /**
+   * Records that the given message mentioned the given User. The updated inbox is written to
+   * Datastore when the given UnitOfWork is committed.
+   */
+  public void addMention(UUID messageId, User mentionedUser, UnitOfWork unit) {
+    unit.add(insert(messageId, mentionedUser));
+  }
+
+  private Mention insert(UUID messageId, User mentionedUser) {
+    Mention mention = mentions.get(mentionedUser.getId());
+    if (mention == null) {
+      mention = new Mention(mentionedUser.getId(), mentionedUser.getName());
+      mentions.put(mentionedUser.getId(), mention);
     }
-    return null;
+    mention.addMessageId(messageId);
+    return mention;
   }
 
-  /** Adds new mention to current set of mentions.*/
-  public void addMention(Mention mention) {
-    if (isPresent(mention.getName())) {
-      return;
+  /**
+   * Returns up to {@code limit} message ids from the User's inbox that come before {@code cursor},
+   * newest first.
+   *
+   * @param cursor position in the inbox to start from (exclusive); use getMentionCount() for the
+   *     newest page
+   */
+  public List<UUID> getMentionedMessageIdsBefore(UUID userId, int cursor, int limit) {
+    List<UUID> page = new ArrayList<>();
+    Mention mention = mentions.get(userId);
+    if (mention == null) {
+      return page;
+    }
+    List<UUID> messageIds = mention.getMessageIds();
+    int end = Math.min(Math.max(cursor, 0), messageIds.size());
+    for (int i = end - 1; i >= 0 && page.size() < limit; i--) {
+      page.add(messageIds.get(i));
     }
-    mentions.add(mention);
-    persistentStorageAgent.writeThrough(mention);
+    return page;
   }
 
-  /** Updates existing mention. */ 
-  public void updateMention(Mention mention) {
-    if (isPresent(mention.getName())) {
-      persistentStorageAgent.writeThrough(mention);
-    } 
-  } 
+  /** Returns how many messages have mentioned the User. */
+  public int getMentionCount(UUID userId) {
+    Mention mention = mentions.get(userId);
+    return mention == null ? 0 : mention.getMessageIds().size();
+  }
 
-  /** Return true if the given mention is known to the application. */
-  public boolean isPresent(String name) {
-    for (Mention mention : mentions) {
-      if (mention.getName().equals(name)) {
-        return true;
-      }
+  /** Returns how many mentions the User has not seen yet. */
+  public int getUnreadCount(UUID userId) {
+    Mention mention = mentions.get(userId);
+    return mention == null ? 0 : mention.getUnreadCount();
+  }
+
+  /**
+   * Removes deleted messages from the User's inbox. The updated inbox is written to Datastore when
+   * the given UnitOfWork is committed.
+   */
+  public void removeMessageIds(UUID userId, Collection<UUID> messageIds, UnitOfWork unit) {
+    Mention mention = mentions.get(userId);
+    if (mention != null && !Collections.disjoint(mention.getMessageIds(), messageIds)) {
+      mention.removeMessageIds(messageIds);
+      unit.add(mention);
+    }
+  }
+
+  /** Marks all of the User's mentions as seen. */
+  public void markRead(UUID userId) {
+    Mention mention = mentions.get(userId);
+    if (mention != null && mention.getUnreadCount() > 0) {
+      mention.markRead();
+      persistentStorageAgent.writeThrough(mention);
     }
-    return false;
+  }
+
+  /** Return true if the User with the given ID has been mentioned. */
+  public boolean isPresent(UUID userId) {
+    return mentions.containsKey(userId);
   }
 
   /**
-   * Sets the List of Users stored by this UserStore. This should only be called once, when the data
+   * Sets the Mentions stored by this MentionStore. This should only be called once, when the data
    * is loaded from Datastore.
    */
   public void setMentions(List<Mention> mentions) {
-    this.mentions = mentions;
+    this.mentions = new HashMap<>();
+    for (Mention mention : mentions) {
+      this.mentions.put(mention.getMentionedUserId(), mention);
+    }
   }
 }
-
@@ -18,13 +18,19 @@ import java.time.Instant;
 import java.util.stream.Collectors;
 import codeu.model.data.Message;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.TreeSet;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.HashSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
@@ -68,34 +74,120 @@ public class MessageStore {
   /** The in-memory list of Messages. */
   private List<Message> messages;
 
+  /**
+   * Index of the newest version of every Message and reply by ID. Edits are stored as later
+   * copies of the same Message, so the latest copy wins.
+   */
+  private Map<UUID, Message> messagesById;
+
+  /**
+   * Version of the messages in each Conversation, bumped on every write to that Conversation. Pages
+   * rendered from a Conversation can be cached until its version changes.
+   */
+  private final Map<UUID, Long> conversationVersions;
+
+  /** Version bumped whenever an existing Message is edited or deleted. */
+  private final AtomicLong changeVersion = new AtomicLong();
+
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private MessageStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
     messages = new ArrayList<>();
+    messagesById = new HashMap<>();
+    conversationVersions = new ConcurrentHashMap<>();
+  }
+
+  /** Returns the version of the messages in the given Conversation. */
+  public long getConversationVersion(UUID conversationId) {
+    return conversationVersions.getOrDefault(conversationId, 0L);
+  }
+
+  /** Returns the version that changes whenever an existing Message is edited or deleted. */
+  public long getChangeVersion() {
+    return changeVersion.get();
+  }
+
+  private void bumpConversationVersion(UUID conversationId) {
+    conversationVersions.merge(conversationId, 1L, Long::sum);
   }
 
   /** Add a new message to the current set of messages known to the application. */
   public void addMessage(Message message) {
-    messages.add(message);
+    insert(message);
     persistentStorageAgent.writeThrough(message);
   }
 
+  /**
+   * Add a new message to the current set of messages known to the application. It is written to
+   * Datastore when the given UnitOfWork is committed.
+   */
+  public void addMessage(Message message, UnitOfWork unit) {
+    insert(message);
+    unit.add(message);
+  }
+
+  private void insert(Message message) {
+    messages.add(message);
+    messagesById.put(message.getId(), message);
+    bumpConversationVersion(message.getConversationId());
+  }
+
   /** Access Message by UUID. */
   public Message getMessage(UUID messageId) {
-    for (Message message : messages) {
-      if (message.getId().equals(messageId)) {
-        return message;
-      }
-    }
-    return null;
+    return messagesById.get(messageId);
   }
 
-  /** Deletes a message from the current set of messages known to the application. */
+  /** Deletes a message, including all of its edited copies, from the current set of messages. */
   public void deleteMessage(Message message) {
-    messages.remove(message);
+    removeMessage(message);
     persistentStorageAgent.deleteThrough(message);
   }
 
+  /**
+   * Removes a message, including all of its edited copies and their replies, from the current set
+   * of messages without touching Datastore. Returns the removed copies, so what hangs off them can
+   * be cleaned up.
+   */
+  public List<Message> removeMessage(Message message) {
+    List<Message> removed = removeMessages(m -> m.getId().equals(message.getId()));
+    if (removed.isEmpty()) {
+      // Replies aren't in the list themselves, only in their parent.
+      messagesById.remove(message.getId());
+      removed.add(message);
+    }
+    bumpConversationVersion(message.getConversationId());
+    changeVersion.incrementAndGet();
+    return removed;
+  }
+
+  /**
+   * Removes every message in the given Conversation, with their replies, from the current set of
+   * messages without touching Datastore. Returns the removed messages.
+   */
+  public List<Message> removeMessagesInConversation(UUID conversationId) {
+    List<Message> removed = removeMessages(m -> m.getConversationId().equals(conversationId));
+    bumpConversationVersion(conversationId);
+    changeVersion.incrementAndGet();
+    return removed;
+  }
+
+  private List<Message> removeMessages(Predicate<Message> filter) {
+    List<Message> removed = new ArrayList<>();
+    messages.removeIf(
+        message -> {
+          if (!filter.test(message)) {
+            return false;
+          }
+          removed.add(message);
+          messagesById.remove(message.getId());
+          for (Message reply : message.getReplies()) {
+            messagesById.remove(reply.getId());
+          }
+          return true;
+        });
+    return removed;
+  }
+
   /** Access the current set of Messages within the given Conversation. */
   public List<Message> getMessagesInConversation(UUID conversationId) {
 
@@ -147,22 +239,18 @@ public class MessageStore {
   /** Sets the List of Messages stored by this MessageStore. */
   public void setMessages(List<Message> messages) {
     this.messages = messages;
-  }
-
-  /** Get message by its unique id */
-  public Message getMessageById(UUID id) {
+    messagesById = new HashMap<>();
     for (Message message : messages) {
-      if (message.getId().equals(id)) {
-        return message;
-      } else {
-        for (Message reply : message.getReplies()) {
-          if (reply.getId().equals(id)) {
-            return reply;
-          }
-        }
+      messagesById.put(message.getId(), message);
+      for (Message reply : message.getReplies()) {
+        messagesById.put(reply.getId(), reply);
       }
     }
-    return null;
+  }
+
+  /** Get message or reply by its unique id */
+  public Message getMessageById(UUID id) {
+    return messagesById.get(id);
   }
 
   /** Returns the size of the messages */
@@ -179,12 +267,27 @@ public class MessageStore {
                                         edit,
                                         Instant.now());
     messages.add(editedMessage);
+    messagesById.put(editedMessage.getId(), editedMessage);
+    bumpConversationVersion(editedMessage.getConversationId());
+    changeVersion.incrementAndGet();
     persistentStorageAgent.writeThrough(editedMessage);
   }
 
   /** Adds reply to parent message and persists. */
   public void reply(Message parent, Message reply) {
-    parent.addReply(reply);
+    insertReply(parent, reply);
     persistentStorageAgent.writeThrough(parent);
   }
+
+  /** Adds reply to parent message; both are written when the given UnitOfWork is committed. */
+  public void reply(Message parent, Message reply, UnitOfWork unit) {
+    insertReply(parent, reply);
+    unit.add(parent);
+  }
+
+  private void insertReply(Message parent, Message reply) {
+    parent.addReply(reply);
+    messagesById.put(reply.getId(), reply);
+    bumpConversationVersion(parent.getConversationId());
+  }
 }
\ No newline at end of file
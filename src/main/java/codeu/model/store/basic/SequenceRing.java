@@ -0,0 +1,97 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+/**
+ * Fixed-size ring of increasing sequence numbers. Once the ring is full, adding a new number
+ * overwrites the oldest one, so memory stays bounded no matter how many numbers are added.
+ */
+class SequenceRing {
+
+  private final int[] values;
+
+  /** Index in values of the oldest number. */
+  private int head;
+
+  /** How many slots of values are in use. */
+  private int size;
+
+  /** Constructs an empty SequenceRing that remembers the newest {@code capacity} numbers. */
+  SequenceRing(int capacity) {
+    values = new int[capacity];
+  }
+
+  /**
+   * Adds a number to the ring. Numbers must be added in increasing order, which is what keeps
+   * cursorBefore() a binary search.
+   */
+  void add(int value) {
+    if (size < values.length) {
+      values[(head + size) % values.length] = value;
+      size++;
+    } else {
+      values[head] = value;
+      head = (head + 1) % values.length;
+    }
+  }
+
+  /** Returns how many numbers the ring currently holds. */
+  int size() {
+    return size;
+  }
+
+  /** Returns the i-th oldest number in the ring. */
+  private int get(int i) {
+    return values[(head + i) % values.length];
+  }
+
+  /** Returns a Cursor that walks the numbers smaller than {@code bound}, newest first. */
+  Cursor cursorBefore(int bound) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (get(middle) < bound) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return new Cursor(low - 1);
+  }
+
+  /** Walks a SequenceRing from a starting point towards its oldest number. */
+  class Cursor {
+    private int position;
+
+    private Cursor(int position) {
+      this.position = position;
+    }
+
+    boolean hasNext() {
+      return position >= 0;
+    }
+
+    /** Returns the next number without moving past it. */
+    int peek() {
+      return get(position);
+    }
+
+    /** Returns the next number and moves past it. */
+    int next() {
+      return get(position--);
+    }
+  }
+}
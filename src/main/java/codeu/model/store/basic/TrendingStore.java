@@ -0,0 +1,124 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import codeu.model.data.TrendingHashtag;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store class that keeps track of which hashtags are trending. Every use of a hashtag is counted
+ * in a WindowedHeavyHitters for each Window, so memory stays constant however many messages and
+ * hashtags there are.
+ *
+ * <p>Like ActivityStore this is derived data: it is not written to Datastore, and is refilled from
+ * the recent hashtag postings when the server starts. It's a singleton so all servlet classes can
+ * access the same instance.
+ */
+public class TrendingStore {
+
+  /** The time windows trending hashtags can be asked for. */
+  public enum Window {
+    FIVE_MINUTES("5m", Duration.ofMinutes(5), 5),
+    HOUR("1h", Duration.ofHours(1), 12),
+    DAY("1d", Duration.ofDays(1), 24);
+
+    private final String label;
+    private final Duration length;
+    private final int buckets;
+
+    Window(String label, Duration length, int buckets) {
+      this.label = label;
+      this.length = length;
+      this.buckets = buckets;
+    }
+
+    /** Returns the short label used for this Window in URLs, such as "1h". */
+    public String getLabel() {
+      return label;
+    }
+
+    /** Returns how far back this Window reaches. */
+    public Duration getLength() {
+      return length;
+    }
+
+    /** Returns the Window with the given label, or null if there is none. */
+    public static Window fromLabel(String label) {
+      for (Window window : values()) {
+        if (window.label.equals(label)) {
+          return window;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** The width of every CountMinSketch bucket. */
+  static final int SKETCH_WIDTH = 1024;
+
+  /** How many candidate hashtags each Window keeps. */
+  static final int CANDIDATES = 32;
+
+  /** Singleton instance of TrendingStore. */
+  private static TrendingStore instance;
+
+  /**
+   * Returns the singleton instance of TrendingStore that should be shared between all servlet
+   * classes. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static TrendingStore getInstance() {
+    if (instance == null) {
+      instance = new TrendingStore();
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing. */
+  public static TrendingStore getTestInstance() {
+    return new TrendingStore();
+  }
+
+  private final Map<Window, WindowedHeavyHitters> windows;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private TrendingStore() {
+    windows = new EnumMap<>(Window.class);
+    for (Window window : Window.values()) {
+      windows.put(
+          window,
+          new WindowedHeavyHitters(
+              window.length.toMillis(), window.buckets, SKETCH_WIDTH, CANDIDATES));
+    }
+  }
+
+  /** Counts one use of the given hashtag at the given time. */
+  public synchronized void recordHashtag(String name, Instant time) {
+    long timeMillis = time.toEpochMilli();
+    for (WindowedHeavyHitters window : windows.values()) {
+      window.add(name, timeMillis);
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} of the most used hashtags in the given Window, ending at {@code
+   * now}, most used first.
+   */
+  public synchronized List<TrendingHashtag> getTrending(Window window, int limit, Instant now) {
+    return windows.get(window).top(limit, now.toEpochMilli());
+  }
+}
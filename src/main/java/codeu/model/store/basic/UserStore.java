@@ -17,10 +17,13 @@ package codeu.model.store.basic;
 import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.Comparator;
+import java.util.Collection;
 import java.util.Collections;
 
 /**
@@ -61,10 +64,18 @@ public class UserStore {
   /** The in-memory list of Users. */
   private List<User> users;
 
+  /** Index of the in-memory Users by username. */
+  private Map<String, User> usersByName;
+
+  /** Index of the in-memory Users by ID. */
+  private Map<UUID, User> usersById;
+
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private UserStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
     users = new ArrayList<>();
+    usersByName = new HashMap<>();
+    usersById = new HashMap<>();
   }
 
   /**
@@ -73,13 +84,7 @@ public class UserStore {
    * @return null if username does not match any existing User.
    */
   public User getUser(String username) {
-    // This approach will be pretty slow if we have many users.
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return user;
-      }
-    }
-    return null;
+    return usersByName.get(username);
   }
 
   /**
@@ -88,12 +93,22 @@ public class UserStore {
    * @return null if the UUID does not match any existing User.
    */
   public User getUser(UUID id) {
-    for (User user : users) {
-      if (user.getId().equals(id)) {
-        return user;
+    return usersById.get(id);
+  }
+
+  /**
+   * Access the Users with the given UUIDs in one call, so a page can resolve all of its authors at
+   * once. UUIDs that don't match an existing User are left out of the result.
+   */
+  public Map<UUID, User> getUsers(Collection<UUID> ids) {
+    Map<UUID, User> found = new HashMap<>();
+    for (UUID id : ids) {
+      User user = usersById.get(id);
+      if (user != null) {
+        found.put(id, user);
       }
     }
-    return null;
+    return found;
   }
 
   /**
@@ -102,6 +117,8 @@ public class UserStore {
    */
   public void addUser(User user) {
     users.add(user);
+    usersByName.put(user.getName(), user);
+    usersById.put(user.getId(), user);
     persistentStorageAgent.writeThrough(user);
   }
 
@@ -114,12 +131,7 @@ public class UserStore {
 
   /** Return true if the given username is known to the application. */
   public boolean isUserRegistered(String username) {
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return true;
-      }
-    }
-    return false;
+    return usersByName.containsKey(username);
   }
 
   /**
@@ -128,6 +140,12 @@ public class UserStore {
    */
   public void setUsers(List<User> users) {
     this.users = users;
+    usersByName = new HashMap<>();
+    usersById = new HashMap<>();
+    for (User user : users) {
+      usersByName.put(user.getName(), user);
+      usersById.put(user.getId(), user);
+    }
   }
 
   /**
@@ -0,0 +1,195 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import codeu.model.data.TrendingHashtag;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the most frequent Strings over a sliding time window. The window is split into buckets,
+ * each with its own CountMinSketch; a bucket is cleared and reused once it falls out of the window.
+ * A fixed-size min-heap keeps the candidates with the highest estimated counts.
+ *
+ * <p>Memory depends only on the window's configuration, and add() does not allocate.
+ */
+class WindowedHeavyHitters {
+
+  private final long bucketMillis;
+  private final CountMinSketch[] buckets;
+
+  /** The bucket number (time / bucketMillis) each slot of buckets currently holds. */
+  private final long[] bucketNumbers;
+
+  /** The newest bucket number seen so far. */
+  private long newestBucket = Long.MIN_VALUE;
+
+  /** Min-heap of candidates, ordered by heapCounts. */
+  private final String[] heapKeys;
+  private final int[] heapCounts;
+  private int heapSize;
+
+  /**
+   * Constructs an empty tracker.
+   *
+   * @param windowMillis the length of the window in milliseconds
+   * @param bucketCount how many buckets the window is split into
+   * @param width the width of each bucket's CountMinSketch, a power of two
+   * @param capacity how many candidates to keep
+   */
+  WindowedHeavyHitters(long windowMillis, int bucketCount, int width, int capacity) {
+    bucketMillis = windowMillis / bucketCount;
+    buckets = new CountMinSketch[bucketCount];
+    bucketNumbers = new long[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      buckets[i] = new CountMinSketch(width);
+      bucketNumbers[i] = Long.MIN_VALUE;
+    }
+    heapKeys = new String[capacity];
+    heapCounts = new int[capacity];
+  }
+
+  /**
+   * Counts one occurrence of {@code key} at {@code timeMillis}. Occurrences that are already
+   * outside the window are ignored.
+   */
+  void add(String key, long timeMillis) {
+    long bucket = timeMillis / bucketMillis;
+    if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - buckets.length) {
+      return;
+    }
+    int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+    if (bucketNumbers[slot] < bucket) {
+      buckets[slot].clear();
+      bucketNumbers[slot] = bucket;
+    }
+    buckets[slot].add(key);
+
+    if (bucket > newestBucket) {
+      newestBucket = bucket;
+      // Counts in the heap may include buckets that just left the window.
+      refreshHeap();
+    }
+    offer(key, estimate(key, newestBucket));
+  }
+
+  /** Returns up to {@code limit} of the most frequent keys in the window ending at timeMillis. */
+  List<TrendingHashtag> top(int limit, long timeMillis) {
+    long bucket = Math.max(timeMillis / bucketMillis, newestBucket);
+    List<TrendingHashtag> top = new ArrayList<>(heapSize);
+    for (int i = 0; i < heapSize; i++) {
+      int count = estimate(heapKeys[i], bucket);
+      if (count > 0) {
+        top.add(new TrendingHashtag(heapKeys[i], count));
+      }
+    }
+    top.sort((a, b) -> Integer.compare(b.getCount(), a.getCount()));
+    return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+  }
+
+  /** Estimates how many times {@code key} occurred in the window ending with bucket. */
+  private int estimate(String key, long bucket) {
+    int estimate = Integer.MAX_VALUE;
+    for (int row = 0; row < CountMinSketch.depth(); row++) {
+      int sum = 0;
+      for (int slot = 0; slot < buckets.length; slot++) {
+        long number = bucketNumbers[slot];
+        if (number <= bucket && number > bucket - buckets.length) {
+          sum += buckets[slot].count(row, key);
+        }
+      }
+      estimate = Math.min(estimate, sum);
+    }
+    return estimate;
+  }
+
+  /** Updates or inserts a candidate, evicting the smallest one if the heap is full. */
+  private void offer(String key, int count) {
+    for (int i = 0; i < heapSize; i++) {
+      if (heapKeys[i].equals(key)) {
+        heapCounts[i] = count;
+        siftDown(i);
+        return;
+      }
+    }
+    if (heapSize < heapKeys.length) {
+      heapKeys[heapSize] = key;
+      heapCounts[heapSize] = count;
+      siftUp(heapSize++);
+    } else if (count > heapCounts[0]) {
+      heapKeys[0] = key;
+      heapCounts[0] = count;
+      siftDown(0);
+    }
+  }
+
+  /** Re-estimates every candidate against the current window and drops the ones that are gone. */
+  private void refreshHeap() {
+    int kept = 0;
+    for (int i = 0; i < heapSize; i++) {
+      int count = estimate(heapKeys[i], newestBucket);
+      if (count > 0) {
+        heapKeys[kept] = heapKeys[i];
+        heapCounts[kept] = count;
+        kept++;
+      }
+    }
+    for (int i = kept; i < heapSize; i++) {
+      heapKeys[i] = null;
+    }
+    heapSize = kept;
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (heapCounts[parent] <= heapCounts[i]) {
+        return;
+      }
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < heapSize && heapCounts[left] < heapCounts[smallest]) {
+        smallest = left;
+      }
+      if (right < heapSize && heapCounts[right] < heapCounts[smallest]) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void swap(int i, int j) {
+    String key = heapKeys[i];
+    heapKeys[i] = heapKeys[j];
+    heapKeys[j] = key;
+    int count = heapCounts[i];
+    heapCounts[i] = heapCounts[j];
+    heapCounts[j] = count;
+  }
+}
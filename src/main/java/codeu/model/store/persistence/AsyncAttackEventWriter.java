@@ -0,0 +1,177 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.AttackEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands AttackEvents to an AttackEventLog without making the request thread wait for the disk.
+ * Request threads put events into a fixed-size ring without taking a lock, and a single writer
+ * thread takes them out in batches of up to BATCH_SIZE and appends each batch with one write.
+ *
+ * <p>If the writer falls behind and the ring fills up, new events are dropped and counted rather
+ * than making request threads wait, so a flood of attacks can't slow the server down.
+ */
+public class AsyncAttackEventWriter {
+
+  /** How many events the ring holds. A power of two. */
+  static final int CAPACITY = 4096;
+
+  /** The most events appended to the log in one write. */
+  static final int BATCH_SIZE = 256;
+
+  /** How long the writer sleeps when there is nothing to write, if nobody wakes it first. */
+  private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final AttackEventLog attackEventLog;
+
+  /** The ring of events; a null slot is empty, or claimed but not yet filled. */
+  private final AtomicReferenceArray<AttackEvent> slots;
+  private final int mask;
+
+  /** The number of events ever claimed a slot for. Only producers move it. */
+  private final AtomicLong tail = new AtomicLong();
+
+  /** The number of events ever taken out of the ring. Only the writer moves it. */
+  private volatile long head;
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /** Reused by the writer for every batch. */
+  private final List<AttackEvent> batch = new ArrayList<>(BATCH_SIZE);
+
+  private final Thread writerThread;
+  private volatile boolean running = true;
+
+  /** Set while the writer is about to sleep, so producers know to wake it. */
+  private volatile boolean idle;
+
+  /** Constructs an AsyncAttackEventWriter and starts its writer thread. */
+  public AsyncAttackEventWriter(AttackEventLog attackEventLog) {
+    this(attackEventLog, CAPACITY, true);
+  }
+
+  /**
+   * Constructs an AsyncAttackEventWriter. Tests leave the writer thread unstarted and call
+   * drain() themselves.
+   */
+  AsyncAttackEventWriter(AttackEventLog attackEventLog, int capacity, boolean start) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.attackEventLog = attackEventLog;
+    slots = new AtomicReferenceArray<>(capacity);
+    mask = capacity - 1;
+    if (start) {
+      writerThread = new Thread(this::run, "attack-event-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    } else {
+      writerThread = null;
+    }
+  }
+
+  /**
+   * Queues an event to be appended to the log. Never blocks; returns false and counts the event
+   * as dropped if the ring is full.
+   */
+  public boolean offer(AttackEvent event) {
+    long claimed;
+    do {
+      claimed = tail.get();
+      if (claimed - head >= slots.length()) {
+        droppedCount.incrementAndGet();
+        return false;
+      }
+    } while (!tail.compareAndSet(claimed, claimed + 1));
+    slots.set((int) (claimed & mask), event);
+    if (idle && writerThread != null) {
+      LockSupport.unpark(writerThread);
+    }
+    return true;
+  }
+
+  /** Returns how many events were dropped because the ring was full or a write failed. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /** Stops the writer thread once it has written every queued event. */
+  public void close() {
+    running = false;
+    if (writerThread != null) {
+      LockSupport.unpark(writerThread);
+      try {
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Takes up to BATCH_SIZE events out of the ring and appends them to the log in one write.
+   * Returns how many events were taken. Only the writer thread, or a test, may call this.
+   */
+  int drain() {
+    batch.clear();
+    long position = head;
+    while (batch.size() < BATCH_SIZE) {
+      int slot = (int) (position & mask);
+      AttackEvent event = slots.get(slot);
+      if (event == null) {
+        // Either the ring is empty or the next producer hasn't filled its slot yet.
+        break;
+      }
+      slots.set(slot, null);
+      batch.add(event);
+      position++;
+    }
+    // Free the slots before writing so producers aren't held up by the disk.
+    head = position;
+    if (!batch.isEmpty()) {
+      try {
+        attackEventLog.appendAll(batch);
+      } catch (IOException e) {
+        droppedCount.addAndGet(batch.size());
+        e.printStackTrace();
+      }
+    }
+    return batch.size();
+  }
+
+  private void run() {
+    while (true) {
+      if (drain() > 0) {
+        continue;
+      }
+      if (!running) {
+        return;
+      }
+      idle = true;
+      if (tail.get() == head) {
+        LockSupport.parkNanos(this, IDLE_NANOS);
+      }
+      idle = false;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.AttackEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only log of AttackEvents, kept as one line per event in a directory of rotating files.
+ * Once the current file reaches maxFileBytes it becomes attack-events.1.log, the older files move
+ * up one number, and the oldest is deleted. Only the number of events in deleted files is kept,
+ * so the directory never holds more than maxFiles files.
+ */
+public class AttackEventLog {
+
+  /** The size at which the current file is rotated. */
+  static final long MAX_FILE_BYTES = 1024 * 1024;
+
+  /** How many files, including the current one, are kept. */
+  static final int MAX_FILES = 8;
+
+  /** The format of the times in the attackLog.txt file that came before this log. */
+  private static final DateTimeFormatter LEGACY_TIME_FORMAT =
+      DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
+          .withLocale(Locale.US)
+          .withZone(ZoneId.systemDefault());
+
+  private final Path directory;
+  private final long maxFileBytes;
+  private final int maxFiles;
+
+  /** The writer for the current file, opened on the first append. */
+  private Writer writer;
+
+  /** The size of the current file. */
+  private long currentBytes;
+
+  /** Constructs an AttackEventLog that keeps its files in the given directory. */
+  public AttackEventLog(Path directory) {
+    this(directory, MAX_FILE_BYTES, MAX_FILES);
+  }
+
+  /** Constructs an AttackEventLog with the given rotation limits. */
+  AttackEventLog(Path directory, long maxFileBytes, int maxFiles) {
+    this.directory = directory;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * Appends an AttackEvent to the current file, rotating the files if it has grown too large.
+   *
+   * @throws IOException if the event could not be written
+   */
+  public void append(AttackEvent event) throws IOException {
+    appendAll(Collections.singletonList(event));
+  }
+
+  /**
+   * Appends AttackEvents to the current file with a single flush, rotating the files if it has
+   * grown too large.
+   *
+   * @throws IOException if the events could not be written
+   */
+  public synchronized void appendAll(List<AttackEvent> events) throws IOException {
+    if (writer == null) {
+      Files.createDirectories(directory);
+      Path current = file(0);
+      currentBytes = Files.exists(current) ? Files.size(current) : 0;
+      writer =
+          Files.newBufferedWriter(
+              current,
+              StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.APPEND);
+    }
+    for (int i = 0; i < events.size(); i++) {
+      String line = format(events.get(i));
+      writer.write(line);
+      currentBytes += line.getBytes(StandardCharsets.UTF_8).length;
+      if (currentBytes >= maxFileBytes) {
+        // rotate() closes, and so flushes, the current file.
+        rotate();
+        appendAll(events.subList(i + 1, events.size()));
+        return;
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * Reads every AttackEvent still in the log, oldest first.
+   *
+   * @throws IOException if the files could not be read
+   */
+  public synchronized List<AttackEvent> loadEvents() throws IOException {
+    List<AttackEvent> events = new ArrayList<>();
+    for (int i = maxFiles - 1; i >= 0; i--) {
+      Path file = file(i);
+      if (!Files.exists(file)) {
+        continue;
+      }
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          AttackEvent event = parse(line);
+          if (event != null) {
+            events.add(event);
+          }
+        }
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Returns how many events were in files that have been rotated out and deleted.
+   *
+   * @throws IOException if the count could not be read
+   */
+  public synchronized long loadRetiredCount() throws IOException {
+    Path retired = directory.resolve("attack-events.retired");
+    if (!Files.exists(retired)) {
+      return 0;
+    }
+    return Long.parseLong(new String(Files.readAllBytes(retired), StandardCharsets.UTF_8).trim());
+  }
+
+  /**
+   * Moves the events of an attackLog.txt file, which holds a User-Agent line and a time line per
+   * attack, into this log. The old file is renamed so it is only migrated once.
+   *
+   * @throws IOException if the old file could not be read or the events written
+   */
+  public synchronized void migrateLegacyLog(Path legacyFile) throws IOException {
+    if (!Files.exists(legacyFile)) {
+      return;
+    }
+    Instant fallbackTime = Files.getLastModifiedTime(legacyFile).toInstant();
+    List<String> lines = Files.readAllLines(legacyFile, StandardCharsets.UTF_8);
+    for (int i = 0; i + 1 < lines.size(); i += 2) {
+      Instant time;
+      try {
+        time = LEGACY_TIME_FORMAT.parse(lines.get(i + 1).trim(), Instant::from);
+      } catch (DateTimeParseException e) {
+        time = fallbackTime;
+      }
+      String userAgent = lines.get(i);
+      append(
+          new AttackEvent(
+              time, AttackEvent.SOURCE_UNKNOWN, userAgent.equals("null") ? null : userAgent));
+    }
+    Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"));
+  }
+
+  /** Closes the current file, shifts every file up one number and drops the oldest. */
+  private void rotate() throws IOException {
+    writer.close();
+    writer = null;
+
+    Path oldest = file(maxFiles - 1);
+    if (Files.exists(oldest)) {
+      long dropped;
+      try (BufferedReader reader = Files.newBufferedReader(oldest, StandardCharsets.UTF_8)) {
+        dropped = reader.lines().count();
+      }
+      Path retired = directory.resolve("attack-events.retired");
+      Files.write(
+          retired,
+          Long.toString(loadRetiredCount() + dropped).getBytes(StandardCharsets.UTF_8));
+      Files.delete(oldest);
+    }
+    for (int i = maxFiles - 2; i >= 0; i--) {
+      if (Files.exists(file(i))) {
+        Files.move(file(i), file(i + 1));
+      }
+    }
+  }
+
+  /** Returns the i-th file; 0 is the current file and higher numbers are older. */
+  private Path file(int i) {
+    return directory.resolve(i == 0 ? "attack-events.log" : "attack-events." + i + ".log");
+  }
+
+  /** Formats an event as a tab-separated line. */
+  private static String format(AttackEvent event) {
+    String userAgent = event.getUserAgent() == null ? "" : event.getUserAgent();
+    return event.getCreationTime().toEpochMilli()
+        + "\t"
+        + event.getSource()
+        + "\t"
+        + userAgent.replaceAll("[\\t\\r\\n]", " ")
+        + "\n";
+  }
+
+  /** Parses a line written by format(), or returns null if it is damaged. */
+  private static AttackEvent parse(String line) {
+    String[] fields = line.split("\t", 3);
+    if (fields.length < 3) {
+      return null;
+    }
+    try {
+      return new AttackEvent(
+          Instant.ofEpochMilli(Long.parseLong(fields[0])),
+          fields[1],
+          fields[2].isEmpty() ? null : fields[2]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Where ImageStore keeps the bytes of uploaded images. PersistentStorageAgent keeps them in
+ * Datastore; LocalImageBackend keeps them in a directory, so the server can run and be
+ * load-tested without App Engine.
+ */
+public interface ImageBackend {
+
+  /**
+   * Retrieve the hashes of all stored images. The returned list may be empty. Uploads that were
+   * staged but never committed or discarded are removed, so this should only be called when the
+   * server starts.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load
+   */
+  List<String> loadImageHashes() throws PersistentDataStoreException;
+
+  /**
+   * Retrieve the StoredImage with the given hash, or null if there is none.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load
+   */
+  StoredImage loadImage(String hash) throws PersistentDataStoreException;
+
+  /** Write a StoredImage object to the backend. */
+  void writeThrough(StoredImage image);
+
+  /**
+   * Streams exactly {@code size} bytes of an upload into the backend as they are read, without
+   * listing them as an image yet, and returns where they went along with their hash. Nothing is
+   * left behind if this throws.
+   *
+   * @throws IOException if the upload could not be read or wasn't {@code size} bytes long
+   */
+  StagedImage stageImage(InputStream content, int size, String contentType) throws IOException;
+
+  /**
+   * Lists a staged upload as the image with its hash. If that image is already stored, it is kept
+   * and the staged bytes are discarded instead.
+   */
+  void commitImage(StagedImage image);
+
+  /** Removes the bytes of a staged upload that won't be committed. */
+  void discardImage(StagedImage image);
+
+  /** Remove the image with the given hash from the backend, if it is there. */
+  void deleteImage(String hash);
+
+  /**
+   * Returns the local file holding the image with the given hash, or null if there is none or
+   * this backend doesn't keep images in local files.
+   */
+  default StoredImageFile getImageFile(String hash) {
+    return null;
+  }
+}
@@ -0,0 +1,226 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ImageBackend that keeps each image in its own file under a local directory, named by its hash
+ * and with an extension for its type. Files are spread over subdirectories named by the first two
+ * characters of the hash so no one directory grows too large. Uploads are streamed into temporary
+ * files in the directory itself until their hash is known.
+ *
+ * <p>This lets the server run without App Engine, e.g. for load tests or a standalone deployment.
+ * Set the system property DIRECTORY_PROPERTY to the directory to use it.
+ */
+public class LocalImageBackend implements ImageBackend {
+
+  /** The system property naming the directory to keep images in. */
+  public static final String DIRECTORY_PROPERTY = "codeu.imageDirectory";
+
+  /** File extensions by content type. Other types are kept with EXTENSION_OTHER. */
+  private static final Map<String, String> EXTENSIONS = new LinkedHashMap<>();
+
+  /** Content types by file extension. */
+  private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+  private static final String EXTENSION_OTHER = "bin";
+
+  /** How many bytes of an upload are read before they are written to its file. */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  static {
+    EXTENSIONS.put("image/jpeg", "jpg");
+    EXTENSIONS.put("image/png", "png");
+    EXTENSIONS.put("image/gif", "gif");
+    EXTENSIONS.put("image/webp", "webp");
+    for (Map.Entry<String, String> entry : EXTENSIONS.entrySet()) {
+      CONTENT_TYPES.put(entry.getValue(), entry.getKey());
+    }
+    CONTENT_TYPES.put(EXTENSION_OTHER, "application/octet-stream");
+  }
+
+  private final Path directory;
+
+  /** Constructs a LocalImageBackend that keeps images under the given directory. */
+  public LocalImageBackend(Path directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public List<String> loadImageHashes() throws PersistentDataStoreException {
+    List<String> hashes = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return hashes;
+    }
+    try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory)) {
+      for (Path shard : shards) {
+        if (!Files.isDirectory(shard)) {
+          // An upload cut short before it was committed.
+          if (shard.getFileName().toString().endsWith(".tmp")) {
+            Files.deleteIfExists(shard);
+          }
+          continue;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+          for (Path file : files) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            // Half-written files end in .tmp and aren't images yet.
+            if (dot > 0 && CONTENT_TYPES.containsKey(name.substring(dot + 1))) {
+              hashes.add(name.substring(0, dot));
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new PersistentDataStoreException(e);
+    }
+    return hashes;
+  }
+
+  @Override
+  public StoredImage loadImage(String hash) throws PersistentDataStoreException {
+    StoredImageFile file = getImageFile(hash);
+    if (file == null) {
+      return null;
+    }
+    try {
+      return new StoredImage(hash, Files.readAllBytes(file.getPath()), file.getContentType());
+    } catch (NoSuchFileException e) {
+      // Deleted since it was found.
+      return null;
+    } catch (IOException e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /**
+   * Writes the image to a temporary file and then moves it into place, so readers never see a
+   * partly written image.
+   */
+  @Override
+  public void writeThrough(StoredImage image) {
+    String extension = EXTENSIONS.getOrDefault(image.getContentType(), EXTENSION_OTHER);
+    Path target = shard(image.getHash()).resolve(image.getHash() + "." + extension);
+    try {
+      Files.createDirectories(target.getParent());
+      Path temporary = Files.createTempFile(target.getParent(), image.getHash(), ".tmp");
+      try {
+        Files.write(temporary, image.getContent());
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Streams an upload into a temporary file, BUFFER_SIZE bytes at a time, hashing it on the way.
+   */
+  @Override
+  public StagedImage stageImage(InputStream content, int size, String contentType)
+      throws IOException {
+    Files.createDirectories(directory);
+    Path temporary = Files.createTempFile(directory, "upload-", ".tmp");
+    try (OutputStream out = Files.newOutputStream(temporary)) {
+      String hash =
+          StoredImage.stream(
+              content, size, BUFFER_SIZE, (buffer, length) -> out.write(buffer, 0, length));
+      return new StagedImage(hash, size, contentType, temporary.toString());
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+  }
+
+  /**
+   * Moves the file of a staged upload into place. An image with the same hash has the same bytes,
+   * so if one is already there it is simply replaced.
+   */
+  @Override
+  public void commitImage(StagedImage image) {
+    String extension = EXTENSIONS.getOrDefault(image.getContentType(), EXTENSION_OTHER);
+    Path target = shard(image.getHash()).resolve(image.getHash() + "." + extension);
+    Path temporary = Paths.get(image.getLocation());
+    try {
+      Files.createDirectories(target.getParent());
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void discardImage(StagedImage image) {
+    try {
+      Files.deleteIfExists(Paths.get(image.getLocation()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void deleteImage(String hash) {
+    try {
+      for (String extension : CONTENT_TYPES.keySet()) {
+        Files.deleteIfExists(shard(hash).resolve(hash + "." + extension));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Finds the image's file by trying the extension of each known type. */
+  @Override
+  public StoredImageFile getImageFile(String hash) {
+    if (!hash.matches("[0-9a-f]+")) {
+      // Not a hash, and not to be resolved against the directory.
+      return null;
+    }
+    Path shard = shard(hash);
+    for (Map.Entry<String, String> entry : CONTENT_TYPES.entrySet()) {
+      Path path = shard.resolve(hash + "." + entry.getKey());
+      if (Files.isRegularFile(path)) {
+        return new StoredImageFile(hash, path, entry.getValue());
+      }
+    }
+    return null;
+  }
+
+  /** Returns the subdirectory that holds the image with the given hash. */
+  private Path shard(String hash) {
+    return directory.resolve(hash.substring(0, Math.min(2, hash.length())));
+  }
+}
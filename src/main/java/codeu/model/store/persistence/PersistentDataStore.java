@@ -19,6 +19,10 @@ import codeu.model.data.Message;
 import codeu.model.data.User;
 import codeu.model.data.Mention;
 import codeu.model.data.Hashtag;
+import codeu.model.data.ImageVariant;
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.Tombstone;
 import codeu.model.store.persistence.PersistentDataStoreException;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
@@ -28,16 +32,29 @@ import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.HashSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.stream.Collectors;
 import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import java.util.Base64;
 
 /**
  * This class handles all interactions with Google App Engine's Datastore service. On startup it
@@ -46,6 +63,15 @@ import com.google.appengine.api.datastore.Text;
  */
 public class PersistentDataStore {
 
+  /** The most image bytes stored in one entity, safely under the Datastore limit of 1 MB. */
+  static final int IMAGE_CHUNK_SIZE = 900 * 1024;
+
+  /** The most entity groups Datastore allows in one cross-group transaction. */
+  static final int MAX_TRANSACTION_GROUPS = 25;
+
+  /** The most keys Datastore accepts in one batch delete. */
+  static final int MAX_BATCH_DELETE = 500;
+
   // Handle to Google AppEngine's Datastore service.
   private DatastoreService datastore;
 
@@ -79,8 +105,12 @@ public class PersistentDataStore {
         Instant creationTime = Instant.parse((String) entity.getProperty("creation_time"));
         String aboutMe = (String) entity.getProperty("aboutMe");
         boolean adminStatus = (boolean) entity.getProperty("adminStatus");
-        Text profilePic = (Text) entity.getProperty("profilepic");
-        User user = new User(uuid, userName, passwordHash, creationTime, aboutMe, adminStatus, profilePic);
+        String profilePictureHash = (String) entity.getProperty("profile_picture_hash");
+        User user = new User(uuid, userName, passwordHash, creationTime, aboutMe, adminStatus, profilePictureHash);
+        Text legacyPicture = (Text) entity.getProperty("profilepic");
+        if (legacyPicture != null) {
+          migrateProfilePicture(user, legacyPicture);
+        }
         users.add(user);
       } catch (Exception e) {
         // In a production environment, errors should be very rare. Errors which may
@@ -93,6 +123,170 @@ public class PersistentDataStore {
     return users;
   }
 
+  /**
+   * Moves a profile picture stored the old way, as base64 text on the user entity, into the image
+   * store, so later loads of the user don't carry the picture.
+   */
+  private void migrateProfilePicture(User user, Text legacyPicture) {
+    byte[] content = Base64.getDecoder().decode(legacyPicture.getValue());
+    StoredImage image = StoredImage.of(content, "image/jpeg");
+    writeThrough(image);
+    user.setProfilePictureHash(image.getHash());
+    writeThrough(user);
+  }
+
+  /**
+   * Loads the hashes of all stored images. Only the small image entities are read, so the image
+   * bytes stay in Datastore. Profile pictures saved in their own kind before images were stored by
+   * hash are moved into the image store first, and chunks that no image lists are removed, so this
+   * should only be called when the server starts, before any upload.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<String> loadImageHashes() throws PersistentDataStoreException {
+    try {
+      for (Entity entity : datastore.prepare(new Query("chat-profile-pictures")).asIterable()) {
+        writeThrough(new StoredImage(
+            (String) entity.getProperty("hash"),
+            ((Blob) entity.getProperty("content")).getBytes(),
+            (String) entity.getProperty("content_type")));
+        datastore.delete(entity.getKey());
+      }
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+
+    List<String> hashes = new ArrayList<>();
+    Set<String> chunkPrefixes = new HashSet<>();
+    for (Entity entity : datastore.prepare(new Query("chat-images")).asIterable()) {
+      hashes.add(entity.getKey().getName());
+      chunkPrefixes.add(imageChunkPrefix(entity));
+    }
+
+    // Uploads cut short before they were committed, or images deleted halfway, leave chunks that
+    // no image lists.
+    List<Key> orphans = new ArrayList<>();
+    Query chunkQuery = new Query("chat-image-chunks").setKeysOnly();
+    for (Entity entity : datastore.prepare(chunkQuery).asIterable()) {
+      String name = entity.getKey().getName();
+      if (!chunkPrefixes.contains(name.substring(0, name.lastIndexOf('#')))) {
+        orphans.add(entity.getKey());
+        if (orphans.size() == MAX_BATCH_DELETE) {
+          datastore.delete(orphans);
+          orphans.clear();
+        }
+      }
+    }
+    if (!orphans.isEmpty()) {
+      datastore.delete(orphans);
+    }
+    return hashes;
+  }
+
+  /**
+   * Loads the StoredImage with the given hash, or returns null if there is none. The image bytes
+   * are split over chunk entities of IMAGE_CHUNK_SIZE, which are fetched in one batch.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public StoredImage loadImage(String hash) throws PersistentDataStoreException {
+    try {
+      Entity entity = datastore.get(KeyFactory.createKey("chat-images", hash));
+      int size = ((Long) entity.getProperty("size")).intValue();
+      List<Key> chunkKeys = imageChunkKeys(imageChunkPrefix(entity), size);
+      Map<Key, Entity> chunks = datastore.get(chunkKeys);
+
+      byte[] content = new byte[size];
+      int offset = 0;
+      for (Key chunkKey : chunkKeys) {
+        byte[] chunk = ((Blob) chunks.get(chunkKey).getProperty("content")).getBytes();
+        System.arraycopy(chunk, 0, content, offset, chunk.length);
+        offset += chunk.length;
+      }
+      return new StoredImage(hash, content, (String) entity.getProperty("content_type"));
+    } catch (EntityNotFoundException e) {
+      return null;
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /**
+   * Returns the keys of the chunk entities holding the bytes of an image of the given size, named
+   * after the given prefix.
+   */
+  private static List<Key> imageChunkKeys(String prefix, int size) {
+    List<Key> keys = new ArrayList<>();
+    for (int i = 0; i * IMAGE_CHUNK_SIZE < size || i == 0; i++) {
+      keys.add(imageChunkKey(prefix, i));
+    }
+    return keys;
+  }
+
+  private static Key imageChunkKey(String prefix, int index) {
+    return KeyFactory.createKey("chat-image-chunks", prefix + "#" + index);
+  }
+
+  /**
+   * Returns the prefix of the chunk keys of an image entity. Uploads name their chunks after the
+   * upload; images stored before uploads were streamed name them after the hash.
+   */
+  private static String imageChunkPrefix(Entity imageEntity) {
+    String prefix = (String) imageEntity.getProperty("chunks");
+    return prefix != null ? prefix : imageEntity.getKey().getName();
+  }
+
+  /**
+   * Loads which ImageVariants exist, as the widths of the variants of each source image. Only the
+   * keys are read, so the variant bytes stay in Datastore.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public Map<String, List<Integer>> loadImageVariantWidths() throws PersistentDataStoreException {
+    Map<String, List<Integer>> widths = new HashMap<>();
+    Query query = new Query("chat-image-variants").setKeysOnly();
+    PreparedQuery results = datastore.prepare(query);
+
+    for (Entity entity : results.asIterable()) {
+      try {
+        String name = entity.getKey().getName();
+        int separator = name.lastIndexOf('@');
+        widths
+            .computeIfAbsent(name.substring(0, separator), source -> new ArrayList<>())
+            .add(Integer.parseInt(name.substring(separator + 1)));
+      } catch (Exception e) {
+        throw new PersistentDataStoreException(e);
+      }
+    }
+
+    return widths;
+  }
+
+  /**
+   * Loads the ImageVariant of the given source image at the given width, or returns null if there
+   * is none.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public ImageVariant loadImageVariant(String sourceId, int width)
+      throws PersistentDataStoreException {
+    try {
+      Entity entity =
+          datastore.get(KeyFactory.createKey("chat-image-variants", sourceId + "@" + width));
+      byte[] content = ((Blob) entity.getProperty("content")).getBytes();
+      String contentType = (String) entity.getProperty("content_type");
+      return new ImageVariant(sourceId, width, content, contentType);
+    } catch (EntityNotFoundException e) {
+      return null;
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
   /**
    * Loads all Conversation objects from the Datastore service and returns them in a List, sorted in
    * ascending order by creation time.
@@ -176,8 +370,9 @@ public class PersistentDataStore {
   }
 
   /**
-   * Loads all Mention objects from the Datastore service and returns them in a List, sorted in
-   * ascending order by creation time.
+   * Loads all Mention objects from the Datastore service and returns them in a List. Mentions
+   * written before mentions were resolved to users have a null mentioned user ID; the caller is
+   * expected to resolve or drop those.
    * @throws PersistentDataStoreException if an error was detected during the load from the
    *     Datastore service
    */
@@ -193,11 +388,22 @@ public class PersistentDataStore {
       for (Entity entity : results.asIterable()) {
           try {
 
-            Set<String> dataStoreMessageIds = new HashSet<>((Collection<String>)
-              entity.getProperty("uuid_list")); 
-            Set<UUID> messageIds = dataStoreMessageIds.stream().map(id -> UUID.fromString(id)).collect(Collectors.toSet());
+            Collection<String> dataStoreMessageIds = (Collection<String>)
+              entity.getProperty("uuid_list");
+            List<UUID> messageIds = new ArrayList<>();
+            if (dataStoreMessageIds != null) {
+              for (String id : dataStoreMessageIds) {
+                messageIds.add(UUID.fromString(id));
+              }
+            }
             String mentionedUser = (String) entity.getProperty("mentioned_user");
-            Mention mention = new Mention(messageIds, mentionedUser);
+            String mentionedUserId = (String) entity.getProperty("mentioned_user_uuid");
+            Long unreadCount = (Long) entity.getProperty("unread_count");
+            Mention mention = new Mention(
+                mentionedUserId == null ? null : UUID.fromString(mentionedUserId),
+                mentionedUser,
+                messageIds,
+                unreadCount == null ? 0 : unreadCount.intValue());
             mentions.add(mention);
             
         } catch (Exception e) {
@@ -228,8 +434,14 @@ public class PersistentDataStore {
     for (Entity entity : results.asIterable()) {
       try {
         String tagName = (String) entity.getProperty("tag_name");
-        List<String> datastoreMessageIds = new ArrayList( (Collection<String>) entity.getProperty("uuid_list"));
-        Set<UUID> messageIds = datastoreMessageIds.stream().map(id -> UUID.fromString(id)).collect(Collectors.toSet());
+        // Datastore saves an empty list as null, e.g. once every message of a tag is deleted.
+        Collection<String> datastoreMessageIds = (Collection<String>) entity.getProperty("uuid_list");
+        List<UUID> messageIds = new ArrayList<>();
+        if (datastoreMessageIds != null) {
+          for (String id : datastoreMessageIds) {
+            messageIds.add(UUID.fromString(id));
+          }
+        }
         Hashtag hashtag = new Hashtag(tagName, messageIds);
         hashtags.add(hashtag);
       } catch (Exception e) {
@@ -243,6 +455,30 @@ public class PersistentDataStore {
     return hashtags;
   }
 
+  /**
+   * Loads all Tombstone objects from the Datastore service and returns them in a List, oldest
+   * first.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Tombstone> loadTombstones() throws PersistentDataStoreException {
+    List<Tombstone> tombstones = new ArrayList<>();
+    Query query = new Query("chat-tombstones").addSort("creation_time", SortDirection.ASCENDING);
+    for (Entity entity : datastore.prepare(query).asIterable()) {
+      try {
+        tombstones.add(
+            new Tombstone(
+                UUID.fromString(entity.getKey().getName()),
+                Tombstone.Type.valueOf((String) entity.getProperty("type")),
+                Instant.parse((String) entity.getProperty("creation_time"))));
+      } catch (Exception e) {
+        throw new PersistentDataStoreException(e);
+      }
+    }
+    return tombstones;
+  }
+
   /** Write a User object to the Datastore service. */
   public void writeThrough(User user) {
     Entity userEntity = new Entity("chat-users", user.getId().toString());
@@ -252,24 +488,180 @@ public class PersistentDataStore {
     userEntity.setProperty("creation_time", user.getCreationTime().toString());
     userEntity.setProperty("aboutMe", user.getAboutMe());
     userEntity.setProperty("adminStatus", user.isAdmin());
-    userEntity.setProperty("profilepic", user.getProfilePic());
+    userEntity.setProperty("profile_picture_hash", user.getProfilePictureHash());
     datastore.put(userEntity);
   }
 
+  /** Write an ImageVariant object to the Datastore service. */
+  public void writeThrough(ImageVariant variant) {
+    Entity variantEntity = new Entity(
+        "chat-image-variants", variant.getSourceId() + "@" + variant.getWidth());
+    variantEntity.setProperty("source", variant.getSourceId());
+    variantEntity.setProperty("width", variant.getWidth());
+    variantEntity.setProperty("content", new Blob(variant.getContent()));
+    variantEntity.setProperty("content_type", variant.getContentType());
+    datastore.put(variantEntity);
+  }
+
+  /** Remove the ImageVariants of the given source image at the given widths. */
+  public void deleteImageVariants(String sourceId, Collection<Integer> widths) {
+    List<Key> keys = new ArrayList<>();
+    for (int width : widths) {
+      keys.add(KeyFactory.createKey("chat-image-variants", sourceId + "@" + width));
+    }
+    datastore.delete(keys);
+  }
+
+  /** Write a StoredImage object to the Datastore service, the same way as an upload. */
+  public void writeThrough(StoredImage image) {
+    byte[] content = image.getContent();
+    try {
+      commitImage(
+          stageImage(new ByteArrayInputStream(content), content.length, image.getContentType()));
+    } catch (IOException e) {
+      // Reading from memory doesn't fail.
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Streams an upload into chunk entities of IMAGE_CHUNK_SIZE, so that no entity goes over the
+   * Datastore size limit. The hash is only known at the end, so the chunks are named after a new
+   * upload ID instead. Each chunk is put as soon as its buffer fills, so only one chunk is held in
+   * memory at a time; only a final partial chunk is copied, to fit its Blob to its length.
+   *
+   * <p>The upload isn't listed as an image until commitImage(). Chunks of uploads that never get
+   * there are removed by loadImageHashes() at the next startup.
+   */
+  public StagedImage stageImage(InputStream content, int size, String contentType)
+      throws IOException {
+    String prefix = "upload-" + UUID.randomUUID();
+    int[] chunkCount = {0};
+    try {
+      String hash =
+          StoredImage.stream(
+              content,
+              size,
+              IMAGE_CHUNK_SIZE,
+              (buffer, length) -> {
+                Entity chunkEntity = new Entity(imageChunkKey(prefix, chunkCount[0]));
+                byte[] chunk = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+                chunkEntity.setProperty("content", new Blob(chunk));
+                datastore.put(chunkEntity);
+                chunkCount[0]++;
+              });
+      return new StagedImage(hash, size, contentType, prefix);
+    } catch (IOException | RuntimeException e) {
+      List<Key> written = new ArrayList<>();
+      for (int i = 0; i < chunkCount[0]; i++) {
+        written.add(imageChunkKey(prefix, i));
+      }
+      datastore.delete(written);
+      throw e;
+    }
+  }
+
+  /**
+   * Lists a staged upload as the image with its hash by writing the image entity, which points at
+   * the upload's chunks. The check for an existing image and the write are one transaction, so two
+   * uploads of the same bytes can't both be listed; the one that finds the image already there
+   * discards its chunks.
+   */
+  public void commitImage(StagedImage image) {
+    Key key = KeyFactory.createKey("chat-images", image.getHash());
+    boolean alreadyStored = false;
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      try {
+        datastore.get(transaction, key);
+        alreadyStored = true;
+      } catch (EntityNotFoundException e) {
+        Entity imageEntity = new Entity(key);
+        imageEntity.setProperty("content_type", image.getContentType());
+        imageEntity.setProperty("size", image.getSize());
+        imageEntity.setProperty("chunks", image.getLocation());
+        datastore.put(transaction, imageEntity);
+      }
+      transaction.commit();
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+    if (alreadyStored) {
+      discardImage(image);
+    }
+  }
+
+  /** Remove the chunk entities of a staged upload from the Datastore service. */
+  public void discardImage(StagedImage image) {
+    datastore.delete(imageChunkKeys(image.getLocation(), image.getSize()));
+  }
+
+  /** Remove a StoredImage object from the Datastore service. */
+  public void deleteImage(String hash) {
+    try {
+      Entity entity = datastore.get(KeyFactory.createKey("chat-images", hash));
+      int size = ((Long) entity.getProperty("size")).intValue();
+      datastore.delete(entity.getKey());
+      datastore.delete(imageChunkKeys(imageChunkPrefix(entity), size));
+    } catch (EntityNotFoundException e) {
+      // Already gone.
+    }
+  }
+
   /** Write a Message object to the Datastore service. */
   public void writeThrough(Message message) {
+    datastore.put(getMessageEntities(message));
+  }
+
+  /** Creates the entities for a Message: one for each of its replies, then its own. */
+  private List<Entity> getMessageEntities(Message message) {
     Entity messageEntity = new Entity("chat-messages", message.getId().toString());
     messageEntity.setProperty("uuid", message.getId().toString());
     messageEntity.setProperty("conv_uuid", message.getConversationId().toString());
     messageEntity.setProperty("author_uuid", message.getAuthorId().toString());
     messageEntity.setProperty("content", message.getContent());
     messageEntity.setProperty("creation_time", message.getCreationTime().toString());
-    //messageEntity.setProperty("type", message.getType().toString());
+    messageEntity.setProperty("type", message.getType());
 
+    List<Entity> entities = new ArrayList<>();
     for (Message reply : message.getReplies()) {
-      datastore.put(getReplyEntity(message, reply));
+      entities.add(getReplyEntity(message, reply));
+    }
+    entities.add(messageEntity);
+    return entities;
+  }
+
+  /**
+   * Remove the Messages and replies with the given IDs from the Datastore service, in batches of
+   * MAX_BATCH_DELETE.
+   */
+  public void deleteMessages(Collection<UUID> messageIds) {
+    List<Key> keys = new ArrayList<>();
+    for (UUID messageId : messageIds) {
+      keys.add(KeyFactory.createKey("chat-messages", messageId.toString()));
+      if (keys.size() == MAX_BATCH_DELETE) {
+        datastore.delete(keys);
+        keys.clear();
+      }
     }
-    datastore.put(messageEntity);
+    if (!keys.isEmpty()) {
+      datastore.delete(keys);
+    }
+  }
+
+  /** Write a Tombstone object to the Datastore service. */
+  public void writeThrough(Tombstone tombstone) {
+    Entity tombstoneEntity = new Entity("chat-tombstones", tombstone.getId().toString());
+    tombstoneEntity.setProperty("type", tombstone.getType().name());
+    tombstoneEntity.setProperty("creation_time", tombstone.getCreationTime().toString());
+    datastore.put(tombstoneEntity);
+  }
+
+  /** Remove a Tombstone object from the Datastore service. */
+  public void deleteThrough(Tombstone tombstone) {
+    datastore.delete(KeyFactory.createKey("chat-tombstones", tombstone.getId().toString()));
   }
 
   /** Remove a Message object from the Datastore service. */
@@ -286,6 +678,7 @@ public class PersistentDataStore {
     messageEntity.setProperty("author_uuid", reply.getAuthorId().toString());
     messageEntity.setProperty("content", reply.getContent());
     messageEntity.setProperty("creation_time", reply.getCreationTime().toString());
+    messageEntity.setProperty("type", reply.getType());
     messageEntity.setProperty("parent", parent.getId().toString());
     return messageEntity;
   }
@@ -300,13 +693,20 @@ public class PersistentDataStore {
     datastore.put(conversationEntity);
   }
 
-  /** Write a Conversation object to the Datastore service. */
+  /** Write a Mention object to the Datastore service. */
   public void writeThrough(Mention mention) {
+    datastore.put(getMentionEntity(mention));
+  }
+
+  /** Creates the entity for a Mention. */
+  private Entity getMentionEntity(Mention mention) {
     Entity mentionEntity = new Entity("chat-mentions", mention.getName());
     mentionEntity.setProperty("mentioned_user", mention.getName());
+    mentionEntity.setProperty("mentioned_user_uuid", mention.getMentionedUserId().toString());
+    mentionEntity.setProperty("unread_count", mention.getUnreadCount());
     Collection<String> messageIds = mention.getMessageIds().stream().map(id -> id.toString()).collect(Collectors.toList());
     mentionEntity.setProperty("uuid_list", messageIds);
-    datastore.put(mentionEntity);
+    return mentionEntity;
   }
 
   /** Remove a Conversation object from the Datastore service. */
@@ -317,10 +717,54 @@ public class PersistentDataStore {
 
   /** Write a Hashtag object to the Datastore service. */
   public void writeThrough(Hashtag hashtag) {
+    datastore.put(getHashtagEntity(hashtag));
+  }
+
+  /** Creates the entity for a Hashtag. */
+  private Entity getHashtagEntity(Hashtag hashtag) {
     Entity hashtagEntity = new Entity("chat_hashtags", hashtag.getName());
     hashtagEntity.setProperty("tag_name", hashtag.getName());
     Collection<String> messageIds = hashtag.getMessageIds().stream().map(id -> id.toString()).collect(Collectors.toList());
     hashtagEntity.setProperty("uuid_list", messageIds);
-    datastore.put(hashtagEntity);
+    return hashtagEntity;
+  }
+
+  /**
+   * Write everything collected by a UnitOfWork to the Datastore service in one batch. The batch is
+   * a cross-group transaction when it touches few enough entity groups, so it is written entirely
+   * or not at all. Bigger batches are still a single put, but a failure can leave only some of
+   * their entities written.
+   */
+  public void writeThrough(UnitOfWork unit) {
+    // Keyed so an entity that appears twice, like a reply also added on its own, is put once.
+    Map<Key, Entity> entities = new LinkedHashMap<>();
+    for (Message message : unit.getMessages()) {
+      for (Entity entity : getMessageEntities(message)) {
+        entities.put(entity.getKey(), entity);
+      }
+    }
+    for (Mention mention : unit.getMentions()) {
+      Entity entity = getMentionEntity(mention);
+      entities.put(entity.getKey(), entity);
+    }
+    for (Hashtag hashtag : unit.getHashtags()) {
+      Entity entity = getHashtagEntity(hashtag);
+      entities.put(entity.getKey(), entity);
+    }
+
+    // Every entity here is the root of its own entity group.
+    if (entities.size() > MAX_TRANSACTION_GROUPS) {
+      datastore.put(entities.values());
+      return;
+    }
+    Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      datastore.put(transaction, entities.values());
+      transaction.commit();
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
   }
 }
@@ -19,8 +19,17 @@ import codeu.model.data.Message;
 import codeu.model.data.User;
 import codeu.model.data.Mention;
 import codeu.model.data.Hashtag;
+import codeu.model.data.ImageVariant;
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.Tombstone;
 import codeu.model.store.persistence.PersistentDataStore;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
+import java.util.Map;
 
 /**
  * This class is the interface between the application and PersistentDataStore, which handles
@@ -30,7 +39,7 @@ import java.util.List;
  *
  * <p>This is a singleton; the single instance is accessed through getInstance().
  */
-public class PersistentStorageAgent {
+public class PersistentStorageAgent implements ImageBackend {
 
   private static PersistentStorageAgent instance;
 
@@ -112,6 +121,58 @@ public class PersistentStorageAgent {
   }
 
 
+  /**
+   * Retrieve all Tombstone objects from the Datastore service, oldest first. The returned list may
+   * be empty.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Tombstone> loadTombstones() throws PersistentDataStoreException {
+    return persistentDataStore.loadTombstones();
+  }
+
+  /**
+   * Retrieve the hashes of all stored images from the Datastore service.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<String> loadImageHashes() throws PersistentDataStoreException {
+    return persistentDataStore.loadImageHashes();
+  }
+
+  /**
+   * Retrieve the StoredImage with the given hash from the Datastore service, or null if there is
+   * none.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public StoredImage loadImage(String hash) throws PersistentDataStoreException {
+    return persistentDataStore.loadImage(hash);
+  }
+
+  /**
+   * Retrieve the widths of the ImageVariants of each source image from the Datastore service.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public Map<String, List<Integer>> loadImageVariantWidths() throws PersistentDataStoreException {
+    return persistentDataStore.loadImageVariantWidths();
+  }
+
+  /**
+   * Retrieve an ImageVariant from the Datastore service, or null if there is none.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public ImageVariant loadImageVariant(String sourceId, int width)
+      throws PersistentDataStoreException {
+    return persistentDataStore.loadImageVariant(sourceId, width);
+  }
 
   /** Write a User object to the Datastore service. */
   public void writeThrough(User user) {
@@ -138,6 +199,21 @@ public class PersistentStorageAgent {
     persistentDataStore.deleteThrough(message);
   }
 
+  /** Remove the Messages and replies with the given IDs from the Datastore service in batches. */
+  public void deleteMessages(Collection<UUID> messageIds) {
+    persistentDataStore.deleteMessages(messageIds);
+  }
+
+  /** Write a Tombstone object to the Datastore service. */
+  public void writeThrough(Tombstone tombstone) {
+    persistentDataStore.writeThrough(tombstone);
+  }
+
+  /** Remove a Tombstone object from the Datastore service. */
+  public void deleteThrough(Tombstone tombstone) {
+    persistentDataStore.deleteThrough(tombstone);
+  }
+
   /** Remove a Conversation object from the Datastore service. */
   public void deleteThrough(Conversation conversation) {
     persistentDataStore.deleteThrough(conversation);
@@ -147,4 +223,54 @@ public class PersistentStorageAgent {
   public void writeThrough(Hashtag hashtag) {
     persistentDataStore.writeThrough(hashtag);
   }
+
+  /**
+   * Write everything collected by a UnitOfWork to the Datastore service in one batch. The batch is
+   * only all-or-nothing when it touches at most PersistentDataStore.MAX_TRANSACTION_GROUPS entity
+   * groups; see UnitOfWork.
+   */
+  public void commit(UnitOfWork unit) {
+    if (!unit.isEmpty()) {
+      persistentDataStore.writeThrough(unit);
+    }
+  }
+
+  /** Write a StoredImage object to the Datastore service. */
+  public void writeThrough(StoredImage image) {
+    persistentDataStore.writeThrough(image);
+  }
+
+  /**
+   * Stream an upload into image chunks in the Datastore service, without listing it as an image
+   * yet.
+   */
+  public StagedImage stageImage(InputStream content, int size, String contentType)
+      throws IOException {
+    return persistentDataStore.stageImage(content, size, contentType);
+  }
+
+  /** List a staged upload in the Datastore service as the image with its hash. */
+  public void commitImage(StagedImage image) {
+    persistentDataStore.commitImage(image);
+  }
+
+  /** Remove the image chunks of a staged upload from the Datastore service. */
+  public void discardImage(StagedImage image) {
+    persistentDataStore.discardImage(image);
+  }
+
+  /** Remove a StoredImage object from the Datastore service. */
+  public void deleteImage(String hash) {
+    persistentDataStore.deleteImage(hash);
+  }
+
+  /** Write an ImageVariant object to the Datastore service. */
+  public void writeThrough(ImageVariant variant) {
+    persistentDataStore.writeThrough(variant);
+  }
+
+  /** Remove the ImageVariants of the given source image at the given widths. */
+  public void deleteImageVariants(String sourceId, Collection<Integer> widths) {
+    persistentDataStore.deleteImageVariants(sourceId, widths);
+  }
 }
@@ -0,0 +1,77 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.Hashtag;
+import codeu.model.data.Mention;
+import codeu.model.data.Message;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the objects changed by one user action, such as a chat post, so that
+ * PersistentStorageAgent.commit() can write them all in a single batch.
+ *
+ * <p>A unit that touches at most PersistentDataStore.MAX_TRANSACTION_GROUPS entity groups is
+ * written in a transaction, so either all of it is saved or none of it is. Every message, mention
+ * and hashtag is its own entity group, so a bigger unit is written as a plain batch put, and a
+ * failed put may have saved only some of it; a message can then be saved without some of its
+ * mentions or hashtag postings, or the other way around.
+ *
+ * <p>Adding the same object twice only writes it once, with its state at commit time.
+ */
+public class UnitOfWork {
+
+  private final Set<Message> messages = new LinkedHashSet<>();
+  private final Set<Mention> mentions = new LinkedHashSet<>();
+  private final Set<Hashtag> hashtags = new LinkedHashSet<>();
+
+  /** Adds a Message, with its replies, to be written. */
+  public void add(Message message) {
+    messages.add(message);
+  }
+
+  /** Adds a Mention to be written. */
+  public void add(Mention mention) {
+    mentions.add(mention);
+  }
+
+  /** Adds a Hashtag to be written. */
+  public void add(Hashtag hashtag) {
+    hashtags.add(hashtag);
+  }
+
+  /** Returns the Messages to be written, in the order they were added. */
+  public List<Message> getMessages() {
+    return new ArrayList<>(messages);
+  }
+
+  /** Returns the Mentions to be written, in the order they were added. */
+  public List<Mention> getMentions() {
+    return new ArrayList<>(mentions);
+  }
+
+  /** Returns the Hashtags to be written, in the order they were added. */
+  public List<Hashtag> getHashtags() {
+    return new ArrayList<>(hashtags);
+  }
+
+  /** Returns whether nothing has been added. */
+  public boolean isEmpty() {
+    return messages.isEmpty() && mentions.isEmpty() && hashtags.isEmpty();
+  }
+}
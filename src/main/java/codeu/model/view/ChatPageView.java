@@ -0,0 +1,52 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.view;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Immutable view of a chat page: a Conversation's messages and what the viewer may do there. */
+public class ChatPageView {
+  private final String title;
+  private final List<MessageView> messages;
+  private final boolean canPost;
+
+  /**
+   * Constructs a new ChatPageView.
+   *
+   * @param title the title of the Conversation
+   * @param messages views of the Conversation's messages, oldest first
+   * @param canPost whether the viewer is logged in and may post or reply
+   */
+  public ChatPageView(String title, List<MessageView> messages, boolean canPost) {
+    this.title = title;
+    this.messages = Collections.unmodifiableList(messages);
+    this.canPost = canPost;
+  }
+
+  /** Returns the title of the Conversation. */
+  public String getTitle() {
+    return title;
+  }
+
+  /** Returns views of the Conversation's messages, oldest first. */
+  public List<MessageView> getMessages() {
+    return messages;
+  }
+
+  /** Returns whether the viewer may post or reply. */
+  public boolean canPost() {
+    return canPost;
+  }
+}
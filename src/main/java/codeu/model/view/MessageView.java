@@ -0,0 +1,101 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.view;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable view of a Message, ready to be rendered. The author's name, the rendered content and
+ * whether the viewer may change the message are resolved by the servlet, so JSPs only read fields.
+ */
+public class MessageView {
+  private final UUID id;
+  private final String authorName;
+  private final String type;
+  private final String content;
+  private final Instant creation;
+  private final boolean editable;
+  private final List<MessageView> replies;
+
+  /**
+   * Constructs a new MessageView.
+   *
+   * @param id the ID of the Message
+   * @param authorName the username of the Message's author
+   * @param type the type of the Message, "text" or "image"
+   * @param content the content to show, already rendered to HTML for text messages
+   * @param creation the creation time of the Message
+   * @param editable whether the viewer wrote the Message and may edit or delete it
+   * @param replies views of the Message's replies
+   */
+  public MessageView(
+      UUID id,
+      String authorName,
+      String type,
+      String content,
+      Instant creation,
+      boolean editable,
+      List<MessageView> replies) {
+    this.id = id;
+    this.authorName = authorName;
+    this.type = type;
+    this.content = content;
+    this.creation = creation;
+    this.editable = editable;
+    this.replies = Collections.unmodifiableList(replies);
+  }
+
+  /** Returns the ID of the Message. */
+  public UUID getId() {
+    return id;
+  }
+
+  /** Returns the username of the Message's author. */
+  public String getAuthorName() {
+    return authorName;
+  }
+
+  /** Returns the type of the Message. */
+  public String getType() {
+    return type;
+  }
+
+  /** Returns true if this is an image Message, whose content is the image URL. */
+  public boolean isImage() {
+    return "image".equals(type);
+  }
+
+  /** Returns the content to show. */
+  public String getContent() {
+    return content;
+  }
+
+  /** Returns the creation time of the Message. */
+  public Instant getCreationTime() {
+    return creation;
+  }
+
+  /** Returns whether the viewer may edit or delete the Message. */
+  public boolean isEditable() {
+    return editable;
+  }
+
+  /** Returns views of the Message's replies. */
+  public List<MessageView> getReplies() {
+    return replies;
+  }
+}
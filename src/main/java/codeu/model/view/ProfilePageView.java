@@ -0,0 +1,91 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.view;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Immutable view of a User's profile page. */
+public class ProfilePageView {
+  private final String username;
+  private final String aboutMe;
+  private final String profilePictureUrl;
+  private final boolean owner;
+  private final List<MessageView> messages;
+  private final List<MessageView> mentionedMessages;
+  private final int unreadMentions;
+
+  /**
+   * Constructs a new ProfilePageView.
+   *
+   * @param username the username of the profile's User
+   * @param aboutMe the User's about me text
+   * @param profilePictureUrl the URL of the User's profile picture, or null for the default
+   * @param owner whether the viewer is the profile's User
+   * @param messages views of the messages the User sent
+   * @param mentionedMessages views of the newest messages that mention the User
+   * @param unreadMentions how many mentions the User has not seen yet
+   */
+  public ProfilePageView(
+      String username,
+      String aboutMe,
+      String profilePictureUrl,
+      boolean owner,
+      List<MessageView> messages,
+      List<MessageView> mentionedMessages,
+      int unreadMentions) {
+    this.username = username;
+    this.aboutMe = aboutMe;
+    this.profilePictureUrl = profilePictureUrl;
+    this.owner = owner;
+    this.messages = Collections.unmodifiableList(messages);
+    this.mentionedMessages = Collections.unmodifiableList(mentionedMessages);
+    this.unreadMentions = unreadMentions;
+  }
+
+  /** Returns the username of the profile's User. */
+  public String getUsername() {
+    return username;
+  }
+
+  /** Returns the User's about me text. */
+  public String getAboutMe() {
+    return aboutMe;
+  }
+
+  /** Returns the URL of the profile picture, or null if the User has none. */
+  public String getProfilePictureUrl() {
+    return profilePictureUrl;
+  }
+
+  /** Returns whether the viewer is the profile's User and may edit the profile. */
+  public boolean isOwner() {
+    return owner;
+  }
+
+  /** Returns views of the messages the User sent. */
+  public List<MessageView> getMessages() {
+    return messages;
+  }
+
+  /** Returns views of the newest messages that mention the User. */
+  public List<MessageView> getMentionedMessages() {
+    return mentionedMessages;
+  }
+
+  /** Returns how many mentions the User has not seen yet. */
+  public int getUnreadMentions() {
+    return unreadMentions;
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.view;
+
+/** Immutable snapshot of how one stage of the message ingestion pipeline is keeping up. */
+public class StageMetricsView {
+  private final String name;
+  private final int queued;
+  private final long completed;
+  private final long blocked;
+  private final long failed;
+  private final double averageWaitMillis;
+  private final double averageRunMillis;
+
+  /**
+   * Constructs a new StageMetricsView.
+   *
+   * @param name the name of the stage
+   * @param queued how much work is waiting in the stage's queue
+   * @param completed how much work the stage has finished
+   * @param blocked how many times work had to wait for room in the queue
+   * @param failed how much work threw an exception
+   * @param averageWaitMillis the average time finished work spent queued
+   * @param averageRunMillis the average time finished work took to run
+   */
+  public StageMetricsView(
+      String name,
+      int queued,
+      long completed,
+      long blocked,
+      long failed,
+      double averageWaitMillis,
+      double averageRunMillis) {
+    this.name = name;
+    this.queued = queued;
+    this.completed = completed;
+    this.blocked = blocked;
+    this.failed = failed;
+    this.averageWaitMillis = averageWaitMillis;
+    this.averageRunMillis = averageRunMillis;
+  }
+
+  /** Returns the name of the stage. */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns how much work is waiting in the stage's queue. */
+  public int getQueued() {
+    return queued;
+  }
+
+  /** Returns how much work the stage has finished. */
+  public long getCompleted() {
+    return completed;
+  }
+
+  /** Returns how many times work had to wait for room in the queue. */
+  public long getBlocked() {
+    return blocked;
+  }
+
+  /** Returns how much work threw an exception. */
+  public long getFailed() {
+    return failed;
+  }
+
+  /** Returns the average time finished work spent queued, in milliseconds. */
+  public double getAverageWaitMillis() {
+    return averageWaitMillis;
+  }
+
+  /** Returns the average time finished work took to run, in milliseconds. */
+  public double getAverageRunMillis() {
+    return averageRunMillis;
+  }
+}
@@ -1,26 +1,16 @@
+<%@ page import="codeu.controller.StaticAssetServlet" %>
 <%@ page import="java.util.List" %>
-<%@ page import="java.util.UUID" %>
-<%@ page import="codeu.model.data.User" %>
-<%@ page import="codeu.model.data.Conversation" %>
-<%@ page import="codeu.model.data.Message" %>
-<%@ page import="codeu.model.store.basic.UserStore" %>
-<%@ page import="codeu.model.store.basic.MessageStore" %>
+<%@ page import="codeu.model.data.Activity" %>
+<%@ page import="codeu.model.data.TrendingHashtag" %>
 
 <!DOCTYPE html>
 <html>
 <head>
     <title>Activity Feed</title>
-    <link rel="stylesheet" href="/css/main.css">
+    <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 </head>
 <body>
 
-<!--TODO(StevenAb):
-
- Need to get all login, conversation, and message data
- and display it in chronological order.
-
--->
-
     <nav>
         <a id="navTitle" href="/">Pied Piper Chat App</a>
         <% if(request.getSession().getAttribute("user") != null){ %>
@@ -40,57 +30,61 @@
 
         <h1>Welcome to the activity feed.</h1>
 
-        <div id = "container">
-        <ul>
-        <%
-        List<Conversation> conversations =
-          (List<Conversation>) request.getAttribute("conversations");
+        <% if(request.getSession().getAttribute("user") != null){ %>
+          <% if("home".equals(request.getAttribute("feed"))){ %>
+            <p><strong>My Feed</strong> | <a href="/activityfeed">Everything</a></p>
+          <% } else { %>
+            <p><a href="/activityfeed?feed=home">My Feed</a> | <strong>Everything</strong></p>
+          <% } %>
+        <% } %>
 
-        for(Conversation conversation : conversations) {
-        %>
-            <li>
-              <strong><%= conversation.getCreationTime() %>:</strong>
-              <%= UserStore.getInstance().getUser(
-                conversation.getOwnerId()).getName() %> created conversation
-              <a href="/chat/<%= conversation.getTitle() %>">
-                <%= conversation.getTitle() %>
-              </a>
-            </li>
         <%
-            List<Message> messages = (List<Message>) MessageStore.getInstance()
-              .getMessagesInConversation(conversation.getId());
-
-            if(messages != null && !messages.isEmpty()) {
-                for(Message message : messages) {
+        List<TrendingHashtag> trendingHashtags =
+          (List<TrendingHashtag>) request.getAttribute("trendingHashtags");
+        if(!trendingHashtags.isEmpty()){
         %>
-                    <li>
-                        <strong><%= message.getCreationTime() %>:</strong>
-                        <%= UserStore.getInstance().getUser(
-                          message.getAuthorId()).getName() %> sent a message in
-                        <a href="/chat/<%= conversation.getTitle() %>">
-                          <%= conversation.getTitle() %>
-                        </a>: "
-                        <%= message.getContent() %>"
-                    </li>
-        <%
-                }
-            }
-        }
+          <p>
+            <strong>Trending:</strong>
+          <% for(TrendingHashtag hashtag : trendingHashtags){ %>
+            <a href="/hashtag/<%= hashtag.getName() %>">#<%= hashtag.getName() %></a>
+          <% } %>
+            (<a href="/trending">more</a>)
+          </p>
+        <% } %>
 
-        List<UUID> userIds = (List<UUID>) UserStore.getInstance().getUserIds();
+        <div id = "container">
+        <ul>
+        <%
+        List<Activity> activities =
+          (List<Activity>) request.getAttribute("activities");
 
-        for(UUID id : userIds) {
-            User user = UserStore.getInstance().getUser(id);
+        for(Activity activity : activities) {
         %>
             <li>
-                <strong><%= user.getCreationTime() %>:</strong>
-                <%= user.getName() %> joined!
+              <strong><%= activity.getCreationTime() %>:</strong>
+        <%  if(activity.getType() == Activity.Type.USER_JOINED) { %>
+              <%= activity.getUserName() %> joined!
+        <%  } else if(activity.getType() == Activity.Type.CONVERSATION_CREATED) { %>
+              <%= activity.getUserName() %> created conversation
+              <a href="/chat/<%= activity.getConversationTitle() %>">
+                <%= activity.getConversationTitle() %>
+              </a>
+        <%  } else { %>
+              <%= activity.getUserName() %> sent a message in
+              <a href="/chat/<%= activity.getConversationTitle() %>">
+                <%= activity.getConversationTitle() %>
+              </a>: "
+              <%= activity.getContent() %>"
+        <%  } %>
             </li>
         <%
         }
         %>
 
         </ul>
+        <% if(request.getAttribute("nextCursor") != null){ %>
+          <a href="/activityfeed?feed=<%= request.getAttribute("feed") %>&before=<%= request.getAttribute("nextCursor") %>">Older activity</a>
+        <% } %>
         </div>
     </div>
 
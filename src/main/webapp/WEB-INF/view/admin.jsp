@@ -1,11 +1,17 @@
 <!--
   Admin.jsp
 -->
+<%@ page import="codeu.controller.StaticAssetServlet" %>
+<%@ page import="codeu.model.data.UserAgentCount" %>
+<%@ page import="codeu.model.view.StageMetricsView" %>
+<%@ page import="java.util.List" %>
+<%@ page import="org.jsoup.Jsoup" %>
+<%@ page import="org.jsoup.safety.Whitelist" %>
 <!DOCTYPE html>
 <html>
 <head>
   <title>Admin</title>
-  <link rel="stylesheet" href="/css/main.css">
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 </head>
 <body>
   <!-- This is redirecting the user if they are not an admin -->
@@ -36,5 +42,45 @@
     <p style="text-align: center;"><strong>Messages:</strong> <%= request.getAttribute("messageCount") %></p>
     <p style="text-align: center;"><strong>Newest User:</strong> <%= request.getAttribute("newestUser") %></p>
     <p style="text-align: center;"><strong>Number of Attacks:</strong> <%= request.getAttribute("attackCount") %></p>
+    <p style="text-align: center;"><strong>Attacks Missing From the Log:</strong> <%= request.getAttribute("unloggedAttackCount") %></p>
+
+    <p style="text-align: center;"><strong>Password Hashes:</strong> <%= request.getAttribute("passwordHashCount") %>
+      (<%= request.getAttribute("passwordHashRejectedCount") %> turned away,
+      <%= request.getAttribute("passwordHashQueueMillis") %> ms average wait,
+      <%= request.getAttribute("passwordHashMillis") %> ms average hash)</p>
+
+    <% for (StageMetricsView stage : (List<StageMetricsView>) request.getAttribute("ingestStages")) { %>
+      <p style="text-align: center;"><strong>Indexing (<%= stage.getName() %>):</strong> <%= stage.getCompleted() %> done,
+        <%= stage.getQueued() %> queued (<%= stage.getBlocked() %> times full),
+        <%= stage.getFailed() %> failed,
+        <%= String.format("%.1f", stage.getAverageWaitMillis()) %> ms average wait,
+        <%= String.format("%.1f", stage.getAverageRunMillis()) %> ms average run</p>
+    <% } %>
+    <p style="text-align: center;"><strong>Deletions Being Cleaned Up:</strong> <%= request.getAttribute("pendingDeletionCount") %></p>
+
+    <!-- Attacks per hour over the last week, oldest on the left -->
+    <%
+      long[] hourlyCounts = (long[]) request.getAttribute("attackHourlyCounts");
+      long busiestHour = 1;
+      for (long count : hourlyCounts) {
+        busiestHour = Math.max(busiestHour, count);
+      }
+    %>
+    <p style="text-align: center;"><strong>Attacks per hour, last 7 days</strong> (busiest hour: <%= busiestHour %>)</p>
+    <svg style="display: block; margin: auto;" width="<%= hourlyCounts.length * 4 %>" height="100">
+      <% for (int i = 0; i < hourlyCounts.length; i++) {
+           long height = hourlyCounts[i] * 100 / busiestHour; %>
+        <rect x="<%= i * 4 %>" y="<%= 100 - height %>" width="3" height="<%= height %>" fill="darkred">
+          <title><%= hourlyCounts.length - i - 1 %> hours ago: <%= hourlyCounts[i] %></title>
+        </rect>
+      <% } %>
+    </svg>
+
+    <p style="text-align: center;"><strong>Most common attacking User-Agents, last 7 days</strong></p>
+    <ol style="width: 800px; margin: auto;">
+      <% for (UserAgentCount userAgent : (List<UserAgentCount>) request.getAttribute("topUserAgents")) { %>
+        <li><%= Jsoup.clean(userAgent.getUserAgent(), Whitelist.none()) %>: <%= userAgent.getCount() %></li>
+      <% } %>
+    </ol>
 </body>
 </html>
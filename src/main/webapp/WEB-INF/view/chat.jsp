@@ -15,29 +15,23 @@
 --%>
 
 
+<%@ page import="codeu.controller.StaticAssetServlet" %>
 <%@ page import="java.util.List" %>
 <%@ page import="java.util.UUID" %>
 <%@ page import="java.util.ArrayList" %>
-<%@ page import="codeu.model.data.Conversation" %>
-<%@ page import="codeu.model.data.Message" %>
-<%@ page import="codeu.model.data.User" %>
-<%@ page import="codeu.model.store.basic.UserStore" %>
-<%@ page import="codeu.model.data.Mention" %>
-<%@ page import="com.google.appengine.api.blobstore.BlobstoreServiceFactory" %>
-<%@ page import="com.google.appengine.api.blobstore.BlobstoreService" %>
+<%@ page import="codeu.model.view.ChatPageView" %>
+<%@ page import="codeu.model.view.MessageView" %>
 
 <%
-Conversation conversation = (Conversation) request.getAttribute("conversation");
-List<Message> messages = (List<Message>) request.getAttribute("messages");
-BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+ChatPageView chatPage = (ChatPageView) request.getAttribute("page");
 %>
 
 <!DOCTYPE html>
 <html>
 <head>
   <meta charset="UTF-8">
-  <title><%= conversation.getTitle() %></title>
-  <link rel="stylesheet" href="/css/main.css" type="text/css">
+  <title><%= chatPage.getTitle() %></title>
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>" type="text/css">
 
   <style>
     #chat {
@@ -73,65 +67,39 @@ BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService(
 
   <div id="container">
 
-    <h1><%= conversation.getTitle() %>
+    <h1><%= chatPage.getTitle() %>
       <a href="" style="float: right">&#8635;</a></h1>
 
     <hr/>
 
     <div id="chat">
       <ul>
-    <%
-      for (Message message : messages) {
-        String author = UserStore.getInstance().getUser(message.getAuthorId()).getName();
-    %>
-        <%
-        String content = message.getContent();
-        String[] messageSplit = content.split(" ");
-        String output = "";
-        for (String word : messageSplit) {
-          if (word.length() >= 2 &&  word.charAt(0) == '#') {
-            if(word.charAt(word.length() - 1) == '.') {
-              word = word.substring(0, word.length() - 1);
-            }
-            word = "<a href='../../hashtag/" + word.substring(1) + "'>" 
-              + word + "</a>";
-          }
-          output = output + " " + word;
-        }
-        %>
-
-
-        <%
-        if (message.getType().equals("image")){
-        %>
-            <li><strong><%= author %>:</strong> 
+    <% for (MessageView message : chatPage.getMessages()) { %>
+        <% if (message.isImage()) { %>
+            <li><strong><%= message.getAuthorName() %>:</strong> 
             <img src="<%= message.getContent() %>" alt = "Image" width = 50% height = 50%> </li>
-        <%
-        } else if (message.getType().equals("text") || message.getType() == null) {
-        %>
-          <li><strong><%= author %>:</strong> <%= output %>
-  
-      <% } %>
+        <% } else { %>
+          <li><strong><%= message.getAuthorName() %>:</strong> <%= message.getContent() %>
+        <% } %>
 
-        <% if (UserStore.getInstance().getUser(author).getName().equals(
-                request.getSession().getAttribute("user"))) { %>
-          <form action="/chat/<%= conversation.getTitle() %>" method="POST">
+        <% if (message.isEditable()) { %>
+          <form action="/chat/<%= chatPage.getTitle() %>" method="POST">
             <button type="submit">Edit</button>
             <input type="text" name="edit">
             <input type="hidden" name="messageId" value="<%= message.getId() %>">
           </form>
         <% } %>
-        <% if (request.getSession().getAttribute("user") != null) { %>
-          <form action="/chat/<%= conversation.getTitle() %>" method="POST">
+        <% if (chatPage.canPost()) { %>
+          <form action="/chat/<%= chatPage.getTitle() %>" method="POST">
             <button type="submit">Reply</button>
             <input type="text" name="message">
             <input type="hidden" name="messageId" value="<%= message.getId() %>">
             <input type="hidden" name="reply" value="true">
           </form>
         <% } %>
-        <% if (UserStore.getInstance().getUser(author).getName().equals(request.getSession().getAttribute("user"))) { %>
+        <% if (message.isEditable()) { %>
 
-          <form action="/chat/<%= conversation.getTitle() %>" method="POST">
+          <form action="/chat/<%= chatPage.getTitle() %>" method="POST">
             <button type="submit">Delete</button>
             <input type="hidden" name="delete" value="true">
             <input type="hidden" name="messageId" value="<%= message.getId() %>">
@@ -139,57 +107,35 @@ BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService(
         <% } %>
       </li>
         <ul class="tab">
-      <%
-        for (Message reply : message.getReplies()) {
-        
-        author = UserStore.getInstance().getUser(reply.getAuthorId()).getName();
-        String contentReply = reply.getContent();
-        String[] replySplit = contentReply.split(" ");
-        String replyOutput = "";
-        for (String word : replySplit) {
-          if (word.length() >= 2 && word.charAt(0) == '#') {
-            if(word.charAt(word.length() - 1) == '.') {
-              word = word.substring(0, word.length() - 1);
-            } 
-            word = "<a href='../../hashtag/" + word.substring(1) + "'>" 
-              + word + "</a>";
-          }
-          replyOutput = replyOutput + " " + word;
-        }
-      %>
+      <% for (MessageView reply : message.getReplies()) { %>
         <li>
-            <strong><%= author %>:</strong> <%= replyOutput %>
-            <% if (UserStore.getInstance().getUser(author).getName().equals(
-                    request.getSession().getAttribute("user"))) { %>
-              <form action="/chat/<%= conversation.getTitle() %>" method="POST">
+            <strong><%= reply.getAuthorName() %>:</strong> <%= reply.getContent() %>
+            <% if (reply.isEditable()) { %>
+              <form action="/chat/<%= chatPage.getTitle() %>" method="POST">
                 <button type="submit">Edit</button>
                 <input type="text" name="edit">
                 <input type="hidden" name="messageId" value="<%= message.getId() %>">
               </form>
             <% } %>
         </li>
-      <%
-        }
-      %>
+      <% } %>
         </ul>
-    <%
-      }
-    %>
+    <% } %>
       </ul>
     </div>
 
     <hr/>
 
-    <% if (request.getSession().getAttribute("user") != null) { %>
-    <form action="/chat/<%= conversation.getTitle() %>" method="POST">
+    <% if (chatPage.canPost()) { %>
+    <form action="/chat/<%= chatPage.getTitle() %>" method="POST">
         <input type="text" name="message">
         <br/>
         <input type="hidden" name="reply" value="false">
         <button type="submit">Send</button>
     </form>
 
-    <form action="<%= blobstoreService.createUploadUrl("/ImageUploadServlet") %>" method= "POST" enctype = "multipart/form-data">
-            <input type="hidden" name="conversationTitle" value="<%=conversation.getTitle() %>"> 
+    <form action="/ImageUploadServlet" method= "POST" enctype = "multipart/form-data">
+            <input type="hidden" name="conversationTitle" value="<%=chatPage.getTitle() %>"> 
             <input type="file" name="myFile" >
             <input type="submit" value="Submit">
     </form>
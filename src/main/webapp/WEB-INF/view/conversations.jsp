@@ -13,6 +13,7 @@
   See the License for the specific language governing permissions and
   limitations under the License.
 --%>
+<%@ page import="codeu.controller.StaticAssetServlet" %>
 <%@ page import="java.util.List" %>
 <%@ page import="codeu.model.data.Conversation" %>
 
@@ -20,7 +21,7 @@
 <html>
 <head>
   <title>Conversations</title>
-  <link rel="stylesheet" href="/css/main.css">
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 </head>
 <body>
 
@@ -62,6 +63,12 @@
 
     <h1>Conversations</h1>
 
+    <% if("hot".equals(request.getAttribute("sort"))){ %>
+      <p><a href="/conversations">Newest</a> | <strong>Hot</strong></p>
+    <% } else { %>
+      <p><strong>Newest</strong> | <a href="/conversations?sort=hot">Hot</a></p>
+    <% } %>
+
     <%
     List<Conversation> conversations =
       (List<Conversation>) request.getAttribute("conversations");
@@ -92,6 +99,9 @@
     <%
     }
     %>
+    <% if(request.getAttribute("nextPage") != null){ %>
+      <a href="/conversations?sort=hot&page=<%= request.getAttribute("nextPage") %>">More conversations</a>
+    <% } %>
     <hr/>
   </div>
 </body>
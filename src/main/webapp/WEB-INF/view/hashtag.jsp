@@ -1,10 +1,11 @@
+<%@ page import="codeu.controller.StaticAssetServlet" %>
 <%@ page import="java.util.List" %>
 <%@ page import="codeu.model.data.Message" %>
 <!DOCTYPE html>
 <html>
 <head>
   <title>Hashtag | <%= request.getAttribute("hashtagName") %></title>
-  <link rel="stylesheet" href="/css/main.css">
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 </head>
 <body>
   <nav>
@@ -30,5 +31,13 @@
     <%= message.getContent() %>
     </p>
   <% } %>
+  <% if (messages.isEmpty()) { %>
+    <p style="text-align: center;">No messages use this hashtag yet.</p>
+  <% } %>
+  <% if (request.getAttribute("nextCursor") != null) { %>
+    <p style="text-align: center;">
+      <a href="/hashtag/<%= request.getAttribute("hashtagName") %>?before=<%= request.getAttribute("nextCursor") %>">Older messages</a>
+    </p>
+  <% } %>
   </body>
 </html>
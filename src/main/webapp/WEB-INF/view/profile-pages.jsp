@@ -1,22 +1,14 @@
-<%@ page import="java.util.List" %>
-<%@ page import="codeu.model.store.basic.UserStore" %>
-<%@ page import="codeu.model.data.Message" %>
-<%@ page import="codeu.model.store.basic.MentionStore" %>
-<%@ page import="codeu.model.data.Mention" %>
-<%@ page import="codeu.model.data.User" %>
-<%@ page import="com.google.appengine.api.datastore.Text" %>
-
-<%
-/** Gets the UserStore instance to access all users. */
-UserStore userStore = UserStore.getInstance();
-%>
-<% List<Message> messages = (List<Message>) request.getAttribute("messages"); %>
+<%@ page import="codeu.controller.StaticAssetServlet" %>
+<%@ page import="codeu.model.view.MessageView" %>
+<%@ page import="codeu.model.view.ProfilePageView" %>
+
+<% ProfilePageView profile = (ProfilePageView) request.getAttribute("page"); %>
 
 <!DOCTYPE html>
 <html>
 <head>
   <title>Profile Pages</title>
-  <link rel="stylesheet" href="/css/main.css">
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 
   <style>
     #profileMessages {
@@ -53,22 +45,17 @@ UserStore userStore = UserStore.getInstance();
     <% } else {%>
       <% if(request.getSession().getAttribute("user") != null){ %>
 
-        <h1><%= request.getAttribute("username") %>'s Profile Page</h1>
+        <h1><%= profile.getUsername() %>'s Profile Page</h1>
 
         <hr/>
 
-        <%
-          String userProfile = (String) request.getAttribute("username");
-          User currentUser = userStore.getUser(userProfile);
-        %>
-
-        <% if (currentUser.getProfilePic() == null) { %>
-          <img src="../images/default_pfp.jpg" alt="temp"/>
+        <% if (profile.getProfilePictureUrl() == null) { %>
+          <img src="<%= StaticAssetServlet.url("/images/default_pfp.jpg") %>" alt="temp"/>
         <% } else { %>
-          <img src="data:image/jpeg;base64,<%= currentUser.getProfilePic().getValue() %>" alt="temp" width="250" />
+          <img src="<%= profile.getProfilePictureUrl() %>" alt="temp" width="250" />
         <% } %>
 
-        <% if (request.getSession().getAttribute("user").equals(request.getAttribute("username"))) { %>
+        <% if (profile.isOwner()) { %>
            <form action="/users/<%= request.getSession().getAttribute("user") %>" method="POST" enctype="multipart/form-data">
              <label for="EditProfilePicture">Edit Your Profile Picture: </label>
              <br/>
@@ -80,10 +67,10 @@ UserStore userStore = UserStore.getInstance();
 
         <hr/>
 
-        <h2>About <%= request.getAttribute("username") %> </h2>
-        <p> <%= UserStore.getInstance().getUser((String)request.getAttribute("username")).getAboutMe() %> </p>
+        <h2>About <%= profile.getUsername() %> </h2>
+        <p> <%= profile.getAboutMe() %> </p>
 
-        <% if(request.getSession().getAttribute("user").equals(request.getAttribute("username"))){ %>
+        <% if(profile.isOwner()){ %>
           <h2>Edit About Me</h2>
 
           <form action="/users/<%= request.getSession().getAttribute("user") %>" method="POST">
@@ -100,22 +87,24 @@ UserStore userStore = UserStore.getInstance();
 
         <hr/>
 
-        <h2><%= request.getAttribute("username") %>'s Sent Messages</h2>
+        <h2><%= profile.getUsername() %>'s Sent Messages</h2>
         <div id="profileMessages">
           <ul>
-            <% for (Message message : messages) {
-                String author = UserStore.getInstance().getUser(message.getAuthorId()).getName();
-            %>
-                <li><strong><%= author %>:</strong> <%=message.getStyledContent(message.getContent()) %></li>
+            <% for (MessageView message : profile.getMessages()) { %>
+                <li><strong><%= message.getAuthorName() %>:</strong> <%= message.getContent() %></li>
             <% } %>
           </ul>
         </div>
 
-        <h2><%= request.getAttribute("username") %>'s Mentioned Messages</h2>
+        <h2><%= profile.getUsername() %>'s Mentioned Messages
+          <% if (profile.getUnreadMentions() > 0) { %>
+            (<%= profile.getUnreadMentions() %> new)
+          <% } %>
+        </h2>
         <div id="mentionedMessages">
           <ul>
-            <% for (Message message : messages) { %>
-                <li><%= message.getStyledContent(message.getContent()) %></li>
+            <% for (MessageView message : profile.getMentionedMessages()) { %>
+                <li><%= message.getContent() %></li>
 
             <% } %>
           </ul>
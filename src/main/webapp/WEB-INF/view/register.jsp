@@ -13,11 +13,12 @@
   See the License for the specific language governing permissions and
   limitations under the License.
 --%>
+<%@ page import="codeu.controller.StaticAssetServlet" %>
 <!DOCTYPE html>
 <html>
 <head>
   <title>Register</title>
-  <link rel="stylesheet" href="/css/main.css">
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
 </head>
 <body>
 
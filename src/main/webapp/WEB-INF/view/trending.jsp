@@ -0,0 +1,56 @@
+<%@ page import="codeu.controller.StaticAssetServlet" %>
+<%@ page import="java.util.List" %>
+<%@ page import="codeu.model.data.TrendingHashtag" %>
+<%@ page import="codeu.model.store.basic.TrendingStore" %>
+<!DOCTYPE html>
+<html>
+<head>
+  <title>Trending Hashtags</title>
+  <link rel="stylesheet" href="<%= StaticAssetServlet.url("/css/main.css") %>">
+</head>
+<body>
+  <nav>
+    <a id="navTitle" href="/">Pied Piper Chat App</a>
+    <% if(request.getSession().getAttribute("user") != null){ %>
+      <a href="/users/<%= request.getSession().getAttribute("user") %>">My Profile</a>
+    <% } %>
+    <a href="/activityfeed">Activity Feed</a>
+    <a href="/conversations">Conversations</a>
+    <% if (request.getSession().getAttribute("user") != null) { %>
+      <a>Hello <%= request.getSession().getAttribute("user") %>!</a>
+    <% } else { %>
+      <a href="/login">Login</a>
+    <% } %>
+    <a href="/about.jsp">About</a>
+  </nav>
+
+  <div id="container">
+    <h1>Trending Hashtags</h1>
+
+    <% TrendingStore.Window current = (TrendingStore.Window) request.getAttribute("window"); %>
+    <p>
+    <% for (TrendingStore.Window window : TrendingStore.Window.values()) { %>
+      <% if (window == current) { %>
+        <strong><%= window.getLabel() %></strong>
+      <% } else { %>
+        <a href="/trending?window=<%= window.getLabel() %>"><%= window.getLabel() %></a>
+      <% } %>
+    <% } %>
+    </p>
+
+    <% List<TrendingHashtag> trending = (List<TrendingHashtag>) request.getAttribute("trending");
+      if (trending.isEmpty()) { %>
+      <p>No hashtags have been used in this window.</p>
+    <% } else { %>
+      <ol>
+      <% for (TrendingHashtag hashtag : trending) { %>
+        <li>
+          <a href="/hashtag/<%= hashtag.getName() %>">#<%= hashtag.getName() %></a>
+          (<%= hashtag.getCount() %>)
+        </li>
+      <% } %>
+      </ol>
+    <% } %>
+  </div>
+</body>
+</html>
@@ -15,15 +15,30 @@
 package codeu.controller;
 
 import codeu.model.data.Conversation;
+import codeu.model.data.Hashtag;
 import codeu.model.data.Message;
+import codeu.model.data.Tombstone;
 import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.TrendingStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
+import codeu.model.view.ChatPageView;
+import codeu.model.view.MessageView;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
@@ -46,6 +61,13 @@ public class ChatServletTest {
   private ConversationStore mockConversationStore;
   private MessageStore mockMessageStore;
   private UserStore mockUserStore;
+  private ActivityStore mockActivityStore;
+  private MentionStore mockMentionStore;
+  private HashtagStore mockHashtagStore;
+  private TrendingStore mockTrendingStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+  private ImageVariantStore mockImageVariantStore;
+  private ImageStore mockImageStore;
 
   @Before
   public void setup() {
@@ -68,6 +90,43 @@ public class ChatServletTest {
 
     mockUserStore = Mockito.mock(UserStore.class);
     chatServlet.setUserStore(mockUserStore);
+
+    mockActivityStore = Mockito.mock(ActivityStore.class);
+    chatServlet.setActivityStore(mockActivityStore);
+
+    mockMentionStore = Mockito.mock(MentionStore.class);
+    chatServlet.setMentionStore(mockMentionStore);
+
+    mockHashtagStore = Mockito.mock(HashtagStore.class);
+    chatServlet.setHashtagStore(mockHashtagStore);
+
+    mockTrendingStore = Mockito.mock(TrendingStore.class);
+    chatServlet.setTrendingStore(mockTrendingStore);
+
+    mockImageVariantStore = Mockito.mock(ImageVariantStore.class);
+    Mockito.when(mockImageVariantStore.getVariantWidth(Mockito.anyString(), Mockito.anyInt()))
+        .thenReturn(-1);
+    chatServlet.setImageVariantStore(mockImageVariantStore);
+
+    mockImageStore = Mockito.mock(ImageStore.class);
+    chatServlet.setImageStore(mockImageStore);
+
+    chatServlet.setIngestPipeline(IngestPipeline.getTestInstance(Runnable::run));
+
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    chatServlet.setPersistentStorageAgent(mockPersistentStorageAgent);
+
+    chatServlet.setDeletionCascade(
+        DeletionCascade.getTestInstance(
+            Runnable::run,
+            mockPersistentStorageAgent,
+            mockConversationStore,
+            mockMessageStore,
+            mockUserStore,
+            mockMentionStore,
+            mockHashtagStore,
+            mockActivityStore,
+            mockImageStore));
   }
 
   @Test
@@ -80,22 +139,46 @@ public class ChatServletTest {
     Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
         .thenReturn(fakeConversation);
 
+    User fakeAuthor =
+        new User(
+            UUID.randomUUID(),
+            "test_author",
+            "$2a$10$bBiLUAVmUFK6Iwg5rmpBUOIBW6rIMhU1eKfi3KR60V9UXaYTwPfHy",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Map<UUID, User> fakeAuthors = new HashMap<>();
+    fakeAuthors.put(fakeAuthor.getId(), fakeAuthor);
+    Mockito.when(mockUserStore.getUsers(Mockito.anyCollection())).thenReturn(fakeAuthors);
+
     List<Message> fakeMessageList = new ArrayList<>();
     fakeMessageList.add(
         new Message(
             UUID.randomUUID(),
             fakeConversationId,
-            UUID.randomUUID(),
-            "test message",
+            fakeAuthor.getId(),
+            "test #message",
             Instant.now(), 
             "text"));
     Mockito.when(mockMessageStore.getMessagesInConversation(fakeConversationId))
         .thenReturn(fakeMessageList);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeAuthor));
 
     chatServlet.doGet(mockRequest, mockResponse);
 
-    Mockito.verify(mockRequest).setAttribute("conversation", fakeConversation);
-    Mockito.verify(mockRequest).setAttribute("messages", fakeMessageList);
+    ArgumentCaptor<ChatPageView> pageArgumentCaptor = ArgumentCaptor.forClass(ChatPageView.class);
+    Mockito.verify(mockRequest).setAttribute(Mockito.eq("page"), pageArgumentCaptor.capture());
+    ChatPageView page = pageArgumentCaptor.getValue();
+    Assert.assertEquals("test_conversation", page.getTitle());
+    Assert.assertTrue(page.canPost());
+    MessageView message = page.getMessages().get(0);
+    Assert.assertEquals("test_author", message.getAuthorName());
+    Assert.assertEquals(
+        " test <a href='../../hashtag/message'>#message</a>", message.getContent());
+    Assert.assertTrue(message.isEditable());
+    Mockito.verify(mockUserStore).getUsers(Mockito.anyCollection());
     Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
   }
 
@@ -112,29 +195,18 @@ public class ChatServletTest {
 
   @Test
   public void testDoPost_UserNotLoggedIn() throws IOException, ServletException {
-    Mockito.when(mockSession.getAttribute("user")).thenReturn(null);
-
-    chatServlet.doPost(mockRequest, mockResponse);
-
-    Mockito.verify(mockMessageStore, Mockito.never()).addMessage(Mockito.any(Message.class));
-    Mockito.verify(mockResponse).sendRedirect("/login");
-  }
-
-  @Test
-  public void testDoPost_InvalidUser() throws IOException, ServletException {
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(null);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE)).thenReturn(null);
 
     chatServlet.doPost(mockRequest, mockResponse);
 
-    Mockito.verify(mockMessageStore, Mockito.never()).addMessage(Mockito.any(Message.class));
+    Mockito.verify(mockMessageStore, Mockito.never())
+        .addMessage(Mockito.any(Message.class), Mockito.any(UnitOfWork.class));
     Mockito.verify(mockResponse).sendRedirect("/login");
   }
 
   @Test
   public void testDoPost_ConversationNotFound() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -146,21 +218,22 @@ public class ChatServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
         .thenReturn(null);
 
     chatServlet.doPost(mockRequest, mockResponse);
 
-    Mockito.verify(mockMessageStore, Mockito.never()).addMessage(Mockito.any(Message.class));
+    Mockito.verify(mockMessageStore, Mockito.never())
+        .addMessage(Mockito.any(Message.class), Mockito.any(UnitOfWork.class));
     Mockito.verify(mockResponse).sendRedirect("/conversations");
   }
 
   @Test
   public void testDoPost_StoresMessage() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -172,7 +245,8 @@ public class ChatServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Conversation fakeConversation =
         new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
@@ -184,7 +258,8 @@ public class ChatServletTest {
     chatServlet.doPost(mockRequest, mockResponse);
 
     ArgumentCaptor<Message> messageArgumentCaptor = ArgumentCaptor.forClass(Message.class);
-    Mockito.verify(mockMessageStore).addMessage(messageArgumentCaptor.capture());
+    Mockito.verify(mockMessageStore)
+        .addMessage(messageArgumentCaptor.capture(), Mockito.any(UnitOfWork.class));
     Assert.assertEquals("Test message.", messageArgumentCaptor.getValue().getContent());
 
     Mockito.verify(mockResponse).sendRedirect("/chat/test_conversation");
@@ -193,7 +268,6 @@ public class ChatServletTest {
   @Test
   public void testDoPost_CleansHtmlContent() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -204,7 +278,8 @@ public class ChatServletTest {
             "test_aboutme",
             false,
             null);
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Conversation fakeConversation =
         new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
@@ -217,7 +292,8 @@ public class ChatServletTest {
     chatServlet.doPost(mockRequest, mockResponse);
 
     ArgumentCaptor<Message> messageArgumentCaptor = ArgumentCaptor.forClass(Message.class);
-    Mockito.verify(mockMessageStore).addMessage(messageArgumentCaptor.capture());
+    Mockito.verify(mockMessageStore)
+        .addMessage(messageArgumentCaptor.capture(), Mockito.any(UnitOfWork.class));
     Assert.assertEquals(
         "Contains html and  content.", messageArgumentCaptor.getValue().getContent());
 
@@ -227,7 +303,6 @@ public class ChatServletTest {
   @Test
   public void testDoPost_CleanedAndEmojisContent() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -238,7 +313,8 @@ public class ChatServletTest {
             "test_aboutme",
             false,
             null);
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Conversation fakeConversation =
         new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
@@ -251,7 +327,8 @@ public class ChatServletTest {
     chatServlet.doPost(mockRequest, mockResponse);
 
     ArgumentCaptor<Message> messageArgumentCaptor = ArgumentCaptor.forClass(Message.class);
-    Mockito.verify(mockMessageStore).addMessage(messageArgumentCaptor.capture());
+    Mockito.verify(mockMessageStore)
+        .addMessage(messageArgumentCaptor.capture(), Mockito.any(UnitOfWork.class));
     Assert.assertEquals(
         "🐫, 😃, 🏊🏽", messageArgumentCaptor.getValue().getContent());
 
@@ -261,7 +338,6 @@ public class ChatServletTest {
   @Test
   public void testDoPost_DeletesMessage() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
     Mockito.when(mockRequest.getParameter("delete")).thenReturn("true");
 
     User fakeUser =
@@ -274,7 +350,8 @@ public class ChatServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Conversation fakeConversation =
         new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
@@ -284,10 +361,140 @@ public class ChatServletTest {
     Mockito.when(mockRequest.getParameter("message")).thenReturn("Test message.");
     UUID messageId = UUID.randomUUID();
     Mockito.when(mockRequest.getParameter("messageId")).thenReturn(messageId.toString());
+    Message fakeMessage =
+        new Message(
+            messageId,
+            fakeConversation.getId(),
+            fakeUser.getId(),
+            "Test message.",
+            Instant.now(),
+            "text");
+    Mockito.when(mockMessageStore.getMessage(messageId)).thenReturn(fakeMessage);
+
+    chatServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<Tombstone> tombstoneArgumentCaptor = ArgumentCaptor.forClass(Tombstone.class);
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(tombstoneArgumentCaptor.capture());
+    Assert.assertEquals(messageId, tombstoneArgumentCaptor.getValue().getId());
+    Mockito.verify(mockMessageStore).removeMessage(fakeMessage);
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(tombstoneArgumentCaptor.getValue());
+  }
+
+  @Test
+  public void testDoPost_ResolvesMentions() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+
+    User fakeUser =
+        new User(
+            UUID.randomUUID(),
+            "test_username",
+            "$2a$10$bBiLUAVmUFK6Iwg5rmpBUOIBW6rIMhU1eKfi3KR60V9UXaYTwPfHy",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
+
+    User mentionedUser =
+        new User(
+            UUID.randomUUID(),
+            "friend",
+            "$2a$10$bBiLUAVmUFK6Iwg5rmpBUOIBW6rIMhU1eKfi3KR60V9UXaYTwPfHy",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Mockito.when(mockUserStore.getUser("friend")).thenReturn(mentionedUser);
+
+    Conversation fakeConversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+
+    Mockito.when(mockRequest.getParameter("message")).thenReturn("hi @friend @nobody");
+
+    chatServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<Message> messageArgumentCaptor = ArgumentCaptor.forClass(Message.class);
+    Mockito.verify(mockMessageStore)
+        .addMessage(messageArgumentCaptor.capture(), Mockito.any(UnitOfWork.class));
+    Mockito.verify(mockMentionStore)
+        .addMention(
+            Mockito.eq(messageArgumentCaptor.getValue().getId()),
+            Mockito.eq(mentionedUser),
+            Mockito.any(UnitOfWork.class));
+    Mockito.verify(mockMentionStore, Mockito.times(1))
+        .addMention(
+            Mockito.any(UUID.class), Mockito.any(User.class), Mockito.any(UnitOfWork.class));
+  }
+
+  @Test
+  public void testDoPost_RecordsTrendingHashtags() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+
+    User fakeUser =
+        new User(
+            UUID.randomUUID(),
+            "test_username",
+            "$2a$10$bBiLUAVmUFK6Iwg5rmpBUOIBW6rIMhU1eKfi3KR60V9UXaYTwPfHy",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
+
+    Conversation fakeConversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+
+    Mockito.when(mockRequest.getParameter("message")).thenReturn("hello #world");
 
     chatServlet.doPost(mockRequest, mockResponse);
 
     ArgumentCaptor<Message> messageArgumentCaptor = ArgumentCaptor.forClass(Message.class);
-    Mockito.verify(mockMessageStore).deleteMessage(messageArgumentCaptor.capture());
+    Mockito.verify(mockMessageStore)
+        .addMessage(messageArgumentCaptor.capture(), Mockito.any(UnitOfWork.class));
+    Mockito.verify(mockTrendingStore)
+        .recordHashtag("WORLD", messageArgumentCaptor.getValue().getCreationTime());
+  }
+
+  @Test
+  public void testDoPost_CommitsMessageAndIndexesTogether() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+
+    User fakeUser =
+        new User(
+            UUID.randomUUID(),
+            "test_username",
+            "$2a$10$bBiLUAVmUFK6Iwg5rmpBUOIBW6rIMhU1eKfi3KR60V9UXaYTwPfHy",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
+    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+
+    Conversation fakeConversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+
+    Mockito.when(mockRequest.getParameter("message")).thenReturn("#hello @test_username");
+
+    chatServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<UnitOfWork> unitArgumentCaptor = ArgumentCaptor.forClass(UnitOfWork.class);
+    Mockito.verify(mockPersistentStorageAgent).commit(unitArgumentCaptor.capture());
+    UnitOfWork unit = unitArgumentCaptor.getValue();
+    Mockito.verify(mockMessageStore).addMessage(Mockito.any(Message.class), Mockito.same(unit));
+    Mockito.verify(mockMentionStore)
+        .addMention(Mockito.any(UUID.class), Mockito.eq(fakeUser), Mockito.same(unit));
+    Mockito.verify(mockHashtagStore).addHashtag(Mockito.any(Hashtag.class), Mockito.same(unit));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(Message.class));
   }
 }
@@ -0,0 +1,181 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class CompressionFilterTest {
+
+  private CompressionFilter compressionFilter;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ByteArrayOutputStream sentBytes;
+  private String contentType;
+
+  @Before
+  public void setup() throws IOException {
+    compressionFilter = new CompressionFilter();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getMethod()).thenReturn("GET");
+    Mockito.when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+    sentBytes = new ByteArrayOutputStream();
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    Mockito.when(mockResponse.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+    Mockito.when(mockResponse.getCharacterEncoding()).thenReturn("UTF-8");
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        sentBytes.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+    Mockito.doAnswer(invocation -> contentType = invocation.getArgument(0))
+        .when(mockResponse).setContentType(Mockito.anyString());
+    Mockito.when(mockResponse.getContentType()).thenAnswer(invocation -> contentType);
+  }
+
+  @Test
+  public void testDoFilter_LargeHtmlIsCompressed() throws IOException, ServletException {
+    String page = repeat("<p>a long chat page</p>\n", 500);
+
+    compressionFilter.doFilter(mockRequest, mockResponse, chainWriting("text/html", page));
+
+    Mockito.verify(mockResponse).setHeader("Content-Encoding", "gzip");
+    Assert.assertTrue(sentBytes.size() < page.length() / 10);
+    Assert.assertEquals(page, gunzip(sentBytes.toByteArray()));
+  }
+
+  @Test
+  public void testDoFilter_DeflatersAreReused() throws IOException, ServletException {
+    String page = repeat("<p>a long chat page</p>\n", 500);
+
+    compressionFilter.doFilter(mockRequest, mockResponse, chainWriting("text/html", page));
+    sentBytes.reset();
+    compressionFilter.doFilter(mockRequest, mockResponse, chainWriting("text/html", page));
+
+    Assert.assertEquals(page, gunzip(sentBytes.toByteArray()));
+  }
+
+  @Test
+  public void testDoFilter_SmallResponseIsNotCompressed() throws IOException, ServletException {
+    compressionFilter.doFilter(mockRequest, mockResponse, chainWriting("text/html", "<p>hi</p>"));
+
+    Mockito.verify(mockResponse, Mockito.never())
+        .setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+    Mockito.verify(mockResponse).setContentLength(9);
+    Assert.assertEquals("<p>hi</p>", sentBytes.toString("UTF-8"));
+  }
+
+  @Test
+  public void testDoFilter_ImageIsNotCompressed() throws IOException, ServletException {
+    String image = repeat("x", 5000);
+
+    compressionFilter.doFilter(mockRequest, mockResponse, chainWriting("image/jpeg", image));
+
+    Mockito.verify(mockResponse, Mockito.never())
+        .setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+    Assert.assertEquals(image, sentBytes.toString("UTF-8"));
+  }
+
+  @Test
+  public void testDoFilter_ImageKeepsContentLength() throws IOException, ServletException {
+    FilterChain chain = (request, response) -> {
+      response.setContentType("image/png");
+      response.setContentLengthLong(3);
+      response.getOutputStream().write(new byte[] {1, 2, 3});
+    };
+
+    compressionFilter.doFilter(mockRequest, mockResponse, chain);
+
+    Mockito.verify(mockResponse).setContentLengthLong(3);
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, sentBytes.toByteArray());
+  }
+
+  @Test
+  public void testDoFilter_AlreadyEncodedIsNotCompressedAgain()
+      throws IOException, ServletException {
+    String body = repeat("y", 5000);
+    FilterChain chain = (request, response) -> {
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setContentType("text/html");
+      httpResponse.setHeader("Content-Encoding", "gzip");
+      httpResponse.getOutputStream().write(body.getBytes("UTF-8"));
+    };
+
+    compressionFilter.doFilter(mockRequest, mockResponse, chain);
+
+    Mockito.verify(mockResponse, Mockito.times(1)).setHeader("Content-Encoding", "gzip");
+    Assert.assertEquals(body, sentBytes.toString("UTF-8"));
+  }
+
+  @Test
+  public void testDoFilter_ClientWithoutGzip() throws IOException, ServletException {
+    Mockito.when(mockRequest.getHeader("Accept-Encoding")).thenReturn(null);
+    FilterChain mockFilterChain = Mockito.mock(FilterChain.class);
+
+    compressionFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+  }
+
+  private static FilterChain chainWriting(String type, String body) {
+    return (request, response) -> {
+      response.setContentType(type);
+      response.getWriter().print(body);
+    };
+  }
+
+  private static String repeat(String text, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(text);
+    }
+    return builder.toString();
+  }
+
+  private static String gunzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+    }
+    return out.toString("UTF-8");
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ConcurrencyLimitFilterTest {
+
+  private ConcurrencyLimitFilter concurrencyLimitFilter;
+  private ConcurrencyLimiter concurrencyLimiter;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockFilterChain;
+
+  @Before
+  public void setup() {
+    concurrencyLimiter = new ConcurrencyLimiter(2, 1, 10, Long.MAX_VALUE);
+    concurrencyLimitFilter = new ConcurrencyLimitFilter();
+    concurrencyLimitFilter.setConcurrencyLimiter(concurrencyLimiter);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getMethod()).thenReturn("GET");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/conversations");
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockFilterChain = Mockito.mock(FilterChain.class);
+  }
+
+  @Test
+  public void testDoFilter_Admitted() throws IOException, ServletException {
+    concurrencyLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+    Assert.assertEquals(0, concurrencyLimiter.getInFlight());
+  }
+
+  @Test
+  public void testDoFilter_ReleasedWhenChainThrows() throws IOException, ServletException {
+    Mockito.doThrow(new ServletException())
+        .when(mockFilterChain)
+        .doFilter(mockRequest, mockResponse);
+
+    try {
+      concurrencyLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+      Assert.fail();
+    } catch (ServletException expected) {
+    }
+
+    Assert.assertEquals(0, concurrencyLimiter.getInFlight());
+  }
+
+  @Test
+  public void testDoFilter_Shed() throws IOException, ServletException {
+    concurrencyLimiter.tryAcquire(false);
+    concurrencyLimiter.tryAcquire(false);
+
+    concurrencyLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.never()).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse).setHeader("Retry-After", "1");
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+
+  @Test
+  public void testDoFilter_ExpensiveShedBeforeReads() throws IOException, ServletException {
+    concurrencyLimiter.tryAcquire(false);
+    Mockito.when(mockRequest.getMethod()).thenReturn("POST");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/register");
+
+    concurrencyLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.never()).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+  }
+
+  @Test
+  public void testDoFilter_StoredImagesNotLimited() throws IOException, ServletException {
+    concurrencyLimiter.tryAcquire(false);
+    concurrencyLimiter.tryAcquire(false);
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/stored-images");
+
+    concurrencyLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse, Mockito.never()).sendError(Mockito.anyInt());
+    Assert.assertEquals(2, concurrencyLimiter.getInFlight());
+  }
+}
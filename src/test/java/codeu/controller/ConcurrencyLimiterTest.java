@@ -0,0 +1,108 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+  private static final long TARGET = 100;
+
+  @Test
+  public void testTryAcquire_ShedsOverLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100, TARGET);
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(limiter.tryAcquire(false));
+    }
+    Assert.assertFalse(limiter.tryAcquire(false));
+    Assert.assertEquals(4, limiter.getInFlight());
+    Assert.assertEquals(1, limiter.getShedCount());
+
+    limiter.release(0, 10);
+    Assert.assertTrue(limiter.tryAcquire(false));
+  }
+
+  @Test
+  public void testTryAcquire_ExpensiveShedFirst() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100, TARGET);
+
+    Assert.assertTrue(limiter.tryAcquire(true));
+    Assert.assertTrue(limiter.tryAcquire(true));
+    Assert.assertFalse(limiter.tryAcquire(true));
+    Assert.assertTrue(limiter.tryAcquire(false));
+    Assert.assertTrue(limiter.tryAcquire(false));
+    Assert.assertFalse(limiter.tryAcquire(false));
+  }
+
+  @Test
+  public void testRelease_SlowRequestLowersLimitOnce() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 100, TARGET);
+    for (int i = 0; i < 3; i++) {
+      limiter.tryAcquire(false);
+    }
+
+    limiter.release(0, 1000);
+    Assert.assertEquals(18, limiter.getLimit());
+
+    // Admitted before the decrease, so it doesn't count against the new limit.
+    limiter.release(500, 1100);
+    Assert.assertEquals(18, limiter.getLimit());
+
+    limiter.release(1050, 1200);
+    Assert.assertEquals(16, limiter.getLimit());
+  }
+
+  @Test
+  public void testRelease_LimitNeverBelowMinimum() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(5, 4, 100, TARGET);
+
+    for (int i = 0; i < 10; i++) {
+      limiter.tryAcquire(false);
+      limiter.release(i * 1000, i * 1000 + 500);
+    }
+
+    Assert.assertEquals(4, limiter.getLimit());
+  }
+
+  @Test
+  public void testRelease_FastRequestsRaiseBusyLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100, TARGET);
+
+    // Keep the limit full so every release sees it in use.
+    for (int i = 0; i < 4; i++) {
+      limiter.tryAcquire(false);
+    }
+    for (int i = 0; i < 40; i++) {
+      limiter.release(0, 10);
+      limiter.tryAcquire(false);
+    }
+
+    Assert.assertTrue(limiter.getLimit() > 4);
+  }
+
+  @Test
+  public void testRelease_IdleLimitDoesNotGrow() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100, TARGET);
+
+    for (int i = 0; i < 100; i++) {
+      limiter.tryAcquire(false);
+      limiter.release(0, 10);
+    }
+
+    Assert.assertEquals(10, limiter.getLimit());
+  }
+}
@@ -14,10 +14,19 @@
 
 package codeu.controller;
 
+import codeu.model.data.Activity;
 import codeu.model.data.Conversation;
+import codeu.model.data.Tombstone;
 import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -42,7 +51,9 @@ public class ConversationServletTest {
   private HttpServletResponse mockResponse;
   private RequestDispatcher mockRequestDispatcher;
   private ConversationStore mockConversationStore;
-  private UserStore mockUserStore;
+  private ActivityStore mockActivityStore;
+  private MessageStore mockMessageStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
 
   @Before
   public void setup() {
@@ -60,8 +71,22 @@ public class ConversationServletTest {
     mockConversationStore = Mockito.mock(ConversationStore.class);
     conversationServlet.setConversationStore(mockConversationStore);
 
-    mockUserStore = Mockito.mock(UserStore.class);
-    conversationServlet.setUserStore(mockUserStore);
+    mockActivityStore = Mockito.mock(ActivityStore.class);
+    conversationServlet.setActivityStore(mockActivityStore);
+
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    conversationServlet.setDeletionCascade(
+        DeletionCascade.getTestInstance(
+            Runnable::run,
+            mockPersistentStorageAgent,
+            mockConversationStore,
+            mockMessageStore,
+            Mockito.mock(UserStore.class),
+            Mockito.mock(MentionStore.class),
+            Mockito.mock(HashtagStore.class),
+            mockActivityStore,
+            Mockito.mock(ImageStore.class)));
   }
 
   @Test
@@ -78,20 +103,32 @@ public class ConversationServletTest {
   }
 
   @Test
-  public void testDoPost_UserNotLoggedIn() throws IOException, ServletException {
-    Mockito.when(mockSession.getAttribute("user")).thenReturn(null);
+  public void testDoGet_Hot() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("sort")).thenReturn("hot");
+    Mockito.when(mockRequest.getParameter("page")).thenReturn("1");
+    List<Conversation> fakeConversationList = new ArrayList<>();
+    for (int i = 0; i <= ConversationServlet.HOT_PAGE_SIZE; i++) {
+      fakeConversationList.add(
+          new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_" + i, Instant.now()));
+    }
+    Mockito.when(
+            mockConversationStore.getHotConversations(
+                ConversationServlet.HOT_PAGE_SIZE, ConversationServlet.HOT_PAGE_SIZE + 1))
+        .thenReturn(fakeConversationList);
 
-    conversationServlet.doPost(mockRequest, mockResponse);
+    conversationServlet.doGet(mockRequest, mockResponse);
 
-    Mockito.verify(mockConversationStore, Mockito.never())
-        .addConversation(Mockito.any(Conversation.class));
-    Mockito.verify(mockResponse).sendRedirect("/conversations");
+    Mockito.verify(mockRequest)
+        .setAttribute(
+            "conversations", fakeConversationList.subList(0, ConversationServlet.HOT_PAGE_SIZE));
+    Mockito.verify(mockRequest).setAttribute("nextPage", 2);
+    Mockito.verify(mockRequest).setAttribute("sort", "hot");
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
   }
 
   @Test
-  public void testDoPost_InvalidUser() throws IOException, ServletException {
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(null);
+  public void testDoPost_UserNotLoggedIn() throws IOException, ServletException {
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE)).thenReturn(null);
 
     conversationServlet.doPost(mockRequest, mockResponse);
 
@@ -103,7 +140,6 @@ public class ConversationServletTest {
   @Test
   public void testDoPost_BadConversationName() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("conversationTitle")).thenReturn("bad !@#$% name");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -115,7 +151,8 @@ public class ConversationServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     conversationServlet.doPost(mockRequest, mockResponse);
 
@@ -128,7 +165,6 @@ public class ConversationServletTest {
   @Test
   public void testDoPost_ConversationNameTaken() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("conversationTitle")).thenReturn("test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -139,7 +175,8 @@ public class ConversationServletTest {
             "test_aboutme",
             false,
             null);
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Mockito.when(mockConversationStore.isTitleTaken("test_conversation")).thenReturn(true);
 
@@ -153,7 +190,6 @@ public class ConversationServletTest {
   @Test
   public void testDoPost_NewConversation() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("conversationTitle")).thenReturn("test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
 
     User fakeUser =
         new User(
@@ -165,7 +201,8 @@ public class ConversationServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     Mockito.when(mockConversationStore.isTitleTaken("test_conversation")).thenReturn(false);
 
@@ -176,13 +213,18 @@ public class ConversationServletTest {
     Mockito.verify(mockConversationStore).addConversation(conversationArgumentCaptor.capture());
     Assert.assertEquals(conversationArgumentCaptor.getValue().getTitle(), "test_conversation");
 
+    ArgumentCaptor<Activity> activityArgumentCaptor = ArgumentCaptor.forClass(Activity.class);
+    Mockito.verify(mockActivityStore).addActivity(activityArgumentCaptor.capture());
+    Assert.assertEquals(
+        Activity.Type.CONVERSATION_CREATED, activityArgumentCaptor.getValue().getType());
+    Assert.assertEquals("test_username", activityArgumentCaptor.getValue().getUserName());
+
     Mockito.verify(mockResponse).sendRedirect("/chat/test_conversation");
   }
 
   @Test
   public void testDoPost_DeleteConversation() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("conversationTitle")).thenReturn("test_conversation");
-    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
     Mockito.when(mockRequest.getParameter("deleteConvo")).thenReturn("true");
 
     User fakeUser =
@@ -195,15 +237,24 @@ public class ConversationServletTest {
             false,
             null);
 
-    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(fakeUser);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
 
     UUID conversationId = UUID.randomUUID();
     Mockito.when(mockRequest.getParameter("conversationId")).thenReturn(conversationId.toString());
+    Conversation fakeConversation =
+        new Conversation(conversationId, fakeUser.getId(), "test_conversation", Instant.now());
+    Mockito.when(mockConversationStore.getConversation(conversationId))
+        .thenReturn(fakeConversation);
 
     conversationServlet.doPost(mockRequest, mockResponse);
 
     ArgumentCaptor<Conversation> conversationArgumentCaptor =
         ArgumentCaptor.forClass(Conversation.class);
     Mockito.verify(mockConversationStore).deleteConversation(conversationArgumentCaptor.capture());
+    Assert.assertEquals(fakeConversation, conversationArgumentCaptor.getValue());
+    Mockito.verify(mockMessageStore).removeMessagesInConversation(conversationId);
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(Mockito.any(Tombstone.class));
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(Mockito.any(Tombstone.class));
   }
 }
@@ -0,0 +1,353 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Conversation;
+import codeu.model.data.Hashtag;
+import codeu.model.data.Message;
+import codeu.model.data.Tombstone;
+import codeu.model.data.User;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.basic.MentionStore;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class DeletionCascadeTest {
+
+  private PersistentStorageAgent mockPersistentStorageAgent;
+  private ConversationStore conversationStore;
+  private MessageStore messageStore;
+  private UserStore userStore;
+  private MentionStore mentionStore;
+  private HashtagStore hashtagStore;
+  private ActivityStore activityStore;
+  private ImageStore mockImageStore;
+  private DeletionCascade deletionCascade;
+
+  private final User friend =
+      new User(UUID.randomUUID(), "friend", "password_hash", Instant.now(), "", false, null);
+  private final Conversation conversation =
+      new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+
+  @Before
+  public void setup() {
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    conversationStore = ConversationStore.getTestInstance(mockPersistentStorageAgent);
+    messageStore = MessageStore.getTestInstance(mockPersistentStorageAgent);
+    userStore = UserStore.getTestInstance(mockPersistentStorageAgent);
+    mentionStore = MentionStore.getTestInstance(mockPersistentStorageAgent);
+    hashtagStore = HashtagStore.getTestInstance(mockPersistentStorageAgent);
+    activityStore = ActivityStore.getTestInstance();
+    mockImageStore = Mockito.mock(ImageStore.class);
+    deletionCascade = newCascade(Runnable::run);
+
+    userStore.setUsers(new ArrayList<>(Arrays.asList(friend)));
+    conversationStore.setConversations(new ArrayList<>(Arrays.asList(conversation)));
+  }
+
+  private DeletionCascade newCascade(Executor executor) {
+    return DeletionCascade.getTestInstance(
+        executor,
+        mockPersistentStorageAgent,
+        conversationStore,
+        messageStore,
+        userStore,
+        mentionStore,
+        hashtagStore,
+        activityStore,
+        mockImageStore);
+  }
+
+  /**
+   * Adds a text message to the test conversation along with its hashtag and mention postings and
+   * its activity.
+   */
+  private Message post(String content) {
+    Message message =
+        new Message(
+            UUID.randomUUID(),
+            conversation.getId(),
+            UUID.randomUUID(),
+            content,
+            Instant.now(),
+            "text");
+    messageStore.addMessage(message);
+    for (String tag : ChatServlet.findHashtags(content)) {
+      if (hashtagStore.isPresent(tag)) {
+        Hashtag hashtag = hashtagStore.getHashtag(tag);
+        hashtag.addMessageId(message.getId());
+        hashtagStore.updateHashtag(hashtag);
+      } else {
+        hashtagStore.addHashtag(new Hashtag(tag, message.getId()));
+      }
+    }
+    Set<UUID> mentionedUserIds = new HashSet<>();
+    if (ChatServlet.findMentionedNames(content).contains(friend.getName())) {
+      mentionStore.addMention(message.getId(), friend);
+      mentionedUserIds.add(friend.getId());
+    }
+    activityStore.addActivity(
+        Activity.messageSent(message, conversation, "author"), mentionedUserIds);
+    return message;
+  }
+
+  @Test
+  public void testDeleteMessage() {
+    Message kept = post("#cats are great");
+    Message deleted = post("#cats and #dogs, @friend");
+
+    deletionCascade.deleteMessage(deleted);
+
+    Assert.assertNull(messageStore.getMessage(deleted.getId()));
+    Assert.assertNotNull(messageStore.getMessage(kept.getId()));
+    Assert.assertEquals(
+        Collections.singletonList(kept.getId()), hashtagStore.getHashtag("CATS").getMessageIds());
+    Assert.assertTrue(hashtagStore.getHashtag("DOGS").getMessageIds().isEmpty());
+    Assert.assertEquals(0, mentionStore.getMentionCount(friend.getId()));
+
+    ArgumentCaptor<Tombstone> tombstoneArgumentCaptor = ArgumentCaptor.forClass(Tombstone.class);
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(tombstoneArgumentCaptor.capture());
+    Tombstone tombstone = tombstoneArgumentCaptor.getValue();
+    Assert.assertEquals(deleted.getId(), tombstone.getId());
+    Assert.assertEquals(Tombstone.Type.MESSAGE, tombstone.getType());
+
+    ArgumentCaptor<UnitOfWork> unitArgumentCaptor = ArgumentCaptor.forClass(UnitOfWork.class);
+    Mockito.verify(mockPersistentStorageAgent).commit(unitArgumentCaptor.capture());
+    Assert.assertEquals(2, unitArgumentCaptor.getValue().getHashtags().size());
+    Assert.assertEquals(1, unitArgumentCaptor.getValue().getMentions().size());
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(deleted.getId())));
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(tombstone);
+    Assert.assertEquals(0, deletionCascade.getPendingCount());
+  }
+
+  @Test
+  public void testDeleteMessage_RemovesActivity() {
+    Message kept = post("hi @friend");
+    Message deleted = post("secret for @friend");
+    List<Runnable> queued = new ArrayList<>();
+    long version = activityStore.getVersion();
+
+    newCascade(queued::add).deleteMessage(deleted);
+
+    // Gone from both feeds before the worker runs.
+    int cursor = activityStore.getActivityCount();
+    List<Activity> feed = activityStore.getActivitiesBefore(cursor, 10);
+    Assert.assertEquals(1, feed.size());
+    Assert.assertEquals(kept.getId(), feed.get(0).getSubjectId());
+    List<Activity> homeFeed = activityStore.getHomeFeedBefore(friend.getId(), cursor, 10);
+    Assert.assertEquals(1, homeFeed.size());
+    Assert.assertEquals(kept.getId(), homeFeed.get(0).getSubjectId());
+    Assert.assertNotEquals(version, activityStore.getVersion());
+  }
+
+  @Test
+  public void testDeleteConversation_RemovesActivities() {
+    activityStore.addActivity(Activity.conversationCreated(conversation, "owner"));
+    post("hi @friend");
+
+    deletionCascade.deleteConversation(conversation);
+
+    int cursor = activityStore.getActivityCount();
+    Assert.assertTrue(activityStore.getActivitiesBefore(cursor, 10).isEmpty());
+    Assert.assertTrue(activityStore.getHomeFeedBefore(friend.getId(), cursor, 10).isEmpty());
+  }
+
+  @Test
+  public void testDeleteMessage_RemovesPostingsOnCallingThread() {
+    Message message = post("#cats for @friend");
+    List<Runnable> queued = new ArrayList<>();
+    DeletionCascade deferred = newCascade(queued::add);
+
+    deferred.deleteMessage(message);
+
+    // The postings are gone before the worker runs; only the Datastore deletes wait for it.
+    Assert.assertTrue(hashtagStore.getHashtag("CATS").getMessageIds().isEmpty());
+    Assert.assertEquals(0, mentionStore.getMentionCount(friend.getId()));
+    Mockito.verify(mockPersistentStorageAgent).commit(Mockito.any(UnitOfWork.class));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .deleteMessages(Mockito.<Collection<UUID>>any());
+    Assert.assertEquals(1, queued.size());
+
+    queued.get(0).run();
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(message.getId())));
+    Assert.assertEquals(0, deferred.getPendingCount());
+  }
+
+  @Test
+  public void testDeleteMessage_RemovesReplies() {
+    Message parent = post("question");
+    Message reply =
+        new Message(
+            UUID.randomUUID(),
+            conversation.getId(),
+            UUID.randomUUID(),
+            "answer for @friend",
+            Instant.now(),
+            "text");
+    messageStore.reply(parent, reply);
+    mentionStore.addMention(reply.getId(), friend);
+
+    deletionCascade.deleteMessage(parent);
+
+    Assert.assertEquals(0, mentionStore.getMentionCount(friend.getId()));
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(parent.getId(), reply.getId())));
+  }
+
+  @Test
+  public void testDeleteMessage_ReleasesImage() {
+    Message image =
+        new Message(
+            UUID.randomUUID(),
+            conversation.getId(),
+            UUID.randomUUID(),
+            StoredImageServlet.PREFIX + "0123abcd",
+            Instant.now(),
+            "image");
+    messageStore.addMessage(image);
+
+    deletionCascade.deleteMessage(image);
+
+    Mockito.verify(mockImageStore).releaseImage(StoredImageServlet.hashOf(image.getContent()));
+  }
+
+  @Test
+  public void testDeleteConversation_ReleasesEachPostOfAnImage() {
+    for (int i = 0; i < 2; i++) {
+      messageStore.addMessage(
+          new Message(
+              UUID.randomUUID(),
+              conversation.getId(),
+              UUID.randomUUID(),
+              StoredImageServlet.url("same_bytes"),
+              Instant.now(),
+              "image"));
+    }
+
+    deletionCascade.deleteConversation(conversation);
+
+    Mockito.verify(mockImageStore, Mockito.times(2)).releaseImage("same_bytes");
+  }
+
+  @Test
+  public void testDeleteConversation() {
+    Message first = post("#cats");
+    Message second = post("hi @friend");
+
+    deletionCascade.deleteConversation(conversation);
+
+    Assert.assertNull(conversationStore.getConversation(conversation.getId()));
+    Assert.assertTrue(messageStore.getMessagesInConversation(conversation.getId()).isEmpty());
+    Assert.assertTrue(hashtagStore.getHashtag("CATS").getMessageIds().isEmpty());
+    Assert.assertEquals(0, mentionStore.getMentionCount(friend.getId()));
+
+    ArgumentCaptor<Tombstone> tombstoneArgumentCaptor = ArgumentCaptor.forClass(Tombstone.class);
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(tombstoneArgumentCaptor.capture());
+    Assert.assertEquals(conversation.getId(), tombstoneArgumentCaptor.getValue().getId());
+    Assert.assertEquals(Tombstone.Type.CONVERSATION, tombstoneArgumentCaptor.getValue().getType());
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(first.getId(), second.getId())));
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(tombstoneArgumentCaptor.getValue());
+  }
+
+  @Test
+  public void testCleanUpFailureKeepsTombstone() {
+    Message message = post("#cats");
+    Mockito.doThrow(new RuntimeException("Datastore unavailable"))
+        .when(mockPersistentStorageAgent)
+        .deleteMessages(Mockito.<Collection<UUID>>any());
+
+    deletionCascade.deleteMessage(message);
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .deleteThrough(Mockito.any(Tombstone.class));
+    Assert.assertEquals(0, deletionCascade.getPendingCount());
+  }
+
+  @Test
+  public void testDeleteMessage_QueueFull() {
+    Message message = post("#cats");
+    DeletionCascade saturated =
+        newCascade(
+            runnable -> {
+              throw new java.util.concurrent.RejectedExecutionException();
+            });
+
+    saturated.deleteMessage(message);
+
+    // Gone from memory now; the saved Tombstone finishes the job on the next startup.
+    Assert.assertNull(messageStore.getMessage(message.getId()));
+    Assert.assertEquals(1, saturated.getPendingCount());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .deleteMessages(Mockito.<Collection<UUID>>any());
+  }
+
+  @Test
+  public void testWithoutDeletedAndResume() {
+    UUID deletedConversationId = UUID.randomUUID();
+    Message kept = newMessage(conversation.getId());
+    Message deletedMessage = newMessage(conversation.getId());
+    Message reply = newMessage(conversation.getId());
+    deletedMessage.addReply(reply);
+    Message inDeletedConversation = newMessage(deletedConversationId);
+    List<Message> loaded = Arrays.asList(kept, deletedMessage, reply, inDeletedConversation);
+    Tombstone messageTombstone =
+        new Tombstone(deletedMessage.getId(), Tombstone.Type.MESSAGE, Instant.now());
+    Tombstone conversationTombstone =
+        new Tombstone(deletedConversationId, Tombstone.Type.CONVERSATION, Instant.now());
+    List<Tombstone> tombstones = Arrays.asList(messageTombstone, conversationTombstone);
+
+    Assert.assertEquals(
+        Collections.singletonList(kept), DeletionCascade.withoutDeleted(tombstones, loaded));
+
+    deletionCascade.resume(tombstones, loaded);
+
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(deletedMessage.getId(), reply.getId())));
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteMessages(new HashSet<>(Arrays.asList(inDeletedConversation.getId())));
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(messageTombstone);
+    Mockito.verify(mockPersistentStorageAgent).deleteThrough(conversationTombstone);
+    Mockito.verify(mockImageStore, Mockito.never()).releaseImage(Mockito.anyString());
+  }
+
+  private Message newMessage(UUID conversationId) {
+    return new Message(
+        UUID.randomUUID(), conversationId, UUID.randomUUID(), "content", Instant.now(), "text");
+  }
+}
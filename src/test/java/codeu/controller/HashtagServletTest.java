@@ -0,0 +1,131 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Hashtag;
+import codeu.model.data.Message;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.MessageStore;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class HashtagServletTest {
+
+  private HashtagServlet hashtagServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private RequestDispatcher mockRequestDispatcher;
+  private HashtagStore mockHashtagStore;
+  private MessageStore mockMessageStore;
+
+  @Before
+  public void setup() {
+    hashtagServlet = new HashtagServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockRequestDispatcher = Mockito.mock(RequestDispatcher.class);
+    Mockito.when(mockRequest.getRequestDispatcher("/WEB-INF/view/hashtag.jsp"))
+        .thenReturn(mockRequestDispatcher);
+
+    mockHashtagStore = Mockito.mock(HashtagStore.class);
+    hashtagServlet.setHashtagStore(mockHashtagStore);
+
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    hashtagServlet.setMessageStore(mockMessageStore);
+  }
+
+  @Test
+  public void testDoGet_UnknownHashtag() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/hashtag/unknown");
+
+    hashtagServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("hashtagName", "UNKNOWN");
+    Mockito.verify(mockRequest).setAttribute("messages", new ArrayList<Message>());
+    Mockito.verify(mockRequest).setAttribute("nextCursor", null);
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoGet_NewestFirstSkippingDeleted() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/hashtag/test");
+
+    List<UUID> messageIds = new ArrayList<>();
+    List<Message> fakeMessages = new ArrayList<>();
+    for (int i = 0; i < HashtagServlet.PAGE_SIZE + 2; i++) {
+      Message message =
+          new Message(
+              UUID.randomUUID(),
+              UUID.randomUUID(),
+              UUID.randomUUID(),
+              "#test " + i,
+              Instant.ofEpochMilli(i),
+              "text");
+      messageIds.add(message.getId());
+      fakeMessages.add(message);
+      Mockito.when(mockMessageStore.getMessageById(message.getId())).thenReturn(message);
+    }
+    UUID deletedId = UUID.randomUUID();
+    messageIds.add(deletedId);
+    Hashtag hashtag = new Hashtag("TEST", messageIds);
+    Mockito.when(mockHashtagStore.getHashtag("TEST")).thenReturn(hashtag);
+
+    hashtagServlet.doGet(mockRequest, mockResponse);
+
+    ArgumentCaptor<Object> messagesCaptor = ArgumentCaptor.forClass(Object.class);
+    Mockito.verify(mockRequest).setAttribute(Mockito.eq("messages"), messagesCaptor.capture());
+    List<?> page = (List<?>) messagesCaptor.getValue();
+    Assert.assertEquals(HashtagServlet.PAGE_SIZE, page.size());
+    Assert.assertEquals(fakeMessages.get(HashtagServlet.PAGE_SIZE + 1), page.get(0));
+    Assert.assertEquals(fakeMessages.get(2), page.get(HashtagServlet.PAGE_SIZE - 1));
+    Mockito.verify(mockRequest).setAttribute("nextCursor", 2);
+    Assert.assertEquals(HashtagServlet.PAGE_SIZE + 3, hashtag.getMessageIds().size());
+    Mockito.verify(mockHashtagStore, Mockito.never()).updateHashtag(hashtag);
+  }
+
+  @Test
+  public void testDoGet_OlderPage() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/hashtag/test");
+    Mockito.when(mockRequest.getParameter("before")).thenReturn("1");
+
+    Message message =
+        new Message(
+            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "#test", Instant.now(), "text");
+    Mockito.when(mockMessageStore.getMessageById(message.getId())).thenReturn(message);
+    List<UUID> messageIds = new ArrayList<>();
+    messageIds.add(message.getId());
+    messageIds.add(UUID.randomUUID());
+    Mockito.when(mockHashtagStore.getHashtag("TEST")).thenReturn(new Hashtag("TEST", messageIds));
+
+    hashtagServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", Collections.singletonList(message));
+    Mockito.verify(mockRequest).setAttribute("nextCursor", null);
+  }
+}
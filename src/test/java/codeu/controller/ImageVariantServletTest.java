@@ -0,0 +1,85 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.ImageVariant;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ImageVariantServletTest {
+
+  private ImageVariantServlet imageVariantServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ServletOutputStream mockOutputStream;
+  private ImageVariantStore mockImageVariantStore;
+
+  @Before
+  public void setup() throws IOException {
+    imageVariantServlet = new ImageVariantServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockOutputStream = Mockito.mock(ServletOutputStream.class);
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(mockOutputStream);
+
+    mockImageVariantStore = Mockito.mock(ImageVariantStore.class);
+    imageVariantServlet.setImageVariantStore(mockImageVariantStore);
+  }
+
+  @Test
+  public void testUrl() {
+    Mockito.when(mockImageVariantStore.getVariantWidth("a b", 250)).thenReturn(320);
+    Mockito.when(mockImageVariantStore.getVariantWidth("a b", 700)).thenReturn(-1);
+
+    Assert.assertEquals(
+        "/image-variants?source=a+b&width=320",
+        ImageVariantServlet.url(mockImageVariantStore, "a b", 250, "/original"));
+    Assert.assertEquals(
+        "/original", ImageVariantServlet.url(mockImageVariantStore, "a b", 700, "/original"));
+  }
+
+  @Test
+  public void testDoGet() throws IOException, ServletException, PersistentDataStoreException {
+    ImageVariant variant = new ImageVariant("source", 320, new byte[] {1, 2}, "image/jpeg");
+    Mockito.when(mockRequest.getParameter("source")).thenReturn("source");
+    Mockito.when(mockRequest.getParameter("width")).thenReturn("320");
+    Mockito.when(mockImageVariantStore.getVariant("source", 320)).thenReturn(variant);
+
+    imageVariantServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("Cache-Control", ImageVariantServlet.CACHE_CONTROL);
+    Mockito.verify(mockResponse).setContentType("image/jpeg");
+    Mockito.verify(mockOutputStream).write(variant.getContent());
+  }
+
+  @Test
+  public void testDoGet_Missing() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("source")).thenReturn("source");
+    Mockito.when(mockRequest.getParameter("width")).thenReturn("not a number");
+
+    imageVariantServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.view.StageMetricsView;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IngestPipelineTest {
+
+  @Test
+  public void testSubmit_RunsWorkAndCounts() {
+    IngestPipeline pipeline = IngestPipeline.getTestInstance(Runnable::run);
+    List<String> ran = new ArrayList<>();
+
+    pipeline.submit(IngestPipeline.Stage.TRENDING, () -> ran.add("trending"));
+    pipeline.submit(IngestPipeline.Stage.FEEDS, () -> ran.add("feeds"));
+    pipeline.submit(IngestPipeline.Stage.FEEDS, () -> ran.add("feeds again"));
+
+    Assert.assertEquals(3, ran.size());
+    List<StageMetricsView> metrics = pipeline.getMetrics();
+    Assert.assertEquals(IngestPipeline.Stage.values().length, metrics.size());
+    Assert.assertEquals("trending", metrics.get(0).getName());
+    Assert.assertEquals(1, metrics.get(0).getCompleted());
+    Assert.assertEquals("feeds", metrics.get(1).getName());
+    Assert.assertEquals(2, metrics.get(1).getCompleted());
+  }
+
+  @Test
+  public void testSubmit_StagesCanChain() {
+    IngestPipeline pipeline = IngestPipeline.getTestInstance(Runnable::run);
+    List<String> ran = new ArrayList<>();
+
+    pipeline.submit(
+        IngestPipeline.Stage.TRENDING,
+        () -> {
+          ran.add("trending");
+          pipeline.submit(IngestPipeline.Stage.FEEDS, () -> ran.add("feeds"));
+        });
+
+    Assert.assertEquals(2, ran.size());
+    Assert.assertEquals("feeds", ran.get(1));
+    Assert.assertEquals(1, pipeline.getMetrics().get(1).getCompleted());
+  }
+
+  @Test
+  public void testSubmit_FailureDoesNotStopStage() {
+    IngestPipeline pipeline = IngestPipeline.getTestInstance(Runnable::run);
+    List<String> ran = new ArrayList<>();
+
+    pipeline.submit(
+        IngestPipeline.Stage.FEEDS,
+        () -> {
+          throw new IllegalStateException("expected by test");
+        });
+    pipeline.submit(IngestPipeline.Stage.FEEDS, () -> ran.add("next"));
+
+    Assert.assertEquals(1, ran.size());
+    StageMetricsView feeds = pipeline.getMetrics().get(1);
+    Assert.assertEquals(2, feeds.getCompleted());
+    Assert.assertEquals(1, feeds.getFailed());
+  }
+}
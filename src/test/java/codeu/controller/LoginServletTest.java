@@ -14,19 +14,24 @@
 
 package codeu.controller;
 
+import codeu.model.data.AttackEvent;
 import codeu.model.data.User;
+import codeu.model.store.basic.AttackEventStore;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 public class LoginServletTest {
@@ -39,6 +44,7 @@ public class LoginServletTest {
   @Before
   public void setup() {
     loginServlet = new LoginServlet();
+    loginServlet.setPasswordHasher(PasswordHasher.getTestInstance(Runnable::run));
     mockRequest = Mockito.mock(HttpServletRequest.class);
     mockResponse = Mockito.mock(HttpServletResponse.class);
     mockRequestDispatcher = Mockito.mock(RequestDispatcher.class);
@@ -98,4 +104,55 @@ public class LoginServletTest {
     Mockito.verify(mockSession).setAttribute("user", "test username");
     Mockito.verify(mockResponse).sendRedirect("/conversations");
   }
+
+  @Test
+  public void testDoPost_AttackIsRecorded() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("username")).thenReturn("admin' --");
+    Mockito.when(mockRequest.getParameter("password")).thenReturn("test password");
+    Mockito.when(mockRequest.getHeader("User-Agent")).thenReturn("sqlmap");
+
+    UserStore mockUserStore = Mockito.mock(UserStore.class);
+    loginServlet.setUserStore(mockUserStore);
+    AttackEventStore mockAttackEventStore = Mockito.mock(AttackEventStore.class);
+    loginServlet.setAttackEventStore(mockAttackEventStore);
+
+    loginServlet.doPost(mockRequest, mockResponse);
+
+    ArgumentCaptor<AttackEvent> eventArgumentCaptor = ArgumentCaptor.forClass(AttackEvent.class);
+    Mockito.verify(mockAttackEventStore).recordAttack(eventArgumentCaptor.capture());
+    Assert.assertEquals("login", eventArgumentCaptor.getValue().getSource());
+    Assert.assertEquals("sqlmap", eventArgumentCaptor.getValue().getUserAgent());
+    Mockito.verify(mockRequest).setAttribute("error", "That username was not found.");
+  }
+
+  @Test
+  public void testDoPost_HasherBusy() throws IOException, ServletException {
+    User user =
+        new User(
+            UUID.randomUUID(),
+            "test username",
+            "$2a$10$.e.4EEfngEXmxAO085XnYOmDntkqod0C384jOR9oagwxMnPNHaGLa",
+            Instant.now(),
+            "test_aboutme",
+            false,
+            null);
+    Mockito.when(mockRequest.getParameter("username")).thenReturn("test username");
+    Mockito.when(mockRequest.getParameter("password")).thenReturn("test password");
+
+    UserStore mockUserStore = Mockito.mock(UserStore.class);
+    Mockito.when(mockUserStore.isUserRegistered("test username")).thenReturn(true);
+    Mockito.when(mockUserStore.getUser("test username")).thenReturn(user);
+    loginServlet.setUserStore(mockUserStore);
+    loginServlet.setPasswordHasher(
+        PasswordHasher.getTestInstance(
+            task -> {
+              throw new RejectedExecutionException();
+            }));
+
+    loginServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("Retry-After", "1");
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    Mockito.verify(mockResponse, Mockito.never()).sendRedirect(Mockito.anyString());
+  }
 }
@@ -0,0 +1,73 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import com.vdurmont.emoji.EmojiParser;
+import org.jsoup.Jsoup;
+import org.jsoup.safety.Whitelist;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageSanitizerTest {
+
+  /** Messages on which MessageSanitizer must agree with Jsoup and EmojiParser. */
+  private static final String[] MESSAGES = {
+    "ok",
+    "",
+    "   padded   ",
+    "two  spaces and\ta tab\nand a newline",
+    "Contains <b>html</b> and <script>JavaScript</script> content.",
+    "<p>one</p><p>two</p>",
+    "<style>p { color: red }</style>styled",
+    "<SCRIPT>alert('</scripty>')</SCRIPT>after",
+    "<a href=\"x\" title=\"a > b\">link</a>",
+    "<!-- hidden -->shown",
+    "<!doctype html>text",
+    "a < b > c",
+    "1 <2 and 3>2",
+    "fish & chips",
+    "no\u00a0break",
+    "unterminated <b",
+    "</ bogus>text",
+    "<3 you",
+    ":camel:, :smiley:, :swimmer|type_4:",
+    ":camel|type_4: has no skin tones",
+    "not:an:alias and :nope: and :smiley",
+    "time 10:30 :+1: ::smile:: :smile:smile:",
+    "@someone hi :wave:",
+  };
+
+  @Test
+  public void testClean_MatchesJsoupAndEmojiParser() {
+    for (String message : MESSAGES) {
+      String expected = EmojiParser.parseToUnicode(Jsoup.clean(message, Whitelist.none()));
+      Assert.assertEquals(message, expected, MessageSanitizer.clean(message));
+    }
+  }
+
+  @Test
+  public void testClean_KeepsCharacterReferences() {
+    Assert.assertEquals(
+        "&lt;b&gt; &amp; &#128515; &#x1F42B; &amp;nope",
+        MessageSanitizer.clean("&lt;b&gt; &amp; &#128515; &#x1F42B; &nope"));
+  }
+
+  @Test
+  public void testClean_PlainTextUnchanged() {
+    String message = "just a plain message";
+    Assert.assertSame(message, MessageSanitizer.replaceEmojiAliases(message));
+    Assert.assertEquals(message, MessageSanitizer.clean(message));
+  }
+}
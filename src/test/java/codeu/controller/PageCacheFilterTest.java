@@ -0,0 +1,164 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.HashtagStore;
+import codeu.model.store.basic.ImageVariantStore;
+import codeu.model.store.basic.MessageStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.UUID;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class PageCacheFilterTest {
+
+  private PageCacheFilter pageCacheFilter;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ServletOutputStream mockOutputStream;
+  private FilterChain mockFilterChain;
+  private ConversationStore mockConversationStore;
+  private MessageStore mockMessageStore;
+
+  private final Conversation CONVERSATION =
+      new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now());
+
+  @Before
+  public void setup() throws IOException, ServletException {
+    pageCacheFilter = new PageCacheFilter();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getMethod()).thenReturn("GET");
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockOutputStream = Mockito.mock(ServletOutputStream.class);
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(mockOutputStream);
+
+    mockFilterChain = Mockito.mock(FilterChain.class);
+    Mockito.doAnswer(
+            invocation -> {
+              HttpServletResponse response = invocation.getArgument(1);
+              response.setContentType("text/html");
+              response.getWriter().print("<p>rendered</p>");
+              return null;
+            })
+        .when(mockFilterChain)
+        .doFilter(Mockito.any(), Mockito.any());
+
+    mockConversationStore = Mockito.mock(ConversationStore.class);
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(CONVERSATION);
+    pageCacheFilter.setConversationStore(mockConversationStore);
+
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    pageCacheFilter.setMessageStore(mockMessageStore);
+
+    pageCacheFilter.setHashtagStore(Mockito.mock(HashtagStore.class));
+    pageCacheFilter.setActivityStore(Mockito.mock(ActivityStore.class));
+    pageCacheFilter.setImageVariantStore(Mockito.mock(ImageVariantStore.class));
+  }
+
+  @Test
+  public void testDoFilter_SecondRequestServedFromCache() throws IOException, ServletException {
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.times(1)).doFilter(Mockito.any(), Mockito.any());
+    ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+    Mockito.verify(mockOutputStream, Mockito.times(2)).write(bodyCaptor.capture());
+    Assert.assertEquals("<p>rendered</p>", new String(bodyCaptor.getValue(), "UTF-8"));
+    Mockito.verify(mockResponse, Mockito.times(2)).setContentType("text/html");
+  }
+
+  @Test
+  public void testDoFilter_NewVersionRendersAgain() throws IOException, ServletException {
+    Mockito.when(mockMessageStore.getConversationVersion(CONVERSATION.getId())).thenReturn(1L);
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.when(mockMessageStore.getConversationVersion(CONVERSATION.getId())).thenReturn(2L);
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.times(2)).doFilter(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void testDoFilter_MatchingETagReturnsNotModified() throws IOException, ServletException {
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    ArgumentCaptor<String> etagCaptor = ArgumentCaptor.forClass(String.class);
+    Mockito.verify(mockResponse).setHeader(Mockito.eq("ETag"), etagCaptor.capture());
+
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn(etagCaptor.getValue());
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockOutputStream, Mockito.times(1)).write(Mockito.any(byte[].class));
+  }
+
+  @Test
+  public void testDoFilter_GzipWhenAccepted() throws IOException, ServletException {
+    Mockito.when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockResponse).setHeader("Content-Encoding", "gzip");
+  }
+
+  @Test
+  public void testDoFilter_LoggedInUserBypassesCache() throws IOException, ServletException {
+    User fakeUser =
+        new User(UUID.randomUUID(), "test_username", "password", Instant.now(), "", false, null);
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(fakeUser));
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.times(2)).doFilter(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoFilter_RedirectIsNotCached() throws IOException, ServletException {
+    Mockito.doAnswer(
+            invocation -> {
+              HttpServletResponse response = invocation.getArgument(1);
+              response.sendRedirect("/conversations");
+              return null;
+            })
+        .when(mockFilterChain)
+        .doFilter(Mockito.any(), Mockito.any());
+
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    pageCacheFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockResponse, Mockito.times(2)).sendRedirect("/conversations");
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PasswordHasherTest {
+
+  @Test
+  public void testHashAndCheck() {
+    PasswordHasher passwordHasher = PasswordHasher.getTestInstance(Runnable::run);
+
+    String hash = passwordHasher.hash("password");
+
+    Assert.assertTrue(passwordHasher.check("password", hash));
+    Assert.assertFalse(passwordHasher.check("wrong password", hash));
+    Assert.assertEquals(3, passwordHasher.getCompletedCount());
+    Assert.assertTrue(passwordHasher.getAverageHashMillis() > 0);
+  }
+
+  @Test
+  public void testRejected() {
+    PasswordHasher passwordHasher =
+        PasswordHasher.getTestInstance(
+            task -> {
+              throw new RejectedExecutionException();
+            });
+
+    try {
+      passwordHasher.check("password", "hash");
+      Assert.fail("Expected RejectedExecutionException");
+    } catch (RejectedExecutionException expected) {
+      // The caller answers with a 503.
+    }
+    Assert.assertEquals(1, passwordHasher.getRejectedCount());
+    Assert.assertEquals(0, passwordHasher.getCompletedCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCheck_InvalidHash() {
+    PasswordHasher.getTestInstance(Runnable::run).check("password", "not a bcrypt hash");
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.UserPrincipal;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class RateLimitFilterTest {
+
+  private RateLimitFilter rateLimitFilter;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockFilterChain;
+
+  @Before
+  public void setup() {
+    rateLimitFilter = new RateLimitFilter();
+    rateLimitFilter.setLimits(
+        Collections.singletonMap("/login", new RateLimitFilter.Limits(2, 1, TimeUnit.HOURS)));
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getMethod()).thenReturn("POST");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/login");
+    Mockito.when(mockRequest.getRemoteAddr()).thenReturn("192.0.2.1");
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockFilterChain = Mockito.mock(FilterChain.class);
+  }
+
+  @Test
+  public void testDoFilter_UnderLimit() throws IOException, ServletException {
+    rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockFilterChain, Mockito.times(2)).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse, Mockito.never()).sendError(Mockito.anyInt());
+  }
+
+  @Test
+  public void testDoFilter_OverAddressLimit() throws IOException, ServletException {
+    for (int i = 0; i < 3; i++) {
+      rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    }
+
+    Mockito.verify(mockFilterChain, Mockito.times(2)).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse).setHeader("Retry-After", "3600");
+    Mockito.verify(mockResponse).sendError(429);
+  }
+
+  @Test
+  public void testDoFilter_OverUserLimitFromManyAddresses() throws IOException, ServletException {
+    Mockito.when(mockRequest.getAttribute(UserFilter.PRINCIPAL_ATTRIBUTE))
+        .thenReturn(new UserPrincipal(UUID.randomUUID(), "test_username", false));
+    for (int i = 0; i < 3; i++) {
+      Mockito.when(mockRequest.getRemoteAddr()).thenReturn("192.0.2." + i);
+      rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    }
+
+    Mockito.verify(mockFilterChain, Mockito.times(2)).doFilter(mockRequest, mockResponse);
+    Mockito.verify(mockResponse).sendError(429);
+  }
+
+  @Test
+  public void testDoFilter_GetIsNotLimited() throws IOException, ServletException {
+    Mockito.when(mockRequest.getMethod()).thenReturn("GET");
+    for (int i = 0; i < 3; i++) {
+      rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    }
+
+    Mockito.verify(mockFilterChain, Mockito.times(3)).doFilter(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoFilter_OtherPathIsNotLimited() throws IOException, ServletException {
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/conversations");
+    for (int i = 0; i < 3; i++) {
+      rateLimitFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+    }
+
+    Mockito.verify(mockFilterChain, Mockito.times(3)).doFilter(mockRequest, mockResponse);
+  }
+}
@@ -0,0 +1,127 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testTryAcquire_AllowsBurstThenWaits() {
+    RateLimiter limiter = new RateLimiter(3, 1000, 1000);
+
+    Assert.assertEquals(0, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(0, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(0, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(1000, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(400, limiter.tryAcquire("a", 10_600));
+    Assert.assertEquals(0, limiter.tryAcquire("a", 11_000));
+    Assert.assertEquals(1000, limiter.tryAcquire("a", 11_000));
+  }
+
+  @Test
+  public void testTryAcquire_KeysAreIndependent() {
+    RateLimiter limiter = new RateLimiter(1, 1000, 1000);
+
+    Assert.assertEquals(0, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(1000, limiter.tryAcquire("a", 10_000));
+    Assert.assertEquals(0, limiter.tryAcquire("b", 10_000));
+  }
+
+  @Test
+  public void testTryAcquire_IdleBucketRefills() {
+    RateLimiter limiter = new RateLimiter(2, 1000, 1000);
+
+    limiter.tryAcquire("a", 10_000);
+    limiter.tryAcquire("a", 10_000);
+
+    Assert.assertEquals(0, limiter.tryAcquire("a", 60_000));
+    Assert.assertEquals(0, limiter.tryAcquire("a", 60_000));
+    Assert.assertEquals(1000, limiter.tryAcquire("a", 60_000));
+  }
+
+  @Test
+  public void testTryAcquire_EvictsFullBuckets() {
+    RateLimiter limiter = new RateLimiter(1, 1000, RateLimiter.STRIPES * 2);
+
+    for (int i = 0; i < RateLimiter.STRIPES * 4; i++) {
+      limiter.tryAcquire("key" + i, 10_000);
+    }
+    int tracked = limiter.size();
+    Assert.assertTrue(tracked <= RateLimiter.STRIPES * 2);
+
+    // Every bucket is full again by now, so new keys push the old ones out. Each key comes an
+    // interval after the last, so every stripe may be scanned again.
+    for (int i = 0; i < RateLimiter.STRIPES * 4; i++) {
+      Assert.assertEquals(0, limiter.tryAcquire("other" + i, 20_000 + i * 1000));
+    }
+    Assert.assertTrue(limiter.size() <= RateLimiter.STRIPES * 2);
+  }
+
+  @Test
+  public void testTryAcquire_FullStripeSharesOverflowBucket() {
+    RateLimiter limiter = new RateLimiter(1, 1000, RateLimiter.STRIPES);
+
+    // No bucket refills in between, so keys that don't fit share one bucket rather than evicting
+    // anyone or going unlimited.
+    int allowed = 0;
+    for (int i = 0; i < RateLimiter.STRIPES * 4; i++) {
+      if (limiter.tryAcquire("key" + i, 10_000) == 0) {
+        allowed++;
+      }
+    }
+    Assert.assertTrue(limiter.size() <= RateLimiter.STRIPES);
+    Assert.assertEquals(limiter.size() + 1, allowed);
+
+    for (int i = 0; i < RateLimiter.STRIPES * 4; i++) {
+      Assert.assertTrue(limiter.tryAcquire("other" + i, 10_000) > 0);
+    }
+  }
+
+  @Test
+  public void testTryAcquire_ScansFullStripeOncePerInterval() {
+    RateLimiter limiter = new RateLimiter(1, 1000, RateLimiter.STRIPES);
+    String tracked = keyInStripeOf("a", 0);
+    String newer = keyInStripeOf("a", 1);
+    String newest = keyInStripeOf("a", 2);
+    limiter.tryAcquire(tracked, 10_000);
+
+    // The stripe is scanned, but its one bucket is still in use.
+    limiter.tryAcquire(newer, 10_999);
+    Assert.assertEquals(1, limiter.size());
+
+    // The bucket is full again, but the stripe was scanned less than an interval ago.
+    limiter.tryAcquire(newer, 11_500);
+    Assert.assertEquals(1, limiter.size());
+
+    // Now it may be scanned again, and the full bucket makes room.
+    Assert.assertEquals(0, limiter.tryAcquire(newest, 12_000));
+    Assert.assertEquals(1, limiter.size());
+    Assert.assertTrue(limiter.tryAcquire(newest, 12_000) > 0);
+  }
+
+  /** Returns the {@code n}-th key, counting from 0, that shares a stripe with {@code key}. */
+  private static String keyInStripeOf(String key, int n) {
+    int stripe = (key.hashCode() & 0x7fffffff) % RateLimiter.STRIPES;
+    int found = 0;
+    for (int i = 0; ; i++) {
+      String candidate = "key" + i;
+      if ((candidate.hashCode() & 0x7fffffff) % RateLimiter.STRIPES == stripe && found++ == n) {
+        return candidate;
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.persistence.PersistentDataStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerStartupListenerTest {
+
+  private PersistentDataStore persistentDataStore;
+  private final LocalServiceTestHelper appEngineTestHelper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setup() {
+    appEngineTestHelper.setUp();
+    persistentDataStore = new PersistentDataStore();
+  }
+
+  @After
+  public void tearDown() {
+    appEngineTestHelper.tearDown();
+  }
+
+  @Test
+  public void testImageReferences_ReloadedImageMessage() throws PersistentDataStoreException {
+    UUID conversationId = UUID.randomUUID();
+    Message image =
+        new Message(
+            UUID.randomUUID(),
+            conversationId,
+            UUID.randomUUID(),
+            StoredImageServlet.url("image_hash"),
+            Instant.ofEpochMilli(1000),
+            "image");
+    Message text =
+        new Message(
+            UUID.randomUUID(),
+            conversationId,
+            UUID.randomUUID(),
+            StoredImageServlet.url("not_an_image"),
+            Instant.ofEpochMilli(2000),
+            "text");
+    persistentDataStore.writeThrough(image);
+    persistentDataStore.writeThrough(text);
+
+    List<Message> loaded = persistentDataStore.loadMessages();
+
+    Assert.assertEquals(
+        Collections.singletonList("image_hash"),
+        ServerStartupListener.imageReferences(Collections.<User>emptyList(), loaded));
+  }
+
+  @Test
+  public void testImageReferences_MessageSavedWithoutType() throws PersistentDataStoreException {
+    // Image messages used to be saved without their type.
+    UUID messageId = UUID.randomUUID();
+    Entity entity = new Entity("chat-messages", messageId.toString());
+    entity.setProperty("uuid", messageId.toString());
+    entity.setProperty("conv_uuid", UUID.randomUUID().toString());
+    entity.setProperty("author_uuid", UUID.randomUUID().toString());
+    entity.setProperty("content", StoredImageServlet.url("old_hash"));
+    entity.setProperty("creation_time", Instant.ofEpochMilli(1000).toString());
+    DatastoreServiceFactory.getDatastoreService().put(entity);
+
+    List<Message> loaded = persistentDataStore.loadMessages();
+
+    Assert.assertEquals(
+        Arrays.asList("old_hash"),
+        ServerStartupListener.imageReferences(Collections.<User>emptyList(), loaded));
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class StaticAssetServletTest {
+
+  private static final String CSS = "body { color: black; }\n";
+
+  private StaticAssetServlet staticAssetServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ServletOutputStream mockOutputStream;
+
+  @Before
+  public void setup() throws IOException {
+    ServletContext mockContext = Mockito.mock(ServletContext.class);
+    Mockito.when(mockContext.getResourcePaths("/css/"))
+        .thenReturn(new HashSet<>(Arrays.asList("/css/main.css")));
+    Mockito.when(mockContext.getResourceAsStream("/css/main.css"))
+        .thenAnswer(invocation -> new ByteArrayInputStream(CSS.getBytes("UTF-8")));
+    Mockito.when(mockContext.getMimeType("/css/main.css")).thenReturn("text/css");
+
+    staticAssetServlet = new StaticAssetServlet();
+    staticAssetServlet.loadAssets(mockContext);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockOutputStream = Mockito.mock(ServletOutputStream.class);
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(mockOutputStream);
+  }
+
+  @Test
+  public void testUrl_Fingerprinted() {
+    String url = StaticAssetServlet.url("/css/main.css");
+
+    Assert.assertTrue(url.matches("/static/css/main\\.[0-9a-f]{10}\\.css"));
+  }
+
+  @Test
+  public void testUrl_UnknownAssetKeepsPath() {
+    Assert.assertEquals("/css/other.css", StaticAssetServlet.url("/css/other.css"));
+  }
+
+  @Test
+  public void testDoGet_ServesImmutableAsset() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StaticAssetServlet.url("/css/main.css"));
+
+    staticAssetServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("Cache-Control", StaticAssetServlet.CACHE_CONTROL);
+    Mockito.verify(mockResponse).setContentType("text/css");
+    ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+    Mockito.verify(mockOutputStream).write(bodyCaptor.capture());
+    Assert.assertEquals(CSS, new String(bodyCaptor.getValue(), "UTF-8"));
+  }
+
+  @Test
+  public void testDoGet_NotModified() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StaticAssetServlet.url("/css/main.css"));
+    staticAssetServlet.doGet(mockRequest, mockResponse);
+    ArgumentCaptor<String> etagCaptor = ArgumentCaptor.forClass(String.class);
+    Mockito.verify(mockResponse).setHeader(Mockito.eq("ETag"), etagCaptor.capture());
+
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn(etagCaptor.getValue());
+    staticAssetServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockOutputStream, Mockito.times(1)).write(Mockito.any(byte[].class));
+  }
+
+  @Test
+  public void testDoGet_UnknownAsset() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/static/css/main.0000000000.css");
+
+    staticAssetServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void testFingerprintedPath() {
+    Assert.assertEquals(
+        "/images/default_pfp.abc.jpg",
+        StaticAssetServlet.fingerprintedPath("/images/default_pfp.jpg", "abc"));
+    Assert.assertEquals("/css/LICENSE.abc", StaticAssetServlet.fingerprintedPath("/css/LICENSE", "abc"));
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import codeu.model.store.basic.ImageStore;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class StoredImageServletTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private StoredImageServlet storedImageServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ByteArrayOutputStream sentBytes;
+  private ImageStore mockImageStore;
+
+  @Before
+  public void setup() throws IOException {
+    storedImageServlet = new StoredImageServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    sentBytes = new ByteArrayOutputStream();
+    Mockito.when(mockResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        sentBytes.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+
+    mockImageStore = Mockito.mock(ImageStore.class);
+    storedImageServlet.setImageStore(mockImageStore);
+  }
+
+  @Test
+  public void testUrlAndHashOf() {
+    Assert.assertEquals("/stored-images/abc", StoredImageServlet.url("abc"));
+    Assert.assertEquals("abc", StoredImageServlet.hashOf("/stored-images/abc"));
+    Assert.assertNull(StoredImageServlet.hashOf("/ImageServlet?blob-key=abc"));
+    Assert.assertNull(StoredImageServlet.hashOf(null));
+  }
+
+  @Test
+  public void testDoGet() throws IOException, ServletException, PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StoredImageServlet.url(image.getHash()));
+    Mockito.when(mockImageStore.getImage(image.getHash())).thenReturn(image);
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("ETag", "\"" + image.getHash() + "\"");
+    Mockito.verify(mockResponse).setHeader("Cache-Control", StoredImageServlet.CACHE_CONTROL);
+    Mockito.verify(mockResponse).setContentType("image/png");
+    Mockito.verify(mockResponse).setContentLengthLong(3);
+    Mockito.verify(mockResponse, Mockito.never()).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    Assert.assertArrayEquals(image.getContent(), sentBytes.toByteArray());
+  }
+
+  @Test
+  public void testDoGet_Range() throws IOException, ServletException, PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3, 4, 5}, "image/png");
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StoredImageServlet.url(image.getHash()));
+    Mockito.when(mockRequest.getHeader("Range")).thenReturn("bytes=1-2");
+    Mockito.when(mockImageStore.getImage(image.getHash())).thenReturn(image);
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    Mockito.verify(mockResponse).setHeader("Content-Range", "bytes 1-2/5");
+    Mockito.verify(mockResponse).setContentLengthLong(2);
+    Assert.assertArrayEquals(new byte[] {2, 3}, sentBytes.toByteArray());
+  }
+
+  @Test
+  public void testDoGet_RangeWithStaleIfRange()
+      throws IOException, ServletException, PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3, 4, 5}, "image/png");
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StoredImageServlet.url(image.getHash()));
+    Mockito.when(mockRequest.getHeader("Range")).thenReturn("bytes=1-2");
+    Mockito.when(mockRequest.getHeader("If-Range")).thenReturn("\"other\"");
+    Mockito.when(mockImageStore.getImage(image.getHash())).thenReturn(image);
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse, Mockito.never()).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    Assert.assertArrayEquals(image.getContent(), sentBytes.toByteArray());
+  }
+
+  @Test
+  public void testDoGet_RangeNotSatisfiable()
+      throws IOException, ServletException, PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+    Mockito.when(mockRequest.getRequestURI()).thenReturn(StoredImageServlet.url(image.getHash()));
+    Mockito.when(mockRequest.getHeader("Range")).thenReturn("bytes=10-");
+    Mockito.when(mockImageStore.getImage(image.getHash())).thenReturn(image);
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("Content-Range", "bytes */3");
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    Assert.assertEquals(0, sentBytes.size());
+  }
+
+  @Test
+  public void testDoGet_File() throws IOException, ServletException {
+    Path path = folder.newFile().toPath();
+    Files.write(path, new byte[] {1, 2, 3, 4, 5});
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/stored-images/abc");
+    Mockito.when(mockRequest.getHeader("Range")).thenReturn("bytes=-2");
+    Mockito.when(mockImageStore.getImageFile("abc"))
+        .thenReturn(new StoredImageFile("abc", path, "image/gif"));
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("image/gif");
+    Mockito.verify(mockResponse).setHeader("Content-Range", "bytes 3-4/5");
+    Assert.assertArrayEquals(new byte[] {4, 5}, sentBytes.toByteArray());
+  }
+
+  @Test
+  public void testParseRange() {
+    Assert.assertArrayEquals(new long[] {0, 9}, StoredImageServlet.parseRange(null, 10));
+    Assert.assertArrayEquals(new long[] {2, 9}, StoredImageServlet.parseRange("bytes=2-", 10));
+    Assert.assertArrayEquals(new long[] {2, 9}, StoredImageServlet.parseRange("bytes=2-50", 10));
+    Assert.assertArrayEquals(new long[] {7, 9}, StoredImageServlet.parseRange("bytes=-3", 10));
+    Assert.assertArrayEquals(new long[] {0, 9}, StoredImageServlet.parseRange("bytes=-30", 10));
+    // Several ranges, or a header that can't be parsed, get the whole image.
+    Assert.assertArrayEquals(
+        new long[] {0, 9}, StoredImageServlet.parseRange("bytes=0-1,4-5", 10));
+    Assert.assertArrayEquals(new long[] {0, 9}, StoredImageServlet.parseRange("bytes=x-y", 10));
+    Assert.assertArrayEquals(new long[] {0, 9}, StoredImageServlet.parseRange("items=1-2", 10));
+    Assert.assertNull(StoredImageServlet.parseRange("bytes=10-", 10));
+    Assert.assertNull(StoredImageServlet.parseRange("bytes=-0", 10));
+  }
+
+  @Test
+  public void testDoGet_NotModified()
+      throws IOException, ServletException, PersistentDataStoreException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/stored-images/abc");
+    Mockito.when(mockRequest.getHeader("If-None-Match")).thenReturn("\"abc\"");
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockImageStore, Mockito.never()).getImage(Mockito.anyString());
+    Assert.assertEquals(0, sentBytes.size());
+  }
+
+  @Test
+  public void testDoGet_Missing() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/stored-images/abc");
+
+    storedImageServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeOrderedIdsTest {
+
+  @Test
+  public void testNext_IsVersion7() {
+    UUID id = new TimeOrderedIds().next(1_500_000_000_000L);
+
+    Assert.assertEquals(7, id.version());
+    Assert.assertEquals(2, id.variant());
+    Assert.assertEquals(
+        Instant.ofEpochMilli(1_500_000_000_000L), TimeOrderedIds.creationTimeOf(id));
+  }
+
+  @Test
+  public void testNext_SortsByTime() {
+    TimeOrderedIds ids = new TimeOrderedIds();
+
+    UUID earlier = ids.next(1000);
+    UUID later = ids.next(2000);
+
+    Assert.assertTrue(earlier.compareTo(later) < 0);
+  }
+
+  @Test
+  public void testNext_IncreasesWithinOneMillisecond() {
+    TimeOrderedIds ids = new TimeOrderedIds();
+
+    UUID previous = ids.next(1000);
+    // More than the counter holds, so the count carries into the time.
+    for (int i = 0; i < 5000; i++) {
+      UUID id = ids.next(1000);
+      Assert.assertTrue(previous.compareTo(id) < 0);
+      previous = id;
+    }
+    Assert.assertEquals(Instant.ofEpochMilli(1001), TimeOrderedIds.creationTimeOf(previous));
+  }
+
+  @Test
+  public void testNext_IncreasesWhenClockStepsBack() {
+    TimeOrderedIds ids = new TimeOrderedIds();
+
+    UUID first = ids.next(2000);
+    UUID second = ids.next(1000);
+
+    Assert.assertTrue(first.compareTo(second) < 0);
+    Assert.assertEquals(Instant.ofEpochMilli(2000), TimeOrderedIds.creationTimeOf(second));
+  }
+
+  @Test
+  public void testNewId_UniqueAcrossThreads() throws InterruptedException {
+    Set<UUID> seen = new HashSet<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                List<UUID> made = new ArrayList<>();
+                for (int i = 0; i < 10_000; i++) {
+                  made.add(TimeOrderedIds.newId());
+                }
+                synchronized (seen) {
+                  seen.addAll(made);
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(40_000, seen.size());
+  }
+}
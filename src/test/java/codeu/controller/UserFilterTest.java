@@ -0,0 +1,123 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.data.UserPrincipal;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class UserFilterTest {
+
+  private UserFilter userFilter;
+  private HttpServletRequest mockRequest;
+  private HttpSession mockSession;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockFilterChain;
+  private UserStore mockUserStore;
+
+  private final User USER =
+      new User(
+          UUID.randomUUID(),
+          "test_username",
+          "$2a$10$eDhncK/4cNH2KE.Y51AWpeL8/5znNBQLuAFlyJpSYNODR/SJQ/Fg6",
+          Instant.now(),
+          "test_aboutme",
+          true,
+          null);
+
+  @Before
+  public void setup() {
+    userFilter = new UserFilter();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession(false)).thenReturn(mockSession);
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockFilterChain = Mockito.mock(FilterChain.class);
+
+    mockUserStore = Mockito.mock(UserStore.class);
+    userFilter.setUserStore(mockUserStore);
+  }
+
+  @Test
+  public void testDoFilter_NoSession() throws IOException, ServletException {
+    Mockito.when(mockRequest.getSession(false)).thenReturn(null);
+
+    userFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockRequest, Mockito.never())
+        .setAttribute(Mockito.eq(UserFilter.PRINCIPAL_ATTRIBUTE), Mockito.any());
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoFilter_FirstRequestCachesIdentity() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(USER);
+    Mockito.when(mockSession.getAttribute("adminStatus")).thenReturn(true);
+
+    userFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockSession).setAttribute("userId", USER.getId());
+    Mockito.verify(mockSession).setAttribute("adminStatus", true);
+    ArgumentCaptor<UserPrincipal> principalCaptor = ArgumentCaptor.forClass(UserPrincipal.class);
+    Mockito.verify(mockRequest)
+        .setAttribute(Mockito.eq(UserFilter.PRINCIPAL_ATTRIBUTE), principalCaptor.capture());
+    Assert.assertEquals(USER.getId(), principalCaptor.getValue().getId());
+    Assert.assertEquals("test_username", principalCaptor.getValue().getName());
+    Assert.assertTrue(principalCaptor.getValue().isAdmin());
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoFilter_CachedIdentity() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+    Mockito.when(mockSession.getAttribute("userId")).thenReturn(USER.getId());
+    Mockito.when(mockUserStore.getUser(USER.getId())).thenReturn(USER);
+
+    userFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockUserStore, Mockito.never()).getUser(Mockito.anyString());
+    Mockito.verify(mockSession, Mockito.never()).setAttribute(Mockito.anyString(), Mockito.any());
+    Mockito.verify(mockRequest)
+        .setAttribute(Mockito.eq(UserFilter.PRINCIPAL_ATTRIBUTE), Mockito.any(UserPrincipal.class));
+  }
+
+  @Test
+  public void testDoFilter_UnknownUserInvalidatesSession() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+    Mockito.when(mockUserStore.getUser("test_username")).thenReturn(null);
+
+    userFilter.doFilter(mockRequest, mockResponse, mockFilterChain);
+
+    Mockito.verify(mockSession).invalidate();
+    Mockito.verify(mockRequest, Mockito.never())
+        .setAttribute(Mockito.eq(UserFilter.PRINCIPAL_ATTRIBUTE), Mockito.any());
+    Mockito.verify(mockFilterChain).doFilter(mockRequest, mockResponse);
+  }
+}
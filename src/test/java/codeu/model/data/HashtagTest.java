@@ -31,7 +31,7 @@ public class HashtagTest {
     tag.addMessageId(messageIdTwo);
     
     Assert.assertEquals(name, tag.getName());
-    assert(tag.getMessageIds().contains(messageIdOne));
-    assert(tag.getMessageIds().contains(messageIdTwo));
+    Assert.assertEquals(messageIdOne, tag.getMessageIds().get(0));
+    Assert.assertEquals(messageIdTwo, tag.getMessageIds().get(1));
   }
 }
\ No newline at end of file
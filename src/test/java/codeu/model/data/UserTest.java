@@ -18,7 +18,6 @@ import java.time.Instant;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Test;
-import com.google.appengine.api.datastore.Text;
 
 public class UserTest {
 
@@ -30,8 +29,9 @@ public class UserTest {
     Instant creation = Instant.now();
     String aboutMe = "test_aboutme";
     boolean adminStatus = false;
-    Text profilePic = null;
-    User user = new User(id, name, passwordHash, creation, aboutMe, adminStatus, profilePic);
+    String profilePictureHash = "test_hash";
+    User user =
+        new User(id, name, passwordHash, creation, aboutMe, adminStatus, profilePictureHash);
 
     Assert.assertEquals(id, user.getId());
     Assert.assertEquals(name, user.getName());
@@ -39,5 +39,6 @@ public class UserTest {
     Assert.assertEquals(creation, user.getCreationTime());
     Assert.assertEquals(adminStatus, user.isAdmin());
     Assert.assertEquals(aboutMe, user.getAboutMe());
+    Assert.assertEquals(profilePictureHash, user.getProfilePictureHash());
   }
 }
@@ -0,0 +1,184 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Conversation;
+import codeu.model.data.Mention;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActivityStoreTest {
+
+  private ActivityStore activityStore;
+
+  private final User USER_ONE =
+      new User(
+          UUID.randomUUID(),
+          "test_username_one",
+          "$2a$10$/zf4WlT2Z6tB5sULB9Wec.QQdawmF0f1SbqBw5EeJg5uoVpKFFXAa",
+          Instant.ofEpochMilli(1000),
+          "test_aboutme_one",
+          false,
+          null);
+
+  private final Conversation CONVERSATION_ONE =
+      new Conversation(
+          UUID.randomUUID(), USER_ONE.getId(), "conversation_one", Instant.ofEpochMilli(2000));
+
+  private final Message MESSAGE_ONE =
+      new Message(
+          UUID.randomUUID(),
+          CONVERSATION_ONE.getId(),
+          USER_ONE.getId(),
+          "message one",
+          Instant.ofEpochMilli(3000),
+          "text");
+
+  @Before
+  public void setup() {
+    activityStore = ActivityStore.getTestInstance();
+  }
+
+  @Test
+  public void testGetActivitiesBefore_newestFirst() {
+    activityStore.addActivity(Activity.userJoined(USER_ONE));
+    activityStore.addActivity(Activity.conversationCreated(CONVERSATION_ONE, USER_ONE.getName()));
+    activityStore.addActivity(
+        Activity.messageSent(MESSAGE_ONE, CONVERSATION_ONE, USER_ONE.getName()));
+
+    List<Activity> page =
+        activityStore.getActivitiesBefore(activityStore.getActivityCount(), 10);
+
+    Assert.assertEquals(3, page.size());
+    Assert.assertEquals(Activity.Type.MESSAGE_SENT, page.get(0).getType());
+    Assert.assertEquals(Activity.Type.CONVERSATION_CREATED, page.get(1).getType());
+    Assert.assertEquals(Activity.Type.USER_JOINED, page.get(2).getType());
+  }
+
+  @Test
+  public void testGetActivitiesBefore_paginates() {
+    for (int i = 0; i < 5; i++) {
+      activityStore.addActivity(Activity.userJoined(USER_ONE));
+    }
+
+    Assert.assertEquals(2, activityStore.getActivitiesBefore(5, 2).size());
+    Assert.assertEquals(1, activityStore.getActivitiesBefore(1, 2).size());
+    Assert.assertEquals(0, activityStore.getActivitiesBefore(0, 2).size());
+  }
+
+  @Test
+  public void testRebuild() {
+    List<User> users = new ArrayList<>();
+    users.add(USER_ONE);
+    List<Conversation> conversations = new ArrayList<>();
+    conversations.add(CONVERSATION_ONE);
+    List<Message> messages = new ArrayList<>();
+    messages.add(MESSAGE_ONE);
+    // the same message loaded twice is only one send
+    messages.add(MESSAGE_ONE);
+
+    activityStore.rebuild(users, conversations, messages, new ArrayList<Mention>());
+
+    Assert.assertEquals(3, activityStore.getActivityCount());
+    Activity newest = activityStore.getActivitiesBefore(3, 1).get(0);
+    Assert.assertEquals(MESSAGE_ONE.getId(), newest.getSubjectId());
+    Assert.assertEquals("conversation_one", newest.getConversationTitle());
+    Assert.assertEquals("test_username_one", newest.getUserName());
+  }
+
+  @Test
+  public void testGetHomeFeedBefore_fansOutToParticipantsAndMentions() {
+    UUID participant = UUID.randomUUID();
+    UUID mentioned = UUID.randomUUID();
+    UUID stranger = UUID.randomUUID();
+    UUID conversationId = UUID.randomUUID();
+
+    activityStore.addActivity(message(conversationId, participant));
+    activityStore.addActivity(message(conversationId, USER_ONE.getId()));
+    activityStore.addActivity(
+        message(conversationId, USER_ONE.getId()), Collections.singleton(mentioned));
+
+    Assert.assertEquals(3, activityStore.getHomeFeedBefore(participant, 3, 10).size());
+    Assert.assertEquals(2, activityStore.getHomeFeedBefore(USER_ONE.getId(), 3, 10).size());
+    Assert.assertEquals(1, activityStore.getHomeFeedBefore(mentioned, 3, 10).size());
+    Assert.assertEquals(0, activityStore.getHomeFeedBefore(stranger, 3, 10).size());
+  }
+
+  @Test
+  public void testGetHomeFeedBefore_busyConversationMergedAtReadTime() {
+    UUID conversationId = UUID.randomUUID();
+    UUID firstParticipant = UUID.randomUUID();
+    activityStore.addActivity(message(conversationId, firstParticipant));
+    for (int i = 0; i < ActivityStore.FANOUT_LIMIT + 5; i++) {
+      activityStore.addActivity(message(conversationId, UUID.randomUUID()));
+    }
+
+    int count = activityStore.getActivityCount();
+    List<Activity> page = activityStore.getHomeFeedBefore(firstParticipant, count, 10);
+
+    Assert.assertEquals(10, page.size());
+    for (int i = 0; i < page.size(); i++) {
+      Assert.assertEquals(count - 1 - i, page.get(i).getSequence());
+    }
+  }
+
+  @Test
+  public void testRemoveSubjects() {
+    UUID mentioned = UUID.randomUUID();
+    Activity kept = message(CONVERSATION_ONE.getId(), USER_ONE.getId());
+    Activity removed = message(CONVERSATION_ONE.getId(), USER_ONE.getId());
+    activityStore.addActivity(kept, Collections.singleton(mentioned));
+    activityStore.addActivity(removed, Collections.singleton(mentioned));
+    long version = activityStore.getVersion();
+
+    activityStore.removeSubjects(Collections.singleton(removed.getSubjectId()));
+
+    Assert.assertEquals(2, activityStore.getActivityCount());
+    Assert.assertNotEquals(version, activityStore.getVersion());
+    Assert.assertEquals(
+        Collections.singletonList(kept), activityStore.getActivitiesBefore(2, 10));
+    Assert.assertEquals(
+        Collections.singletonList(kept), activityStore.getHomeFeedBefore(mentioned, 2, 10));
+    Assert.assertEquals(
+        Collections.singletonList(kept),
+        activityStore.getHomeFeedBefore(USER_ONE.getId(), 2, 10));
+  }
+
+  @Test
+  public void testRemoveSubjects_busyConversationNoLongerMerged() {
+    UUID conversationId = UUID.randomUUID();
+    UUID firstParticipant = UUID.randomUUID();
+    List<UUID> subjectIds = new ArrayList<>();
+    subjectIds.add(conversationId);
+    Activity first = message(conversationId, firstParticipant);
+    activityStore.addActivity(first);
+    subjectIds.add(first.getSubjectId());
+    for (int i = 0; i < ActivityStore.FANOUT_LIMIT + 5; i++) {
+      Activity activity = message(conversationId, UUID.randomUUID());
+      activityStore.addActivity(activity);
+      subjectIds.add(activity.getSubjectId());
+    }
+
+    activityStore.removeSubjects(subjectIds);
+
+    int count = activityStore.getActivityCount();
+    Assert.assertEquals(0, activityStore.getActivitiesBefore(count, 10).size());
+    Assert.assertEquals(0, activityStore.getHomeFeedBefore(firstParticipant, count, 10).size());
+  }
+
+  private Activity message(UUID conversationId, UUID authorId) {
+    Conversation conversation =
+        new Conversation(conversationId, authorId, "conversation", Instant.ofEpochMilli(1000));
+    Message message =
+        new Message(
+            UUID.randomUUID(), conversationId, authorId, "content", Instant.now(), "text");
+    return Activity.messageSent(message, conversation, "author");
+  }
+}
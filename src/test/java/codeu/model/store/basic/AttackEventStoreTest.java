@@ -0,0 +1,122 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.AttackEvent;
+import codeu.model.data.UserAgentCount;
+import codeu.model.store.persistence.AsyncAttackEventWriter;
+import codeu.model.store.persistence.AttackEventLog;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AttackEventStoreTest {
+
+  private AttackEventStore attackEventStore;
+  private AttackEventLog mockAttackEventLog;
+  private AsyncAttackEventWriter mockAttackEventWriter;
+
+  private final Instant NOW = Instant.ofEpochMilli(1000L * 60 * 60 * 24 * 365);
+
+  @Before
+  public void setup() {
+    mockAttackEventLog = Mockito.mock(AttackEventLog.class);
+    mockAttackEventWriter = Mockito.mock(AsyncAttackEventWriter.class);
+    attackEventStore =
+        AttackEventStore.getTestInstance(mockAttackEventLog, mockAttackEventWriter);
+  }
+
+  @Test
+  public void testRecordAttack() {
+    AttackEvent event = new AttackEvent(NOW, "login", "bot");
+
+    attackEventStore.recordAttack(event);
+
+    Assert.assertEquals(1, attackEventStore.getAttackCount());
+    Mockito.verify(mockAttackEventWriter).offer(event);
+  }
+
+  @Test
+  public void testRecordAttack_CountedWhenQueueIsFull() {
+    Mockito.when(mockAttackEventWriter.offer(Mockito.any())).thenReturn(false);
+    Mockito.when(mockAttackEventWriter.getDroppedCount()).thenReturn(1L);
+
+    attackEventStore.recordAttack(new AttackEvent(NOW, "login", "bot"));
+
+    Assert.assertEquals(1, attackEventStore.getAttackCount());
+    Assert.assertEquals(1, attackEventStore.getUnloggedCount());
+  }
+
+  @Test
+  public void testGetHourlyCounts() {
+    attackEventStore.recordAttack(new AttackEvent(NOW, "login", "bot"));
+    attackEventStore.recordAttack(new AttackEvent(NOW, "register", "bot"));
+    attackEventStore.recordAttack(
+        new AttackEvent(NOW.minus(Duration.ofHours(2)), "login", "bot"));
+    // Too old to have an hourly bucket, but still part of the total.
+    attackEventStore.recordAttack(
+        new AttackEvent(NOW.minus(Duration.ofDays(30)), "login", "bot"));
+
+    Assert.assertArrayEquals(new long[] {1, 0, 2}, attackEventStore.getHourlyCounts(3, NOW));
+    Assert.assertArrayEquals(
+        new long[] {0, 1, 0}, attackEventStore.getHourlyCounts(3, NOW.minus(Duration.ofHours(1))));
+    Assert.assertEquals(4, attackEventStore.getAttackCount());
+
+    // Hours that have passed since the last attack count as zero.
+    long[] later = attackEventStore.getHourlyCounts(
+        AttackEventStore.HOURS, NOW.plus(Duration.ofDays(2)));
+    Assert.assertEquals(AttackEventStore.HOURS, later.length);
+    Assert.assertEquals(0, later[later.length - 1]);
+    Assert.assertEquals(2, later[later.length - 1 - 48]);
+  }
+
+  @Test
+  public void testGetTopUserAgents() {
+    for (int i = 0; i < 3; i++) {
+      attackEventStore.recordAttack(new AttackEvent(NOW, "login", "sqlmap"));
+    }
+    attackEventStore.recordAttack(new AttackEvent(NOW, "login", "curl"));
+    attackEventStore.recordAttack(new AttackEvent(NOW, "login", null));
+
+    List<UserAgentCount> top = attackEventStore.getTopUserAgents(10, NOW);
+
+    Assert.assertEquals(2, top.size());
+    Assert.assertEquals("sqlmap", top.get(0).getUserAgent());
+    Assert.assertEquals(3, top.get(0).getCount());
+    Assert.assertEquals("curl", top.get(1).getUserAgent());
+  }
+
+  @Test
+  public void testLoadEvents() throws IOException {
+    attackEventStore.recordAttack(new AttackEvent(NOW, "login", "counted before loading"));
+    Mockito.when(mockAttackEventLog.loadEvents())
+        .thenReturn(
+            Arrays.asList(
+                new AttackEvent(NOW, "login", "bot"), new AttackEvent(NOW, "register", "bot")));
+    Mockito.when(mockAttackEventLog.loadRetiredCount()).thenReturn(5L);
+
+    attackEventStore.loadEvents();
+
+    Assert.assertEquals(7, attackEventStore.getAttackCount());
+    Assert.assertArrayEquals(new long[] {2}, attackEventStore.getHourlyCounts(1, NOW));
+    Assert.assertEquals("bot", attackEventStore.getTopUserAgents(10, NOW).get(0).getUserAgent());
+  }
+}
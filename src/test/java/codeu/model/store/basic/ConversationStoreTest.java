@@ -1,7 +1,9 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Conversation;
+import codeu.model.data.Message;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -87,6 +89,77 @@ public class ConversationStoreTest {
     Mockito.verify(mockPersistentStorageAgent).deleteThrough(inputConversation);
   }
 
+  @Test
+  public void testGetHotConversations_bumpedFirst() {
+    Conversation quiet =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "quiet", Instant.ofEpochMilli(2000));
+    conversationStore.addConversation(quiet);
+
+    conversationStore.bumpConversation(CONVERSATION_ONE.getId(), Instant.ofEpochMilli(3000));
+
+    List<Conversation> hot = conversationStore.getHotConversations(0, 10);
+    Assert.assertEquals(2, hot.size());
+    assertEquals(CONVERSATION_ONE, hot.get(0));
+    assertEquals(quiet, hot.get(1));
+  }
+
+  @Test
+  public void testGetHotConversations_oldActivityDecays() {
+    Instant now = Instant.ofEpochSecond(1_500_000_000L);
+    Conversation busyLongAgo =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "busy", Instant.ofEpochMilli(2000));
+    Conversation activeNow =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "active", Instant.ofEpochMilli(3000));
+    conversationStore.addConversation(busyLongAgo);
+    conversationStore.addConversation(activeNow);
+
+    Instant dayAgo = now.minus(Duration.ofDays(1));
+    for (int i = 0; i < 10; i++) {
+      conversationStore.bumpConversation(busyLongAgo.getId(), dayAgo);
+    }
+    conversationStore.bumpConversation(activeNow.getId(), now);
+
+    assertEquals(activeNow, conversationStore.getHotConversations(0, 1).get(0));
+  }
+
+  @Test
+  public void testGetHotConversations_pagination() {
+    conversationStore.addConversation(
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "two", Instant.ofEpochMilli(2000)));
+
+    List<Conversation> secondPage = conversationStore.getHotConversations(1, 10);
+
+    Assert.assertEquals(1, secondPage.size());
+    assertEquals(CONVERSATION_ONE, secondPage.get(0));
+  }
+
+  @Test
+  public void testRebuildHotRanking() {
+    Conversation other =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), "other", Instant.ofEpochMilli(2000));
+    conversationStore.addConversation(other);
+
+    List<Message> messages = new ArrayList<>();
+    messages.add(
+        new Message(
+            UUID.randomUUID(),
+            CONVERSATION_ONE.getId(),
+            UUID.randomUUID(),
+            "hello",
+            Instant.ofEpochMilli(5000),
+            "text"));
+    conversationStore.rebuildHotRanking(messages);
+
+    assertEquals(CONVERSATION_ONE, conversationStore.getHotConversations(0, 1).get(0));
+  }
+
+  @Test
+  public void testDeleteConversation_removedFromHotRanking() {
+    conversationStore.deleteConversation(CONVERSATION_ONE);
+
+    Assert.assertTrue(conversationStore.getHotConversations(0, 10).isEmpty());
+  }
+
   private void assertEquals(Conversation expectedConversation, Conversation actualConversation) {
     Assert.assertEquals(expectedConversation.getId(), actualConversation.getId());
     Assert.assertEquals(expectedConversation.getOwnerId(), actualConversation.getOwnerId());
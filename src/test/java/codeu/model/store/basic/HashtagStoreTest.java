@@ -2,12 +2,12 @@ package codeu.model.store.basic;
 
 import codeu.model.data.Hashtag;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.Collections;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,7 +47,7 @@ public class HashtagStoreTest {
 
   @Test
   public void testSetConstructor() {
-    Set<UUID> UUIDs = new HashSet<UUID>();
+    List<UUID> UUIDs = new ArrayList<UUID>();
     UUIDs.add(UUID.randomUUID());
     UUIDs.add(UUID.randomUUID());
     Hashtag setTag = new Hashtag("HASHTAG_SET", UUIDs);
@@ -86,6 +86,21 @@ public class HashtagStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputHashtag);
   }
 
+  @Test
+  public void testRemoveMessageIds() {
+    UUID firstId = TAG_ONE.getMessageIds().get(0);
+    UUID secondId = UUID.randomUUID();
+    TAG_ONE.addMessageId(secondId);
+
+    UnitOfWork unit = new UnitOfWork();
+
+    hashtagStore.removeMessageIds(TAG_ONE, Collections.singletonList(firstId), unit);
+
+    Assert.assertEquals(Collections.singletonList(secondId), TAG_ONE.getMessageIds());
+    Assert.assertTrue(unit.getHashtags().contains(TAG_ONE));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).writeThrough(TAG_ONE);
+  }
+
   @Test
   public void testisPresent_true() {
     Assert.assertTrue(hashtagStore.isPresent(TAG_ONE.getName()));
@@ -99,11 +114,6 @@ public class HashtagStoreTest {
   private void assertEquals(Hashtag expectedHashtag, Hashtag actualHashtag) {
     Assert.assertEquals(expectedHashtag.getName(), actualHashtag.getName());
     
-    Set<UUID> tagOne = expectedHashtag.getMessageIds();
-    Set<UUID> tagTwo = actualHashtag.getMessageIds();
-    
-    for (UUID id : tagOne) {
-      assert(tagTwo.contains(id));
-    }
+    Assert.assertEquals(expectedHashtag.getMessageIds(), actualHashtag.getMessageIds());
   }
 }
\ No newline at end of file
@@ -0,0 +1,235 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ImageStoreTest {
+
+  private ImageStore imageStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+
+  private final byte[] CONTENT = {1, 2, 3};
+
+  @Before
+  public void setup() {
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    imageStore = ImageStore.getTestInstance(mockPersistentStorageAgent);
+  }
+
+  /** Makes the mock backend stage uploads by reading and hashing them a few bytes at a time. */
+  private void stageUploads() throws IOException {
+    Mockito.when(
+            mockPersistentStorageAgent.stageImage(
+                Mockito.any(InputStream.class), Mockito.anyInt(), Mockito.anyString()))
+        .thenAnswer(
+            invocation -> {
+              InputStream content = invocation.getArgument(0);
+              int size = invocation.getArgument(1);
+              String hash = StoredImage.stream(content, size, 2, (buffer, length) -> {});
+              return new StagedImage(hash, size, invocation.getArgument(2), "upload");
+            });
+  }
+
+  @Test
+  public void testAddImage_StoresEachImageOnce() throws PersistentDataStoreException {
+    StoredImage first = imageStore.addImage(CONTENT, "image/png");
+    StoredImage second = imageStore.addImage(CONTENT.clone(), "image/png");
+
+    Assert.assertEquals(first.getHash(), second.getHash());
+    Assert.assertEquals(2, imageStore.getReferenceCount(first.getHash()));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1))
+        .writeThrough(Mockito.any(StoredImage.class));
+    Assert.assertArrayEquals(CONTENT, imageStore.getImage(first.getHash()).getContent());
+  }
+
+  @Test
+  public void testAddImage_Stream() throws IOException {
+    stageUploads();
+
+    String hash =
+        imageStore.addImage(new ByteArrayInputStream(CONTENT), CONTENT.length, "image/png");
+
+    Assert.assertEquals(StoredImage.of(CONTENT, "image/png").getHash(), hash);
+    Assert.assertEquals(1, imageStore.getReferenceCount(hash));
+    Mockito.verify(mockPersistentStorageAgent).commitImage(Mockito.any(StagedImage.class));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(StoredImage.class));
+  }
+
+  @Test
+  public void testAddImage_StreamOfStoredImageIsDiscarded() throws IOException {
+    stageUploads();
+    String hash = imageStore.addImage(CONTENT, "image/png").getHash();
+
+    imageStore.addImage(new ByteArrayInputStream(CONTENT), CONTENT.length, "image/png");
+
+    Assert.assertEquals(2, imageStore.getReferenceCount(hash));
+    Mockito.verify(mockPersistentStorageAgent).discardImage(Mockito.any(StagedImage.class));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .commitImage(Mockito.any(StagedImage.class));
+  }
+
+  @Test
+  public void testAddImage_FailedCommitIsDiscarded() throws IOException {
+    stageUploads();
+    Mockito.doThrow(new RuntimeException("Datastore unavailable"))
+        .when(mockPersistentStorageAgent)
+        .commitImage(Mockito.any(StagedImage.class));
+
+    try {
+      imageStore.addImage(new ByteArrayInputStream(CONTENT), CONTENT.length, "image/png");
+      Assert.fail("Expected the failed commit to be thrown");
+    } catch (RuntimeException expected) {
+    }
+
+    Assert.assertEquals(
+        0, imageStore.getReferenceCount(StoredImage.of(CONTENT, "image/png").getHash()));
+    Mockito.verify(mockPersistentStorageAgent).discardImage(Mockito.any(StagedImage.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddImage_TooLarge() throws IOException {
+    imageStore.addImage(new ByteArrayInputStream(CONTENT), ImageStore.MAX_SIZE + 1, "image/png");
+  }
+
+  @Test(expected = IOException.class)
+  public void testAddImage_WrongSize() throws IOException {
+    stageUploads();
+    imageStore.addImage(new ByteArrayInputStream(CONTENT), CONTENT.length + 1, "image/png");
+  }
+
+  @Test
+  public void testAddImage_FailedWriteIsNotCounted() throws PersistentDataStoreException {
+    Mockito.doThrow(new RuntimeException("Datastore unavailable"))
+        .doNothing()
+        .when(mockPersistentStorageAgent)
+        .writeThrough(Mockito.any(StoredImage.class));
+
+    try {
+      imageStore.addImage(CONTENT, "image/png");
+      Assert.fail("Expected the failed write to be thrown");
+    } catch (RuntimeException expected) {
+    }
+    String hash = StoredImage.of(CONTENT, "image/png").getHash();
+    Assert.assertEquals(0, imageStore.getReferenceCount(hash));
+    Assert.assertNull(imageStore.getImage(hash));
+
+    // The next upload of the same bytes writes them again.
+    imageStore.addImage(CONTENT, "image/png");
+    Assert.assertEquals(1, imageStore.getReferenceCount(hash));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(2))
+        .writeThrough(Mockito.any(StoredImage.class));
+  }
+
+  @Test
+  public void testReleaseImage_DeletesLastReference() throws PersistentDataStoreException {
+    String hash = imageStore.addImage(CONTENT, "image/png").getHash();
+    imageStore.addImage(CONTENT, "image/png");
+
+    imageStore.releaseImage(hash);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).deleteImage(hash);
+    Assert.assertEquals(1, imageStore.getReferenceCount(hash));
+
+    imageStore.releaseImage(hash);
+    Mockito.verify(mockPersistentStorageAgent).deleteImage(hash);
+    Assert.assertEquals(0, imageStore.getReferenceCount(hash));
+    Assert.assertNull(imageStore.getImage(hash));
+  }
+
+  @Test
+  public void testRebuildReferences() throws PersistentDataStoreException {
+    Mockito.when(mockPersistentStorageAgent.loadImageHashes())
+        .thenReturn(Arrays.asList("kept", "unreferenced"));
+
+    imageStore.rebuildReferences(Arrays.asList("kept", "kept", "missing"));
+
+    Assert.assertEquals(2, imageStore.getReferenceCount("kept"));
+    Assert.assertEquals(0, imageStore.getReferenceCount("missing"));
+    Mockito.verify(mockPersistentStorageAgent).deleteImage("unreferenced");
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).deleteImage("kept");
+  }
+
+  @Test
+  public void testReleaseImage_RemovesVariants() throws PersistentDataStoreException {
+    ImageVariantStore imageVariantStore =
+        ImageVariantStore.getTestInstance(mockPersistentStorageAgent, Runnable::run);
+    imageStore = ImageStore.getTestInstance(mockPersistentStorageAgent, imageVariantStore);
+    String hash = imageStore.addImage(CONTENT, "image/png").getHash();
+    imageVariantStore.setVariantWidths(
+        Collections.singletonMap(hash, Arrays.asList(160, 320)));
+    long version = imageVariantStore.getVersion();
+
+    imageStore.releaseImage(hash);
+
+    Assert.assertEquals(-1, imageVariantStore.getVariantWidth(hash, 100));
+    Assert.assertNull(imageVariantStore.getVariant(hash, 160));
+    Assert.assertNotEquals(version, imageVariantStore.getVersion());
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteImageVariants(hash, new TreeSet<>(Arrays.asList(160, 320)));
+  }
+
+  @Test
+  public void testRebuildReferences_RemovesVariantsOfDeletedImages()
+      throws PersistentDataStoreException {
+    ImageVariantStore imageVariantStore =
+        ImageVariantStore.getTestInstance(mockPersistentStorageAgent, Runnable::run);
+    imageStore = ImageStore.getTestInstance(mockPersistentStorageAgent, imageVariantStore);
+    Map<String, List<Integer>> widths = new HashMap<>();
+    widths.put("kept", Arrays.asList(160));
+    widths.put("unreferenced", Arrays.asList(160));
+    widths.put("long_gone", Arrays.asList(320));
+    imageVariantStore.setVariantWidths(widths);
+    Mockito.when(mockPersistentStorageAgent.loadImageHashes())
+        .thenReturn(Arrays.asList("kept", "unreferenced"));
+
+    imageStore.rebuildReferences(Arrays.asList("kept"));
+
+    Assert.assertEquals(160, imageVariantStore.getVariantWidth("kept", 100));
+    Assert.assertEquals(-1, imageVariantStore.getVariantWidth("unreferenced", 100));
+    Assert.assertEquals(-1, imageVariantStore.getVariantWidth("long_gone", 100));
+    Mockito.verify(mockPersistentStorageAgent)
+        .deleteImageVariants(Mockito.eq("long_gone"), Mockito.anyCollection());
+  }
+
+  @Test
+  public void testGetImage_LoadsOnce() throws PersistentDataStoreException {
+    StoredImage image = StoredImage.of(CONTENT, "image/png");
+    Mockito.when(mockPersistentStorageAgent.loadImageHashes())
+        .thenReturn(Collections.singletonList(image.getHash()));
+    imageStore.rebuildReferences(Collections.singletonList(image.getHash()));
+    Mockito.when(mockPersistentStorageAgent.loadImage(image.getHash())).thenReturn(image);
+
+    Assert.assertSame(image, imageStore.getImage(image.getHash()));
+    Assert.assertSame(image, imageStore.getImage(image.getHash()));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1)).loadImage(image.getHash());
+  }
+}
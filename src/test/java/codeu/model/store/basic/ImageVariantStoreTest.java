@@ -0,0 +1,161 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package codeu.model.store.basic;
+
+import codeu.model.data.ImageVariant;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ImageVariantStoreTest {
+
+  private ImageVariantStore imageVariantStore;
+  private PersistentStorageAgent mockPersistentStorageAgent;
+
+  @Before
+  public void setup() {
+    mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    // Run the resizing on the calling thread so the tests are deterministic.
+    imageVariantStore = ImageVariantStore.getTestInstance(mockPersistentStorageAgent, Runnable::run);
+  }
+
+  @Test
+  public void testProcessImage_MakesNarrowerVariants() throws IOException {
+    Assert.assertTrue(imageVariantStore.processImage("source", png(800, 400)));
+
+    ArgumentCaptor<ImageVariant> variantCaptor = ArgumentCaptor.forClass(ImageVariant.class);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(3))
+        .writeThrough(variantCaptor.capture());
+    List<ImageVariant> variants = variantCaptor.getAllValues();
+    for (int i = 0; i < variants.size(); i++) {
+      ImageVariant variant = variants.get(i);
+      BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(variant.getContent()));
+      Assert.assertEquals(ImageVariantStore.WIDTHS[i], decoded.getWidth());
+      Assert.assertEquals(ImageVariantStore.WIDTHS[i] / 2, decoded.getHeight());
+      Assert.assertEquals("image/jpeg", variant.getContentType());
+    }
+
+    Assert.assertEquals(320, imageVariantStore.getVariantWidth("source", 250));
+    Assert.assertEquals(640, imageVariantStore.getVariantWidth("source", 640));
+    Assert.assertEquals(-1, imageVariantStore.getVariantWidth("source", 700));
+  }
+
+  @Test
+  public void testProcessImage_SkipsProcessedSource() throws IOException {
+    imageVariantStore.processImage("source", png(800, 400));
+    Assert.assertTrue(imageVariantStore.processImage("source", png(800, 400)));
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(3))
+        .writeThrough(Mockito.any(ImageVariant.class));
+  }
+
+  @Test
+  public void testProcessImage_SmallImageKeepsOriginal() throws IOException {
+    imageVariantStore.processImage("source", png(100, 100));
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(ImageVariant.class));
+    Assert.assertEquals(-1, imageVariantStore.getVariantWidth("source", 50));
+  }
+
+  @Test
+  public void testProcessImage_NotAnImage() {
+    imageVariantStore.processImage("source", new byte[] {1, 2, 3});
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(ImageVariant.class));
+  }
+
+  @Test
+  public void testProcessImage_QueueFull() {
+    imageVariantStore =
+        ImageVariantStore.getTestInstance(
+            mockPersistentStorageAgent,
+            runnable -> {
+              throw new RejectedExecutionException();
+            });
+
+    Assert.assertFalse(imageVariantStore.processImage("source", new byte[] {1, 2, 3}));
+  }
+
+  @Test
+  public void testGetVariant_LoadedOnce() throws PersistentDataStoreException {
+    ImageVariant variant = new ImageVariant("source", 320, new byte[] {1}, "image/jpeg");
+    imageVariantStore.setVariantWidths(
+        Collections.singletonMap("source", Arrays.asList(160, 320)));
+    Mockito.when(mockPersistentStorageAgent.loadImageVariant("source", 320)).thenReturn(variant);
+
+    Assert.assertSame(variant, imageVariantStore.getVariant("source", 320));
+    Assert.assertSame(variant, imageVariantStore.getVariant("source", 320));
+    Assert.assertNull(imageVariantStore.getVariant("source", 640));
+
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1)).loadImageVariant("source", 320);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).loadImageVariant("source", 640);
+  }
+
+  @Test
+  public void testProcessImage_DeclaredTooLarge() throws IOException {
+    // A tiny PNG whose header claims 30000 x 30000 pixels.
+    byte[] bomb = withDeclaredSize(png(10, 10), 30000, 30000);
+
+    Assert.assertNull(ImageVariantStore.decode(bomb));
+    Assert.assertTrue(imageVariantStore.processImage("bomb", bomb));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never())
+        .writeThrough(Mockito.any(ImageVariant.class));
+  }
+
+  @Test
+  public void testDecode_SubsamplesLargeSource() throws IOException {
+    BufferedImage decoded = ImageVariantStore.decode(png(2100, 2100));
+
+    // 2100 x 2100 is over MAX_DECODED_PIXELS, so every second pixel is read.
+    Assert.assertEquals(1050, decoded.getWidth());
+    Assert.assertEquals(1050, decoded.getHeight());
+  }
+
+  /** Rewrites the size in a PNG's header, fixing up the header's checksum. */
+  private static byte[] withDeclaredSize(byte[] png, int width, int height) {
+    byte[] patched = png.clone();
+    // The IHDR chunk follows the 8-byte signature; its data starts with the width and height.
+    ByteBuffer buffer = ByteBuffer.wrap(patched);
+    buffer.putInt(16, width);
+    buffer.putInt(20, height);
+    CRC32 crc = new CRC32();
+    crc.update(patched, 12, 17);
+    buffer.putInt(29, (int) crc.getValue());
+    return patched;
+  }
+
+  private static byte[] png(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", bytes);
+    return bytes.toByteArray();
+  }
+}
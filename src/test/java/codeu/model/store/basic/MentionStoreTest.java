@@ -1,12 +1,11 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Mention;
+import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Before;
@@ -18,94 +17,119 @@ public class MentionStoreTest {
   private MentionStore mentionStore;
   private PersistentStorageAgent mockPersistentStorageAgent;
 
-  private final Mention MENTION_ONE =
-      new Mention(
+  private final User USER_ONE =
+      new User(
           UUID.randomUUID(),
-          "test_username_one");
-
-  private final Mention MENTION_TWO =
-      new Mention(
+          "test_username_one",
+          "$2a$10$/zf4WlT2Z6tB5sULB9Wec.QQdawmF0f1SbqBw5EeJg5uoVpKFFXAa",
+          Instant.ofEpochMilli(1000),
+          "test_aboutme_one",
+          false,
+          null);
+
+  private final User USER_TWO =
+      new User(
           UUID.randomUUID(),
-          "test_username_two");
+          "test_username_two",
+          "$2a$10$lgZSbmcYyyC7bETcMo/O1uUltWYDK3DW1lrEjCumOE1u8QPMlzNVy",
+          Instant.ofEpochMilli(2000),
+          "test_aboutme_two",
+          true,
+          null);
 
-  private final Mention MENTION_THREE =
-      new Mention(
-          UUID.randomUUID(),
-          "test_username_three");
+  private final UUID MESSAGE_ONE = UUID.randomUUID();
+
+  private final Mention MENTION_ONE = new Mention(USER_ONE.getId(), USER_ONE.getName());
 
   @Before
   public void setup() {
     mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
     mentionStore = MentionStore.getTestInstance(mockPersistentStorageAgent);
 
+    MENTION_ONE.addMessageId(MESSAGE_ONE);
     final List<Mention> mentionList = new ArrayList<Mention>();
     mentionList.add(MENTION_ONE);
-    mentionList.add(MENTION_TWO);
-    mentionList.add(MENTION_THREE);
     mentionStore.setMentions(mentionList);
   }
 
 
   @Test
-  public void testGetMention_byUsername_found() {
-    Mention resultMention = mentionStore.getMention(MENTION_ONE.getName());
+  public void testGetMention_byUserId_found() {
+    Mention resultMention = mentionStore.getMention(USER_ONE.getId());
 
     assertEquals(MENTION_ONE, resultMention);
   }
 
   @Test
-  public void testSetConstructor() {
-    Set<UUID> UUIDs = new HashSet<UUID>();
-    UUIDs.add(UUID.randomUUID());
-    UUIDs.add(UUID.randomUUID());
-    Mention setMention = new Mention(UUIDs, "Mention_Set");
+  public void testGetMention_byUserId_notFound() {
+    Mention resultMention = mentionStore.getMention(UUID.randomUUID());
+
+    Assert.assertNull(resultMention);
+  }
+
+  @Test
+  public void testAddMention_newUser() {
+    UUID messageId = UUID.randomUUID();
 
-    mentionStore.addMention(setMention);
-    Mention resultMention = mentionStore.getMention("Mention_Set");
+    mentionStore.addMention(messageId, USER_TWO);
+    Mention resultMention = mentionStore.getMention(USER_TWO.getId());
 
-    assertEquals(setMention, resultMention);
+    Assert.assertEquals(USER_TWO.getName(), resultMention.getName());
+    Assert.assertEquals(messageId, resultMention.getMessageIds().get(0));
+    Assert.assertEquals(1, mentionStore.getUnreadCount(USER_TWO.getId()));
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(resultMention);
   }
 
   @Test
-  public void testGetMention_byUsername_notFound() {
-    Mention resultMention = mentionStore.getMention("fake mention");
+  public void testAddMention_existingUser() {
+    UUID messageId = UUID.randomUUID();
 
-    Assert.assertNull(resultMention);
+    mentionStore.addMention(messageId, USER_ONE);
+
+    Assert.assertEquals(2, mentionStore.getMentionCount(USER_ONE.getId()));
+    Assert.assertEquals(2, mentionStore.getUnreadCount(USER_ONE.getId()));
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(MENTION_ONE);
   }
 
   @Test
-  public void testAddMention() {
-    Mention inputMention =
-        new Mention(
-            UUID.randomUUID(),
-            "test_mention");
+  public void testGetMentionedMessageIdsBefore_newestFirst() {
+    UUID messageTwo = UUID.randomUUID();
+    UUID messageThree = UUID.randomUUID();
+    mentionStore.addMention(messageTwo, USER_ONE);
+    mentionStore.addMention(messageThree, USER_ONE);
+
+    List<UUID> page = mentionStore.getMentionedMessageIdsBefore(USER_ONE.getId(), 3, 2);
+
+    Assert.assertEquals(2, page.size());
+    Assert.assertEquals(messageThree, page.get(0));
+    Assert.assertEquals(messageTwo, page.get(1));
+    Assert.assertEquals(
+        MESSAGE_ONE, mentionStore.getMentionedMessageIdsBefore(USER_ONE.getId(), 1, 2).get(0));
+  }
 
-    mentionStore.addMention(inputMention);
-    Mention resultMention = mentionStore.getMention("test_mention");
+  @Test
+  public void testMarkRead() {
+    mentionStore.markRead(USER_ONE.getId());
 
-    assertEquals(inputMention, resultMention);
-    Mockito.verify(mockPersistentStorageAgent).writeThrough(inputMention);
+    Assert.assertEquals(0, mentionStore.getUnreadCount(USER_ONE.getId()));
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(MENTION_ONE);
   }
 
   @Test
   public void testIsPresent_true() {
-    Assert.assertTrue(mentionStore.isPresent(MENTION_ONE.getName()));
+    Assert.assertTrue(mentionStore.isPresent(USER_ONE.getId()));
   }
 
   @Test
   public void testIsPresent_false() {
-    Assert.assertFalse(mentionStore.isPresent("fake username"));
+    Assert.assertFalse(mentionStore.isPresent(USER_TWO.getId()));
   }
 
   private void assertEquals(Mention expectedMention, Mention actualMention) {
 
     Assert.assertEquals(expectedMention.getName(), actualMention.getName());
-
-    Set<UUID> mentionOne = expectedMention.getMessageIds();
-    Set<UUID> mentionTwo = actualMention.getMessageIds();
-
-    for (UUID id : mentionOne) {
-      assert(mentionTwo.contains(id));
-    }
+    Assert.assertEquals(
+        expectedMention.getMentionedUserId(), actualMention.getMentionedUserId());
+    Assert.assertEquals(expectedMention.getMessageIds(), actualMention.getMessageIds());
   }
 }
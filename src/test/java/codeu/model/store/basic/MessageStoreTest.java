@@ -2,6 +2,7 @@ package codeu.model.store.basic;
 
 import codeu.model.data.Message;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import codeu.model.store.persistence.UnitOfWork;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -83,6 +84,27 @@ public class MessageStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputMessage);
   }
 
+  @Test
+  public void testAddMessage_UnitOfWork() {
+    UUID inputConversationId = UUID.randomUUID();
+    Message inputMessage =
+        new Message(
+            UUID.randomUUID(),
+            inputConversationId,
+            UUID.randomUUID(),
+            "test message",
+            Instant.now(),
+            "text");
+    UnitOfWork unit = new UnitOfWork();
+
+    messageStore.addMessage(inputMessage, unit);
+
+    assertEquals(inputMessage, messageStore.getMessagesInConversation(inputConversationId).get(0));
+    Assert.assertEquals(1, unit.getMessages().size());
+    assertEquals(inputMessage, unit.getMessages().get(0));
+    Mockito.verify(mockPersistentStorageAgent, Mockito.never()).writeThrough(inputMessage);
+  }
+
   @Test
   public void testDeleteMessage() {
     UUID inputConversationId = UUID.randomUUID();
@@ -103,6 +125,32 @@ public class MessageStoreTest {
     Mockito.verify(mockPersistentStorageAgent).deleteThrough(inputMessage);
   }
 
+  @Test
+  public void testVersions() {
+    UUID inputConversationId = UUID.randomUUID();
+    Message inputMessage =
+        new Message(
+            UUID.randomUUID(),
+            inputConversationId,
+            UUID.randomUUID(),
+            "test message",
+            Instant.now(),
+            "text");
+
+    long conversationVersion = messageStore.getConversationVersion(inputConversationId);
+    long otherVersion = messageStore.getConversationVersion(CONVERSATION_ID_ONE);
+    messageStore.addMessage(inputMessage);
+    long changeVersion = messageStore.getChangeVersion();
+
+    Assert.assertNotEquals(
+        conversationVersion, messageStore.getConversationVersion(inputConversationId));
+    Assert.assertEquals(otherVersion, messageStore.getConversationVersion(CONVERSATION_ID_ONE));
+
+    messageStore.deleteMessage(inputMessage);
+
+    Assert.assertNotEquals(changeVersion, messageStore.getChangeVersion());
+  }
+
   private void assertEquals(Message expectedMessage, Message actualMessage) {
     Assert.assertEquals(expectedMessage.getId(), actualMessage.getId());
     Assert.assertEquals(expectedMessage.getConversationId(), actualMessage.getConversationId());
@@ -0,0 +1,37 @@
+package codeu.model.store.basic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceRingTest {
+
+  @Test
+  public void testCursorBefore_newestFirst() {
+    SequenceRing ring = new SequenceRing(10);
+    ring.add(1);
+    ring.add(4);
+    ring.add(9);
+
+    SequenceRing.Cursor cursor = ring.cursorBefore(9);
+
+    Assert.assertEquals(4, cursor.next());
+    Assert.assertEquals(1, cursor.next());
+    Assert.assertFalse(cursor.hasNext());
+  }
+
+  @Test
+  public void testAdd_overwritesOldestWhenFull() {
+    SequenceRing ring = new SequenceRing(3);
+    for (int i = 0; i < 5; i++) {
+      ring.add(i);
+    }
+
+    SequenceRing.Cursor cursor = ring.cursorBefore(Integer.MAX_VALUE);
+
+    Assert.assertEquals(3, ring.size());
+    Assert.assertEquals(4, cursor.next());
+    Assert.assertEquals(3, cursor.next());
+    Assert.assertEquals(2, cursor.next());
+    Assert.assertFalse(cursor.hasNext());
+  }
+}
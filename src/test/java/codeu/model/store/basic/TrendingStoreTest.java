@@ -0,0 +1,84 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.TrendingHashtag;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrendingStoreTest {
+
+  private static final Instant NOW = Instant.ofEpochSecond(1_500_000_000L);
+
+  private TrendingStore trendingStore;
+
+  @Before
+  public void setup() {
+    trendingStore = TrendingStore.getTestInstance();
+  }
+
+  @Test
+  public void testGetTrending_mostUsedFirst() {
+    record("CATS", 3, NOW);
+    record("DOGS", 5, NOW);
+    record("FISH", 1, NOW);
+
+    List<TrendingHashtag> trending =
+        trendingStore.getTrending(TrendingStore.Window.HOUR, 2, NOW);
+
+    Assert.assertEquals(2, trending.size());
+    Assert.assertEquals("DOGS", trending.get(0).getName());
+    Assert.assertEquals(5, trending.get(0).getCount());
+    Assert.assertEquals("CATS", trending.get(1).getName());
+    Assert.assertEquals(3, trending.get(1).getCount());
+  }
+
+  @Test
+  public void testGetTrending_oldUsesLeaveShortWindows() {
+    Instant earlier = NOW.minus(Duration.ofMinutes(30));
+    record("OLD", 4, earlier);
+    record("NEW", 1, NOW);
+
+    List<TrendingHashtag> fiveMinutes =
+        trendingStore.getTrending(TrendingStore.Window.FIVE_MINUTES, 10, NOW);
+    List<TrendingHashtag> hour = trendingStore.getTrending(TrendingStore.Window.HOUR, 10, NOW);
+
+    Assert.assertEquals(1, fiveMinutes.size());
+    Assert.assertEquals("NEW", fiveMinutes.get(0).getName());
+    Assert.assertEquals("OLD", hour.get(0).getName());
+    Assert.assertEquals(4, hour.get(0).getCount());
+  }
+
+  @Test
+  public void testGetTrending_expiredTagsAreReplaced() {
+    for (int i = 0; i < TrendingStore.CANDIDATES; i++) {
+      record("OLD" + i, 10, NOW.minus(Duration.ofHours(2)));
+    }
+    record("FRESH", 1, NOW);
+
+    List<TrendingHashtag> hour = trendingStore.getTrending(TrendingStore.Window.HOUR, 10, NOW);
+
+    Assert.assertEquals(1, hour.size());
+    Assert.assertEquals("FRESH", hour.get(0).getName());
+  }
+
+  @Test
+  public void testGetTrending_empty() {
+    Assert.assertTrue(trendingStore.getTrending(TrendingStore.Window.DAY, 10, NOW).isEmpty());
+  }
+
+  @Test
+  public void testWindowFromLabel() {
+    Assert.assertEquals(TrendingStore.Window.DAY, TrendingStore.Window.fromLabel("1d"));
+    Assert.assertNull(TrendingStore.Window.fromLabel("1y"));
+    Assert.assertNull(TrendingStore.Window.fromLabel(null));
+  }
+
+  private void record(String name, int times, Instant time) {
+    for (int i = 0; i < times; i++) {
+      trendingStore.recordHashtag(name, time);
+    }
+  }
+}
@@ -4,7 +4,9 @@ import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Before;
@@ -72,6 +74,19 @@ public class UserStoreTest {
     assertEquals(USER_ONE, resultUser);
   }
 
+  @Test
+  public void testGetUsers_batch() {
+    UUID unknownId = UUID.randomUUID();
+
+    Map<UUID, User> resultUsers =
+        userStore.getUsers(Arrays.asList(USER_ONE.getId(), USER_THREE.getId(), unknownId));
+
+    Assert.assertEquals(2, resultUsers.size());
+    assertEquals(USER_ONE, resultUsers.get(USER_ONE.getId()));
+    assertEquals(USER_THREE, resultUsers.get(USER_THREE.getId()));
+    Assert.assertFalse(resultUsers.containsKey(unknownId));
+  }
+
   @Test
   public void testGetUser_byUsername_notFound() {
     User resultUser = userStore.getUser("fake username");
@@ -0,0 +1,134 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.AttackEvent;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class AsyncAttackEventWriterTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private AttackEventLog mockAttackEventLog;
+
+  /** Every batch the writer appended, copied because the writer reuses its batch list. */
+  private List<List<AttackEvent>> batches;
+
+  @Before
+  public void setup() throws IOException {
+    mockAttackEventLog = Mockito.mock(AttackEventLog.class);
+    batches = new ArrayList<>();
+    Mockito.doAnswer(
+            invocation -> batches.add(new ArrayList<AttackEvent>(invocation.getArgument(0))))
+        .when(mockAttackEventLog)
+        .appendAll(Mockito.anyList());
+  }
+
+  @Test
+  public void testDrain_WritesOneBatch() {
+    AsyncAttackEventWriter writer = new AsyncAttackEventWriter(mockAttackEventLog, 8, false);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(writer.offer(event(i)));
+    }
+
+    Assert.assertEquals(3, writer.drain());
+    Assert.assertEquals(0, writer.drain());
+
+    Assert.assertEquals(1, batches.size());
+    Assert.assertEquals(3, batches.get(0).size());
+    Assert.assertEquals(Instant.ofEpochMilli(2), batches.get(0).get(2).getCreationTime());
+  }
+
+  @Test
+  public void testDrain_LimitsBatchSize() {
+    AsyncAttackEventWriter writer =
+        new AsyncAttackEventWriter(mockAttackEventLog, AsyncAttackEventWriter.BATCH_SIZE * 2, false);
+    for (int i = 0; i <= AsyncAttackEventWriter.BATCH_SIZE; i++) {
+      writer.offer(event(i));
+    }
+
+    Assert.assertEquals(AsyncAttackEventWriter.BATCH_SIZE, writer.drain());
+    Assert.assertEquals(1, writer.drain());
+  }
+
+  @Test
+  public void testOffer_DropsWhenFull() {
+    AsyncAttackEventWriter writer = new AsyncAttackEventWriter(mockAttackEventLog, 4, false);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(writer.offer(event(i)));
+    }
+
+    Assert.assertFalse(writer.offer(event(4)));
+    Assert.assertEquals(1, writer.getDroppedCount());
+
+    writer.drain();
+    Assert.assertTrue(writer.offer(event(5)));
+    // The ring wraps around: the next event lands in the first slot again.
+    Assert.assertEquals(1, writer.drain());
+    Assert.assertEquals(Instant.ofEpochMilli(5), batches.get(1).get(0).getCreationTime());
+  }
+
+  @Test
+  public void testDrain_CountsFailedWrites() throws IOException {
+    Mockito.doThrow(new IOException()).when(mockAttackEventLog).appendAll(Mockito.anyList());
+    AsyncAttackEventWriter writer = new AsyncAttackEventWriter(mockAttackEventLog, 4, false);
+    writer.offer(event(0));
+    writer.offer(event(1));
+
+    writer.drain();
+
+    Assert.assertEquals(2, writer.getDroppedCount());
+  }
+
+  @Test
+  public void testWriterThread() throws IOException, InterruptedException {
+    AttackEventLog attackEventLog = new AttackEventLog(folder.getRoot().toPath());
+    AsyncAttackEventWriter writer = new AsyncAttackEventWriter(attackEventLog);
+    int threads = 4;
+    int perThread = 2000;
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread producer = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          writer.offer(event(i));
+        }
+      });
+      producers.add(producer);
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    writer.close();
+
+    // Every event is either in the log or counted as dropped.
+    Assert.assertEquals(
+        threads * perThread, attackEventLog.loadEvents().size() + writer.getDroppedCount());
+  }
+
+  private static AttackEvent event(int i) {
+    return new AttackEvent(Instant.ofEpochMilli(i), "login", "bot");
+  }
+}
@@ -0,0 +1,121 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.AttackEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AttackEventLogTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setup() {
+    directory = folder.getRoot().toPath().resolve("attack-events");
+  }
+
+  @Test
+  public void testAppendAndLoadEvents() throws IOException {
+    AttackEventLog attackEventLog = new AttackEventLog(directory);
+    attackEventLog.append(new AttackEvent(Instant.ofEpochMilli(1000), "login", "a\tb\nc"));
+    attackEventLog.append(new AttackEvent(Instant.ofEpochMilli(2000), "register", null));
+
+    // A new log over the same directory sees what the first one wrote.
+    List<AttackEvent> events = new AttackEventLog(directory).loadEvents();
+
+    Assert.assertEquals(2, events.size());
+    Assert.assertEquals(Instant.ofEpochMilli(1000), events.get(0).getCreationTime());
+    Assert.assertEquals("login", events.get(0).getSource());
+    Assert.assertEquals("a b c", events.get(0).getUserAgent());
+    Assert.assertEquals("register", events.get(1).getSource());
+    Assert.assertNull(events.get(1).getUserAgent());
+  }
+
+  @Test
+  public void testRotation() throws IOException {
+    // Every event fills a file, so each append rotates and only three files are kept.
+    AttackEventLog attackEventLog = new AttackEventLog(directory, 1, 3);
+    for (int i = 0; i < 5; i++) {
+      attackEventLog.append(new AttackEvent(Instant.ofEpochMilli(i), "login", "bot"));
+    }
+
+    List<AttackEvent> events = attackEventLog.loadEvents();
+
+    Assert.assertEquals(2, events.size());
+    Assert.assertEquals(Instant.ofEpochMilli(3), events.get(0).getCreationTime());
+    Assert.assertEquals(Instant.ofEpochMilli(4), events.get(1).getCreationTime());
+    Assert.assertEquals(3, attackEventLog.loadRetiredCount());
+  }
+
+  @Test
+  public void testAppendAll_RotatesWithinBatch() throws IOException {
+    AttackEventLog attackEventLog = new AttackEventLog(directory, 1, 3);
+    List<AttackEvent> batch = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      batch.add(new AttackEvent(Instant.ofEpochMilli(i), "login", "bot"));
+    }
+
+    attackEventLog.appendAll(batch);
+
+    Assert.assertEquals(2, attackEventLog.loadEvents().size());
+    Assert.assertEquals(3, attackEventLog.loadRetiredCount());
+  }
+
+  @Test
+  public void testMigrateLegacyLog() throws IOException {
+    Instant time = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+    String formatted =
+        DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
+            .withLocale(Locale.US)
+            .withZone(ZoneId.systemDefault())
+            .format(time);
+    Path legacyFile = folder.getRoot().toPath().resolve("attackLog.txt");
+    Files.write(
+        legacyFile,
+        Arrays.asList("curl", formatted, "null", "not a time"),
+        StandardCharsets.UTF_8);
+    AttackEventLog attackEventLog = new AttackEventLog(directory);
+
+    attackEventLog.migrateLegacyLog(legacyFile);
+    attackEventLog.migrateLegacyLog(legacyFile);
+
+    List<AttackEvent> events = attackEventLog.loadEvents();
+    Assert.assertEquals(2, events.size());
+    Assert.assertEquals("curl", events.get(0).getUserAgent());
+    Assert.assertEquals(time, events.get(0).getCreationTime());
+    Assert.assertEquals(AttackEvent.SOURCE_UNKNOWN, events.get(0).getSource());
+    Assert.assertNull(events.get(1).getUserAgent());
+    Assert.assertFalse(Files.exists(legacyFile));
+  }
+}
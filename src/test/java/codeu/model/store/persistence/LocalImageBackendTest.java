@@ -0,0 +1,125 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.StoredImageFile;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalImageBackendTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private LocalImageBackend localImageBackend;
+
+  @Before
+  public void setup() {
+    localImageBackend = new LocalImageBackend(folder.getRoot().toPath().resolve("images"));
+  }
+
+  @Test
+  public void testSaveAndLoadImage() throws PersistentDataStoreException, IOException {
+    StoredImage inputImage = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+
+    Assert.assertNull(localImageBackend.loadImage(inputImage.getHash()));
+    Assert.assertTrue(localImageBackend.loadImageHashes().isEmpty());
+    localImageBackend.writeThrough(inputImage);
+    StoredImage resultImage = localImageBackend.loadImage(inputImage.getHash());
+
+    Assert.assertArrayEquals(inputImage.getContent(), resultImage.getContent());
+    Assert.assertEquals("image/png", resultImage.getContentType());
+    Assert.assertEquals(
+        Arrays.asList(inputImage.getHash()), localImageBackend.loadImageHashes());
+
+    StoredImageFile file = localImageBackend.getImageFile(inputImage.getHash());
+    Assert.assertEquals("image/png", file.getContentType());
+    Assert.assertEquals(inputImage.getHash().substring(0, 2), file.getPath().getParent()
+        .getFileName().toString());
+    Assert.assertArrayEquals(inputImage.getContent(), Files.readAllBytes(file.getPath()));
+  }
+
+  @Test
+  public void testStageAndCommitImage() throws PersistentDataStoreException, IOException {
+    // Larger than the buffer, so it is written in several pieces.
+    byte[] content = new byte[LocalImageBackend.BUFFER_SIZE * 2 + 100];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+
+    StagedImage staged =
+        localImageBackend.stageImage(
+            new ByteArrayInputStream(content), content.length, "image/png");
+    Assert.assertEquals(StoredImage.of(content, "image/png").getHash(), staged.getHash());
+    Assert.assertNull(localImageBackend.getImageFile(staged.getHash()));
+
+    localImageBackend.commitImage(staged);
+
+    Assert.assertArrayEquals(content, localImageBackend.loadImage(staged.getHash()).getContent());
+    Assert.assertEquals(
+        Arrays.asList(staged.getHash()), localImageBackend.loadImageHashes());
+  }
+
+  @Test
+  public void testStageImage_WrongSizeLeavesNothing() throws IOException {
+    try {
+      localImageBackend.stageImage(new ByteArrayInputStream(new byte[] {1, 2}), 3, "image/png");
+      Assert.fail("Expected the short upload to be rejected");
+    } catch (IOException expected) {
+    }
+
+    try (Stream<Path> files = Files.list(folder.getRoot().toPath().resolve("images"))) {
+      Assert.assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  public void testLoadImageHashesRemovesUncommittedUploads()
+      throws PersistentDataStoreException, IOException {
+    StagedImage staged =
+        localImageBackend.stageImage(new ByteArrayInputStream(new byte[] {1, 2}), 2, "image/png");
+
+    Assert.assertTrue(localImageBackend.loadImageHashes().isEmpty());
+    Assert.assertFalse(Files.exists(Paths.get(staged.getLocation())));
+  }
+
+  @Test
+  public void testDeleteImage() throws PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/jpeg");
+    localImageBackend.writeThrough(image);
+
+    localImageBackend.deleteImage(image.getHash());
+
+    Assert.assertNull(localImageBackend.loadImage(image.getHash()));
+    Assert.assertNull(localImageBackend.getImageFile(image.getHash()));
+    Assert.assertTrue(localImageBackend.loadImageHashes().isEmpty());
+  }
+
+  @Test
+  public void testGetImageFile_RejectsPaths() {
+    Assert.assertNull(localImageBackend.getImageFile("../secret"));
+  }
+}
@@ -1,18 +1,35 @@
 package codeu.model.store.persistence;
 
 import codeu.model.data.Conversation;
+import codeu.model.data.Hashtag;
+import codeu.model.data.Mention;
 import codeu.model.data.Message;
+import codeu.model.data.StagedImage;
+import codeu.model.data.StoredImage;
+import codeu.model.data.Tombstone;
 import codeu.model.data.User;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Text;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import com.google.appengine.api.datastore.Text;
 
 /**
  * Test class for PersistentDataStore. The PersistentDataStore class relies on DatastoreService,
@@ -45,8 +62,8 @@ public class PersistentDataStoreTest {
     Instant creationOne = Instant.ofEpochMilli(1000);
     String aboutMeOne = "test_aboutme_one";
     boolean adminStatusOne = true;
-    Text profilePicOne = null;
-    User inputUserOne = new User(idOne, nameOne, passwordHashOne, creationOne, aboutMeOne, adminStatusOne, profilePicOne);
+    String pictureHashOne = "test_hash_one";
+    User inputUserOne = new User(idOne, nameOne, passwordHashOne, creationOne, aboutMeOne, adminStatusOne, pictureHashOne);
 
     UUID idTwo = UUID.fromString("10000001-2222-3333-4444-555555555555");
     String nameTwo = "test_username_two";
@@ -54,8 +71,8 @@ public class PersistentDataStoreTest {
     Instant creationTwo = Instant.ofEpochMilli(2000);
     String aboutMeTwo = "test_aboutme_two";
     boolean adminStatusTwo = false;
-    Text profilePicTwo = null;
-    User inputUserTwo = new User(idTwo, nameTwo, passwordHashTwo, creationTwo, aboutMeTwo, adminStatusTwo, profilePicTwo);
+    String pictureHashTwo = null;
+    User inputUserTwo = new User(idTwo, nameTwo, passwordHashTwo, creationTwo, aboutMeTwo, adminStatusTwo, pictureHashTwo);
 
     // save
     persistentDataStore.writeThrough(inputUserOne);
@@ -72,6 +89,7 @@ public class PersistentDataStoreTest {
     Assert.assertEquals(creationOne, resultUserOne.getCreationTime());
     Assert.assertEquals(aboutMeOne, resultUserOne.getAboutMe());
     Assert.assertEquals(adminStatusOne, resultUserOne.isAdmin());
+    Assert.assertEquals(pictureHashOne, resultUserOne.getProfilePictureHash());
 
     User resultUserTwo = resultUsers.get(1);
     Assert.assertEquals(idTwo, resultUserTwo.getId());
@@ -80,6 +98,145 @@ public class PersistentDataStoreTest {
     Assert.assertEquals(creationTwo, resultUserTwo.getCreationTime());
     Assert.assertEquals(aboutMeTwo, resultUserTwo.getAboutMe());
     Assert.assertEquals(adminStatusTwo, resultUserTwo.isAdmin());
+    Assert.assertNull(resultUserTwo.getProfilePictureHash());
+  }
+
+  @Test
+  public void testSaveAndLoadImage() throws PersistentDataStoreException {
+    // Larger than one chunk, so the image is split over several entities.
+    byte[] content = new byte[PersistentDataStore.IMAGE_CHUNK_SIZE * 2 + 100];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    StoredImage inputImage = StoredImage.of(content, "image/png");
+
+    Assert.assertNull(persistentDataStore.loadImage(inputImage.getHash()));
+    persistentDataStore.writeThrough(inputImage);
+    StoredImage resultImage = persistentDataStore.loadImage(inputImage.getHash());
+
+    Assert.assertArrayEquals(content, resultImage.getContent());
+    Assert.assertEquals("image/png", resultImage.getContentType());
+    Assert.assertEquals(inputImage.getHash(), resultImage.getHash());
+    Assert.assertEquals(
+        Arrays.asList(inputImage.getHash()), persistentDataStore.loadImageHashes());
+  }
+
+  @Test
+  public void testDeleteImage() throws PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+    persistentDataStore.writeThrough(image);
+
+    persistentDataStore.deleteImage(image.getHash());
+
+    Assert.assertNull(persistentDataStore.loadImage(image.getHash()));
+    Assert.assertTrue(persistentDataStore.loadImageHashes().isEmpty());
+  }
+
+  @Test
+  public void testStageImage_CommitOfStoredImageIsDiscarded() throws Exception {
+    byte[] content = new byte[PersistentDataStore.IMAGE_CHUNK_SIZE + 100];
+    content[content.length - 1] = 1;
+    StagedImage first =
+        persistentDataStore.stageImage(
+            new ByteArrayInputStream(content), content.length, "image/png");
+    StagedImage second =
+        persistentDataStore.stageImage(
+            new ByteArrayInputStream(content), content.length, "image/png");
+    Assert.assertEquals(StoredImage.of(content, "image/png").getHash(), first.getHash());
+    // Staged chunks aren't listed as an image yet.
+    Assert.assertNull(persistentDataStore.loadImage(first.getHash()));
+
+    persistentDataStore.commitImage(first);
+    persistentDataStore.commitImage(second);
+
+    Assert.assertArrayEquals(content, persistentDataStore.loadImage(first.getHash()).getContent());
+    Assert.assertEquals(2, countImageChunks());
+  }
+
+  @Test(expected = IOException.class)
+  public void testStageImage_WrongSizeLeavesNoChunks() throws IOException {
+    byte[] content = new byte[PersistentDataStore.IMAGE_CHUNK_SIZE + 100];
+    try {
+      persistentDataStore.stageImage(
+          new ByteArrayInputStream(content), content.length + 1, "image/png");
+    } finally {
+      Assert.assertEquals(0, countImageChunks());
+    }
+  }
+
+  @Test
+  public void testLoadImageHashesRemovesUncommittedChunks() throws Exception {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+    persistentDataStore.writeThrough(image);
+    persistentDataStore.stageImage(new ByteArrayInputStream(new byte[] {4, 5}), 2, "image/png");
+    Assert.assertEquals(2, countImageChunks());
+
+    Assert.assertEquals(Arrays.asList(image.getHash()), persistentDataStore.loadImageHashes());
+    Assert.assertEquals(1, countImageChunks());
+    Assert.assertArrayEquals(
+        image.getContent(), persistentDataStore.loadImage(image.getHash()).getContent());
+  }
+
+  @Test
+  public void testLoadImageWithChunksNamedByHash() throws PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {1, 2, 3}, "image/png");
+    Entity chunkEntity = new Entity("chat-image-chunks", image.getHash() + "#0");
+    chunkEntity.setProperty("content", new Blob(image.getContent()));
+    Entity imageEntity = new Entity("chat-images", image.getHash());
+    imageEntity.setProperty("content_type", "image/png");
+    imageEntity.setProperty("size", 3);
+    DatastoreServiceFactory.getDatastoreService().put(Arrays.asList(chunkEntity, imageEntity));
+
+    Assert.assertEquals(Arrays.asList(image.getHash()), persistentDataStore.loadImageHashes());
+    Assert.assertArrayEquals(
+        image.getContent(), persistentDataStore.loadImage(image.getHash()).getContent());
+    persistentDataStore.deleteImage(image.getHash());
+    Assert.assertEquals(0, countImageChunks());
+  }
+
+  private int countImageChunks() {
+    return DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query("chat-image-chunks").setKeysOnly())
+        .asList(FetchOptions.Builder.withDefaults())
+        .size();
+  }
+
+  @Test
+  public void testLoadImageHashesMigratesProfilePictures() throws PersistentDataStoreException {
+    StoredImage image = StoredImage.of(new byte[] {7, 8, 9}, "image/gif");
+    Entity legacyEntity = new Entity("chat-profile-pictures", UUID.randomUUID().toString());
+    legacyEntity.setProperty("hash", image.getHash());
+    legacyEntity.setProperty("content", new Blob(image.getContent()));
+    legacyEntity.setProperty("content_type", "image/gif");
+    DatastoreServiceFactory.getDatastoreService().put(legacyEntity);
+
+    Assert.assertEquals(Arrays.asList(image.getHash()), persistentDataStore.loadImageHashes());
+    StoredImage resultImage = persistentDataStore.loadImage(image.getHash());
+    Assert.assertArrayEquals(image.getContent(), resultImage.getContent());
+    Assert.assertEquals("image/gif", resultImage.getContentType());
+  }
+
+  @Test
+  public void testLoadUsersMigratesInlineProfilePicture() throws PersistentDataStoreException {
+    UUID id = UUID.fromString("10000000-2222-3333-4444-555555555555");
+    byte[] content = {4, 5, 6};
+    Entity legacyEntity = new Entity("chat-users", id.toString());
+    legacyEntity.setProperty("uuid", id.toString());
+    legacyEntity.setProperty("username", "test_username");
+    legacyEntity.setProperty("password_hash", "password");
+    legacyEntity.setProperty("creation_time", Instant.ofEpochMilli(1000).toString());
+    legacyEntity.setProperty("aboutMe", "");
+    legacyEntity.setProperty("adminStatus", false);
+    legacyEntity.setProperty("profilepic", new Text(Base64.getEncoder().encodeToString(content)));
+    DatastoreServiceFactory.getDatastoreService().put(legacyEntity);
+
+    User resultUser = persistentDataStore.loadUsers().get(0);
+    StoredImage resultPicture = persistentDataStore.loadImage(resultUser.getProfilePictureHash());
+
+    Assert.assertArrayEquals(content, resultPicture.getContent());
+    Assert.assertEquals(resultPicture.getHash(), resultUser.getProfilePictureHash());
+    Assert.assertEquals(
+        resultPicture.getHash(), persistentDataStore.loadUsers().get(0).getProfilePictureHash());
   }
 
   @Test
@@ -161,4 +318,103 @@ public class PersistentDataStoreTest {
     //Assert.assertEquals(creationTwo, resultMessageTwo.getCreationTime());
     //Assert.assertEquals(typeTwo, resultMessageTwo.getType());
   }
+
+  @Test
+  public void testCommitUnitOfWork() throws PersistentDataStoreException {
+    UUID conversationId = UUID.randomUUID();
+    Message parent =
+        new Message(
+            UUID.randomUUID(), conversationId, UUID.randomUUID(), "parent", Instant.ofEpochMilli(1000));
+    Message reply =
+        new Message(
+            UUID.randomUUID(), conversationId, UUID.randomUUID(), "reply", Instant.ofEpochMilli(2000));
+    parent.addReply(reply);
+    Mention mention = new Mention(UUID.randomUUID(), "friend");
+    mention.addMessageId(reply.getId());
+    Hashtag hashtag = new Hashtag("HELLO", reply.getId());
+
+    UnitOfWork unit = new UnitOfWork();
+    unit.add(parent);
+    unit.add(mention);
+    unit.add(hashtag);
+    // Added twice, but only written once.
+    unit.add(parent);
+    persistentDataStore.writeThrough(unit);
+
+    Set<UUID> messageIds = new HashSet<>();
+    for (Message message : persistentDataStore.loadMessages()) {
+      messageIds.add(message.getId());
+    }
+    Assert.assertEquals(new HashSet<>(Arrays.asList(parent.getId(), reply.getId())), messageIds);
+    List<Mention> mentions = persistentDataStore.loadMentions();
+    Assert.assertEquals(1, mentions.size());
+    Assert.assertEquals(Arrays.asList(reply.getId()), mentions.get(0).getMessageIds());
+    List<Hashtag> hashtags = persistentDataStore.loadHashtags();
+    Assert.assertEquals(1, hashtags.size());
+    Assert.assertEquals(Arrays.asList(reply.getId()), hashtags.get(0).getMessageIds());
+  }
+
+  @Test
+  public void testCommitUnitOfWorkTooBigForOneTransaction() throws PersistentDataStoreException {
+    UnitOfWork unit = new UnitOfWork();
+    UUID messageId = UUID.randomUUID();
+    unit.add(new Message(messageId, UUID.randomUUID(), UUID.randomUUID(), "hi", Instant.now()));
+    for (int i = 0; i < PersistentDataStore.MAX_TRANSACTION_GROUPS; i++) {
+      Mention mention = new Mention(UUID.randomUUID(), "user" + i);
+      mention.addMessageId(messageId);
+      unit.add(mention);
+    }
+    persistentDataStore.writeThrough(unit);
+
+    Assert.assertEquals(messageId, persistentDataStore.loadMessages().get(0).getId());
+    Assert.assertEquals(
+        PersistentDataStore.MAX_TRANSACTION_GROUPS, persistentDataStore.loadMentions().size());
+  }
+
+  @Test
+  public void testSaveLoadAndDeleteTombstones() throws PersistentDataStoreException {
+    Tombstone older =
+        new Tombstone(UUID.randomUUID(), Tombstone.Type.CONVERSATION, Instant.ofEpochMilli(1000));
+    Tombstone newer =
+        new Tombstone(UUID.randomUUID(), Tombstone.Type.MESSAGE, Instant.ofEpochMilli(2000));
+    persistentDataStore.writeThrough(newer);
+    persistentDataStore.writeThrough(older);
+
+    List<Tombstone> tombstones = persistentDataStore.loadTombstones();
+    Assert.assertEquals(2, tombstones.size());
+    Assert.assertEquals(older.getId(), tombstones.get(0).getId());
+    Assert.assertEquals(older.getType(), tombstones.get(0).getType());
+    Assert.assertEquals(older.getCreationTime(), tombstones.get(0).getCreationTime());
+    Assert.assertEquals(newer.getId(), tombstones.get(1).getId());
+    Assert.assertEquals(Tombstone.Type.MESSAGE, tombstones.get(1).getType());
+
+    persistentDataStore.deleteThrough(older);
+    tombstones = persistentDataStore.loadTombstones();
+    Assert.assertEquals(1, tombstones.size());
+    Assert.assertEquals(newer.getId(), tombstones.get(0).getId());
+  }
+
+  @Test
+  public void testDeleteMessages() throws PersistentDataStoreException {
+    UUID conversationId = UUID.randomUUID();
+    List<UUID> deletedIds = new ArrayList<>();
+    // More than fit in one batch delete.
+    for (int i = 0; i <= PersistentDataStore.MAX_BATCH_DELETE; i++) {
+      UUID messageId = UUID.randomUUID();
+      deletedIds.add(messageId);
+      persistentDataStore.writeThrough(
+          new Message(messageId, conversationId, UUID.randomUUID(), "bye", Instant.now()));
+    }
+    UUID keptId = UUID.randomUUID();
+    persistentDataStore.writeThrough(
+        new Message(keptId, conversationId, UUID.randomUUID(), "hi", Instant.now()));
+
+    persistentDataStore.deleteMessages(deletedIds);
+
+    Set<UUID> messageIds = new HashSet<>();
+    for (Message message : persistentDataStore.loadMessages()) {
+      messageIds.add(message.getId());
+    }
+    Assert.assertEquals(new HashSet<>(Arrays.asList(keptId)), messageIds);
+  }
 }
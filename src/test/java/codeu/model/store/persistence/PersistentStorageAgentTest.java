@@ -95,4 +95,21 @@ public class PersistentStorageAgentTest {
     persistentStorageAgent.deleteThrough(message);
     Mockito.verify(mockPersistentDataStore).deleteThrough(message);
   }
+
+  @Test
+  public void testCommit() {
+    UnitOfWork unit = new UnitOfWork();
+    unit.add(
+        new Message(
+            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "test content", Instant.now(), "text"));
+    persistentStorageAgent.commit(unit);
+    Mockito.verify(mockPersistentDataStore).writeThrough(unit);
+  }
+
+  @Test
+  public void testCommitEmpty() {
+    persistentStorageAgent.commit(new UnitOfWork());
+    Mockito.verify(mockPersistentDataStore, Mockito.never())
+        .writeThrough(Mockito.any(UnitOfWork.class));
+  }
 }